@@ -0,0 +1,137 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.Ostermiller.util.CSVParser;
+
+/**
+ * Reads the rows of a CSV source one at a time, rather than parsing the whole source into 
+ * memory as getCsvFile does.  The source is closed once the last row is read, or by close() if 
+ * the rows are not read to the end.
+ * 
+ * @author rockholla
+ *
+ */
+public class CsvRowIterator implements Iterator<String[]>, Iterable<String[]>, Closeable
+{
+	
+	/** the parser, null once closed */
+	protected CSVParser _parser;
+	/** the next row, read ahead by hasNext() */
+	protected String[] _next;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param reader	the CSV source
+	 */
+	public CsvRowIterator(Reader reader)
+	{
+		this._parser = new CSVParser(reader);
+	}
+	
+	public boolean hasNext()
+	{
+		
+		if(this._next != null)
+		{
+			return true;
+		}
+		if(this._parser == null)
+		{
+			return false;
+		}
+		try
+		{
+			this._next = this._parser.getLine();
+			if(this._next == null)
+			{
+				this.close();
+				return false;
+			}
+			return true;
+		}
+		catch(IOException exception)
+		{
+			this.close();
+			throw new RuntimeException(exception);
+		}
+		
+	}
+	
+	public String[] next()
+	{
+		
+		if(!this.hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		String[] row = this._next;
+		this._next = null;
+		return row;
+		
+	}
+	
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Allows the rows to be read with a for-each loop, the rows can only be read once
+	 */
+	public Iterator<String[]> iterator()
+	{
+		return this;
+	}
+	
+	/**
+	 * Gets the line number of the last row read
+	 * 
+	 * @return	the line number, starting at 1
+	 */
+	public int getLineNumber()
+	{
+		return this._parser == null ? -1 : this._parser.lastLineNumber();
+	}
+	
+	public void close()
+	{
+		
+		if(this._parser == null)
+		{
+			return;
+		}
+		try
+		{
+			this._parser.close();
+		}
+		catch(IOException exception)
+		{
+			FileUtility.logger.debug("Error closing CSV source: " + exception.getMessage());
+		}
+		this._parser = null;
+		
+	}
+	
+}
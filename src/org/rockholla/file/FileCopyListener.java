@@ -0,0 +1,40 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.file;
+
+import java.io.File;
+
+/**
+ * Receives the progress of a folder copy
+ * 
+ * @author rockholla
+ *
+ */
+public interface FileCopyListener 
+{
+	
+	/**
+	 * Called after each file is copied, from the thread that copied it
+	 * 
+	 * @param source	the file copied
+	 * @param target	the copy
+	 * @param bytes		the bytes copied
+	 * @param progress	the totals of the copy so far
+	 */
+	public void fileCopied(File source, File target, long bytes, FileCopyResult progress);
+	
+}
@@ -0,0 +1,102 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.file;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The files and bytes copied by FileUtility.copyFile and copyFolder, and how fast they were 
+ * copied.  Counts may be added to from several threads.
+ * 
+ * @author rockholla
+ *
+ */
+public class FileCopyResult 
+{
+	
+	protected AtomicLong _fileCount = new AtomicLong();
+	protected AtomicLong _byteCount = new AtomicLong();
+	protected long _startTime = System.nanoTime();
+	/** the time the copy finished, 0 while it is running */
+	protected volatile long _endTime = 0;
+	
+	/**
+	 * Counts a copied file
+	 * 
+	 * @param bytes	the bytes in the file
+	 */
+	public void addFile(long bytes)
+	{
+		
+		this._fileCount.incrementAndGet();
+		this._byteCount.addAndGet(bytes);
+		
+	}
+	
+	/**
+	 * Marks the copy as finished, stopping the clock
+	 */
+	public void finish()
+	{
+		this._endTime = System.nanoTime();
+	}
+	
+	public long getFileCount()
+	{
+		return this._fileCount.get();
+	}
+	
+	public long getByteCount()
+	{
+		return this._byteCount.get();
+	}
+	
+	/**
+	 * Gets how long the copy took, or has taken so far
+	 * 
+	 * @return	the time in milliseconds
+	 */
+	public long getElapsedMillis()
+	{
+		return ((this._endTime == 0 ? System.nanoTime() : this._endTime) - this._startTime) / 1000000L;
+	}
+	
+	/**
+	 * Gets the rate of the copy
+	 * 
+	 * @return	the bytes copied per second
+	 */
+	public double getBytesPerSecond()
+	{
+		
+		long elapsed = (this._endTime == 0 ? System.nanoTime() : this._endTime) - this._startTime;
+		return elapsed <= 0 ? 0 : this.getByteCount() * 1000000000.0 / elapsed;
+		
+	}
+	
+	@Override
+	public String toString()
+	{
+		
+		return String.format(
+				"%d files, %.1f MB in %d ms (%.1f MB/s)", this.getFileCount(), this.getByteCount() / (1024.0 * 1024.0), 
+				this.getElapsedMillis(), this.getBytesPerSecond() / (1024.0 * 1024.0)
+		);
+		
+	}
+	
+}
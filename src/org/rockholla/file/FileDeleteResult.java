@@ -0,0 +1,138 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.file;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The files and folders removed by FileUtility.deleteFolder, the bytes freed and what could 
+ * not be deleted.  Counts may be added to from several threads.
+ * 
+ * @author rockholla
+ *
+ */
+public class FileDeleteResult 
+{
+	
+	protected AtomicLong _fileCount = new AtomicLong();
+	protected AtomicLong _folderCount = new AtomicLong();
+	protected AtomicLong _byteCount = new AtomicLong();
+	/** the files and folders that could not be deleted */
+	protected List<File> _failures = new ArrayList<File>();
+	protected long _startTime = System.nanoTime();
+	/** the time the deletion finished, 0 while it is running */
+	protected volatile long _endTime = 0;
+	
+	/**
+	 * Counts a deleted file
+	 * 
+	 * @param bytes	the length of the file
+	 */
+	public void addFile(long bytes)
+	{
+		
+		this._fileCount.incrementAndGet();
+		this._byteCount.addAndGet(bytes);
+		
+	}
+	
+	/**
+	 * Counts a deleted folder
+	 */
+	public void addFolder()
+	{
+		this._folderCount.incrementAndGet();
+	}
+	
+	/**
+	 * Records a file or folder that could not be deleted
+	 * 
+	 * @param file	the file or folder
+	 */
+	public synchronized void addFailure(File file)
+	{
+		this._failures.add(file);
+	}
+	
+	/**
+	 * Marks the deletion as finished, stopping the clock
+	 */
+	public void finish()
+	{
+		this._endTime = System.nanoTime();
+	}
+	
+	public long getFileCount()
+	{
+		return this._fileCount.get();
+	}
+	
+	public long getFolderCount()
+	{
+		return this._folderCount.get();
+	}
+	
+	/**
+	 * Gets the bytes freed
+	 * 
+	 * @return	the total length of the deleted files
+	 */
+	public long getByteCount()
+	{
+		return this._byteCount.get();
+	}
+	
+	/**
+	 * Gets the files and folders that could not be deleted
+	 * 
+	 * @return	a copy of the list, empty if everything was deleted
+	 */
+	public synchronized List<File> getFailures()
+	{
+		return new ArrayList<File>(this._failures);
+	}
+	
+	public synchronized boolean isSuccessful()
+	{
+		return this._failures.isEmpty();
+	}
+	
+	/**
+	 * Gets how long the deletion took, or has taken so far
+	 * 
+	 * @return	the time in milliseconds
+	 */
+	public long getElapsedMillis()
+	{
+		return ((this._endTime == 0 ? System.nanoTime() : this._endTime) - this._startTime) / 1000000L;
+	}
+	
+	@Override
+	public String toString()
+	{
+		
+		return String.format(
+				"%d files and %d folders, %.1f MB in %d ms, %d failures", this.getFileCount(), this.getFolderCount(), 
+				this.getByteCount() / (1024.0 * 1024.0), this.getElapsedMillis(), this.getFailures().size()
+		);
+		
+	}
+	
+}
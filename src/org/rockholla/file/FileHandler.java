@@ -0,0 +1,38 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.file;
+
+import java.io.File;
+
+/**
+ * Receives files one at a time from a folder walk
+ * 
+ * @author rockholla
+ *
+ */
+public interface FileHandler 
+{
+	
+	/**
+	 * Handles a single file or folder
+	 * 
+	 * @param file			the file or folder
+	 * @throws Exception	stops the walk, the exception is passed on to the caller
+	 */
+	public void handleFile(File file) throws Exception;
+	
+}
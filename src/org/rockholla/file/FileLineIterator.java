@@ -0,0 +1,142 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.file;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the lines of a file one at a time, rather than reading every line into memory as 
+ * getFileLines does.  The file is closed once the last line is read, or by close() if the 
+ * lines are not read to the end.
+ * 
+ * @author rockholla
+ *
+ */
+public class FileLineIterator implements Iterator<String>, Iterable<String>, Closeable
+{
+	
+	/** the size of the character buffer lines are read through */
+	protected static final int BUFFER_SIZE = 65536;
+	
+	/** the reader, null once closed */
+	protected BufferedReader _reader;
+	/** the next line, read ahead by hasNext() */
+	protected String _next;
+	/** the number of lines read */
+	protected long _lineNumber = 0;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param reader	the source of the lines
+	 */
+	public FileLineIterator(Reader reader)
+	{
+		this._reader = new BufferedReader(reader, BUFFER_SIZE);
+	}
+	
+	public boolean hasNext()
+	{
+		
+		if(this._next != null)
+		{
+			return true;
+		}
+		if(this._reader == null)
+		{
+			return false;
+		}
+		try
+		{
+			this._next = this._reader.readLine();
+			if(this._next == null)
+			{
+				this.close();
+				return false;
+			}
+			this._lineNumber++;
+			return true;
+		}
+		catch(IOException exception)
+		{
+			this.close();
+			throw new RuntimeException(exception);
+		}
+		
+	}
+	
+	public String next()
+	{
+		
+		if(!this.hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		String line = this._next;
+		this._next = null;
+		return line;
+		
+	}
+	
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Allows the lines to be read with a for-each loop, the lines can only be read once
+	 */
+	public Iterator<String> iterator()
+	{
+		return this;
+	}
+	
+	/**
+	 * Gets the line number of the last line read
+	 * 
+	 * @return	the line number, starting at 1
+	 */
+	public long getLineNumber()
+	{
+		return this._lineNumber;
+	}
+	
+	public void close()
+	{
+		
+		if(this._reader == null)
+		{
+			return;
+		}
+		try
+		{
+			this._reader.close();
+		}
+		catch(IOException exception)
+		{
+			FileUtility.logger.debug("Error closing file: " + exception.getMessage());
+		}
+		this._reader = null;
+		
+	}
+	
+}
@@ -18,19 +18,32 @@ package org.rockholla.file;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
+import java.io.FilterInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
 import java.io.StringReader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 import javax.activation.MimetypesFileTypeMap;
 
@@ -57,7 +70,8 @@ public class FileUtility
 	{
 		RECURSIVE,
 		EXCLUDE_DIRECTORIES,
-		INCLUDE_ONLY_DIRECTORIES
+		INCLUDE_ONLY_DIRECTORIES,
+		PRESERVE_ATTRIBUTES
 	}
 	/** Recursive option */
 	public static final OPTION RECURSIVE = OPTION.RECURSIVE;
@@ -65,11 +79,17 @@ public class FileUtility
 	public static final OPTION EXCLUDE_DIRECTORIES = OPTION.EXCLUDE_DIRECTORIES;
 	/** Include only directories option */
 	public static final OPTION INCLUDE_ONLY_DIRECTORIES = OPTION.INCLUDE_ONLY_DIRECTORIES;
+	/** Preserve the modified time and permissions of copied files option */
+	public static final OPTION PRESERVE_ATTRIBUTES = OPTION.PRESERVE_ATTRIBUTES;
 	
 	/** UTF-8 string representation */
 	public static final String UTF_8 = "UTF-8";
 	/** The default encoding for reading and writing files */
 	private static final String DEFAULT_ENCODING = UTF_8;
+	/** The most bytes read from a channel at once */
+	private static final int READ_CHUNK_SIZE = 1 << 20;
+	/** The most bytes transferred between channels at once */
+	private static final long COPY_CHUNK_SIZE = 64L << 20;
 	
 	/**
 	 * Gets the string contents of a file
@@ -84,7 +104,8 @@ public class FileUtility
 	}
 	
 	/**
-	 * Gets the string contents of a file
+	 * Gets the string contents of a file.  The file is read in one pass into a buffer sized from 
+	 * its length and decoded once, line endings are kept as they are in the file.
 	 * 
 	 * @param filePath	the path to the file
 	 * @param encoding	the encoding to use to read the file
@@ -93,21 +114,7 @@ public class FileUtility
 	 */
 	public static String getFileString(String filePath, String encoding) throws IOException 
 	{
-		
-		String lineSep = System.getProperty("line.separator");
-		InputStream inStream = new FileInputStream(filePath);
-		BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inStream, encoding));
-		StringBuffer stringBuffer = new StringBuffer();
-		String line = "";
-
-        while((line = bufferedReader.readLine()) != null) 
-        {
-        	stringBuffer.append(line);
-        	stringBuffer.append(lineSep);
-        }
-		
-		return stringBuffer.toString();
-		
+		return new String(getBytesFromFile(new File(filePath)), encoding);
 	}
 	
 	public static String getFileString(File file) throws IOException
@@ -136,19 +143,327 @@ public class FileUtility
 	 * @throws IOException
 	 */
 	public static ArrayList<String> getFileLines(String filePath, String encoding) throws IOException
+	{
+		
+		final ArrayList<String> lines = new ArrayList<String>();
+		readLines(filePath, encoding, new FileLineHandler() {
+			public void handleLine(String line)
+			{
+				lines.add(line);
+			}
+		});
+		return lines;
+		
+	}
+	
+	/**
+	 * Opens a file for reading one line at a time, only the current line is held in memory
+	 * 
+	 * @param filePath	the path to the file
+	 * @return			the lines, close the iterator if it is not read to the end
+	 * @throws IOException
+	 */
+	public static FileLineIterator getLineIterator(String filePath) throws IOException
+	{
+		return getLineIterator(filePath, DEFAULT_ENCODING);
+	}
+	
+	/**
+	 * Opens a file for reading one line at a time, only the current line is held in memory
+	 * 
+	 * @param filePath	the path to the file
+	 * @param encoding	the encoding to use to read the file
+	 * @return			the lines, close the iterator if it is not read to the end
+	 * @throws IOException
+	 */
+	public static FileLineIterator getLineIterator(String filePath, String encoding) throws IOException
 	{
 		
 		InputStream inStream = new FileInputStream(filePath);
-		BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inStream, encoding));
-		String line = "";
-		ArrayList<String> lines = new ArrayList<String>();
-
-        while((line = bufferedReader.readLine()) != null) 
-        {
-        	lines.add(line);
-        }
+		try
+		{
+			return new FileLineIterator(new InputStreamReader(inStream, encoding));
+		}
+		catch(IOException exception)
+		{
+			inStream.close();
+			throw exception;
+		}
 		
-		return lines;
+	}
+	
+	/**
+	 * Passes the lines of a file to a handler one at a time, closing the file before returning
+	 * 
+	 * @param filePath	the path to the file
+	 * @param handler	receives each line
+	 * @return			the number of lines read
+	 * @throws IOException
+	 */
+	public static long readLines(String filePath, FileLineHandler handler) throws IOException
+	{
+		return readLines(filePath, DEFAULT_ENCODING, handler);
+	}
+	
+	/**
+	 * Passes the lines of a file to a handler one at a time, closing the file before returning
+	 * 
+	 * @param filePath	the path to the file
+	 * @param encoding	the encoding to use to read the file
+	 * @param handler	receives each line
+	 * @return			the number of lines read
+	 * @throws IOException	if the file cannot be read or the handler fails
+	 */
+	public static long readLines(String filePath, String encoding, FileLineHandler handler) throws IOException
+	{
+		
+		FileLineIterator lines = getLineIterator(filePath, encoding);
+		try
+		{
+			return _handleLines(lines, handler);
+		}
+		finally
+		{
+			lines.close();
+		}
+		
+	}
+	
+	/**
+	 * Passes the lines of a file to a handler from several threads at once, each reading its own 
+	 * chunk of the file.  Lines are handled in no particular order, so the handler must be safe to 
+	 * call from several threads.  The encoding must write a line feed as a single byte, as UTF-8 and 
+	 * the ISO-8859 encodings do, since chunks are split at line feed bytes.
+	 * 
+	 * @param filePath		the path to the file
+	 * @param encoding		the encoding to use to read the file
+	 * @param handler		receives each line, from several threads
+	 * @param parallelism	the number of chunks read at once
+	 * @return				the number of lines read
+	 * @throws IOException	if the file cannot be read or the handler fails
+	 */
+	public static long readLines(final String filePath, final String encoding, final FileLineHandler handler, int parallelism) throws IOException
+	{
+		
+		if(!Arrays.equals("\n".getBytes(encoding), new byte[] { '\n' }))
+		{
+			throw new IllegalArgumentException("Cannot split lines of " + encoding + " into chunks");
+		}
+		long[] bounds = _getLineChunks(new File(filePath), parallelism);
+		if(bounds.length <= 2)
+		{
+			return readLines(filePath, encoding, handler);
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(bounds.length - 1);
+		try
+		{
+			ArrayList<Future<Long>> chunks = new ArrayList<Future<Long>>();
+			for(int i = 0; i < bounds.length - 1; i++)
+			{
+				final long start = bounds[i];
+				final long length = bounds[i + 1] - start;
+				chunks.add(executor.submit(new Callable<Long>() {
+					public Long call() throws Exception
+					{
+						FileInputStream inStream = new FileInputStream(filePath);
+						try
+						{
+							inStream.getChannel().position(start);
+							FileLineIterator lines = new FileLineIterator(new InputStreamReader(new RangeInputStream(inStream, length), encoding));
+							return _handleLines(lines, handler);
+						}
+						finally
+						{
+							inStream.close();
+						}
+					}
+				}));
+			}
+			
+			long count = 0;
+			for(Future<Long> chunk : chunks)
+			{
+				count += chunk.get();
+			}
+			return count;
+		}
+		catch(ExecutionException exception)
+		{
+			if(exception.getCause() instanceof IOException)
+			{
+				throw (IOException) exception.getCause();
+			}
+			throw new IOException(exception.getCause());
+		}
+		catch(InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException(exception);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		
+	}
+	
+	/**
+	 * Passes lines to a handler
+	 * 
+	 * @param lines		the lines
+	 * @param handler	receives each line
+	 * @return			the number of lines handled
+	 * @throws IOException	if the lines cannot be read or the handler fails
+	 */
+	protected static long _handleLines(FileLineIterator lines, FileLineHandler handler) throws IOException
+	{
+		
+		long count = 0;
+		try
+		{
+			while(lines.hasNext())
+			{
+				handler.handleLine(lines.next());
+				count++;
+			}
+		}
+		catch(IOException exception)
+		{
+			throw exception;
+		}
+		catch(Exception exception)
+		{
+			if(exception instanceof RuntimeException && exception.getCause() instanceof IOException)
+			{
+				throw (IOException) exception.getCause();
+			}
+			throw new IOException(exception);
+		}
+		return count;
+		
+	}
+	
+	/**
+	 * Splits a file into chunks of about equal size that each start at the beginning of a line
+	 * 
+	 * @param file		the file
+	 * @param chunks	the number of chunks
+	 * @return			the offset of each chunk followed by the file length, fewer chunks for small files
+	 * @throws IOException
+	 */
+	protected static long[] _getLineChunks(File file, int chunks) throws IOException
+	{
+		
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try
+		{
+			long length = randomAccessFile.length();
+			ArrayList<Long> bounds = new ArrayList<Long>();
+			bounds.add(0L);
+			byte[] buffer = new byte[8192];
+			for(int i = 1; i < chunks; i++)
+			{
+				// a chunk starts after the first line feed at or past its nominal start
+				long position = Math.max(Math.max(length * i / chunks, bounds.get(bounds.size() - 1)), 1) - 1;
+				long start = -1;
+				while(start < 0 && position < length)
+				{
+					randomAccessFile.seek(position);
+					int read = randomAccessFile.read(buffer);
+					if(read <= 0) break;
+					for(int j = 0; j < read; j++)
+					{
+						if(buffer[j] == '\n')
+						{
+							start = position + j + 1;
+							break;
+						}
+					}
+					position += read;
+				}
+				if(start < 0 || start >= length)
+				{
+					break;
+				}
+				if(start > bounds.get(bounds.size() - 1))
+				{
+					bounds.add(start);
+				}
+			}
+			bounds.add(length);
+			
+			long[] offsets = new long[bounds.size()];
+			for(int i = 0; i < offsets.length; i++)
+			{
+				offsets[i] = bounds.get(i);
+			}
+			return offsets;
+		}
+		finally
+		{
+			randomAccessFile.close();
+		}
+		
+	}
+	
+	/**
+	 * Reads up to a number of bytes from another stream, for reading a chunk of a file
+	 */
+	protected static class RangeInputStream extends FilterInputStream
+	{
+		
+		protected long _remaining;
+		
+		protected RangeInputStream(InputStream in, long length)
+		{
+			super(in);
+			this._remaining = length;
+		}
+		
+		@Override
+		public int read() throws IOException
+		{
+			
+			if(this._remaining <= 0)
+			{
+				return -1;
+			}
+			int read = super.read();
+			if(read >= 0) this._remaining--;
+			return read;
+			
+		}
+		
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException
+		{
+			
+			if(this._remaining <= 0)
+			{
+				return -1;
+			}
+			int read = super.read(bytes, offset, (int) Math.min(length, this._remaining));
+			if(read > 0) this._remaining -= read;
+			return read;
+			
+		}
+		
+		@Override
+		public long skip(long count) throws IOException
+		{
+			
+			long skipped = super.skip(Math.min(count, this._remaining));
+			this._remaining -= skipped;
+			return skipped;
+			
+		}
+		
+		@Override
+		public int available() throws IOException
+		{
+			return (int) Math.min(super.available(), this._remaining);
+		}
 		
 	}
 	
@@ -192,19 +507,7 @@ public class FileUtility
 	 */
 	public static void write(String filePath, File file) throws IOException 
 	{
-		
-		FileReader in = new FileReader(file);
-	    FileWriter out = new FileWriter(new File(filePath));
-	    int c;
-
-	    while ((c = in.read()) != -1)
-	    {
-	    	out.write(c);
-	    }
-
-	    in.close();
-	    out.close();
-		
+		copyFile(file, new File(filePath));
 	}
 	
 	/**
@@ -275,43 +578,28 @@ public class FileUtility
 	public static ArrayList<File> getFolderFiles(String folderPath, OPTION ...args) 
 	{
 		
-		File folder = new File(folderPath);
-	    File[] files = folder.listFiles();
-	    ArrayList<File> folderFiles = new ArrayList<File>();
-	    
-	    for(int i = 0; i < files.length; i++) 
-	    {
-	    	
-	    	if(files[i].isFile() && !files[i].isHidden() && !includesOption(OPTION.INCLUDE_ONLY_DIRECTORIES, args)) 
-	    	{
-	    		
-	    		folderFiles.add(files[i]);
-	    		
-	    	} 
-	    	else if(files[i].isDirectory() && !files[i].isHidden()) 
-	    	{
-	    		
-	    		if(!includesOption(OPTION.EXCLUDE_DIRECTORIES, args) || includesOption(OPTION.INCLUDE_ONLY_DIRECTORIES, args)) 
-	    		{
-	    			folderFiles.add(files[i]);
-	    		}
-	    		
-	    		if(includesOption(OPTION.RECURSIVE, args)) 
-	    		{
-	    			ArrayList<File> recursiveFolderFiles = FileUtility.getFolderFiles(files[i].getPath(), args);
-		    		for(File recursiveFolderFile: recursiveFolderFiles) 
-		    		{
-		    			folderFiles.add(recursiveFolderFile);
-		    		}
-	    		}
-	    		
-	    	}
-	    }
-	    
-	    return folderFiles;
+		ArrayList<File> folderFiles = new ArrayList<File>();
+		for(File file : walkFolder(folderPath, args))
+		{
+			folderFiles.add(file);
+		}
+		return folderFiles;
 		
 	}
 	
+	/**
+	 * Walks the folders/files within a particular folder one at a time, see FolderWalker for 
+	 * filtering by name, size, modified time and depth
+	 * 
+	 * @param folderPath	the path to the folder
+	 * @param args			an OPTION, as getFolderFiles
+	 * @return				the walker, listing each folder as it is reached
+	 */
+	public static FolderWalker walkFolder(String folderPath, OPTION ...args) 
+	{
+		return new FolderWalker(new File(folderPath), args);
+	}
+	
 	/**
 	 * Creates a path and all directories along the way
 	 * 
@@ -348,38 +636,51 @@ public class FileUtility
 	}
 	
 	/**
-	 * Deletes a folder's contents
+	 * Deletes a folder's contents.  The overloads taking a parallelism return what was deleted 
+	 * and what could not be.
 	 * 
 	 * @param folder			the java.io.File folder to delete
 	 * @param keepRootFolder	if true, only the contents will be deleted, false will delete the folder itself as well
 	 */
 	public static void deleteFolder(File folder, Boolean keepRootFolder) 
+	{
+		deleteFolder(folder, keepRootFolder, 1);
+	}
+	
+	/**
+	 * Deletes a folder's contents with several threads, see FolderDeleter
+	 * 
+	 * @param folder			the java.io.File folder to delete
+	 * @param keepRootFolder	if true, only the contents will be deleted, false will delete the folder itself as well
+	 * @param parallelism		the number of threads deleting at once
+	 * @return					the files and folders deleted and those that could not be
+	 */
+	public static FileDeleteResult deleteFolder(File folder, boolean keepRootFolder, int parallelism) 
 	{
 		
-		if(!folder.isDirectory()) 
-		{
-			return;
-		}
+		FolderDeleter deleter = new FolderDeleter(folder);
+		deleter.setKeepRootFolder(keepRootFolder);
+		deleter.setParallelism(parallelism);
+		return deleter.delete();
 		
-		File[] files = folder.listFiles();
+	}
+	
+	/**
+	 * Deletes a folder's contents on a thread of its own
+	 * 
+	 * @param folder			the java.io.File folder to delete
+	 * @param keepRootFolder	if true, only the contents will be deleted, false will delete the folder itself as well
+	 * @param parallelism		the number of threads deleting at once
+	 * @return					the result, once the deletion is done
+	 */
+	public static Future<FileDeleteResult> deleteFolderAsync(File folder, boolean keepRootFolder, int parallelism) 
+	{
 		
-		for(int i = 0; i < files.length; i++) 
-		{
-			if(files[i].isDirectory()) 
-			{
-				deleteFolder(files[i], false);
-			} 
-			else 
-			{
-				files[i].delete();
-			}
-		}
+		FolderDeleter deleter = new FolderDeleter(folder);
+		deleter.setKeepRootFolder(keepRootFolder);
+		deleter.setParallelism(parallelism);
+		return deleter.deleteAsync();
 		
-		if(!keepRootFolder) 
-		{
-			folder.delete();
-		}
-	    
 	}
 	
 	/**
@@ -392,6 +693,18 @@ public class FileUtility
 		deleteFolder(folder, true);
 	}
 	
+	/**
+	 * Removes a folder's contents with several threads
+	 * 
+	 * @param folder		the java.io.File folder where the contents reside
+	 * @param parallelism	the number of threads deleting at once
+	 * @return				the files and folders deleted and those that could not be
+	 */
+	public static FileDeleteResult emptyFolder(File folder, int parallelism) 
+	{
+		return deleteFolder(folder, true, parallelism);
+	}
+	
 	/**
 	 * Adds string content to an existing file
 	 * 
@@ -421,7 +734,8 @@ public class FileUtility
 	}
 	
 	/**
-	 * Copies a folder and its contents to a new location.  If the target location does not exist, it will be created.
+	 * Copies a folder and its contents to a new location.  If the target location does not exist, it will be created.  
+	 * The overloads taking OPTIONs return the files and bytes copied.
 	 * 
 	 * @param sourceLocation		the source folder and files
 	 * @param targetLocation		where the folder and files will be copied
@@ -430,41 +744,179 @@ public class FileUtility
 	 */
 	public static void copyFolder(File sourceLocation , File targetLocation, ArrayList<String> excludeDirectories) throws IOException 
 	{
-	 
-	    if(sourceLocation.isDirectory()) 
-	    {
-	    	if(ArrayUtility.find(sourceLocation.getName(), excludeDirectories) >= 0) 
-	    	{
-	    		return;
-	    	}
-	        if(!targetLocation.exists()) 
-	        {
-	            targetLocation.mkdir();
-	        }
-	 
-	        String[] children = sourceLocation.list();
-	        for(int i=0; i<children.length; i++) 
-	        {
-	            copyFolder(new File(sourceLocation, children[i]),
-	                       new File(targetLocation, children[i]), 
-	                       excludeDirectories);
-	        }
-	    } 
-	    else 
-	    {
-	        InputStream in = new FileInputStream(sourceLocation);
-	        OutputStream out = new FileOutputStream(targetLocation);
-	 
-	        // Copy the bits from instream to outstream
-	        byte[] buf = new byte[1024];
-	        int len;
-	        while((len = in.read(buf)) > 0) 
-	        {
-	            out.write(buf, 0, len);
-	        }
-	        in.close();
-	        out.close();
-	    }
+		copyFolder(sourceLocation, targetLocation, excludeDirectories, new OPTION[0]);
+	}
+	
+	/**
+	 * Copies a folder and its contents to a new location.  If the target location does not exist, it will be created.
+	 * 
+	 * @param sourceLocation		the source folder and files
+	 * @param targetLocation		where the folder and files will be copied
+	 * @param excludeDirectories	a List of directory names to ignore during the copy, ex: [.svn, .save] will ignore all .svn and .save folders
+	 * @param args					an OPTION
+	 * 									PRESERVE_ATTRIBUTES = keep the modified time and permissions of files and folders
+	 * @return						the files and bytes copied
+	 * @throws IOException
+	 */
+	public static FileCopyResult copyFolder(File sourceLocation , File targetLocation, ArrayList<String> excludeDirectories, OPTION ...args) throws IOException 
+	{
+		
+		FileCopyResult result = new FileCopyResult();
+		_copyFolder(sourceLocation, targetLocation, new HashSet<String>(excludeDirectories), includesOption(OPTION.PRESERVE_ATTRIBUTES, args), result);
+		result.finish();
+		logger.debug("Copied " + sourceLocation + " to " + targetLocation + ": " + result);
+		return result;
+		
+	}
+	
+	/**
+	 * Copies a folder and its contents to a new location with several threads, see FolderCopier.  
+	 * If the target location does not exist, it will be created.
+	 * 
+	 * @param sourceLocation		the source folder and files
+	 * @param targetLocation		where the folder and files will be copied
+	 * @param excludeDirectories	a List of directory names to ignore during the copy, ex: [.svn, .save] will ignore all .svn and .save folders
+	 * @param parallelism			the number of files copied at once
+	 * @param args					an OPTION
+	 * 									PRESERVE_ATTRIBUTES = keep the modified time and permissions of files and folders
+	 * @return						the files and bytes copied
+	 * @throws IOException
+	 */
+	public static FileCopyResult copyFolder(File sourceLocation , File targetLocation, ArrayList<String> excludeDirectories, int parallelism, OPTION ...args) throws IOException 
+	{
+		
+		FolderCopier copier = new FolderCopier(sourceLocation, targetLocation);
+		copier.setExcludeDirectories(excludeDirectories);
+		copier.setParallelism(parallelism);
+		copier.setPreserveAttributes(includesOption(OPTION.PRESERVE_ATTRIBUTES, args));
+		return copier.copy();
+		
+	}
+	
+	/**
+	 * Copies a folder and its contents, or a single file
+	 */
+	protected static void _copyFolder(File sourceLocation , File targetLocation, Set<String> excludeDirectories, boolean preserveAttributes, FileCopyResult result) throws IOException 
+	{
+		
+		if(sourceLocation.isDirectory()) 
+		{
+			if(excludeDirectories.contains(sourceLocation.getName())) 
+			{
+				return;
+			}
+			if(!targetLocation.exists()) 
+			{
+				targetLocation.mkdir();
+			}
+			
+			String[] children = sourceLocation.list();
+			for(int i=0; i<children.length; i++) 
+			{
+				_copyFolder(new File(sourceLocation, children[i]), new File(targetLocation, children[i]), excludeDirectories, preserveAttributes, result);
+			}
+			if(preserveAttributes)
+			{
+				_copyAttributes(sourceLocation, targetLocation);
+			}
+		} 
+		else 
+		{
+			result.addFile(_copyFile(sourceLocation, targetLocation, preserveAttributes));
+		}
+		
+	}
+	
+	/**
+	 * Copies a file, letting the operating system move the bytes between the files where it can 
+	 * rather than reading them into memory
+	 * 
+	 * @param source	the file to copy
+	 * @param target	the copy, replaced if it exists
+	 * @param args		an OPTION
+	 * 						PRESERVE_ATTRIBUTES = keep the modified time and permissions of the file
+	 * @return			the bytes copied
+	 * @throws IOException
+	 */
+	public static FileCopyResult copyFile(File source, File target, OPTION ...args) throws IOException
+	{
+		
+		FileCopyResult result = new FileCopyResult();
+		result.addFile(_copyFile(source, target, includesOption(OPTION.PRESERVE_ATTRIBUTES, args)));
+		result.finish();
+		return result;
+		
+	}
+	
+	/**
+	 * Copies a file through FileChannel.transferTo, in chunks so no single transfer is larger 
+	 * than some platforms allow
+	 * 
+	 * @param source				the file to copy
+	 * @param target				the copy, replaced if it exists
+	 * @param preserveAttributes	true to keep the modified time and permissions of the file
+	 * @return						the bytes copied
+	 * @throws IOException
+	 */
+	protected static long _copyFile(File source, File target, boolean preserveAttributes) throws IOException
+	{
+		
+		long position = 0;
+		FileInputStream in = new FileInputStream(source);
+		try
+		{
+			FileOutputStream out = new FileOutputStream(target);
+			try
+			{
+				FileChannel inChannel = in.getChannel();
+				FileChannel outChannel = out.getChannel();
+				long size = inChannel.size();
+				while(position < size)
+				{
+					long transferred = inChannel.transferTo(position, Math.min(COPY_CHUNK_SIZE, size - position), outChannel);
+					if(transferred <= 0)
+					{
+						// the file was truncated while it was copied
+						break;
+					}
+					position += transferred;
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		if(preserveAttributes)
+		{
+			_copyAttributes(source, target);
+		}
+		return position;
+		
+	}
+	
+	/**
+	 * Copies the modified time and the owner's permissions of a file or folder
+	 * 
+	 * @param source	the original
+	 * @param target	the copy
+	 */
+	protected static void _copyAttributes(File source, File target)
+	{
+		
+		target.setReadable(source.canRead());
+		target.setExecutable(source.canExecute());
+		if(!target.setLastModified(source.lastModified()))
+		{
+			logger.debug("Could not set the modified time of " + target);
+		}
+		// last, so the time can be set on files that are not writable
+		target.setWritable(source.canWrite());
+		
 	}
 	
 	/**
@@ -484,6 +936,31 @@ public class FileUtility
 		
 	}
 	
+	/**
+	 * Opens a CSV file for reading one row at a time
+	 * 
+	 * @param filePath	the path to the CSV file
+	 * @return			the rows, close the iterator if it is not read to the end
+	 * @throws IOException
+	 */
+	public static CsvRowIterator getCsvRows(String filePath) throws IOException 
+	{
+		return getCsvRows(filePath, DEFAULT_ENCODING);
+	}
+	
+	/**
+	 * Opens a CSV file for reading one row at a time
+	 * 
+	 * @param filePath	the path to the CSV file
+	 * @param encoding	the encoding to use to read the file
+	 * @return			the rows, close the iterator if it is not read to the end
+	 * @throws IOException
+	 */
+	public static CsvRowIterator getCsvRows(String filePath, String encoding) throws IOException 
+	{
+		return new CsvRowIterator(new BufferedReader(new InputStreamReader(new FileInputStream(filePath), encoding)));
+	}
+	
 	/**
 	 * Gets the file extension of a file
 	 * 
@@ -520,7 +997,8 @@ public class FileUtility
 	}
 	
 	/**
-	 * Gets the byte array representation of a file
+	 * Gets the byte array representation of a file, read through its channel into an array sized 
+	 * from its length
 	 * 
 	 * @param file	the java.io.File
 	 * @return		the byte array
@@ -528,40 +1006,61 @@ public class FileUtility
 	 */
 	public static byte[] getBytesFromFile(File file) throws IOException 
 	{
-        
-		InputStream is = new FileInputStream(file);
-    
-        // Get the size of the file
-        long length = file.length();
-    
-        if(length > Integer.MAX_VALUE) 
-        {
-            // File is too large
-        	throw new IOException("File is too large: " + file.getName());
-        }
-    
-        // Create the byte array to hold the data
-        byte[] bytes = new byte[(int)length];
-    
-        // Read in the bytes
-        int offset = 0;
-        int numRead = 0;
-        while(offset < bytes.length && (numRead=is.read(bytes, offset, bytes.length-offset)) >= 0) 
-        {
-            offset += numRead;
-        }
-    
-        // Ensure all the bytes have been read in
-        if(offset < bytes.length) 
-        {
-            throw new IOException("Could not completely read file: " + file.getName());
-        }
-    
-        // Close the input stream and return bytes
-        is.close();
-        return bytes;
-        
-    }
+		
+		FileInputStream inputStream = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = inputStream.getChannel();
+			long length = channel.size();
+			if(length > Integer.MAX_VALUE) 
+			{
+				throw new IOException("File is too large: " + file.getName());
+			}
+			if(length == 0)
+			{
+				// special files such as those under /proc report no length but have content
+				return _readStream(inputStream);
+			}
+			
+			// the channel copies through a native buffer as large as each read, so read in slices
+			ByteBuffer buffer = ByteBuffer.allocate((int) length);
+			while(buffer.position() < buffer.capacity())
+			{
+				buffer.limit(Math.min(buffer.capacity(), buffer.position() + READ_CHUNK_SIZE));
+				if(channel.read(buffer) < 0)
+				{
+					throw new IOException("Could not completely read file: " + file.getName());
+				}
+			}
+			return buffer.array();
+		}
+		finally
+		{
+			inputStream.close();
+		}
+		
+	}
+	
+	/**
+	 * Reads a stream to its end
+	 * 
+	 * @param inputStream	the stream, left open
+	 * @return				the bytes read
+	 * @throws IOException
+	 */
+	protected static byte[] _readStream(InputStream inputStream) throws IOException
+	{
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while((read = inputStream.read(buffer)) >= 0)
+		{
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+		
+	}
 	
 	/**
 	 * Gets a file's MIME type
@@ -574,6 +1073,95 @@ public class FileUtility
 		return new MimetypesFileTypeMap().getContentType(file);
 	}
 	
+	/**
+	 * Compiles a glob pattern into a regular expression.  * matches any characters but /, ** any 
+	 * characters including /, ? one character but /, [abc] and [!abc] a character of a set, 
+	 * {one,two} either of the alternatives, and \ escapes the next character.
+	 * 
+	 * @param glob	the glob pattern, ex: *.{jpg,png} or logs/**
+	 * @return		the compiled pattern
+	 */
+	public static Pattern getGlobPattern(String glob)
+	{
+		
+		StringBuilder regex = new StringBuilder(glob.length() * 2);
+		int braces = 0;
+		for(int i = 0; i < glob.length(); i++)
+		{
+			char c = glob.charAt(i);
+			switch(c)
+			{
+				case '*':
+					if(i + 1 < glob.length() && glob.charAt(i + 1) == '*')
+					{
+						i++;
+						if(i + 1 < glob.length() && glob.charAt(i + 1) == '/')
+						{
+							// **/ also matches no folders at all
+							i++;
+							regex.append("(?:.*/)?");
+						}
+						else
+						{
+							regex.append(".*");
+						}
+					}
+					else
+					{
+						regex.append("[^/]*");
+					}
+					break;
+				case '?':
+					regex.append("[^/]");
+					break;
+				case '[':
+					int end = glob.indexOf(']', i + 2);
+					if(end < 0)
+					{
+						regex.append("\\[");
+						break;
+					}
+					String set = glob.substring(i + 1, end);
+					if(set.startsWith("!")) set = "^" + set.substring(1);
+					regex.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+					i = end;
+					break;
+				case '{':
+					braces++;
+					regex.append("(?:");
+					break;
+				case '}':
+					if(braces > 0)
+					{
+						braces--;
+						regex.append(')');
+					}
+					else
+					{
+						regex.append("\\}");
+					}
+					break;
+				case ',':
+					regex.append(braces > 0 ? "|" : ",");
+					break;
+				case '\\':
+					if(i + 1 < glob.length())
+					{
+						regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+					}
+					break;
+				default:
+					if(".()+|^$@%\\".indexOf(c) >= 0)
+					{
+						regex.append('\\');
+					}
+					regex.append(c);
+			}
+		}
+		return Pattern.compile(regex.toString());
+		
+	}
+	
 	/**
 	 * Helper method to parse OPTION args to see if a particular OPTION exists
 	 * 
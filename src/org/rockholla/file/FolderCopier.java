@@ -0,0 +1,393 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * Copies a folder tree with several threads.  Each folder is listed by a task of its own, 
+ * which creates its subfolders and hands its files and subfolders to the other threads, so 
+ * listing and copying both run in parallel.  Files are copied as FileUtility.copyFile does.
+ * 
+ * <pre>
+ * FolderCopier copier = new FolderCopier(source, target);
+ * copier.setParallelism(8);
+ * copier.addExcludePattern("*.tmp");
+ * FileCopyResult result = copier.copy();
+ * </pre>
+ * 
+ * @author rockholla
+ *
+ */
+public class FolderCopier 
+{
+	
+	protected File _source;
+	protected File _target;
+	/** the number of threads copying at once */
+	protected int _parallelism = Runtime.getRuntime().availableProcessors();
+	/** the names of folders to leave out */
+	protected HashSet<String> _excludeDirectories = new HashSet<String>();
+	/** glob patterns of files and folders to leave out, matched against their names */
+	protected ArrayList<Pattern> _excludeNames = new ArrayList<Pattern>();
+	/** glob patterns of files and folders to leave out, matched against their paths below the source */
+	protected ArrayList<Pattern> _excludePaths = new ArrayList<Pattern>();
+	protected boolean _preserveAttributes = false;
+	protected FileCopyListener _listener;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param source	the folder to copy
+	 * @param target	where the folder's contents will be copied, created if it does not exist
+	 */
+	public FolderCopier(File source, File target)
+	{
+		this._source = source;
+		this._target = target;
+	}
+	
+	/**
+	 * Sets the number of threads copying at once, the default is the number of processors.  
+	 * Fast storage often benefits from more threads than processors.
+	 * 
+	 * @param parallelism	the number of threads
+	 */
+	public void setParallelism(int parallelism)
+	{
+		
+		if(parallelism < 1)
+		{
+			throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+		}
+		this._parallelism = parallelism;
+		
+	}
+	
+	public int getParallelism()
+	{
+		return this._parallelism;
+	}
+	
+	/**
+	 * Sets folder names to leave out of the copy, as copyFolder's excludeDirectories
+	 * 
+	 * @param names	the folder names, ex: [.svn, .save]
+	 */
+	public void setExcludeDirectories(Collection<String> names)
+	{
+		this._excludeDirectories = new HashSet<String>(names);
+	}
+	
+	/**
+	 * Leaves files and folders matching a glob pattern out of the copy.  Patterns without a / 
+	 * are matched against names, ex: *.tmp; patterns with a / against the path below the source 
+	 * folder, ex: build/**.
+	 * 
+	 * @param glob	the pattern, see FileUtility.getGlobPattern
+	 */
+	public void addExcludePattern(String glob)
+	{
+		
+		if(glob.indexOf('/') >= 0)
+		{
+			this._excludePaths.add(FileUtility.getGlobPattern(glob));
+		}
+		else
+		{
+			this._excludeNames.add(FileUtility.getGlobPattern(glob));
+		}
+		
+	}
+	
+	/**
+	 * Sets whether the modified time and permissions of files and folders are kept
+	 * 
+	 * @param preserveAttributes	true to keep them
+	 */
+	public void setPreserveAttributes(boolean preserveAttributes)
+	{
+		this._preserveAttributes = preserveAttributes;
+	}
+	
+	/**
+	 * Sets a listener for the progress of the copy
+	 * 
+	 * @param listener	called after each file is copied, null for none
+	 */
+	public void setListener(FileCopyListener listener)
+	{
+		this._listener = listener;
+	}
+	
+	/**
+	 * Copies the folder, returning once every file has been copied.  If a file cannot be copied 
+	 * no further files are started, and the exception is thrown once those being copied are done.
+	 * 
+	 * @return	the files and bytes copied
+	 * @throws IOException
+	 */
+	public FileCopyResult copy() throws IOException
+	{
+		
+		// the source itself is checked as FileUtility.copyFolder does, an excluded folder is
+		// skipped and a file is copied on its own
+		Copy copy = new Copy(Executors.newFixedThreadPool(this._parallelism));
+		Task root = null;
+		if(!this._source.isDirectory())
+		{
+			root = new FileTask(copy, this._source, this._target, this._source.getName());
+		}
+		else if(!this._excludeDirectories.contains(this._source.getName()))
+		{
+			root = new Folder(copy, this._source, this._target, "");
+		}
+		try
+		{
+			if(root != null)
+			{
+				copy.submit(root);
+				copy.done.await();
+			}
+		}
+		catch(InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException(exception);
+		}
+		finally
+		{
+			copy.executor.shutdownNow();
+		}
+		
+		Throwable error = copy.error.get();
+		if(error != null)
+		{
+			throw error instanceof IOException ? (IOException) error : new IOException(error);
+		}
+		if(this._preserveAttributes)
+		{
+			// folders last and deepest first, copying into a folder changes its modified time
+			Collections.sort(copy.folders, new Comparator<File[]>() {
+				public int compare(File[] one, File[] two)
+				{
+					return two[1].getPath().length() - one[1].getPath().length();
+				}
+			});
+			for(File[] folder : copy.folders)
+			{
+				FileUtility._copyAttributes(folder[0], folder[1]);
+			}
+		}
+		copy.result.finish();
+		FileUtility.logger.debug("Copied " + this._source + " to " + this._target + ": " + copy.result);
+		return copy.result;
+		
+	}
+	
+	/**
+	 * Checks if a file or folder is left out of the copy
+	 * 
+	 * @param file		the file or folder
+	 * @param path		its path below the source folder, separated by /
+	 * @param directory	true if it is a folder
+	 * @return			true if it is left out
+	 */
+	protected boolean _isExcluded(File file, String path, boolean directory)
+	{
+		
+		String name = file.getName();
+		if(directory && this._excludeDirectories.contains(name))
+		{
+			return true;
+		}
+		for(Pattern pattern : this._excludeNames)
+		{
+			if(pattern.matcher(name).matches()) return true;
+		}
+		for(Pattern pattern : this._excludePaths)
+		{
+			if(pattern.matcher(path).matches()) return true;
+		}
+		return false;
+		
+	}
+	
+	/**
+	 * The state of one run of copy()
+	 */
+	protected class Copy
+	{
+		
+		protected ExecutorService executor;
+		protected FileCopyResult result = new FileCopyResult();
+		/** the tasks submitted and not yet finished */
+		protected AtomicInteger pending = new AtomicInteger();
+		protected CountDownLatch done = new CountDownLatch(1);
+		protected AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		/** the source and target of each folder copied, for preserving their attributes */
+		protected List<File[]> folders = Collections.synchronizedList(new ArrayList<File[]>());
+		
+		protected Copy(ExecutorService executor)
+		{
+			this.executor = executor;
+		}
+		
+		protected void submit(final Task task)
+		{
+			
+			this.pending.incrementAndGet();
+			executor.execute(new Runnable() {
+				public void run()
+				{
+					try
+					{
+						if(error.get() == null)
+						{
+							task.run();
+						}
+					}
+					catch(Throwable throwable)
+					{
+						error.compareAndSet(null, throwable);
+					}
+					finally
+					{
+						if(pending.decrementAndGet() == 0)
+						{
+							done.countDown();
+						}
+					}
+				}
+			});
+			
+		}
+		
+	}
+	
+	/**
+	 * A unit of work of a copy, run by the executor
+	 */
+	protected abstract class Task
+	{
+		
+		protected Copy _copy;
+		protected File _source;
+		protected File _target;
+		/** the path below the source folder */
+		protected String _path;
+		
+		protected Task(Copy copy, File source, File target, String path)
+		{
+			
+			this._copy = copy;
+			this._source = source;
+			this._target = target;
+			this._path = path;
+			
+		}
+		
+		protected abstract void run() throws IOException;
+		
+	}
+	
+	/**
+	 * Creates a folder and hands out its contents
+	 */
+	protected class Folder extends Task
+	{
+		
+		protected Folder(Copy copy, File source, File target, String path)
+		{
+			super(copy, source, target, path);
+		}
+		
+		@Override
+		protected void run() throws IOException
+		{
+			
+			if(!this._target.isDirectory() && !this._target.mkdirs())
+			{
+				throw new IOException("Could not create folder: " + this._target);
+			}
+			if(_preserveAttributes)
+			{
+				this._copy.folders.add(new File[] { this._source, this._target });
+			}
+			
+			File[] children = this._source.listFiles();
+			if(children == null)
+			{
+				throw new IOException("Could not list folder: " + this._source);
+			}
+			for(File child : children)
+			{
+				String path = this._path.length() == 0 ? child.getName() : this._path + "/" + child.getName();
+				File target = new File(this._target, child.getName());
+				boolean directory = child.isDirectory();
+				if(_isExcluded(child, path, directory))
+				{
+					continue;
+				}
+				Task task = directory ? new Folder(this._copy, child, target, path) : new FileTask(this._copy, child, target, path);
+				this._copy.submit(task);
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Copies one file
+	 */
+	protected class FileTask extends Task
+	{
+		
+		protected FileTask(Copy copy, File source, File target, String path)
+		{
+			super(copy, source, target, path);
+		}
+		
+		@Override
+		protected void run() throws IOException
+		{
+			
+			long bytes = FileUtility._copyFile(this._source, this._target, _preserveAttributes);
+			this._copy.result.addFile(bytes);
+			if(_listener != null)
+			{
+				_listener.fileCopied(this._source, this._target, bytes, this._copy.result);
+			}
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,418 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deletes a folder tree, optionally with several threads.  The tree is walked without recursion, 
+ * so deep trees cannot overflow the stack: each folder is listed by a task of its own that 
+ * deletes its files in batches and hands out its subfolders, and a folder is removed once the 
+ * last of its contents is gone.  Files and folders that cannot be deleted are reported in the 
+ * result rather than stopping the deletion.  Symbolic links to folders are removed without 
+ * deleting what they point to.
+ * 
+ * @author rockholla
+ *
+ */
+public class FolderDeleter 
+{
+	
+	/** the most files deleted by a single task */
+	protected static final int BATCH_SIZE = 256;
+	
+	protected File _folder;
+	/** the number of threads deleting at once, 1 deletes on the calling thread */
+	protected int _parallelism = 1;
+	/** true to delete only the folder's contents */
+	protected boolean _keepRootFolder = false;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param folder	the folder to delete
+	 */
+	public FolderDeleter(File folder)
+	{
+		this._folder = folder;
+	}
+	
+	/**
+	 * Sets the number of threads deleting at once
+	 * 
+	 * @param parallelism	the number of threads, 1 to delete on the calling thread
+	 */
+	public void setParallelism(int parallelism)
+	{
+		
+		if(parallelism < 1)
+		{
+			throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+		}
+		this._parallelism = parallelism;
+		
+	}
+	
+	public int getParallelism()
+	{
+		return this._parallelism;
+	}
+	
+	/**
+	 * Sets whether the folder itself is kept, emptying it rather than deleting it
+	 * 
+	 * @param keepRootFolder	true to delete only the folder's contents
+	 */
+	public void setKeepRootFolder(boolean keepRootFolder)
+	{
+		this._keepRootFolder = keepRootFolder;
+	}
+	
+	/**
+	 * Deletes the folder, returning once the deletion is done
+	 * 
+	 * @return	the files and folders deleted and those that could not be
+	 */
+	public FileDeleteResult delete()
+	{
+		
+		Deletion deletion = new Deletion();
+		if(this._folder.isDirectory())
+		{
+			deletion.run(new Node(this._folder, null));
+		}
+		deletion.result.finish();
+		FileUtility.logger.debug("Deleted " + this._folder + ": " + deletion.result);
+		return deletion.result;
+		
+	}
+	
+	/**
+	 * Deletes the folder on a thread of its own
+	 * 
+	 * @return	the result of delete(), once it is done
+	 */
+	public Future<FileDeleteResult> deleteAsync()
+	{
+		
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try
+		{
+			return executor.submit(new Callable<FileDeleteResult>() {
+				public FileDeleteResult call()
+				{
+					return delete();
+				}
+			});
+		}
+		finally
+		{
+			// the thread ends once the deletion is done
+			executor.shutdown();
+		}
+		
+	}
+	
+	/**
+	 * Checks if a folder is a symbolic link, by comparing its path with the canonical path of 
+	 * its parent and name
+	 * 
+	 * @param folder	the folder
+	 * @return			true if it is a symbolic link
+	 */
+	protected static boolean _isSymbolicLink(File folder)
+	{
+		
+		try
+		{
+			File parent = folder.getParentFile();
+			File file = parent == null ? folder : new File(parent.getCanonicalFile(), folder.getName());
+			return !file.getCanonicalFile().equals(file.getAbsoluteFile());
+		}
+		catch(IOException exception)
+		{
+			return false;
+		}
+		
+	}
+	
+	/**
+	 * A folder being deleted
+	 */
+	protected static class Node
+	{
+		
+		protected File folder;
+		protected Node parent;
+		/** the file batches and subfolders not yet deleted */
+		protected AtomicInteger remaining = new AtomicInteger();
+		/** true if the folder could not be listed, its failure is already recorded */
+		protected volatile boolean unlisted = false;
+		
+		protected Node(File folder, Node parent)
+		{
+			this.folder = folder;
+			this.parent = parent;
+		}
+		
+	}
+	
+	/**
+	 * The state of one run of delete()
+	 */
+	protected class Deletion
+	{
+		
+		protected FileDeleteResult result = new FileDeleteResult();
+		/** the executor for parallel deletes, null to run tasks from a queue on the calling thread */
+		protected ExecutorService executor;
+		protected ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+		protected CountDownLatch done = new CountDownLatch(1);
+		
+		/**
+		 * Deletes a tree
+		 * 
+		 * @param root	the root folder
+		 */
+		protected void run(Node root)
+		{
+			
+			if(_parallelism > 1)
+			{
+				this.executor = Executors.newFixedThreadPool(_parallelism);
+			}
+			try
+			{
+				this.submit(new ListTask(this, root));
+				if(this.executor == null)
+				{
+					Runnable task;
+					while((task = this.queue.poll()) != null)
+					{
+						task.run();
+					}
+				}
+				else
+				{
+					this.done.await();
+				}
+			}
+			catch(InterruptedException exception)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				if(this.executor != null)
+				{
+					this.executor.shutdownNow();
+				}
+			}
+			
+		}
+		
+		protected void submit(Runnable task)
+		{
+			
+			if(this.executor == null)
+			{
+				this.queue.add(task);
+			}
+			else
+			{
+				this.executor.execute(task);
+			}
+			
+		}
+		
+		/**
+		 * Marks one batch or subfolder of a folder as done, removing the folder if it was the last 
+		 * and then marking the folder as done in its parent
+		 * 
+		 * @param node	the folder
+		 */
+		protected void childDone(Node node)
+		{
+			
+			while(node != null && node.remaining.decrementAndGet() == 0)
+			{
+				this.deleteFolder(node);
+				node = node.parent;
+			}
+			
+		}
+		
+		/**
+		 * Removes an emptied folder
+		 * 
+		 * @param node	the folder
+		 */
+		protected void deleteFolder(Node node)
+		{
+			
+			if(node.parent == null)
+			{
+				if(!_keepRootFolder && !node.unlisted)
+				{
+					this.delete(node.folder, false);
+				}
+				this.done.countDown();
+				return;
+			}
+			if(!node.unlisted)
+			{
+				this.delete(node.folder, false);
+			}
+			
+		}
+		
+		/**
+		 * Deletes a file or empty folder
+		 * 
+		 * @param file		the file or folder
+		 * @param isFile	true for a file, whose length is counted
+		 */
+		protected void delete(File file, boolean isFile)
+		{
+			
+			long length = isFile ? file.length() : 0;
+			if(file.delete())
+			{
+				if(isFile) this.result.addFile(length);
+				else this.result.addFolder();
+			}
+			else if(file.exists())
+			{
+				this.result.addFailure(file);
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Lists a folder, handing out its files in batches and its subfolders
+	 */
+	protected class ListTask implements Runnable
+	{
+		
+		protected Deletion _deletion;
+		protected Node _node;
+		
+		protected ListTask(Deletion deletion, Node node)
+		{
+			this._deletion = deletion;
+			this._node = node;
+		}
+		
+		public void run()
+		{
+			
+			// one more than the tasks handed out, so the folder is not removed before they all are
+			this._node.remaining.set(1);
+			try
+			{
+				File[] children = this._node.folder.listFiles();
+				if(children == null)
+				{
+					this._node.unlisted = true;
+					this._deletion.result.addFailure(this._node.folder);
+					return;
+				}
+				
+				ArrayList<File> files = new ArrayList<File>();
+				ArrayList<File> folders = new ArrayList<File>();
+				for(File child : children)
+				{
+					if(child.isDirectory() && !_isSymbolicLink(child))
+					{
+						folders.add(child);
+					}
+					else
+					{
+						files.add(child);
+					}
+				}
+				int batches = (files.size() + BATCH_SIZE - 1) / BATCH_SIZE;
+				this._node.remaining.addAndGet(batches + folders.size());
+				for(int i = 0; i < batches; i++)
+				{
+					this._deletion.submit(new BatchTask(this._deletion, this._node, files.subList(i * BATCH_SIZE, Math.min(files.size(), (i + 1) * BATCH_SIZE))));
+				}
+				for(File folder : folders)
+				{
+					this._deletion.submit(new ListTask(this._deletion, new Node(folder, this._node)));
+				}
+			}
+			finally
+			{
+				this._deletion.childDone(this._node);
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Deletes a batch of a folder's files
+	 */
+	protected class BatchTask implements Runnable
+	{
+		
+		protected Deletion _deletion;
+		protected Node _node;
+		protected List<File> _files;
+		
+		protected BatchTask(Deletion deletion, Node node, List<File> files)
+		{
+			
+			this._deletion = deletion;
+			this._node = node;
+			this._files = files;
+			
+		}
+		
+		public void run()
+		{
+			
+			try
+			{
+				for(File file : this._files)
+				{
+					this._deletion.delete(file, true);
+				}
+			}
+			finally
+			{
+				this._deletion.childDone(this._node);
+			}
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,630 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * An index of the files below a folder, their lengths, modified times and optionally a hash of 
+ * their contents, for finding what changed since the last look without walking the whole tree.  
+ * The index can be saved to a file and loaded by a later run.
+ * 
+ * refresh() compares the tree with the index.  A folder's modified time changes when entries 
+ * are added to it, removed from it or renamed in it, so only folders whose time changed are 
+ * listed again; the files of the other folders are checked with a stat, or not at all if only 
+ * added and removed files matter.  Where the caller learns of changes to particular paths, as 
+ * from a job that wrote them, refresh(paths) checks only those.
+ * 
+ * Changes made to a file within the resolution of the file system's modified time, a second on 
+ * some, that keep its length are only found if contents are hashed.
+ * 
+ * <pre>
+ * FolderIndex index = indexFile.exists() ? FolderIndex.load(indexFile) : new FolderIndex(folder);
+ * FolderIndexChanges changes = index.refresh();
+ * index.save(indexFile);
+ * </pre>
+ * 
+ * @author rockholla
+ *
+ */
+public class FolderIndex 
+{
+	
+	/** identifies an index file, and the version of its format */
+	protected static final int MAGIC = 0x46494458;
+	protected static final int VERSION = 1;
+	
+	/** the modified time of a folder that must be listed at the next refresh */
+	protected static final long UNLISTED = Long.MIN_VALUE;
+	
+	/** folders modified this close to a refresh are listed again at the next, in milliseconds */
+	protected static final long MODIFIED_RESOLUTION = 2000;
+	
+	protected File _root;
+	/** the hash algorithm for file contents, null if contents are not hashed */
+	protected String _hashAlgorithm;
+	/** the files and folders, keyed by their path below the root separated by /, the root is "" */
+	protected HashMap<String, Entry> _entries = new HashMap<String, Entry>();
+	
+	/**
+	 * Constructor, the index is empty until refreshed
+	 * 
+	 * @param root	the folder to index
+	 */
+	public FolderIndex(File root)
+	{
+		this._root = root;
+	}
+	
+	/**
+	 * Has the contents of files hashed, so a file is only reported changed if its contents are.  
+	 * Hashing reads every new or touched file.
+	 * 
+	 * @param algorithm		a MessageDigest algorithm, ex: MD5 or SHA-1, null to not hash contents
+	 * @throws NoSuchAlgorithmException
+	 */
+	public void setHashAlgorithm(String algorithm) throws NoSuchAlgorithmException
+	{
+		
+		if(algorithm != null)
+		{
+			MessageDigest.getInstance(algorithm);
+		}
+		this._hashAlgorithm = algorithm;
+		
+	}
+	
+	public String getHashAlgorithm()
+	{
+		return this._hashAlgorithm;
+	}
+	
+	public File getRoot()
+	{
+		return this._root;
+	}
+	
+	/**
+	 * Gets the number of files in the index
+	 * 
+	 * @return	the number of files, folders not included
+	 */
+	public int getFileCount()
+	{
+		
+		int count = 0;
+		for(Entry entry : this._entries.values())
+		{
+			if(!entry.directory) count++;
+		}
+		return count;
+		
+	}
+	
+	/**
+	 * Gets the hash of a file's contents as of the last refresh
+	 * 
+	 * @param file	the file
+	 * @return		the hash, null if the file is not indexed or contents are not hashed
+	 */
+	public byte[] getHash(File file)
+	{
+		
+		Entry entry = this._entries.get(this._getPath(file));
+		return entry == null ? null : entry.hash;
+		
+	}
+	
+	/**
+	 * Finds the files added, changed and removed since the last refresh, checking every indexed 
+	 * file for changes
+	 * 
+	 * @return	the changes
+	 * @throws IOException	if a file cannot be hashed
+	 */
+	public FolderIndexChanges refresh() throws IOException
+	{
+		return this.refresh(true);
+	}
+	
+	/**
+	 * Finds the files added, changed and removed since the last refresh.  Only folders whose 
+	 * modified time changed are listed.
+	 * 
+	 * @param checkFiles	true to check every indexed file for changes, false to find only added and removed files
+	 * @return				the changes
+	 * @throws IOException	if a file cannot be hashed
+	 */
+	public FolderIndexChanges refresh(boolean checkFiles) throws IOException
+	{
+		
+		FolderIndexChanges changes = new FolderIndexChanges();
+		if(!this._root.isDirectory())
+		{
+			this._remove("", changes);
+			return changes;
+		}
+		if(!this._entries.containsKey(""))
+		{
+			this._entries.put("", new Entry(true));
+		}
+		this._refresh("", checkFiles, true, changes);
+		FileUtility.logger.debug("Refreshed the index of " + this._root + ": " + changes);
+		return changes;
+		
+	}
+	
+	/**
+	 * Checks only the given files and folders for changes, for callers that know which paths may 
+	 * have changed.  Folders are listed again, without descending into their subfolders that 
+	 * are already indexed.
+	 * 
+	 * @param paths		the files and folders below the root that may have changed
+	 * @return			the changes
+	 * @throws IOException	if a file cannot be hashed
+	 */
+	public FolderIndexChanges refresh(Collection<File> paths) throws IOException
+	{
+		
+		FolderIndexChanges changes = new FolderIndexChanges();
+		for(File file : paths)
+		{
+			String path = this._getPath(file);
+			if(path == null)
+			{
+				throw new IllegalArgumentException(file + " is not below " + this._root);
+			}
+			Entry entry = this._entries.get(path);
+			boolean exists = file.exists();
+			if(entry != null && !entry.directory && exists && !file.isDirectory())
+			{
+				this._check(path, entry, changes);
+				continue;
+			}
+			if(entry != null && entry.directory && exists && file.isDirectory())
+			{
+				entry.modified = UNLISTED;
+				this._refresh(path, true, false, changes);
+				continue;
+			}
+			
+			// added, removed or replaced: list the nearest indexed folder above it that still 
+			// exists, which removes any indexed folders between them that have been deleted
+			String parent = path;
+			Entry folder = null;
+			while(folder == null && parent.length() > 0)
+			{
+				parent = parent.lastIndexOf('/') < 0 ? "" : parent.substring(0, parent.lastIndexOf('/'));
+				folder = this._entries.get(parent);
+				if(folder != null && (!folder.directory || !this._getFile(parent).isDirectory())) folder = null;
+			}
+			if(!this._root.isDirectory())
+			{
+				this._remove("", changes);
+				break;
+			}
+			if(folder == null)
+			{
+				folder = new Entry(true);
+				this._entries.put("", folder);
+			}
+			folder.modified = UNLISTED;
+			this._refresh(parent, false, false, changes);
+		}
+		return changes;
+		
+	}
+	
+	/**
+	 * Saves the index to a file, replacing it once written
+	 * 
+	 * @param indexFile	the file
+	 * @throws IOException
+	 */
+	public void save(File indexFile) throws IOException
+	{
+		
+		File temporary = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 65536));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(this._root.getPath());
+			out.writeUTF(this._hashAlgorithm == null ? "" : this._hashAlgorithm);
+			out.writeInt(this._entries.size());
+			for(Map.Entry<String, Entry> entry : this._entries.entrySet())
+			{
+				Entry value = entry.getValue();
+				out.writeUTF(entry.getKey());
+				out.writeBoolean(value.directory);
+				out.writeLong(value.length);
+				out.writeLong(value.modified);
+				out.writeShort(value.hash == null ? -1 : value.hash.length);
+				if(value.hash != null) out.write(value.hash);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		if(!temporary.renameTo(indexFile) && !(indexFile.delete() && temporary.renameTo(indexFile)))
+		{
+			throw new IOException("Could not replace " + indexFile);
+		}
+		
+	}
+	
+	/**
+	 * Loads an index saved by save()
+	 * 
+	 * @param indexFile	the file
+	 * @return			the index as of its last refresh
+	 * @throws IOException	if the file is not an index
+	 */
+	public static FolderIndex load(File indexFile) throws IOException
+	{
+		
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 65536));
+		try
+		{
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				throw new IOException("Not a folder index: " + indexFile);
+			}
+			FolderIndex index = new FolderIndex(new File(in.readUTF()));
+			String algorithm = in.readUTF();
+			index._hashAlgorithm = algorithm.length() == 0 ? null : algorithm;
+			int count = in.readInt();
+			for(int i = 0; i < count; i++)
+			{
+				String path = in.readUTF();
+				Entry entry = new Entry(in.readBoolean());
+				entry.length = in.readLong();
+				entry.modified = in.readLong();
+				int hashLength = in.readShort();
+				if(hashLength >= 0)
+				{
+					entry.hash = new byte[hashLength];
+					in.readFully(entry.hash);
+				}
+				index._entries.put(path, entry);
+			}
+			
+			// the contents of folders are not saved, they follow from the paths
+			for(String path : index._entries.keySet())
+			{
+				if(path.length() > 0)
+				{
+					int slash = path.lastIndexOf('/');
+					Entry parent = index._entries.get(slash < 0 ? "" : path.substring(0, slash));
+					if(parent != null) parent.children.add(slash < 0 ? path : path.substring(slash + 1));
+				}
+			}
+			return index;
+		}
+		finally
+		{
+			in.close();
+		}
+		
+	}
+	
+	/**
+	 * Compares a folder and, optionally, the folders below it with the index
+	 * 
+	 * @param start			the path of the folder, indexed
+	 * @param checkFiles	true to check indexed files for changes
+	 * @param descend		true to descend into indexed subfolders, new subfolders are always indexed
+	 * @param changes		collects the changes
+	 * @throws IOException
+	 */
+	protected void _refresh(String start, boolean checkFiles, boolean descend, FolderIndexChanges changes) throws IOException
+	{
+		
+		long refreshTime = System.currentTimeMillis();
+		ArrayDeque<String> folders = new ArrayDeque<String>();
+		folders.push(start);
+		boolean first = true;
+		
+		while(!folders.isEmpty())
+		{
+			String path = folders.pop();
+			Entry entry = this._entries.get(path);
+			File folder = this._getFile(path);
+			long modified = folder.lastModified();
+			boolean listed = entry.modified != modified;
+			boolean walk = descend || first || entry.modified == UNLISTED;
+			first = false;
+			
+			if(listed)
+			{
+				changes._listedFolders++;
+				String[] names = folder.list();
+				if(names == null)
+				{
+					FileUtility.logger.debug("Could not list " + folder);
+					continue;
+				}
+				HashSet<String> current = new HashSet<String>(Arrays.asList(names));
+				for(String name : new ArrayList<String>(entry.children))
+				{
+					if(!current.contains(name))
+					{
+						this._remove(_join(path, name), changes);
+					}
+				}
+				for(String name : names)
+				{
+					String childPath = _join(path, name);
+					Entry child = this._entries.get(childPath);
+					boolean directory = new File(folder, name).isDirectory();
+					if(child != null && child.directory != directory)
+					{
+						this._remove(childPath, changes);
+						child = null;
+					}
+					if(child == null)
+					{
+						child = new Entry(directory);
+						this._entries.put(childPath, child);
+						entry.children.add(name);
+						if(directory)
+						{
+							folders.push(childPath);
+						}
+						else
+						{
+							this._update(childPath, child);
+							changes._added.add(this._getFile(childPath));
+						}
+					}
+					else if(directory)
+					{
+						if(walk) folders.push(childPath);
+					}
+					else if(checkFiles)
+					{
+						this._check(childPath, child, changes);
+					}
+				}
+				// a folder changed again within the time's resolution would keep its time, list it next time
+				entry.modified = modified > refreshTime - MODIFIED_RESOLUTION ? UNLISTED : modified;
+			}
+			else if(walk || checkFiles)
+			{
+				for(String name : entry.children)
+				{
+					String childPath = _join(path, name);
+					Entry child = this._entries.get(childPath);
+					if(child.directory)
+					{
+						if(walk) folders.push(childPath);
+					}
+					else if(checkFiles)
+					{
+						this._check(childPath, child, changes);
+					}
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * Checks an indexed file for changes
+	 * 
+	 * @param path		the path of the file
+	 * @param entry		the file's entry
+	 * @param changes	collects the changes
+	 * @throws IOException
+	 */
+	protected void _check(String path, Entry entry, FolderIndexChanges changes) throws IOException
+	{
+		
+		changes._checkedFiles++;
+		File file = this._getFile(path);
+		long length = file.length();
+		long modified = file.lastModified();
+		if(modified == 0 && !file.exists())
+		{
+			this._remove(path, changes);
+			return;
+		}
+		if(length == entry.length && modified == entry.modified)
+		{
+			return;
+		}
+		byte[] hash = entry.hash;
+		this._update(path, entry);
+		if(this._hashAlgorithm == null || hash == null || !Arrays.equals(hash, entry.hash))
+		{
+			changes._changed.add(file);
+		}
+		
+	}
+	
+	/**
+	 * Reads a file's length, modified time and hash into its entry
+	 * 
+	 * @param path	the path of the file
+	 * @param entry	the file's entry
+	 * @throws IOException
+	 */
+	protected void _update(String path, Entry entry) throws IOException
+	{
+		
+		File file = this._getFile(path);
+		entry.length = file.length();
+		entry.modified = file.lastModified();
+		entry.hash = this._hashAlgorithm == null ? null : this._hash(file);
+		
+	}
+	
+	/**
+	 * Removes a file or folder and everything below it from the index
+	 * 
+	 * @param path		the path
+	 * @param changes	collects the files removed
+	 */
+	protected void _remove(String path, FolderIndexChanges changes)
+	{
+		
+		ArrayDeque<String> paths = new ArrayDeque<String>();
+		paths.push(path);
+		while(!paths.isEmpty())
+		{
+			String current = paths.pop();
+			Entry entry = this._entries.remove(current);
+			if(entry == null)
+			{
+				continue;
+			}
+			if(entry.directory)
+			{
+				for(String name : entry.children)
+				{
+					paths.push(_join(current, name));
+				}
+			}
+			else
+			{
+				changes._removed.add(this._getFile(current));
+			}
+		}
+		
+		if(path.length() > 0)
+		{
+			int slash = path.lastIndexOf('/');
+			Entry parent = this._entries.get(slash < 0 ? "" : path.substring(0, slash));
+			if(parent != null) parent.children.remove(slash < 0 ? path : path.substring(slash + 1));
+		}
+		
+	}
+	
+	/**
+	 * Hashes a file's contents
+	 * 
+	 * @param file	the file
+	 * @return		the hash
+	 * @throws IOException
+	 */
+	protected byte[] _hash(File file) throws IOException
+	{
+		
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance(this._hashAlgorithm);
+		}
+		catch(NoSuchAlgorithmException exception)
+		{
+			throw new IOException(exception);
+		}
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			byte[] buffer = new byte[65536];
+			int read;
+			while((read = in.read(buffer)) >= 0)
+			{
+				digest.update(buffer, 0, read);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return digest.digest();
+		
+	}
+	
+	/**
+	 * Gets the path of a file below the root
+	 * 
+	 * @param file	the file
+	 * @return		the path separated by /, "" for the root, null if the file is not below the root
+	 */
+	protected String _getPath(File file)
+	{
+		
+		String root = this._root.getAbsolutePath();
+		String path = file.getAbsolutePath();
+		if(path.equals(root))
+		{
+			return "";
+		}
+		if(!path.startsWith(root + File.separator))
+		{
+			return null;
+		}
+		return path.substring(root.length() + 1).replace(File.separatorChar, '/');
+		
+	}
+	
+	protected File _getFile(String path)
+	{
+		return path.length() == 0 ? this._root : new File(this._root, path.replace('/', File.separatorChar));
+	}
+	
+	protected static String _join(String path, String name)
+	{
+		return path.length() == 0 ? name : path + "/" + name;
+	}
+	
+	/**
+	 * An indexed file or folder
+	 */
+	protected static class Entry
+	{
+		
+		protected boolean directory;
+		protected long length;
+		/** the modified time, UNLISTED for a folder to list at the next refresh */
+		protected long modified = UNLISTED;
+		/** the hash of a file's contents, null if not hashed */
+		protected byte[] hash;
+		/** the names of a folder's entries */
+		protected HashSet<String> children;
+		
+		protected Entry(boolean directory)
+		{
+			
+			this.directory = directory;
+			if(directory) this.children = new HashSet<String>();
+			
+		}
+		
+	}
+	
+}
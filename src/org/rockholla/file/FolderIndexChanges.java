@@ -0,0 +1,104 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.file;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The files found added, changed and removed by a refresh of a FolderIndex
+ * 
+ * @author rockholla
+ *
+ */
+public class FolderIndexChanges 
+{
+	
+	protected ArrayList<File> _added = new ArrayList<File>();
+	protected ArrayList<File> _changed = new ArrayList<File>();
+	protected ArrayList<File> _removed = new ArrayList<File>();
+	/** the folders listed by the refresh */
+	protected long _listedFolders = 0;
+	/** the files checked for changes by the refresh */
+	protected long _checkedFiles = 0;
+	
+	/**
+	 * Gets the files added since the last refresh
+	 * 
+	 * @return	the files
+	 */
+	public List<File> getAdded()
+	{
+		return this._added;
+	}
+	
+	/**
+	 * Gets the files whose length, modified time or, if hashed, content changed since the last refresh
+	 * 
+	 * @return	the files
+	 */
+	public List<File> getChanged()
+	{
+		return this._changed;
+	}
+	
+	/**
+	 * Gets the files removed since the last refresh
+	 * 
+	 * @return	the files
+	 */
+	public List<File> getRemoved()
+	{
+		return this._removed;
+	}
+	
+	/**
+	 * Checks if nothing changed
+	 * 
+	 * @return	true if no file was added, changed or removed
+	 */
+	public boolean isEmpty()
+	{
+		return this._added.isEmpty() && this._changed.isEmpty() && this._removed.isEmpty();
+	}
+	
+	/**
+	 * Gets the number of folders whose contents were listed, those that had not changed are not
+	 * 
+	 * @return	the number of folders
+	 */
+	public long getListedFolders()
+	{
+		return this._listedFolders;
+	}
+	
+	public long getCheckedFiles()
+	{
+		return this._checkedFiles;
+	}
+	
+	@Override
+	public String toString()
+	{
+		
+		return this._added.size() + " added, " + this._changed.size() + " changed, " + this._removed.size() + " removed (" 
+				+ this._listedFolders + " folders listed, " + this._checkedFiles + " files checked)";
+		
+	}
+	
+}
@@ -0,0 +1,417 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import org.rockholla.file.FileUtility.OPTION;
+
+/**
+ * Walks the files and folders below a folder, listing each folder only when the walk reaches 
+ * it, so only the folders on the current path are held in memory.  Entries come in the same 
+ * order as getFolderFiles: each folder is followed by its contents.  Hidden entries are left out.
+ * 
+ * The options are read once, and each entry is checked with as few calls to the file system as 
+ * the filters allow: one to tell files from folders, then its length or modified time only if a 
+ * size or time filter is set.  Anything that is not a folder counts as a file.
+ * 
+ * <pre>
+ * FolderWalker walker = new FolderWalker(new File("/archive"), FileUtility.RECURSIVE, FileUtility.EXCLUDE_DIRECTORIES);
+ * walker.setNamePattern(FileUtility.getGlobPattern("*.log"));
+ * walker.setModifiedRange(since, Long.MAX_VALUE);
+ * for(File file : walker) ...
+ * </pre>
+ * 
+ * @author rockholla
+ *
+ */
+public class FolderWalker implements Iterator<File>, Iterable<File>
+{
+	
+	protected File _folder;
+	protected boolean _recursive;
+	protected boolean _excludeDirectories;
+	protected boolean _onlyDirectories;
+	/** the deepest level descended to, 1 lists only the folder itself */
+	protected int _maxDepth = Integer.MAX_VALUE;
+	/** entries whose names match are returned, null for all */
+	protected Pattern _namePattern;
+	/** folders whose names match are neither returned nor descended into */
+	protected ArrayList<Pattern> _excludePatterns = new ArrayList<Pattern>();
+	protected long _minSize = 0;
+	protected long _maxSize = Long.MAX_VALUE;
+	protected long _modifiedAfter = Long.MIN_VALUE;
+	protected long _modifiedBefore = Long.MAX_VALUE;
+	
+	/** the listings of the folders on the current path, deepest last */
+	protected ArrayList<Level> _levels;
+	/** the next entry, found ahead by hasNext() */
+	protected File _next;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param folder	the folder to walk
+	 * @param args		an OPTION, as getFolderFiles
+	 * 						RECURSIVE = descend into child folders
+	 * 						EXCLUDE_DIRECTORIES = return files only
+	 * 						INCLUDE_ONLY_DIRECTORIES = return folders only
+	 */
+	public FolderWalker(File folder, OPTION ...args)
+	{
+		
+		this._folder = folder;
+		this._recursive = FileUtility.includesOption(OPTION.RECURSIVE, args);
+		this._onlyDirectories = FileUtility.includesOption(OPTION.INCLUDE_ONLY_DIRECTORIES, args);
+		this._excludeDirectories = FileUtility.includesOption(OPTION.EXCLUDE_DIRECTORIES, args) && !this._onlyDirectories;
+		
+	}
+	
+	/**
+	 * Sets how deep a recursive walk goes
+	 * 
+	 * @param maxDepth	the deepest level, 1 for the folder's own contents only
+	 */
+	public void setMaxDepth(int maxDepth)
+	{
+		
+		if(maxDepth < 1)
+		{
+			throw new IllegalArgumentException("Invalid depth: " + maxDepth);
+		}
+		this._maxDepth = maxDepth;
+		
+	}
+	
+	/**
+	 * Returns only the entries whose names match a pattern, folders are still walked
+	 * 
+	 * @param namePattern	the pattern, ex: FileUtility.getGlobPattern("*.log"), null for all
+	 */
+	public void setNamePattern(Pattern namePattern)
+	{
+		this._namePattern = namePattern;
+	}
+	
+	/**
+	 * Leaves out folders, and everything below them, whose names match a glob pattern
+	 * 
+	 * @param glob	the pattern, ex: .svn
+	 */
+	public void addExcludePattern(String glob)
+	{
+		this._excludePatterns.add(FileUtility.getGlobPattern(glob));
+	}
+	
+	/**
+	 * Returns only the files with a length in a range, folders are still returned and walked
+	 * 
+	 * @param minSize	the smallest length, included
+	 * @param maxSize	the largest length, included
+	 */
+	public void setSizeRange(long minSize, long maxSize)
+	{
+		this._minSize = minSize;
+		this._maxSize = maxSize;
+	}
+	
+	/**
+	 * Returns only the files modified in a range of time, folders are still returned and walked
+	 * 
+	 * @param after		the earliest time, included, in milliseconds since the epoch
+	 * @param before	the latest time, excluded
+	 */
+	public void setModifiedRange(long after, long before)
+	{
+		this._modifiedAfter = after;
+		this._modifiedBefore = before;
+	}
+	
+	public boolean hasNext()
+	{
+		
+		if(this._next != null)
+		{
+			return true;
+		}
+		if(this._levels == null)
+		{
+			this._levels = new ArrayList<Level>();
+			this._levels.add(new Level(this._folder.listFiles()));
+		}
+		
+		while(!this._levels.isEmpty())
+		{
+			Level level = this._levels.get(this._levels.size() - 1);
+			if(level.index >= level.entries.length)
+			{
+				this._levels.remove(this._levels.size() - 1);
+				continue;
+			}
+			File entry = level.entries[level.index];
+			level.entries[level.index++] = null;
+			
+			Boolean directory = this._check(entry);
+			if(directory == null)
+			{
+				continue;
+			}
+			if(directory && this._recursive && this._levels.size() < this._maxDepth)
+			{
+				this._levels.add(new Level(entry.listFiles()));
+			}
+			if(this._accept(entry, directory))
+			{
+				this._next = entry;
+				return true;
+			}
+		}
+		return false;
+		
+	}
+	
+	public File next()
+	{
+		
+		if(!this.hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		File file = this._next;
+		this._next = null;
+		return file;
+		
+	}
+	
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Allows the entries to be read with a for-each loop, they can only be read once
+	 */
+	public Iterator<File> iterator()
+	{
+		return this;
+	}
+	
+	/**
+	 * Passes the entries to a handler, listing folders on several threads at once.  Entries are 
+	 * handled in no particular order, so the handler must be safe to call from several threads.
+	 * 
+	 * @param handler		receives each entry, from several threads
+	 * @param parallelism	the number of folders listed at once
+	 * @return				the number of entries handled
+	 * @throws IOException	if the handler fails
+	 */
+	public long walk(FileHandler handler, int parallelism) throws IOException
+	{
+		
+		Walk walk = new Walk(handler, Executors.newFixedThreadPool(parallelism));
+		try
+		{
+			walk.submit(this._folder, 1);
+			walk.done.await();
+		}
+		catch(InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException(exception);
+		}
+		finally
+		{
+			walk.executor.shutdownNow();
+		}
+		
+		Throwable failure = walk.error.get();
+		if(failure != null)
+		{
+			throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+		}
+		return walk.count.get();
+		
+	}
+	
+	/**
+	 * Checks if an entry is hidden and if it is a folder, with one call to the file system for 
+	 * entries that are not hidden on platforms that hide by name
+	 * 
+	 * @param entry	the entry
+	 * @return		true for a folder, false for a file, null if the entry is left out
+	 */
+	protected Boolean _check(File entry)
+	{
+		
+		if(entry.isHidden())
+		{
+			return null;
+		}
+		if(entry.isDirectory())
+		{
+			for(Pattern pattern : this._excludePatterns)
+			{
+				if(pattern.matcher(entry.getName()).matches()) return null;
+			}
+			return Boolean.TRUE;
+		}
+		return Boolean.FALSE;
+		
+	}
+	
+	/**
+	 * Checks if an entry is returned
+	 * 
+	 * @param entry		the entry
+	 * @param directory	true if it is a folder
+	 * @return			true if it passes the options and filters
+	 */
+	protected boolean _accept(File entry, boolean directory)
+	{
+		
+		if(directory ? this._excludeDirectories : this._onlyDirectories)
+		{
+			return false;
+		}
+		if(this._namePattern != null && !this._namePattern.matcher(entry.getName()).matches())
+		{
+			return false;
+		}
+		if(!directory)
+		{
+			if(this._minSize > 0 || this._maxSize < Long.MAX_VALUE)
+			{
+				long length = entry.length();
+				if(length < this._minSize || length > this._maxSize) return false;
+			}
+			if(this._modifiedAfter > Long.MIN_VALUE || this._modifiedBefore < Long.MAX_VALUE)
+			{
+				long modified = entry.lastModified();
+				if(modified < this._modifiedAfter || modified >= this._modifiedBefore) return false;
+			}
+		}
+		return true;
+		
+	}
+	
+	/**
+	 * The listing of a folder on the current path
+	 */
+	protected static class Level
+	{
+		
+		protected File[] entries;
+		protected int index = 0;
+		
+		protected Level(File[] entries)
+		{
+			this.entries = entries == null ? new File[0] : entries;
+		}
+		
+	}
+	
+	/**
+	 * The state of one run of walk()
+	 */
+	protected class Walk
+	{
+		
+		protected FileHandler handler;
+		protected ExecutorService executor;
+		/** the folders submitted and not yet listed */
+		protected AtomicInteger pending = new AtomicInteger();
+		protected CountDownLatch done = new CountDownLatch(1);
+		protected AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		protected AtomicLong count = new AtomicLong();
+		
+		protected Walk(FileHandler handler, ExecutorService executor)
+		{
+			this.handler = handler;
+			this.executor = executor;
+		}
+		
+		/**
+		 * Lists a folder on the executor
+		 * 
+		 * @param folder	the folder
+		 * @param depth		its depth, 1 for the folder walked
+		 */
+		protected void submit(final File folder, final int depth)
+		{
+			
+			this.pending.incrementAndGet();
+			this.executor.execute(new Runnable() {
+				public void run()
+				{
+					try
+					{
+						list(folder, depth);
+					}
+					catch(Throwable throwable)
+					{
+						error.compareAndSet(null, throwable);
+					}
+					finally
+					{
+						if(pending.decrementAndGet() == 0)
+						{
+							done.countDown();
+						}
+					}
+				}
+			});
+			
+		}
+		
+		protected void list(File folder, int depth) throws Exception
+		{
+			
+			File[] entries = folder.listFiles();
+			for(int i = 0; entries != null && i < entries.length && this.error.get() == null; i++)
+			{
+				Boolean directory = _check(entries[i]);
+				if(directory == null)
+				{
+					continue;
+				}
+				if(directory && _recursive && depth < _maxDepth)
+				{
+					this.submit(entries[i], depth + 1);
+				}
+				if(_accept(entries[i], directory))
+				{
+					this.handler.handleFile(entries[i]);
+					this.count.incrementAndGet();
+				}
+			}
+			
+		}
+		
+	}
+	
+}
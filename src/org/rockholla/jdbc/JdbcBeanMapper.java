@@ -0,0 +1,389 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps rows onto instances of a bean class.  Columns are matched to properties by name, ignoring 
+ * case and underscores so that a created_at column fills a createdAt property, through a public 
+ * setter if there is one or the field otherwise.  The binding of columns to properties is worked 
+ * out once for each column layout and kept by the mapper, so each row only reads its values from 
+ * the driver with the getter matching the property type and sets them.  Reuse a mapper across 
+ * queries to keep its bindings.  Columns without a matching property are skipped.
+ * 
+ * @author rockholla
+ *
+ * @param <T>	the bean class, it needs a constructor without arguments
+ */
+public class JdbcBeanMapper<T> implements JdbcRowMapper<T>
+{
+	
+	/** property types, how a column is read from the driver */
+	protected static final int OBJECT = 0;
+	protected static final int STRING = 1;
+	protected static final int INT = 2;
+	protected static final int LONG = 3;
+	protected static final int DOUBLE = 4;
+	protected static final int FLOAT = 5;
+	protected static final int BOOLEAN = 6;
+	protected static final int SHORT = 7;
+	protected static final int BYTE = 8;
+	protected static final int BIG_DECIMAL = 9;
+	protected static final int TIMESTAMP = 10;
+	protected static final int DATE = 11;
+	protected static final int SQL_DATE = 12;
+	protected static final int BYTES = 13;
+	
+	protected Class<T> _type;
+	protected Constructor<T> _constructor;
+	/** binding plans by column layout */
+	protected final ConcurrentHashMap<String, Plan> _plans = new ConcurrentHashMap<String, Plan>();
+	/** the plan used for the last row, so a layout is only looked up when it changes */
+	protected volatile Plan _current;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param type	the bean class
+	 */
+	public JdbcBeanMapper(Class<T> type)
+	{
+		
+		this._type = type;
+		try
+		{
+			this._constructor = type.getDeclaredConstructor();
+			this._constructor.setAccessible(true);
+		}
+		catch(NoSuchMethodException exception)
+		{
+			throw new IllegalArgumentException(type.getName() + " has no constructor without arguments", exception);
+		}
+		
+	}
+	
+	/**
+	 * Gets the bean class
+	 * 
+	 * @return	the bean class
+	 */
+	public Class<T> getType()
+	{
+		return this._type;
+	}
+	
+	public T mapRow(ResultSet resultSet) throws SQLException
+	{
+		
+		ResultSetMetaData metaData = resultSet.getMetaData();
+		Plan plan = this._current;
+		if(plan == null || !plan.matches(metaData))
+		{
+			plan = this._getPlan(metaData);
+			this._current = plan;
+		}
+		
+		T bean;
+		try
+		{
+			bean = this._constructor.newInstance();
+		}
+		catch(Exception exception)
+		{
+			throw new SQLException("Unable to create " + this._type.getName() + ": " + exception.getMessage(), exception);
+		}
+		for(Binding binding : plan.bindings)
+		{
+			try
+			{
+				binding.set(bean, resultSet);
+			}
+			catch(SQLException exception)
+			{
+				throw exception;
+			}
+			catch(Exception exception)
+			{
+				throw new SQLException("Unable to set " + binding.getName() + " on " + this._type.getName() + ": " + exception.getMessage(), exception);
+			}
+		}
+		return bean;
+		
+	}
+	
+	/**
+	 * Gets the plan for a column layout, working it out the first time the layout is seen
+	 * 
+	 * @param metaData		the result set metadata
+	 * @return				the plan, a binding for each column with a matching property
+	 * @throws SQLException
+	 */
+	protected Plan _getPlan(ResultSetMetaData metaData) throws SQLException
+	{
+		
+		int columnCount = metaData.getColumnCount();
+		String[] labels = new String[columnCount];
+		StringBuilder shape = new StringBuilder();
+		for(int i = 1; i <= columnCount; i++)
+		{
+			labels[i - 1] = metaData.getColumnLabel(i);
+			shape.append(labels[i - 1]).append('\0');
+		}
+		
+		Plan plan = this._plans.get(shape.toString());
+		if(plan == null)
+		{
+			plan = new Plan(labels, this._bind(labels));
+			this._plans.put(shape.toString(), plan);
+		}
+		return plan;
+		
+	}
+	
+	/**
+	 * Matches column labels to the properties of the bean class
+	 * 
+	 * @param labels	the column labels, in column order
+	 * @return			a binding for each column with a matching property
+	 */
+	protected Binding[] _bind(String[] labels)
+	{
+		
+		HashMap<String, Method> setters = new HashMap<String, Method>();
+		for(Method method : this._type.getMethods())
+		{
+			if(method.getName().startsWith("set") && method.getName().length() > 3 && method.getParameterTypes().length == 1 && !Modifier.isStatic(method.getModifiers()))
+			{
+				String property = _normalize(method.getName().substring(3));
+				if(!setters.containsKey(property)) setters.put(property, method);
+			}
+		}
+		HashMap<String, Field> fields = new HashMap<String, Field>();
+		for(Class<?> type = this._type; type != null && type != Object.class; type = type.getSuperclass())
+		{
+			for(Field field : type.getDeclaredFields())
+			{
+				int modifiers = field.getModifiers();
+				String property = _normalize(field.getName());
+				if(!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers) && !fields.containsKey(property))
+				{
+					field.setAccessible(true);
+					fields.put(property, field);
+				}
+			}
+		}
+		
+		ArrayList<Binding> bindings = new ArrayList<Binding>();
+		HashSet<String> bound = new HashSet<String>();
+		for(int i = 0; i < labels.length; i++)
+		{
+			String property = _normalize(labels[i]);
+			if(!bound.add(property))
+			{
+				continue;
+			}
+			Method setter = setters.get(property);
+			Field field = fields.get(property);
+			if(setter != null)
+			{
+				bindings.add(new Binding(i + 1, setter, null, setter.getParameterTypes()[0]));
+			}
+			else if(field != null)
+			{
+				bindings.add(new Binding(i + 1, null, field, field.getType()));
+			}
+		}
+		return bindings.toArray(new Binding[bindings.size()]);
+		
+	}
+	
+	/**
+	 * Normalizes a column or property name for matching
+	 * 
+	 * @param name	the name
+	 * @return		the name in lower case without underscores
+	 */
+	protected static String _normalize(String name)
+	{
+		return name.replace("_", "").toLowerCase(Locale.ENGLISH);
+	}
+	
+	/**
+	 * Gets the property type code of a class
+	 * 
+	 * @param type	the property class
+	 * @return		the type code
+	 */
+	protected static int _typeOf(Class<?> type)
+	{
+		
+		if(type == String.class) return STRING;
+		if(type == int.class || type == Integer.class) return INT;
+		if(type == long.class || type == Long.class) return LONG;
+		if(type == double.class || type == Double.class) return DOUBLE;
+		if(type == float.class || type == Float.class) return FLOAT;
+		if(type == boolean.class || type == Boolean.class) return BOOLEAN;
+		if(type == short.class || type == Short.class) return SHORT;
+		if(type == byte.class || type == Byte.class) return BYTE;
+		if(type == BigDecimal.class) return BIG_DECIMAL;
+		if(type == Timestamp.class) return TIMESTAMP;
+		if(type == Date.class) return DATE;
+		if(type == java.sql.Date.class) return SQL_DATE;
+		if(type == byte[].class) return BYTES;
+		return OBJECT;
+		
+	}
+	
+	/**
+	 * The bindings worked out for a column layout
+	 */
+	protected static class Plan
+	{
+		
+		final String[] labels;
+		final Binding[] bindings;
+		
+		Plan(String[] labels, Binding[] bindings)
+		{
+			this.labels = labels;
+			this.bindings = bindings;
+		}
+		
+		boolean matches(ResultSetMetaData metaData) throws SQLException
+		{
+			
+			if(metaData.getColumnCount() != this.labels.length)
+			{
+				return false;
+			}
+			for(int i = 0; i < this.labels.length; i++)
+			{
+				if(!this.labels[i].equals(metaData.getColumnLabel(i + 1)))
+				{
+					return false;
+				}
+			}
+			return true;
+			
+		}
+		
+	}
+	
+	/**
+	 * Binds a column to a property, reading the column with the getter that matches the property 
+	 * type.  Primitive fields are set without boxing, null values leave primitive properties at 0.
+	 */
+	protected static class Binding
+	{
+		
+		final int column;
+		final Method setter;
+		final Field field;
+		final int type;
+		final boolean primitive;
+		
+		Binding(int column, Method setter, Field field, Class<?> type)
+		{
+			this.column = column;
+			this.setter = setter;
+			this.field = field;
+			this.type = _typeOf(type);
+			this.primitive = type.isPrimitive();
+		}
+		
+		String getName()
+		{
+			return this.setter != null ? this.setter.getName() : this.field.getName();
+		}
+		
+		void set(Object bean, ResultSet resultSet) throws Exception
+		{
+			
+			if(this.primitive && this.field != null)
+			{
+				switch(this.type)
+				{
+					case INT: this.field.setInt(bean, resultSet.getInt(this.column)); return;
+					case LONG: this.field.setLong(bean, resultSet.getLong(this.column)); return;
+					case DOUBLE: this.field.setDouble(bean, resultSet.getDouble(this.column)); return;
+					case FLOAT: this.field.setFloat(bean, resultSet.getFloat(this.column)); return;
+					case BOOLEAN: this.field.setBoolean(bean, resultSet.getBoolean(this.column)); return;
+					case SHORT: this.field.setShort(bean, resultSet.getShort(this.column)); return;
+					case BYTE: this.field.setByte(bean, resultSet.getByte(this.column)); return;
+				}
+			}
+			Object value = this._read(resultSet);
+			if(value == null && this.primitive)
+			{
+				return;
+			}
+			if(this.setter != null)
+			{
+				this.setter.invoke(bean, value);
+			}
+			else
+			{
+				this.field.set(bean, value);
+			}
+			
+		}
+		
+		private Object _read(ResultSet resultSet) throws SQLException
+		{
+			
+			Object value;
+			switch(this.type)
+			{
+				case STRING: return resultSet.getString(this.column);
+				case BIG_DECIMAL: return resultSet.getBigDecimal(this.column);
+				case TIMESTAMP: return resultSet.getTimestamp(this.column);
+				case SQL_DATE: return resultSet.getDate(this.column);
+				case BYTES: return resultSet.getBytes(this.column);
+				case DATE:
+					Timestamp timestamp = resultSet.getTimestamp(this.column);
+					return timestamp == null ? null : new Date(timestamp.getTime());
+				case INT: value = resultSet.getInt(this.column); break;
+				case LONG: value = resultSet.getLong(this.column); break;
+				case DOUBLE: value = resultSet.getDouble(this.column); break;
+				case FLOAT: value = resultSet.getFloat(this.column); break;
+				case BOOLEAN: value = resultSet.getBoolean(this.column); break;
+				case SHORT: value = resultSet.getShort(this.column); break;
+				case BYTE: value = resultSet.getByte(this.column); break;
+				default: return resultSet.getObject(this.column);
+			}
+			return resultSet.wasNull() ? null : value;
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,210 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.io.Serializable;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The column names of a result set, mapped to their positions.  One index is built per query 
+ * and shared by every JdbcResultRow in the result.
+ * 
+ * @author rockholla
+ *
+ */
+public class JdbcColumnIndex implements Serializable
+{
+	
+	private static final long serialVersionUID = 2L;
+	
+	/** column kinds, how a column's values are read and held by a row */
+	public static final byte OBJECT = 0;
+	public static final byte INT = 1;
+	public static final byte LONG = 2;
+	public static final byte FLOAT = 3;
+	public static final byte DOUBLE = 4;
+	public static final byte BOOLEAN = 5;
+	
+	/** the column names, in column order */
+	protected String[] _names;
+	/** column name to zero-based position, duplicate names map to the first column with that name */
+	protected HashMap<String, Integer> _positions;
+	/** the kind of each column */
+	protected byte[] _kinds;
+	/** for primitive columns, the position of the value in a row's primitive values */
+	protected int[] _slots;
+	/** the number of primitive columns */
+	protected int _primitiveCount = 0;
+	
+	/**
+	 * Constructor, all columns are held as objects
+	 * 
+	 * @param names	the column names, in column order
+	 */
+	public JdbcColumnIndex(List<String> names)
+	{
+		this(names, new byte[names.size()]);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param names	the column names, in column order
+	 * @param kinds	the kind of each column, ex: JdbcColumnIndex.LONG
+	 */
+	public JdbcColumnIndex(List<String> names, byte[] kinds)
+	{
+		
+		this._names = names.toArray(new String[names.size()]);
+		this._positions = new HashMap<String, Integer>(this._names.length * 2);
+		for(int i = this._names.length - 1; i >= 0; i--)
+		{
+			this._positions.put(this._names[i], i);
+		}
+		this._kinds = kinds.clone();
+		this._slots = new int[kinds.length];
+		for(int i = 0; i < kinds.length; i++)
+		{
+			this._slots[i] = kinds[i] == OBJECT ? -1 : this._primitiveCount++;
+		}
+		
+	}
+	
+	/**
+	 * Builds an index from result set metadata
+	 * 
+	 * @param metaData	the metadata of the result set
+	 * @return			a new JdbcColumnIndex
+	 * @throws SQLException
+	 */
+	public static JdbcColumnIndex fromMetaData(ResultSetMetaData metaData) throws SQLException
+	{
+		
+		int columnCount = metaData.getColumnCount();
+		ArrayList<String> names = new ArrayList<String>(columnCount);
+		byte[] kinds = new byte[columnCount];
+		for(int i = 1; i <= columnCount; i++) 
+		{
+			names.add(metaData.getColumnName(i));
+			kinds[i - 1] = getKind(metaData.getColumnClassName(i));
+		}
+		return new JdbcColumnIndex(names, kinds);
+		
+	}
+	
+	/**
+	 * Gets the column kind for the Java class the driver returns a column's values as, so that 
+	 * values held as primitives are handed back as the same class getObject() would have returned
+	 * 
+	 * @param className	the class name, from ResultSetMetaData.getColumnClassName
+	 * @return			the column kind
+	 */
+	public static byte getKind(String className)
+	{
+		
+		if(Integer.class.getName().equals(className)) return INT;
+		if(Long.class.getName().equals(className)) return LONG;
+		if(Float.class.getName().equals(className)) return FLOAT;
+		if(Double.class.getName().equals(className)) return DOUBLE;
+		if(Boolean.class.getName().equals(className)) return BOOLEAN;
+		return OBJECT;
+		
+	}
+	
+	/**
+	 * Gets the number of columns
+	 * 
+	 * @return	the number of columns
+	 */
+	public int size()
+	{
+		return this._names.length;
+	}
+	
+	/**
+	 * Gets the zero-based position of a column
+	 * 
+	 * @param name	the column name
+	 * @return		the position, -1 if there is no such column
+	 */
+	public int getPosition(Object name)
+	{
+		
+		Integer position = this._positions.get(name);
+		return position == null ? -1 : position.intValue();
+		
+	}
+	
+	/**
+	 * Gets the name of a column
+	 * 
+	 * @param position	the zero-based position
+	 * @return			the column name
+	 */
+	public String getName(int position)
+	{
+		return this._names[position];
+	}
+	
+	/**
+	 * Gets the kind of a column
+	 * 
+	 * @param position	the zero-based position
+	 * @return			the column kind, ex: JdbcColumnIndex.LONG
+	 */
+	public byte getKind(int position)
+	{
+		return this._kinds[position];
+	}
+	
+	/**
+	 * Gets where a primitive column's value is held in a row's primitive values
+	 * 
+	 * @param position	the zero-based position
+	 * @return			the slot, -1 for object columns
+	 */
+	public int getSlot(int position)
+	{
+		return this._slots[position];
+	}
+	
+	/**
+	 * Gets the number of columns held as primitives
+	 * 
+	 * @return	the number of primitive columns
+	 */
+	public int getPrimitiveCount()
+	{
+		return this._primitiveCount;
+	}
+	
+	/**
+	 * Gets the column names
+	 * 
+	 * @return	a List of column names, in column order
+	 */
+	public ArrayList<String> getNames()
+	{
+		return new ArrayList<String>(Arrays.asList(this._names));
+	}
+	
+}
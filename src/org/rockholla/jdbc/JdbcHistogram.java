@@ -0,0 +1,205 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+/**
+ * A histogram of non-negative values with log-linear buckets: each power of two is split into 
+ * 16 linear sub-buckets, so any recorded value is reported within about 6% while the whole range 
+ * of a long fits in under a thousand counters.  Recording is constant time and allocates nothing.
+ * 
+ * @author rockholla
+ *
+ */
+public class JdbcHistogram 
+{
+	
+	/** the sub-buckets per power of two, as a number of bits */
+	protected static final int SUB_BUCKET_BITS = 4;
+	protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** values below 2^SUB_BUCKET_BITS get a bucket each, each power of two above gets SUB_BUCKETS */
+	protected static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+	
+	protected long[] _counts = new long[BUCKETS];
+	protected long _count = 0;
+	protected long _sum = 0;
+	protected long _min = Long.MAX_VALUE;
+	protected long _max = 0;
+	
+	/**
+	 * Records a value
+	 * 
+	 * @param value	the value, negative values are recorded as 0
+	 */
+	public synchronized void record(long value)
+	{
+		
+		if(value < 0) value = 0;
+		this._counts[_bucket(value)]++;
+		this._count++;
+		this._sum += value;
+		if(value < this._min) this._min = value;
+		if(value > this._max) this._max = value;
+		
+	}
+	
+	/**
+	 * Adds the values recorded by another histogram to this one
+	 * 
+	 * @param histogram	the other histogram
+	 */
+	public void add(JdbcHistogram histogram)
+	{
+		
+		long[] counts;
+		long count, sum, min, max;
+		synchronized(histogram)
+		{
+			counts = histogram._counts.clone();
+			count = histogram._count;
+			sum = histogram._sum;
+			min = histogram._min;
+			max = histogram._max;
+		}
+		synchronized(this)
+		{
+			for(int i = 0; i < BUCKETS; i++)
+			{
+				this._counts[i] += counts[i];
+			}
+			this._count += count;
+			this._sum += sum;
+			if(min < this._min) this._min = min;
+			if(max > this._max) this._max = max;
+		}
+		
+	}
+	
+	public synchronized long getCount()
+	{
+		return this._count;
+	}
+	
+	public synchronized long getSum()
+	{
+		return this._sum;
+	}
+	
+	/**
+	 * Gets the lowest recorded value
+	 * 
+	 * @return	the lowest value, 0 if nothing was recorded
+	 */
+	public synchronized long getMin()
+	{
+		return this._count == 0 ? 0 : this._min;
+	}
+	
+	public synchronized long getMax()
+	{
+		return this._max;
+	}
+	
+	public synchronized double getMean()
+	{
+		return this._count == 0 ? 0 : (double) this._sum / this._count;
+	}
+	
+	/**
+	 * Gets the value at a percentile, ex: 99 for the p99
+	 * 
+	 * @param percentile	the percentile, from 0 to 100
+	 * @return				the value, accurate to the bucket it falls in, 0 if nothing was recorded
+	 */
+	public synchronized long getValueAtPercentile(double percentile)
+	{
+		
+		if(this._count == 0)
+		{
+			return 0;
+		}
+		long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100.0 * this._count);
+		if(rank < 1) rank = 1;
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += this._counts[i];
+			if(seen >= rank)
+			{
+				return Math.max(this._min, Math.min(this._max, _highestValue(i)));
+			}
+		}
+		return this._max;
+		
+	}
+	
+	public synchronized void reset()
+	{
+		
+		this._counts = new long[BUCKETS];
+		this._count = 0;
+		this._sum = 0;
+		this._min = Long.MAX_VALUE;
+		this._max = 0;
+		
+	}
+	
+	@Override
+	public synchronized String toString()
+	{
+		return "count: " + this._count + ", min: " + this.getMin() + ", p50: " + this.getValueAtPercentile(50) + ", p99: " + this.getValueAtPercentile(99) + ", max: " + this._max;
+	}
+	
+	/**
+	 * Gets the bucket a value falls in
+	 * 
+	 * @param value	the value, not negative
+	 * @return		the bucket
+	 */
+	protected static int _bucket(long value)
+	{
+		
+		if(value < SUB_BUCKETS)
+		{
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+		
+	}
+	
+	/**
+	 * Gets the highest value that falls in a bucket
+	 * 
+	 * @param bucket	the bucket
+	 * @return			the highest value
+	 */
+	protected static long _highestValue(int bucket)
+	{
+		
+		if(bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (1L << exponent) + (subBucket + 1) * width - 1;
+		
+	}
+	
+}
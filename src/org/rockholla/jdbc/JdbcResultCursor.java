@@ -0,0 +1,215 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A forward-only cursor over the rows of a query, reading rows from the database as they are 
+ * requested instead of loading the whole result set.  The cursor holds a connection until it 
+ * has been read to the end or closed, so it should always be closed in a finally block.  Closing 
+ * a cursor early reads and discards the rows the server has left to send, so a query that may be 
+ * abandoned part way should be limited in SQL.
+ * 
+ * @author rockholla
+ *
+ */
+public class JdbcResultCursor implements Iterator<JdbcResultRow>, Iterable<JdbcResultRow>, Closeable
+{
+	
+	/** the connector that owns the connection */
+	protected MySqlConnector _connector;
+	/** the connection, held until the cursor is closed */
+	protected Connection _connection;
+	/** the SQL of a prepared statement, null for a plain statement */
+	protected String _sql;
+	/** the statement */
+	protected Statement _statement;
+	/** the open result set */
+	protected ResultSet _resultSet;
+	/** the column index shared by the rows of the result set */
+	protected JdbcColumnIndex _columns;
+	/** the timings of the query, recorded when the cursor is closed */
+	protected MySqlQueryMetrics.Sample _sample;
+	/** the number of rows read so far */
+	protected long _rowCount = 0;
+	/** true if reading a row failed */
+	protected boolean _failed = false;
+	
+	/** the next row, read ahead by hasNext() */
+	protected JdbcResultRow _next;
+	/** true once the cursor has been closed */
+	protected boolean _closed = false;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param connector		the connector that provided the connection
+	 * @param connection	the connection, released back to the connector on close
+	 * @param sql			the SQL of a prepared statement, null for a plain statement
+	 * @param statement		the statement
+	 * @param resultSet		the open result set
+	 * @param sample		the timings of the query, the fetch time runs until the cursor is closed
+	 * @throws SQLException
+	 */
+	JdbcResultCursor(MySqlConnector connector, Connection connection, String sql, Statement statement, ResultSet resultSet, MySqlQueryMetrics.Sample sample) throws SQLException
+	{
+		
+		this._connector = connector;
+		this._sample = sample;
+		this._connection = connection;
+		this._sql = sql;
+		this._statement = statement;
+		this._resultSet = resultSet;
+		this._columns = MySqlConnector._getColumnIndex(resultSet);
+		
+	}
+	
+	public boolean hasNext()
+	{
+		
+		if(this._next != null)
+		{
+			return true;
+		}
+		if(this._closed)
+		{
+			return false;
+		}
+		try
+		{
+			if(this._resultSet.next())
+			{
+				this._next = MySqlConnector._createRow(this._resultSet, this._columns);
+				this._rowCount++;
+				return true;
+			}
+			this.close();
+			return false;
+		}
+		catch(SQLException exception)
+		{
+			this._failed = true;
+			this.close();
+			throw new RuntimeException(new MySqlConnectorException(exception));
+		}
+		
+	}
+	
+	public JdbcResultRow next()
+	{
+		
+		if(!this.hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		JdbcResultRow row = this._next;
+		this._next = null;
+		return row;
+		
+	}
+	
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Allows the cursor to be used in a for-each loop, the rows can only be iterated once
+	 */
+	public Iterator<JdbcResultRow> iterator()
+	{
+		return this;
+	}
+	
+	/**
+	 * Gets the column names of the result set
+	 * 
+	 * @return	a List of column names
+	 */
+	public ArrayList<String> getColumnNames()
+	{
+		return this._columns.getNames();
+	}
+	
+	/**
+	 * Gets the column index shared by the rows of the cursor
+	 * 
+	 * @return	the column index
+	 */
+	public JdbcColumnIndex getColumnIndex()
+	{
+		return this._columns;
+	}
+	
+	public boolean isClosed()
+	{
+		return this._closed;
+	}
+	
+	/**
+	 * Closes the result set and statement and releases the connection, safe to call more than once.  
+	 * The connection is discarded rather than released if reading a row failed.
+	 */
+	public void close()
+	{
+		
+		if(this._closed)
+		{
+			return;
+		}
+		this._closed = true;
+		this._next = null;
+		if(this._failed)
+		{
+			MySqlConnector._close(this._statement, this._resultSet);
+			this._connector._discardConnection(this._connection);
+		}
+		else
+		{
+			// closing the result set lets the driver read off what is left of the stream, so the 
+			// connection is ready for its next query when it goes back to the pool
+			if(this._sql != null)
+			{
+				this._connector._releaseStatement(this._connection, (PreparedStatement) this._statement, this._resultSet);
+			}
+			else
+			{
+				MySqlConnector._close(this._statement, this._resultSet);
+			}
+			this._connector._releaseConnection(this._connection);
+		}
+		if(!this._failed)
+		{
+			this._sample.fetched(this._rowCount);
+		}
+		this._connector._recordSample(this._sample);
+		this._resultSet = null;
+		this._statement = null;
+		this._connection = null;
+		
+	}
+	
+}
@@ -16,21 +16,107 @@
 
 package org.rockholla.jdbc;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
- * A JdbcResultRow is a representation of a database row
+ * A JdbcResultRow is a representation of a database row.  Column values are held in an array 
+ * positioned by a JdbcColumnIndex shared across the result set, so each row carries only its 
+ * values rather than its own copy of the column names.  Keys that are not columns of the 
+ * result can still be put into the row like any other Map.  Numeric and boolean columns are held 
+ * as primitives and read back through the typed getters, ex: getLong(), without boxing.
  * 
  * @author rockholla
  *
  */
-public class JdbcResultRow extends HashMap<String, Object> 
+public class JdbcResultRow extends AbstractMap<String, Object> implements Serializable, Cloneable
 {
-
-	private static final long serialVersionUID = 1L;
+	
+	private static final long serialVersionUID = 2L;
+	
+	/** marks a column that has been removed from the row */
+	private static final Object REMOVED = new Serializable() {
+		private static final long serialVersionUID = 1L;
+		private Object readResolve() { return REMOVED; }
+	};
+	/** marks a column whose value is held in the primitive values */
+	private static final Object PRIMITIVE = new Serializable() {
+		private static final long serialVersionUID = 1L;
+		private Object readResolve() { return PRIMITIVE; }
+	};
+	
+	/** value tags of the binary row format, see write() */
+	private static final byte NULL_VALUE = 0;
+	private static final byte REMOVED_VALUE = 1;
+	private static final byte PRIMITIVE_VALUE = 2;
+	private static final byte STRING_VALUE = 3;
+	private static final byte INTEGER_VALUE = 4;
+	private static final byte LONG_VALUE = 5;
+	private static final byte DOUBLE_VALUE = 6;
+	private static final byte FLOAT_VALUE = 7;
+	private static final byte BOOLEAN_VALUE = 8;
+	private static final byte BIG_DECIMAL_VALUE = 9;
+	private static final byte BYTES_VALUE = 10;
+	private static final byte TIMESTAMP_VALUE = 11;
+	private static final byte SQL_DATE_VALUE = 12;
+	private static final byte TIME_VALUE = 13;
+	private static final byte DATE_VALUE = 14;
+	private static final byte SERIALIZED_VALUE = 15;
+	
+	/** the shared column index, null for rows built by hand */
+	protected JdbcColumnIndex _columns;
+	/** the column values, by column position */
+	protected Object[] _values;
+	/** the values of primitive columns, by column slot, doubles and floats held as raw bits */
+	protected long[] _primitives;
+	/** values for keys that are not columns, created when first needed */
+	protected HashMap<String, Object> _extra;
 	
 	public JdbcResultRow() {}
 	
+	/**
+	 * Constructor
+	 * 
+	 * @param columns	the shared column index of the result set
+	 */
+	public JdbcResultRow(JdbcColumnIndex columns)
+	{
+		this._columns = columns;
+		this._values = new Object[columns.size()];
+		if(columns.getPrimitiveCount() > 0)
+		{
+			this._primitives = new long[columns.getPrimitiveCount()];
+		}
+	}
+	
+	/**
+	 * Gets the column index shared by rows of the same result
+	 * 
+	 * @return	the column index, null if the row was not built from a result set
+	 */
+	public JdbcColumnIndex getColumnIndex()
+	{
+		return this._columns;
+	}
+	
 	/**
 	 * Gets a string value of a particular row key
 	 * 
@@ -53,5 +139,1000 @@ public class JdbcResultRow extends HashMap<String, Object>
 		return String.valueOf(this.get(String.valueOf(key)));
 	}
 	
+	/**
+	 * Gets the value of a column as a string, by its position rather than a key
+	 * 
+	 * @param column	the column index, starting at 1 as in JDBC
+	 * @return			a string value, "null" if the value is null
+	 */
+	public String getStringAt(int column)
+	{
+		return String.valueOf(this.getObject(column));
+	}
+	
+	/**
+	 * Gets the value of a column by its position
+	 * 
+	 * @param column	the column index, starting at 1 as in JDBC
+	 * @return			the value
+	 */
+	public Object getObject(int column)
+	{
+		
+		if(this._values == null || column < 1 || column > this._values.length)
+		{
+			return null;
+		}
+		return this._value(column - 1);
+		
+	}
+	
+	/**
+	 * Gets the value of a column as a long
+	 * 
+	 * @param column	the column index, starting at 1 as in JDBC
+	 * @return			the value, 0 if the value is null
+	 */
+	public long getLong(int column)
+	{
+		
+		int position = column - 1;
+		if(this._isPrimitive(position))
+		{
+			byte kind = this._columns.getKind(position);
+			long bits = this._primitives[this._columns.getSlot(position)];
+			return kind == JdbcColumnIndex.DOUBLE || kind == JdbcColumnIndex.FLOAT ? (long) Double.longBitsToDouble(bits) : bits;
+		}
+		return _toLong(this.getObject(column));
+		
+	}
+	
+	/**
+	 * Gets the value of a column as a long
+	 * 
+	 * @param key	the database column name
+	 * @return		the value, 0 if the value is null
+	 */
+	public long getLong(String key)
+	{
+		
+		int position = this._position(key);
+		return position >= 0 ? this.getLong(position + 1) : _toLong(this.get(key));
+		
+	}
+	
+	/**
+	 * Gets the value of a column as an int
+	 * 
+	 * @param column	the column index, starting at 1 as in JDBC
+	 * @return			the value, 0 if the value is null
+	 */
+	public int getInt(int column)
+	{
+		return (int) this.getLong(column);
+	}
+	
+	/**
+	 * Gets the value of a column as an int
+	 * 
+	 * @param key	the database column name
+	 * @return		the value, 0 if the value is null
+	 */
+	public int getInt(String key)
+	{
+		return (int) this.getLong(key);
+	}
+	
+	/**
+	 * Gets the value of a column as a double
+	 * 
+	 * @param column	the column index, starting at 1 as in JDBC
+	 * @return			the value, 0 if the value is null
+	 */
+	public double getDouble(int column)
+	{
+		
+		int position = column - 1;
+		if(this._isPrimitive(position))
+		{
+			byte kind = this._columns.getKind(position);
+			long bits = this._primitives[this._columns.getSlot(position)];
+			return kind == JdbcColumnIndex.DOUBLE || kind == JdbcColumnIndex.FLOAT ? Double.longBitsToDouble(bits) : bits;
+		}
+		return _toDouble(this.getObject(column));
+		
+	}
+	
+	/**
+	 * Gets the value of a column as a double
+	 * 
+	 * @param key	the database column name
+	 * @return		the value, 0 if the value is null
+	 */
+	public double getDouble(String key)
+	{
+		
+		int position = this._position(key);
+		return position >= 0 ? this.getDouble(position + 1) : _toDouble(this.get(key));
+		
+	}
+	
+	/**
+	 * Gets the value of a column as a boolean, numbers are true when not 0
+	 * 
+	 * @param column	the column index, starting at 1 as in JDBC
+	 * @return			the value, false if the value is null
+	 */
+	public boolean getBoolean(int column)
+	{
+		
+		if(this._isPrimitive(column - 1))
+		{
+			return this.getDouble(column) != 0;
+		}
+		return _toBoolean(this.getObject(column));
+		
+	}
+	
+	/**
+	 * Gets the value of a column as a boolean, numbers are true when not 0
+	 * 
+	 * @param key	the database column name
+	 * @return		the value, false if the value is null
+	 */
+	public boolean getBoolean(String key)
+	{
+		
+		int position = this._position(key);
+		return position >= 0 ? this.getBoolean(position + 1) : _toBoolean(this.get(key));
+		
+	}
+	
+	/**
+	 * Gets the value of a column as a Timestamp
+	 * 
+	 * @param column	the column index, starting at 1 as in JDBC
+	 * @return			the value, null if the value is null
+	 */
+	public Timestamp getTimestamp(int column)
+	{
+		return _toTimestamp(this.getObject(column));
+	}
+	
+	/**
+	 * Gets the value of a column as a Timestamp
+	 * 
+	 * @param key	the database column name
+	 * @return		the value, null if the value is null
+	 */
+	public Timestamp getTimestamp(String key)
+	{
+		
+		int position = this._position(key);
+		return position >= 0 ? this.getTimestamp(position + 1) : _toTimestamp(this.get(key));
+		
+	}
+	
+	/**
+	 * Gets the value of a column as bytes, strings are encoded as UTF-8
+	 * 
+	 * @param column	the column index, starting at 1 as in JDBC
+	 * @return			the value, null if the value is null
+	 */
+	public byte[] getBytes(int column)
+	{
+		return _toBytes(this.getObject(column));
+	}
+	
+	/**
+	 * Gets the value of a column as bytes, strings are encoded as UTF-8
+	 * 
+	 * @param key	the database column name
+	 * @return		the value, null if the value is null
+	 */
+	public byte[] getBytes(String key)
+	{
+		
+		int position = this._position(key);
+		return position >= 0 ? this.getBytes(position + 1) : _toBytes(this.get(key));
+		
+	}
+	
+	/**
+	 * Checks if the value of a column is null
+	 * 
+	 * @param column	the column index, starting at 1 as in JDBC
+	 * @return			true if the value is null
+	 */
+	public boolean isNull(int column)
+	{
+		return !this._isPrimitive(column - 1) && this.getObject(column) == null;
+	}
+	
+	/**
+	 * Checks if the value of a column is null
+	 * 
+	 * @param key	the database column name
+	 * @return		true if the value is null
+	 */
+	public boolean isNull(String key)
+	{
+		
+		int position = this._position(key);
+		return position >= 0 ? this.isNull(position + 1) : this.get(key) == null;
+		
+	}
+	
+	/**
+	 * Sets the value of a column by its position, used when reading rows from a result set
+	 * 
+	 * @param column	the column index, starting at 1 as in JDBC
+	 * @param value		the value
+	 */
+	void setObject(int column, Object value)
+	{
+		this._values[column - 1] = value;
+	}
+	
+	/**
+	 * Sets the value of an int, long or boolean column, used when reading rows from a result set
+	 * 
+	 * @param column	the column index, starting at 1 as in JDBC
+	 * @param value		the value, booleans as 1 or 0
+	 */
+	void setLong(int column, long value)
+	{
+		this._primitives[this._columns.getSlot(column - 1)] = value;
+		this._values[column - 1] = PRIMITIVE;
+	}
+	
+	/**
+	 * Sets the value of a double or float column, used when reading rows from a result set
+	 * 
+	 * @param column	the column index, starting at 1 as in JDBC
+	 * @param value		the value
+	 */
+	void setDouble(int column, double value)
+	{
+		this._primitives[this._columns.getSlot(column - 1)] = Double.doubleToRawLongBits(value);
+		this._values[column - 1] = PRIMITIVE;
+	}
+	
+	/**
+	 * Writes the values of this row in a compact binary format, the column index is not written
+	 * 
+	 * @param out			the output
+	 * @throws IOException	if a value is neither a common JDBC type nor Serializable
+	 */
+	void write(DataOutput out) throws IOException
+	{
+		
+		int columnCount = this._values == null ? 0 : this._values.length;
+		out.writeInt(columnCount);
+		for(int i = 0; i < columnCount; i++)
+		{
+			Object value = this._values[i];
+			if(value == REMOVED)
+			{
+				out.writeByte(REMOVED_VALUE);
+			}
+			else if(value == PRIMITIVE)
+			{
+				out.writeByte(PRIMITIVE_VALUE);
+				out.writeLong(this._primitives[this._columns.getSlot(i)]);
+			}
+			else
+			{
+				_writeValue(out, value);
+			}
+		}
+		out.writeInt(this._extra == null ? 0 : this._extra.size());
+		if(this._extra != null)
+		{
+			for(Map.Entry<String, Object> entry : this._extra.entrySet())
+			{
+				_writeValue(out, entry.getKey());
+				_writeValue(out, entry.getValue());
+			}
+		}
+		
+	}
+	
+	/**
+	 * Reads a row written by write()
+	 * 
+	 * @param in			the input
+	 * @param columns		the column index of the row, null for rows built by hand
+	 * @return				the row
+	 * @throws IOException
+	 */
+	static JdbcResultRow read(DataInput in, JdbcColumnIndex columns) throws IOException
+	{
+		
+		JdbcResultRow row = columns == null ? new JdbcResultRow() : new JdbcResultRow(columns);
+		int columnCount = in.readInt();
+		for(int i = 0; i < columnCount; i++)
+		{
+			byte tag = in.readByte();
+			if(tag == REMOVED_VALUE)
+			{
+				row._values[i] = REMOVED;
+			}
+			else if(tag == PRIMITIVE_VALUE)
+			{
+				row._primitives[columns.getSlot(i)] = in.readLong();
+				row._values[i] = PRIMITIVE;
+			}
+			else
+			{
+				row._values[i] = _readValue(in, tag);
+			}
+		}
+		int extraCount = in.readInt();
+		if(extraCount > 0)
+		{
+			row._extra = new HashMap<String, Object>(extraCount * 2);
+			for(int i = 0; i < extraCount; i++)
+			{
+				String key = (String) _readValue(in, in.readByte());
+				row._extra.put(key, _readValue(in, in.readByte()));
+			}
+		}
+		return row;
+		
+	}
+	
+	private static void _writeValue(DataOutput out, Object value) throws IOException
+	{
+		
+		if(value == null)
+		{
+			out.writeByte(NULL_VALUE);
+		}
+		else if(value instanceof String)
+		{
+			out.writeByte(STRING_VALUE);
+			_writeBytes(out, ((String) value).getBytes("UTF-8"));
+		}
+		else if(value instanceof Integer)
+		{
+			out.writeByte(INTEGER_VALUE);
+			out.writeInt(((Integer) value).intValue());
+		}
+		else if(value instanceof Long)
+		{
+			out.writeByte(LONG_VALUE);
+			out.writeLong(((Long) value).longValue());
+		}
+		else if(value instanceof Double)
+		{
+			out.writeByte(DOUBLE_VALUE);
+			out.writeDouble(((Double) value).doubleValue());
+		}
+		else if(value instanceof Float)
+		{
+			out.writeByte(FLOAT_VALUE);
+			out.writeFloat(((Float) value).floatValue());
+		}
+		else if(value instanceof Boolean)
+		{
+			out.writeByte(BOOLEAN_VALUE);
+			out.writeBoolean(((Boolean) value).booleanValue());
+		}
+		else if(value instanceof BigDecimal)
+		{
+			out.writeByte(BIG_DECIMAL_VALUE);
+			_writeBytes(out, value.toString().getBytes("UTF-8"));
+		}
+		else if(value instanceof byte[])
+		{
+			out.writeByte(BYTES_VALUE);
+			_writeBytes(out, (byte[]) value);
+		}
+		else if(value instanceof Timestamp)
+		{
+			out.writeByte(TIMESTAMP_VALUE);
+			out.writeLong(((Timestamp) value).getTime());
+			out.writeInt(((Timestamp) value).getNanos());
+		}
+		else if(value instanceof java.sql.Date)
+		{
+			out.writeByte(SQL_DATE_VALUE);
+			out.writeLong(((Date) value).getTime());
+		}
+		else if(value instanceof java.sql.Time)
+		{
+			out.writeByte(TIME_VALUE);
+			out.writeLong(((Date) value).getTime());
+		}
+		else if(value.getClass() == Date.class)
+		{
+			out.writeByte(DATE_VALUE);
+			out.writeLong(((Date) value).getTime());
+		}
+		else if(value instanceof Serializable)
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+			objectOut.writeObject(value);
+			objectOut.close();
+			out.writeByte(SERIALIZED_VALUE);
+			_writeBytes(out, bytes.toByteArray());
+		}
+		else
+		{
+			throw new IOException("Unable to write a value of " + value.getClass().getName());
+		}
+		
+	}
+	
+	private static Object _readValue(DataInput in, byte tag) throws IOException
+	{
+		
+		switch(tag)
+		{
+			case NULL_VALUE: return null;
+			case STRING_VALUE: return new String(_readBytes(in), "UTF-8");
+			case INTEGER_VALUE: return Integer.valueOf(in.readInt());
+			case LONG_VALUE: return Long.valueOf(in.readLong());
+			case DOUBLE_VALUE: return Double.valueOf(in.readDouble());
+			case FLOAT_VALUE: return Float.valueOf(in.readFloat());
+			case BOOLEAN_VALUE: return Boolean.valueOf(in.readBoolean());
+			case BIG_DECIMAL_VALUE: return new BigDecimal(new String(_readBytes(in), "UTF-8"));
+			case BYTES_VALUE: return _readBytes(in);
+			case TIMESTAMP_VALUE:
+				Timestamp timestamp = new Timestamp(in.readLong());
+				timestamp.setNanos(in.readInt());
+				return timestamp;
+			case SQL_DATE_VALUE: return new java.sql.Date(in.readLong());
+			case TIME_VALUE: return new java.sql.Time(in.readLong());
+			case DATE_VALUE: return new Date(in.readLong());
+			case SERIALIZED_VALUE:
+				try
+				{
+					return new ObjectInputStream(new ByteArrayInputStream(_readBytes(in))).readObject();
+				}
+				catch(ClassNotFoundException exception)
+				{
+					throw new IOException("Unable to read a value: " + exception.getMessage(), exception);
+				}
+			default: throw new IOException("Unknown value tag: " + tag);
+		}
+		
+	}
+	
+	private static void _writeBytes(DataOutput out, byte[] bytes) throws IOException
+	{
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private static byte[] _readBytes(DataInput in) throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * Estimates the heap taken by this row, not counting the shared column index
+	 * 
+	 * @return	the estimated size in bytes
+	 */
+	public long estimateSize()
+	{
+		
+		long size = 32;
+		if(this._values != null)
+		{
+			size += 16 + 8L * this._values.length;
+			for(Object value : this._values)
+			{
+				size += estimateSize(value);
+			}
+		}
+		if(this._primitives != null)
+		{
+			size += 16 + 8L * this._primitives.length;
+		}
+		if(this._extra != null)
+		{
+			for(Map.Entry<String, Object> entry : this._extra.entrySet())
+			{
+				size += 48 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+			}
+		}
+		return size;
+		
+	}
+	
+	/**
+	 * Estimates the heap taken by a column value
+	 * 
+	 * @param value	the value
+	 * @return		the estimated size in bytes
+	 */
+	public static long estimateSize(Object value)
+	{
+		
+		if(value == null || value == REMOVED || value == PRIMITIVE)
+		{
+			return 0;
+		}
+		if(value instanceof String)
+		{
+			return 40 + 2L * ((String) value).length();
+		}
+		if(value instanceof byte[])
+		{
+			return 16 + ((byte[]) value).length;
+		}
+		if(value instanceof Number || value instanceof Boolean)
+		{
+			return value instanceof BigDecimal || value instanceof BigInteger ? 64 : 16;
+		}
+		if(value instanceof Date)
+		{
+			return 32;
+		}
+		return 16 + 2L * String.valueOf(value).length();
+		
+	}
+	
+	@Override
+	public Object get(Object key)
+	{
+		
+		int position = this._position(key);
+		if(position >= 0)
+		{
+			return this._value(position);
+		}
+		return this._extra == null ? null : this._extra.get(key);
+		
+	}
+	
+	@Override
+	public boolean containsKey(Object key)
+	{
+		
+		int position = this._position(key);
+		if(position >= 0)
+		{
+			return this._values[position] != REMOVED;
+		}
+		return this._extra != null && this._extra.containsKey(key);
+		
+	}
+	
+	@Override
+	public Object put(String key, Object value)
+	{
+		
+		int position = this._position(key);
+		if(position >= 0)
+		{
+			Object previous = this._value(position);
+			this._values[position] = value;
+			return previous;
+		}
+		if(this._extra == null)
+		{
+			this._extra = new HashMap<String, Object>(4);
+		}
+		return this._extra.put(key, value);
+		
+	}
+	
+	@Override
+	public Object remove(Object key)
+	{
+		
+		int position = this._position(key);
+		if(position >= 0)
+		{
+			Object previous = this._value(position);
+			this._values[position] = REMOVED;
+			return previous;
+		}
+		return this._extra == null ? null : this._extra.remove(key);
+		
+	}
+	
+	@Override
+	public void clear()
+	{
+		
+		if(this._values != null)
+		{
+			for(int i = 0; i < this._values.length; i++)
+			{
+				this._values[i] = REMOVED;
+			}
+		}
+		this._extra = null;
+		
+	}
+	
+	@Override
+	public int size()
+	{
+		
+		int size = this._extra == null ? 0 : this._extra.size();
+		if(this._values != null)
+		{
+			for(int i = 0; i < this._values.length; i++)
+			{
+				if(this._isVisible(i)) size++;
+			}
+		}
+		return size;
+		
+	}
+	
+	@Override
+	public JdbcResultRow clone()
+	{
+		
+		try
+		{
+			JdbcResultRow row = (JdbcResultRow) super.clone();
+			if(this._values != null) row._values = this._values.clone();
+			if(this._primitives != null) row._primitives = this._primitives.clone();
+			if(this._extra != null) row._extra = new HashMap<String, Object>(this._extra);
+			return row;
+		}
+		catch(CloneNotSupportedException exception)
+		{
+			throw new RuntimeException(exception);
+		}
+		
+	}
+	
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet()
+	{
+		
+		return new AbstractSet<Map.Entry<String, Object>>() {
+			
+			@Override
+			public Iterator<Map.Entry<String, Object>> iterator()
+			{
+				return new EntryIterator();
+			}
+			
+			@Override
+			public int size()
+			{
+				return JdbcResultRow.this.size();
+			}
+			
+		};
+		
+	}
+	
+	/**
+	 * Converts a value to a long
+	 * 
+	 * @param value	the value
+	 * @return		the long value, 0 for null
+	 */
+	protected static long _toLong(Object value)
+	{
+		
+		if(value == null)
+		{
+			return 0;
+		}
+		if(value instanceof Number)
+		{
+			return ((Number) value).longValue();
+		}
+		if(value instanceof Boolean)
+		{
+			return ((Boolean) value).booleanValue() ? 1 : 0;
+		}
+		if(value instanceof Date)
+		{
+			return ((Date) value).getTime();
+		}
+		String string = value.toString().trim();
+		try
+		{
+			return Long.parseLong(string);
+		}
+		catch(NumberFormatException exception)
+		{
+			return new BigDecimal(string).longValue();
+		}
+		
+	}
+	
+	/**
+	 * Converts a value to a double
+	 * 
+	 * @param value	the value
+	 * @return		the double value, 0 for null
+	 */
+	protected static double _toDouble(Object value)
+	{
+		
+		if(value instanceof Number)
+		{
+			return ((Number) value).doubleValue();
+		}
+		if(value instanceof String)
+		{
+			return Double.parseDouble(((String) value).trim());
+		}
+		return _toLong(value);
+		
+	}
+	
+	/**
+	 * Converts a value to a boolean, numbers are true when not 0
+	 * 
+	 * @param value	the value
+	 * @return		the boolean value, false for null
+	 */
+	protected static boolean _toBoolean(Object value)
+	{
+		
+		if(value instanceof Boolean)
+		{
+			return ((Boolean) value).booleanValue();
+		}
+		if(value instanceof Number)
+		{
+			return ((Number) value).doubleValue() != 0;
+		}
+		if(value instanceof String)
+		{
+			String string = ((String) value).trim();
+			return string.length() > 0 && !string.equals("0") && !string.equalsIgnoreCase("false");
+		}
+		return false;
+		
+	}
+	
+	/**
+	 * Converts a value to a Timestamp
+	 * 
+	 * @param value	the value
+	 * @return		the Timestamp, null for null
+	 */
+	protected static Timestamp _toTimestamp(Object value)
+	{
+		
+		if(value == null || value instanceof Timestamp)
+		{
+			return (Timestamp) value;
+		}
+		if(value instanceof Date)
+		{
+			return new Timestamp(((Date) value).getTime());
+		}
+		if(value instanceof Number)
+		{
+			return new Timestamp(((Number) value).longValue());
+		}
+		return Timestamp.valueOf(value.toString().trim());
+		
+	}
+	
+	/**
+	 * Converts a value to bytes, strings are encoded as UTF-8
+	 * 
+	 * @param value	the value
+	 * @return		the bytes, null for null
+	 */
+	protected static byte[] _toBytes(Object value)
+	{
+		
+		if(value == null || value instanceof byte[])
+		{
+			return (byte[]) value;
+		}
+		try
+		{
+			return value.toString().getBytes("UTF-8");
+		}
+		catch(UnsupportedEncodingException exception)
+		{
+			throw new RuntimeException(exception);
+		}
+		
+	}
+	
+	/**
+	 * Gets the position of a column key in this row
+	 * 
+	 * @param key	the key
+	 * @return		the zero-based position, -1 if the key is not a column
+	 */
+	protected int _position(Object key)
+	{
+		return this._columns == null ? -1 : this._columns.getPosition(key);
+	}
+	
+	/**
+	 * Checks if the value at a position is held in the primitive values
+	 * 
+	 * @param position	the zero-based position
+	 * @return			true if the value is a primitive
+	 */
+	protected boolean _isPrimitive(int position)
+	{
+		return this._values != null && position >= 0 && position < this._values.length && this._values[position] == PRIMITIVE;
+	}
+	
+	/**
+	 * Gets the value at a position, boxing primitive values as the class the driver would have returned
+	 * 
+	 * @param position	the zero-based position
+	 * @return			the value, null if the column was removed
+	 */
+	protected Object _value(int position)
+	{
+		
+		Object value = this._values[position];
+		if(value == REMOVED)
+		{
+			return null;
+		}
+		if(value != PRIMITIVE)
+		{
+			return value;
+		}
+		long bits = this._primitives[this._columns.getSlot(position)];
+		switch(this._columns.getKind(position))
+		{
+			case JdbcColumnIndex.INT:
+				return Integer.valueOf((int) bits);
+			case JdbcColumnIndex.LONG:
+				return Long.valueOf(bits);
+			case JdbcColumnIndex.FLOAT:
+				return Float.valueOf((float) Double.longBitsToDouble(bits));
+			case JdbcColumnIndex.DOUBLE:
+				return Double.valueOf(Double.longBitsToDouble(bits));
+			default:
+				return Boolean.valueOf(bits != 0);
+		}
+		
+	}
+	
+	/**
+	 * A column is visible as a map entry unless it was removed or an earlier column shares its name
+	 * 
+	 * @param position	the zero-based position
+	 * @return			true if the column is a map entry
+	 */
+	protected boolean _isVisible(int position)
+	{
+		return this._values[position] != REMOVED && this._columns.getPosition(this._columns.getName(position)) == position;
+	}
+	
+	/**
+	 * Iterates the column entries followed by the extra entries
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<String, Object>>
+	{
+		
+		private int _position = 0;
+		private int _last = -1;
+		private Iterator<Map.Entry<String, Object>> _extraIterator;
+		
+		public boolean hasNext()
+		{
+			
+			if(_values != null)
+			{
+				while(this._position < _values.length && !_isVisible(this._position))
+				{
+					this._position++;
+				}
+				if(this._position < _values.length)
+				{
+					return true;
+				}
+			}
+			return this._extras().hasNext();
+			
+		}
+		
+		public Map.Entry<String, Object> next()
+		{
+			
+			if(!this.hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			if(_values != null && this._position < _values.length)
+			{
+				final int position = this._position++;
+				this._last = position;
+				return new Map.Entry<String, Object>() {
+					
+					public String getKey()
+					{
+						return _columns.getName(position);
+					}
+					
+					public Object getValue()
+					{
+						return _value(position);
+					}
+					
+					public Object setValue(Object value)
+					{
+						Object previous = _value(position);
+						_values[position] = value;
+						return previous;
+					}
+					
+					@Override
+					public boolean equals(Object object)
+					{
+						if(!(object instanceof Map.Entry)) return false;
+						Map.Entry<?, ?> entry = (Map.Entry<?, ?>) object;
+						return eq(this.getKey(), entry.getKey()) && eq(this.getValue(), entry.getValue());
+					}
+					
+					@Override
+					public int hashCode()
+					{
+						return this.getKey().hashCode() ^ (this.getValue() == null ? 0 : this.getValue().hashCode());
+					}
+					
+					@Override
+					public String toString()
+					{
+						return this.getKey() + "=" + this.getValue();
+					}
+					
+				};
+			}
+			this._last = -1;
+			return this._extras().next();
+			
+		}
+		
+		public void remove()
+		{
+			
+			if(this._last >= 0)
+			{
+				_values[this._last] = REMOVED;
+				this._last = -1;
+			}
+			else if(this._extraIterator != null)
+			{
+				this._extraIterator.remove();
+			}
+			else
+			{
+				throw new IllegalStateException();
+			}
+			
+		}
+		
+		private Iterator<Map.Entry<String, Object>> _extras()
+		{
+			
+			if(this._extraIterator == null)
+			{
+				HashMap<String, Object> extra = _extra == null ? new HashMap<String, Object>(0) : _extra;
+				this._extraIterator = extra.entrySet().iterator();
+			}
+			return this._extraIterator;
+			
+		}
+		
+	}
+	
+	private static boolean eq(Object one, Object two)
+	{
+		return one == null ? two == null : one.equals(two);
+	}
 	
 }
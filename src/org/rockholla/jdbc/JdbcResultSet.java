@@ -17,6 +17,7 @@
 package org.rockholla.jdbc;
 
 import java.util.ArrayList;
+import java.util.Collection;
 
 /**
  * A group of result rows from a JDBC database
@@ -31,4 +32,31 @@ public class JdbcResultSet extends ArrayList<JdbcResultRow>
 
 	public JdbcResultSet() {}
 	
+	/**
+	 * Constructor
+	 * 
+	 * @param rows	the rows to start with
+	 */
+	public JdbcResultSet(Collection<JdbcResultRow> rows)
+	{
+		super(rows);
+	}
+	
+	/**
+	 * Estimates the heap taken by the rows of this result
+	 * 
+	 * @return	the estimated size in bytes
+	 */
+	public long estimateSize()
+	{
+		
+		long size = 24 + 4L * this.size();
+		for(JdbcResultRow row : this)
+		{
+			size += row.estimateSize();
+		}
+		return size;
+		
+	}
+	
 }
@@ -0,0 +1,42 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Builds an object from the current row of a result set, read straight from the driver 
+ * rather than through a JdbcResultRow
+ * 
+ * @author rockholla
+ *
+ * @param <T>	the type of object built from each row
+ */
+public interface JdbcRowMapper<T> 
+{
+	
+	/**
+	 * Builds an object from the current row, the result set should not be moved
+	 * 
+	 * @param resultSet		the result set, positioned on a row
+	 * @return				the object
+	 * @throws SQLException
+	 */
+	public T mapRow(ResultSet resultSet) throws SQLException;
+	
+}
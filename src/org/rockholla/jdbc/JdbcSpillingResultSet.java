@@ -0,0 +1,524 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.RandomAccess;
+
+/**
+ * A list of result rows that holds rows in memory up to a budget of estimated bytes and writes 
+ * the rows after that to a temporary file in a compact binary format.  Spilled rows are read back 
+ * from the file when asked for, so the result can be far larger than the heap while still 
+ * offering get(i), iteration and size().  Rows read from the file are copies, changes to them 
+ * are not kept.
+ * 
+ * The rows in memory are held in a list of their own rather than inherited ArrayList storage, so 
+ * every List operation, the bulk and default methods of newer JDKs included, goes through get(), 
+ * set(), add() and remove() and sees the spilled rows.  Rows can be added to the end of the 
+ * result, once rows have been spilled the result cannot otherwise be changed.  Call close() to 
+ * delete the file once the result is no longer needed, it is also deleted on exit.  Like 
+ * ArrayList this class is not thread-safe, reads of spilled rows included.
+ * 
+ * @author rockholla
+ *
+ */
+public class JdbcSpillingResultSet extends AbstractList<JdbcResultRow> implements RandomAccess, Closeable, Serializable
+{
+	
+	private static final long serialVersionUID = 1L;
+	
+	/** the size of each memory-mapped segment of the file, segments are mapped once full */
+	protected static final long SEGMENT_SIZE = 1L << 28;
+	
+	/** the estimated bytes of rows held in memory before rows are spilled */
+	protected long _memoryBudget;
+	/** the folder for the spill file, null for the system temporary folder */
+	protected File _directory;
+	/** the rows held in memory, the rows before the spilled ones */
+	protected ArrayList<JdbcResultRow> _rows = new ArrayList<JdbcResultRow>();
+	/** the estimated bytes of the rows held in memory */
+	protected long _memoryBytes = 0;
+	
+	/** the spill file, null until the first row is spilled */
+	protected transient File _file;
+	protected transient OutputStream _output;
+	protected transient RandomAccessFile _randomAccessFile;
+	/** the mapped segments of the file, each mapped once it is full */
+	protected transient MappedByteBuffer[] _segments = new MappedByteBuffer[0];
+	/** the column indexes of the spilled rows, rows usually share one */
+	protected transient ArrayList<JdbcColumnIndex> _columnIndexes = new ArrayList<JdbcColumnIndex>();
+	/** the offset of each spilled row in the file */
+	protected transient long[] _offsets = new long[0];
+	protected transient int _spilledCount = 0;
+	/** the length of the file, including rows not yet flushed */
+	protected transient long _writePosition = 0;
+	/** the length of the file that has been flushed and can be read */
+	protected transient long _flushedPosition = 0;
+	/** a reusable buffer for encoding rows */
+	protected transient ByteArrayOutputStream _rowBuffer = new ByteArrayOutputStream(256);
+	protected transient DataOutputStream _rowOutput = new DataOutputStream(this._rowBuffer);
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param memoryBudget	the estimated bytes of rows to hold in memory, see JdbcResultRow.estimateSize()
+	 * @param directory		the folder for the spill file, null for the system temporary folder
+	 */
+	public JdbcSpillingResultSet(long memoryBudget, File directory)
+	{
+		this._memoryBudget = memoryBudget;
+		this._directory = directory;
+	}
+	
+	/**
+	 * Checks if rows have been written to disk
+	 * 
+	 * @return	true if some rows are held on disk
+	 */
+	public boolean isSpilled()
+	{
+		return this._spilledCount > 0;
+	}
+	
+	/**
+	 * Gets the number of rows held on disk
+	 * 
+	 * @return	the number of spilled rows
+	 */
+	public int getSpilledCount()
+	{
+		return this._spilledCount;
+	}
+	
+	/**
+	 * Gets the bytes written to the spill file
+	 * 
+	 * @return	the file length
+	 */
+	public long getSpilledBytes()
+	{
+		return this._writePosition;
+	}
+	
+	public long getMemoryBudget()
+	{
+		return this._memoryBudget;
+	}
+	
+	/**
+	 * Gets the spill file
+	 * 
+	 * @return	the file, null if no rows have been spilled
+	 */
+	public File getSpillFile()
+	{
+		return this._file;
+	}
+	
+	@Override
+	public boolean add(JdbcResultRow row)
+	{
+		
+		if(this._spilledCount == 0)
+		{
+			long size = row.estimateSize();
+			if(this._memoryBytes + size <= this._memoryBudget)
+			{
+				this._memoryBytes += size;
+				this._rows.add(row);
+				this.modCount++;
+				return true;
+			}
+		}
+		try
+		{
+			this._spill(row);
+		}
+		catch(IOException exception)
+		{
+			throw new RuntimeException("Unable to write a row to " + this._file + ": " + exception.getMessage(), exception);
+		}
+		this.modCount++;
+		return true;
+		
+	}
+	
+	@Override
+	public JdbcResultRow get(int index)
+	{
+		
+		int memoryCount = this._rows.size();
+		if(index < memoryCount)
+		{
+			return this._rows.get(index);
+		}
+		if(index >= memoryCount + this._spilledCount)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+		}
+		try
+		{
+			return this._read(index - memoryCount);
+		}
+		catch(IOException exception)
+		{
+			throw new RuntimeException("Unable to read a row from " + this._file + ": " + exception.getMessage(), exception);
+		}
+		
+	}
+	
+	@Override
+	public int size()
+	{
+		return this._rows.size() + this._spilledCount;
+	}
+	
+	@Override
+	public JdbcResultRow set(int index, JdbcResultRow row)
+	{
+		
+		this._assertInMemory();
+		JdbcResultRow previous = this._rows.set(index, row);
+		this._memoryBytes += row.estimateSize() - previous.estimateSize();
+		return previous;
+		
+	}
+	
+	@Override
+	public void add(int index, JdbcResultRow row)
+	{
+		
+		if(index == this.size())
+		{
+			this.add(row);
+			return;
+		}
+		this._assertInMemory();
+		this._rows.add(index, row);
+		this._memoryBytes += row.estimateSize();
+		this.modCount++;
+		
+	}
+	
+	@Override
+	public JdbcResultRow remove(int index)
+	{
+		
+		this._assertInMemory();
+		JdbcResultRow row = this._rows.remove(index);
+		this._memoryBytes -= row.estimateSize();
+		this.modCount++;
+		return row;
+		
+	}
+	
+	/**
+	 * Removes every row and deletes the spill file
+	 */
+	@Override
+	public void clear()
+	{
+		
+		this._rows.clear();
+		this._memoryBytes = 0;
+		this.close();
+		this.modCount++;
+		
+	}
+	
+	/**
+	 * Copies every row, spilled or not, into a plain JdbcResultSet
+	 * 
+	 * @return	the copy, a JdbcResultSet
+	 */
+	@Override
+	public Object clone()
+	{
+		return this._copy();
+	}
+	
+	/**
+	 * Estimates the heap taken by the rows held in memory, spilled rows are not counted
+	 * 
+	 * @return	the estimated size in bytes
+	 */
+	public long estimateSize()
+	{
+		return 24 + 4L * this._rows.size() + this._memoryBytes + 8L * this._offsets.length;
+	}
+	
+	/**
+	 * Deletes the spill file, dropping the spilled rows
+	 */
+	public void close()
+	{
+		
+		if(this._file == null)
+		{
+			return;
+		}
+		try
+		{
+			if(this._output != null) this._output.close();
+			if(this._randomAccessFile != null) this._randomAccessFile.close();
+		}
+		catch(IOException exception)
+		{
+			MySqlConnector.logger.debug("Error closing spill file: " + exception.getMessage());
+		}
+		// the mapped segments are only unmapped once collected, on some platforms the file stays until then
+		if(!this._file.delete())
+		{
+			MySqlConnector.logger.debug("Spill file will be deleted on exit: " + this._file);
+		}
+		this._file = null;
+		this._output = null;
+		this._randomAccessFile = null;
+		this._segments = new MappedByteBuffer[0];
+		this._columnIndexes.clear();
+		this._offsets = new long[0];
+		this._spilledCount = 0;
+		this._writePosition = 0;
+		this._flushedPosition = 0;
+		
+	}
+	
+	/**
+	 * Serializes as a plain JdbcResultSet, reading every spilled row into memory
+	 * 
+	 * @return	the rows as a JdbcResultSet
+	 * @throws ObjectStreamException
+	 */
+	protected Object writeReplace() throws ObjectStreamException
+	{
+		return this._copy();
+	}
+	
+	/**
+	 * Writes a row to the end of the spill file
+	 * 
+	 * @param row			the row
+	 * @throws IOException
+	 */
+	protected void _spill(JdbcResultRow row) throws IOException
+	{
+		
+		if(this._file == null)
+		{
+			this._file = File.createTempFile("jdbc-result-", ".spill", this._directory);
+			this._file.deleteOnExit();
+			this._output = new BufferedOutputStream(new FileOutputStream(this._file), 65536);
+		}
+		
+		this._rowBuffer.reset();
+		this._rowOutput.writeInt(this._indexOf(row.getColumnIndex()));
+		row.write(this._rowOutput);
+		this._rowOutput.flush();
+		
+		if(this._spilledCount == this._offsets.length)
+		{
+			long[] grown = new long[Math.max(1024, this._offsets.length * 2)];
+			System.arraycopy(this._offsets, 0, grown, 0, this._spilledCount);
+			this._offsets = grown;
+		}
+		this._offsets[this._spilledCount++] = this._writePosition;
+		this._rowBuffer.writeTo(this._output);
+		this._writePosition += this._rowBuffer.size();
+		
+	}
+	
+	/**
+	 * Reads a spilled row
+	 * 
+	 * @param spilledIndex	the index among the spilled rows
+	 * @return				the row
+	 * @throws IOException
+	 */
+	protected JdbcResultRow _read(int spilledIndex) throws IOException
+	{
+		
+		long start = this._offsets[spilledIndex];
+		long end = spilledIndex + 1 < this._spilledCount ? this._offsets[spilledIndex + 1] : this._writePosition;
+		if(end > this._flushedPosition)
+		{
+			this._output.flush();
+			this._flushedPosition = this._writePosition;
+		}
+		
+		byte[] bytes = new byte[(int) (end - start)];
+		int copied = 0;
+		while(copied < bytes.length)
+		{
+			long position = start + copied;
+			int segment = (int) (position / SEGMENT_SIZE);
+			int offset = (int) (position % SEGMENT_SIZE);
+			int length = (int) Math.min(bytes.length - copied, SEGMENT_SIZE - offset);
+			MappedByteBuffer mapped = this._segment(segment);
+			if(mapped != null)
+			{
+				ByteBuffer buffer = mapped.duplicate();
+				buffer.position(offset);
+				buffer.get(bytes, copied, length);
+			}
+			else
+			{
+				this._readFully(ByteBuffer.wrap(bytes, copied, length), position);
+			}
+			copied += length;
+		}
+		
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		int indexId = in.readInt();
+		return JdbcResultRow.read(in, indexId < 0 ? null : this._columnIndexes.get(indexId));
+		
+	}
+	
+	/**
+	 * Gets a mapped segment of the spill file.  A segment is only mapped once it is full, so it 
+	 * is mapped exactly once, mappings are only released when collected and remapping a growing 
+	 * segment would leave one behind on every read.
+	 * 
+	 * @param segment		the segment number
+	 * @return				the segment, null if it is not full yet and has to be read from the file
+	 * @throws IOException
+	 */
+	protected MappedByteBuffer _segment(int segment) throws IOException
+	{
+		
+		long start = segment * SEGMENT_SIZE;
+		if(start + SEGMENT_SIZE > this._flushedPosition)
+		{
+			return null;
+		}
+		if(segment >= this._segments.length)
+		{
+			MappedByteBuffer[] grown = new MappedByteBuffer[segment + 1];
+			System.arraycopy(this._segments, 0, grown, 0, this._segments.length);
+			this._segments = grown;
+		}
+		MappedByteBuffer buffer = this._segments[segment];
+		if(buffer == null)
+		{
+			buffer = this._channel().map(FileChannel.MapMode.READ_ONLY, start, SEGMENT_SIZE);
+			this._segments[segment] = buffer;
+		}
+		return buffer;
+		
+	}
+	
+	/**
+	 * Reads bytes of the spill file that are not in a mapped segment
+	 * 
+	 * @param buffer		the buffer to fill
+	 * @param position		the position in the file
+	 * @throws IOException
+	 */
+	protected void _readFully(ByteBuffer buffer, long position) throws IOException
+	{
+		
+		FileChannel channel = this._channel();
+		while(buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, position);
+			if(read < 0)
+			{
+				throw new IOException("Unexpected end of " + this._file);
+			}
+			position += read;
+		}
+		
+	}
+	
+	protected FileChannel _channel() throws IOException
+	{
+		
+		if(this._randomAccessFile == null)
+		{
+			this._randomAccessFile = new RandomAccessFile(this._file, "r");
+		}
+		return this._randomAccessFile.getChannel();
+		
+	}
+	
+	/**
+	 * Gets the id of a spilled row's column index
+	 * 
+	 * @param columns	the column index
+	 * @return			the id, -1 for rows without one
+	 */
+	protected int _indexOf(JdbcColumnIndex columns)
+	{
+		
+		if(columns == null)
+		{
+			return -1;
+		}
+		for(int i = this._columnIndexes.size() - 1; i >= 0; i--)
+		{
+			if(this._columnIndexes.get(i) == columns) return i;
+		}
+		this._columnIndexes.add(columns);
+		return this._columnIndexes.size() - 1;
+		
+	}
+	
+	protected void _assertInMemory()
+	{
+		
+		if(this._spilledCount > 0)
+		{
+			throw new UnsupportedOperationException("Rows cannot be replaced, removed or moved once rows are written to disk");
+		}
+		
+	}
+	
+	/**
+	 * Copies every row into a plain JdbcResultSet
+	 * 
+	 * @return	the copy
+	 */
+	protected JdbcResultSet _copy()
+	{
+		
+		JdbcResultSet copy = new JdbcResultSet();
+		copy.ensureCapacity(this.size());
+		for(JdbcResultRow row : this)
+		{
+			copy.add(row);
+		}
+		return copy;
+		
+	}
+	
+}
@@ -0,0 +1,435 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs MySqlConnector commands asynchronously on an executor, so independent queries can be 
+ * fanned out and run at the same time.  Each in-flight command uses its own connection, 
+ * so the connector's pool, if any, should allow at least as many connections as the 
+ * concurrency limit.  Commands are tracked until they finish, so they can be awaited or 
+ * cancelled on shutdown even when the executor is shared.
+ * 
+ * @author rockholla
+ *
+ */
+public class MySqlAsyncConnector 
+{
+	
+	/** the connector that runs the commands */
+	protected MySqlConnector _connector;
+	/** the executor that runs the commands */
+	protected ExecutorService _executor;
+	/** true if the executor was created here and should be shut down here */
+	protected boolean _ownsExecutor;
+	/** limits the number of commands running at once */
+	protected Semaphore _permits;
+	/** the commands submitted and not yet finished */
+	protected Set<Future<?>> _inFlight = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+	/** true once shutdown() has been called */
+	protected volatile boolean _shutdown = false;
+	
+	/**
+	 * Constructor, creates a thread pool with one thread per concurrent command
+	 * 
+	 * @param connector				the connector that runs the commands
+	 * @param maxConcurrentQueries	the maximum number of commands running at once
+	 */
+	public MySqlAsyncConnector(MySqlConnector connector, int maxConcurrentQueries)
+	{
+		
+		this(connector, Executors.newFixedThreadPool(maxConcurrentQueries, new DaemonThreadFactory()), maxConcurrentQueries);
+		this._ownsExecutor = true;
+		
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param connector				the connector that runs the commands
+	 * @param executor				the executor that runs the commands, any ExecutorService will do
+	 * @param maxConcurrentQueries	the maximum number of commands running at once, regardless of the executor's size
+	 */
+	public MySqlAsyncConnector(MySqlConnector connector, ExecutorService executor, int maxConcurrentQueries)
+	{
+		
+		if(maxConcurrentQueries < 1)
+		{
+			throw new IllegalArgumentException("Invalid concurrency limit: " + maxConcurrentQueries);
+		}
+		this._connector = connector;
+		this._executor = executor;
+		this._permits = new Semaphore(maxConcurrentQueries, true);
+		
+	}
+	
+	/**
+	 * Gets the connector that runs the commands
+	 * 
+	 * @return	the connector
+	 */
+	public MySqlConnector getConnector()
+	{
+		return this._connector;
+	}
+	
+	/**
+	 * Returns a result set
+	 * 
+	 * @param sql	the SQL to execute to get the result set
+	 * @return		a Future JdbcResultSet
+	 */
+	public Future<JdbcResultSet> get(final String sql)
+	{
+		
+		return this._submit(new Callable<JdbcResultSet>() {
+			public JdbcResultSet call() throws Exception
+			{
+				return _connector.get(sql);
+			}
+		});
+		
+	}
+	
+	/**
+	 * Returns the result set of a parameterized query
+	 * 
+	 * @param sql		the SQL with ? parameter markers
+	 * @param params	the parameter values
+	 * @return			a Future JdbcResultSet
+	 */
+	public Future<JdbcResultSet> get(final String sql, final Object... params)
+	{
+		
+		return this._submit(new Callable<JdbcResultSet>() {
+			public JdbcResultSet call() throws Exception
+			{
+				return _connector.get(sql, params);
+			}
+		});
+		
+	}
+	
+	/**
+	 * Returns the rows of a parameterized query as objects built by a mapper
+	 * 
+	 * @param sql		the SQL with ? parameter markers
+	 * @param mapper	builds an object from each row
+	 * @param params	the parameter values
+	 * @return			a Future of the objects, in row order
+	 */
+	public <T> Future<ArrayList<T>> getObjects(final String sql, final JdbcRowMapper<T> mapper, final Object... params)
+	{
+		
+		return this._submit(new Callable<ArrayList<T>>() {
+			public ArrayList<T> call() throws Exception
+			{
+				return _connector.getObjects(sql, mapper, params);
+			}
+		});
+		
+	}
+	
+	/**
+	 * Executes an update of a single SQL statement
+	 * 
+	 * @param sql	the SQL statement including the update
+	 * @return		a Future of the result of MySqlConnector.executeUpdate
+	 */
+	public Future<Integer> executeUpdate(final String sql)
+	{
+		
+		return this._submit(new Callable<Integer>() {
+			public Integer call() throws Exception
+			{
+				return _connector.executeUpdate(sql);
+			}
+		});
+		
+	}
+	
+	/**
+	 * Executes an update of a single parameterized SQL statement
+	 * 
+	 * @param sql		the SQL statement with ? parameter markers
+	 * @param params	the parameter values
+	 * @return			a Future of the result of MySqlConnector.executeUpdate
+	 */
+	public Future<Integer> executeUpdate(final String sql, final Object... params)
+	{
+		
+		return this._submit(new Callable<Integer>() {
+			public Integer call() throws Exception
+			{
+				return _connector.executeUpdate(sql, params);
+			}
+		});
+		
+	}
+	
+	/**
+	 * Executes a list of SQL statements as a single batch in a single transaction
+	 * 
+	 * @param batch	the SQL statements, copied when the command is submitted
+	 * @return		a Future of the total records updated per statement executed
+	 */
+	public Future<int[]> executeBatch(List<String> batch)
+	{
+		
+		final ArrayList<String> statements = new ArrayList<String>(batch);
+		return this._submit(new Callable<int[]>() {
+			public int[] call() throws Exception
+			{
+				return _connector.executeBatch(statements);
+			}
+		});
+		
+	}
+	
+	/**
+	 * Executes a parameterized SQL statement once per set of parameters, as a single batch in a single transaction
+	 * 
+	 * @param sql		the SQL statement with ? parameter markers
+	 * @param params	the parameters for each execution of the statement
+	 * @return			a Future of the total records updated per set of parameters
+	 */
+	public Future<int[]> executeBatch(final String sql, final List<Object[]> params)
+	{
+		
+		return this._submit(new Callable<int[]>() {
+			public int[] call() throws Exception
+			{
+				return _connector.executeBatch(sql, params);
+			}
+		});
+		
+	}
+	
+	/**
+	 * Executes a parameterized SQL statement once per row of parameters, committing every chunkSize rows
+	 * 
+	 * @param sql		the SQL statement with ? parameter markers
+	 * @param rows		the parameters for each execution of the statement
+	 * @param chunkSize	the number of rows per batch and commit
+	 * @return			a Future of the update count and time taken per committed chunk
+	 */
+	public Future<MySqlBatchResult> executeBatch(final String sql, final Iterable<Object[]> rows, final int chunkSize)
+	{
+		
+		return this._submit(new Callable<MySqlBatchResult>() {
+			public MySqlBatchResult call() throws Exception
+			{
+				return _connector.executeBatch(sql, rows, chunkSize);
+			}
+		});
+		
+	}
+	
+	/**
+	 * Gets the number of commands that could start right now without waiting on the concurrency limit
+	 * 
+	 * @return	the number of free command slots
+	 */
+	public int getAvailablePermits()
+	{
+		return this._permits.availablePermits();
+	}
+	
+	/**
+	 * Gets the number of commands submitted that have not finished, running or waiting
+	 * 
+	 * @return	the number of commands in flight
+	 */
+	public int getInFlightCount()
+	{
+		
+		// a finished command is removed just after its Future completes
+		int count = 0;
+		for(Future<?> future : this._inFlight)
+		{
+			if(!future.isDone()) count++;
+		}
+		return count;
+		
+	}
+	
+	/**
+	 * Stops accepting commands, commands already submitted still run.  An executor passed 
+	 * into the constructor is left running, use awaitTermination() to wait for this 
+	 * connector's commands on it.
+	 */
+	public void shutdown()
+	{
+		
+		this._shutdown = true;
+		if(this._ownsExecutor)
+		{
+			this._executor.shutdown();
+		}
+		
+	}
+	
+	/**
+	 * Stops accepting commands and cancels the commands in flight, interrupting the running 
+	 * ones.  Only this connector's commands are cancelled on an executor passed into the 
+	 * constructor.
+	 * 
+	 * @return	the number of commands cancelled
+	 */
+	public int shutdownNow()
+	{
+		
+		this.shutdown();
+		int cancelled = 0;
+		for(Future<?> future : new ArrayList<Future<?>>(this._inFlight))
+		{
+			if(future.cancel(true)) cancelled++;
+		}
+		if(this._ownsExecutor)
+		{
+			this._executor.shutdownNow();
+		}
+		return cancelled;
+		
+	}
+	
+	/**
+	 * Waits for the commands in flight to finish, normally after shutdown()
+	 * 
+	 * @param timeout	the longest time to wait
+	 * @param unit		the unit of the timeout
+	 * @return			true if every command finished, false if the timeout ran out first
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for(Future<?> future : new ArrayList<Future<?>>(this._inFlight))
+		{
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0 && !future.isDone())
+			{
+				return false;
+			}
+			try
+			{
+				future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+			}
+			catch(TimeoutException exception)
+			{
+				return false;
+			}
+			catch(ExecutionException exception)
+			{
+				// failed, but finished
+			}
+			catch(CancellationException exception)
+			{
+				// cancelled, so finished
+			}
+		}
+		return true;
+		
+	}
+	
+	/**
+	 * Submits a command, holding a permit for as long as it runs and tracking it until it is done
+	 * 
+	 * @param command	the command
+	 * @return			the Future of the command
+	 * @throws RejectedExecutionException	if the connector has been shut down
+	 */
+	protected <T> Future<T> _submit(final Callable<T> command)
+	{
+		
+		if(this._shutdown)
+		{
+			throw new RejectedExecutionException("The async connector has been shut down");
+		}
+		FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+			public T call() throws Exception
+			{
+				_permits.acquire();
+				try
+				{
+					return command.call();
+				}
+				finally
+				{
+					_permits.release();
+				}
+			}
+		}) {
+			@Override
+			protected void done()
+			{
+				_inFlight.remove(this);
+			}
+		};
+		this._inFlight.add(task);
+		try
+		{
+			this._executor.execute(task);
+		}
+		catch(RejectedExecutionException exception)
+		{
+			this._inFlight.remove(task);
+			throw exception;
+		}
+		return task;
+		
+	}
+	
+	/**
+	 * Creates named daemon threads, so an idle connector does not keep the JVM alive
+	 */
+	protected static class DaemonThreadFactory implements ThreadFactory
+	{
+		
+		private static final AtomicInteger _count = new AtomicInteger();
+		
+		public Thread newThread(Runnable runnable)
+		{
+			
+			Thread thread = new Thread(runnable, "MySqlAsyncConnector-" + _count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,206 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.util.ArrayList;
+
+/**
+ * The outcome of a chunked batch, with the update count and time taken for each committed chunk
+ * 
+ * @author rockholla
+ *
+ */
+public class MySqlBatchResult 
+{
+	
+	/**
+	 * A single committed chunk of a batch
+	 */
+	public static class Chunk
+	{
+		
+		protected int _rowCount;
+		protected int _updateCount;
+		protected long _elapsedNanos;
+		
+		public Chunk(int rowCount, int updateCount, long elapsedNanos)
+		{
+			this._rowCount = rowCount;
+			this._updateCount = updateCount;
+			this._elapsedNanos = elapsedNanos;
+		}
+		
+		/**
+		 * @return	the number of rows sent in the chunk
+		 */
+		public int getRowCount()
+		{
+			return this._rowCount;
+		}
+		
+		/**
+		 * @return	the total records updated by the chunk, -1 if the driver did not report counts, 
+		 * 			as happens with rewritten batches
+		 */
+		public int getUpdateCount()
+		{
+			return this._updateCount;
+		}
+		
+		/**
+		 * @return	the time taken to bind, execute and commit the chunk, in milliseconds
+		 */
+		public double getElapsedMillis()
+		{
+			return this._elapsedNanos / 1000000.0;
+		}
+		
+	}
+	
+	/** the committed chunks, in order */
+	protected ArrayList<Chunk> _chunks = new ArrayList<Chunk>();
+	/** the keys generated by the committed chunks, if requested */
+	protected long[] _generatedKeys = MySqlUpdateResult.NO_KEYS;
+	/** the number of keys in _generatedKeys */
+	protected int _generatedKeyCount = 0;
+	
+	public MySqlBatchResult() {}
+	
+	/**
+	 * Records a committed chunk
+	 * 
+	 * @param chunk	the chunk
+	 */
+	public void addChunk(Chunk chunk)
+	{
+		this._chunks.add(chunk);
+	}
+	
+	/**
+	 * Records keys generated by a committed chunk
+	 * 
+	 * @param generatedKeys	the keys, in order
+	 */
+	public void addGeneratedKeys(long[] generatedKeys)
+	{
+		
+		if(this._generatedKeyCount + generatedKeys.length > this._generatedKeys.length)
+		{
+			long[] grown = new long[Math.max(this._generatedKeyCount + generatedKeys.length, this._generatedKeys.length * 2)];
+			System.arraycopy(this._generatedKeys, 0, grown, 0, this._generatedKeyCount);
+			this._generatedKeys = grown;
+		}
+		System.arraycopy(generatedKeys, 0, this._generatedKeys, this._generatedKeyCount, generatedKeys.length);
+		this._generatedKeyCount += generatedKeys.length;
+		
+	}
+	
+	/**
+	 * @return	the AUTO_INCREMENT values generated by the committed chunks, in row order, 
+	 * 			empty unless keys were requested
+	 */
+	public long[] getGeneratedKeys()
+	{
+		
+		long[] generatedKeys = new long[this._generatedKeyCount];
+		System.arraycopy(this._generatedKeys, 0, generatedKeys, 0, this._generatedKeyCount);
+		return generatedKeys;
+		
+	}
+	
+	/**
+	 * @return	the committed chunks, in order
+	 */
+	public ArrayList<Chunk> getChunks()
+	{
+		return this._chunks;
+	}
+	
+	/**
+	 * @return	the number of committed chunks
+	 */
+	public int getChunkCount()
+	{
+		return this._chunks.size();
+	}
+	
+	/**
+	 * @return	the number of rows committed
+	 */
+	public long getRowCount()
+	{
+		
+		long rowCount = 0;
+		for(Chunk chunk : this._chunks)
+		{
+			rowCount += chunk.getRowCount();
+		}
+		return rowCount;
+		
+	}
+	
+	/**
+	 * @return	the total records updated, counting only chunks for which the driver reported counts
+	 */
+	public long getUpdateCount()
+	{
+		
+		long updateCount = 0;
+		for(Chunk chunk : this._chunks)
+		{
+			if(chunk.getUpdateCount() > 0) updateCount += chunk.getUpdateCount();
+		}
+		return updateCount;
+		
+	}
+	
+	/**
+	 * @return	the time taken by all chunks, in milliseconds
+	 */
+	public double getElapsedMillis()
+	{
+		
+		long elapsedNanos = 0;
+		for(Chunk chunk : this._chunks)
+		{
+			elapsedNanos += chunk._elapsedNanos;
+		}
+		return elapsedNanos / 1000000.0;
+		
+	}
+	
+	/**
+	 * @return	the throughput of the batch
+	 */
+	public double getRowsPerSecond()
+	{
+		
+		double elapsedMillis = this.getElapsedMillis();
+		return elapsedMillis <= 0 ? 0 : this.getRowCount() * 1000.0 / elapsedMillis;
+		
+	}
+	
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"%d rows in %d chunks, %d records updated, %.1fms (%.0f rows/s)", 
+				this.getRowCount(), this.getChunkCount(), this.getUpdateCount(), this.getElapsedMillis(), this.getRowsPerSecond()
+		);
+	}
+	
+}
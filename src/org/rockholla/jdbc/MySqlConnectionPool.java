@@ -0,0 +1,724 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A bounded pool of connections to a MySQL database.  Connections are borrowed, used and
+ * released back to the pool rather than being opened and closed for every command.
+ *
+ * @author rockholla
+ *
+ */
+public class MySqlConnectionPool
+{
+	
+	/** log4j logger */
+	static final Logger logger = Logger.getLogger(MySqlConnectionPool.class);
+	
+	/** the MySQL JDBC driver class name */
+	public static final String DRIVER = "com.mysql.jdbc.Driver";
+	
+	/** the JDBC URL used to open new connections */
+	protected String _url;
+	/** the number of connections the pool will try to keep open */
+	protected int _minSize = 0;
+	/** the maximum number of connections, idle and active, the pool will open */
+	protected int _maxSize = 10;
+	/** milliseconds a connection may sit idle before being closed, 0 to never evict */
+	protected long _idleTimeout = 300000;
+	/** milliseconds to wait for a connection to become available before failing */
+	protected long _borrowTimeout = 30000;
+	/** seconds to wait on a connection validation, 0 to skip validation on borrow */
+	protected int _validationTimeout = 5;
+	/** the number of prepared statements cached per connection, 0 to disable the cache */
+	protected int _statementCacheSize = 32;
+	
+	/** idle connections, most recently released first */
+	protected LinkedList<MySqlPooledConnection> _idle = new LinkedList<MySqlPooledConnection>();
+	/** connections currently borrowed */
+	protected IdentityHashMap<Connection, MySqlPooledConnection> _active = new IdentityHashMap<Connection, MySqlPooledConnection>();
+	/** the number of connections currently being opened */
+	protected int _opening = 0;
+	/** true once the pool has been closed */
+	protected boolean _closed = false;
+	/** runs the idle eviction */
+	protected Timer _evictionTimer;
+	
+	/** statistics */
+	protected long _statsStart = System.currentTimeMillis();
+	protected long _borrowCount = 0;
+	protected long _timeoutCount = 0;
+	protected long _createdCount = 0;
+	protected long _destroyedCount = 0;
+	protected long _totalWaitNanos = 0;
+	protected long _maxWaitNanos = 0;
+	
+	private static volatile boolean _driverLoaded = false;
+	
+	/**
+	 * Constructor
+	 *
+	 * @param url		the JDBC URL used to open new connections
+	 * @param minSize	the number of connections the pool will try to keep open
+	 * @param maxSize	the maximum number of connections the pool will open
+	 */
+	public MySqlConnectionPool(String url, int minSize, int maxSize)
+	{
+		
+		if(maxSize < 1 || minSize < 0 || minSize > maxSize)
+		{
+			throw new IllegalArgumentException("Invalid pool size, min: " + minSize + ", max: " + maxSize);
+		}
+		this._url = url;
+		this._minSize = minSize;
+		this._maxSize = maxSize;
+		this._scheduleEviction();
+		
+	}
+	
+	/**
+	 * Sets how long a connection may sit idle before it is closed, connections below the minimum
+	 * pool size are kept regardless
+	 *
+	 * @param idleTimeout	the idle timeout in milliseconds, 0 to never evict
+	 */
+	public synchronized void setIdleTimeout(long idleTimeout)
+	{
+		this._idleTimeout = idleTimeout;
+		this._scheduleEviction();
+	}
+	
+	public long getIdleTimeout()
+	{
+		return this._idleTimeout;
+	}
+	
+	/**
+	 * Sets how long borrow() will wait for a connection when the pool is exhausted
+	 *
+	 * @param borrowTimeout	the timeout in milliseconds
+	 */
+	public void setBorrowTimeout(long borrowTimeout)
+	{
+		this._borrowTimeout = borrowTimeout;
+	}
+	
+	public long getBorrowTimeout()
+	{
+		return this._borrowTimeout;
+	}
+	
+	/**
+	 * Sets how long to wait on validating an idle connection before handing it out
+	 *
+	 * @param validationTimeout	the timeout in seconds, 0 to skip validation on borrow
+	 */
+	public void setValidationTimeout(int validationTimeout)
+	{
+		this._validationTimeout = validationTimeout;
+	}
+	
+	public int getValidationTimeout()
+	{
+		return this._validationTimeout;
+	}
+	
+	/**
+	 * Sets the number of prepared statements kept open per pooled connection.  Statements that 
+	 * fall out of the cache are closed.
+	 * 
+	 * @param statementCacheSize	the cache size, 0 to disable the cache
+	 */
+	public void setStatementCacheSize(int statementCacheSize)
+	{
+		this._statementCacheSize = statementCacheSize;
+	}
+	
+	public int getStatementCacheSize()
+	{
+		return this._statementCacheSize;
+	}
+	
+	public int getMinSize()
+	{
+		return this._minSize;
+	}
+	
+	public int getMaxSize()
+	{
+		return this._maxSize;
+	}
+	
+	/**
+	 * Borrows a connection from the pool, opening a new one if none are idle and the pool
+	 * is below its maximum size.  Every borrowed connection must be handed back with release().
+	 *
+	 * @return	an open connection
+	 * @throws SQLException	if a connection could not be opened or none became available within the borrow timeout
+	 */
+	public Connection borrow() throws SQLException
+	{
+		return this.borrow(this._borrowTimeout);
+	}
+	
+	/**
+	 * Borrows a connection from the pool, waiting at most a given time for one to be handed back 
+	 * when the pool is at its maximum size
+	 *
+	 * @param timeout	how long to wait in milliseconds, 0 to fail at once if none is free
+	 * @return			an open connection
+	 * @throws SQLTimeoutException	if no connection became available within the timeout
+	 * @throws SQLException			if a connection could not be opened
+	 */
+	public Connection borrow(long timeout) throws SQLException
+	{
+		
+		long start = System.nanoTime();
+		long deadline = start + timeout * 1000000L;
+		
+		while(true)
+		{
+			MySqlPooledConnection pooled = null;
+			
+			synchronized(this)
+			{
+				this._assertOpen();
+				while(this._idle.isEmpty() && this._active.size() + this._opening >= this._maxSize)
+				{
+					long remaining = deadline - System.nanoTime();
+					if(remaining <= 0)
+					{
+						this._timeoutCount++;
+						throw new SQLTimeoutException("Timed out after " + timeout + "ms waiting for a pooled connection: " + this.getStats());
+					}
+					try
+					{
+						this.wait(remaining / 1000000L, (int) (remaining % 1000000L));
+					}
+					catch(InterruptedException exception)
+					{
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a pooled connection");
+					}
+					this._assertOpen();
+				}
+				if(!this._idle.isEmpty())
+				{
+					pooled = this._idle.removeFirst();
+					this._active.put(pooled.connection, pooled);
+				}
+				else
+				{
+					this._opening++;
+				}
+			}
+			
+			if(pooled == null)
+			{
+				pooled = this._open();
+			}
+			else if(!this._isValid(pooled))
+			{
+				this.invalidate(pooled.connection);
+				continue;
+			}
+			
+			long waited = System.nanoTime() - start;
+			synchronized(this)
+			{
+				this._borrowCount++;
+				this._totalWaitNanos += waited;
+				if(waited > this._maxWaitNanos) this._maxWaitNanos = waited;
+			}
+			pooled.lastUsed = System.currentTimeMillis();
+			return pooled.connection;
+		}
+		
+	}
+	
+	/**
+	 * Sets the transaction isolation level of a borrowed connection, the level the connection 
+	 * was opened with is restored when it is released
+	 *
+	 * @param connection	the borrowed connection
+	 * @param level			the isolation level, ex: Connection.TRANSACTION_READ_COMMITTED
+	 * @throws SQLException
+	 */
+	public void setTransactionIsolation(Connection connection, int level) throws SQLException
+	{
+		
+		MySqlPooledConnection pooled;
+		synchronized(this)
+		{
+			pooled = this._active.get(connection);
+		}
+		if(pooled != null && pooled.defaultIsolation == -1)
+		{
+			pooled.defaultIsolation = connection.getTransactionIsolation();
+		}
+		connection.setTransactionIsolation(level);
+		if(pooled != null)
+		{
+			pooled.isolationChanged = level != pooled.defaultIsolation;
+		}
+		
+	}
+	
+	/**
+	 * Checks if a connection is currently borrowed from this pool
+	 *
+	 * @param connection	the connection
+	 * @return				true if the connection was borrowed from this pool and not yet released
+	 */
+	public synchronized boolean isBorrowed(Connection connection)
+	{
+		return this._active.containsKey(connection);
+	}
+	
+	/**
+	 * Hands a borrowed connection back to the pool.  Any open transaction is rolled back, and
+	 * auto-commit, read-only and the isolation level are restored before the connection is made 
+	 * available again.
+	 *
+	 * @param connection	the connection to release
+	 */
+	public void release(Connection connection)
+	{
+		
+		if(connection == null) return;
+		
+		MySqlPooledConnection owner;
+		synchronized(this)
+		{
+			owner = this._active.get(connection);
+		}
+		if(owner == null)
+		{
+			logger.warn("Released a connection that does not belong to this pool, closing it");
+			this._closeConnection(connection);
+			return;
+		}
+		
+		boolean reusable;
+		try
+		{
+			if(!connection.getAutoCommit())
+			{
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			if(connection.isReadOnly())
+			{
+				connection.setReadOnly(false);
+			}
+			if(owner.isolationChanged)
+			{
+				connection.setTransactionIsolation(owner.defaultIsolation);
+				owner.isolationChanged = false;
+			}
+			connection.clearWarnings();
+			reusable = !connection.isClosed();
+		}
+		catch(SQLException exception)
+		{
+			logger.warn("Could not reset a pooled connection, discarding it: " + exception.getMessage());
+			reusable = false;
+		}
+		
+		if(!reusable)
+		{
+			this.invalidate(connection);
+			return;
+		}
+		
+		MySqlPooledConnection pooled;
+		synchronized(this)
+		{
+			pooled = this._active.remove(connection);
+			if(pooled == null) return;
+			if(!this._closed)
+			{
+				pooled.lastUsed = System.currentTimeMillis();
+				this._idle.addFirst(pooled);
+				pooled = null;
+			}
+			this.notifyAll();
+		}
+		if(pooled != null)
+		{
+			this._destroy(pooled);
+		}
+		
+	}
+	
+	/**
+	 * Prepares a statement on a borrowed connection, reusing the connection's cached statement 
+	 * for the same SQL when there is one.  Statements must be handed back with releaseStatement().
+	 * 
+	 * @param connection	the borrowed connection
+	 * @param sql			the SQL
+	 * @return				a prepared statement
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException
+	{
+		return this.prepareStatement(connection, sql, Statement.NO_GENERATED_KEYS);
+	}
+	
+	/**
+	 * Prepares a statement on a borrowed connection, reusing the connection's cached statement 
+	 * for the same SQL when there is one.  Statements must be handed back with releaseStatement().
+	 * 
+	 * @param connection		the borrowed connection
+	 * @param sql				the SQL
+	 * @param autoGeneratedKeys	Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+	 * @return					a prepared statement
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStatement(Connection connection, String sql, int autoGeneratedKeys) throws SQLException
+	{
+		
+		MySqlPooledConnection pooled;
+		synchronized(this)
+		{
+			pooled = this._active.get(connection);
+		}
+		if(pooled == null || this._statementCacheSize <= 0)
+		{
+			return connection.prepareStatement(sql, autoGeneratedKeys);
+		}
+		return pooled.prepareStatement(sql, autoGeneratedKeys, this._statementCacheSize);
+		
+	}
+	
+	/**
+	 * Hands back a statement from prepareStatement(), clearing it if it is cached or closing it otherwise
+	 * 
+	 * @param connection	the borrowed connection
+	 * @param statement		the statement
+	 * @throws SQLException
+	 */
+	public void releaseStatement(Connection connection, PreparedStatement statement) throws SQLException
+	{
+		
+		MySqlPooledConnection pooled;
+		synchronized(this)
+		{
+			pooled = this._active.get(connection);
+		}
+		if(pooled != null && pooled.isCached(statement))
+		{
+			statement.clearParameters();
+			statement.clearBatch();
+			return;
+		}
+		statement.close();
+		
+	}
+	
+	/**
+	 * Removes a borrowed connection from the pool and closes it, use for connections that
+	 * are known to be broken
+	 *
+	 * @param connection	the connection to discard
+	 */
+	public void invalidate(Connection connection)
+	{
+		
+		MySqlPooledConnection pooled;
+		synchronized(this)
+		{
+			pooled = this._active.remove(connection);
+			this.notifyAll();
+		}
+		if(pooled != null)
+		{
+			this._destroy(pooled);
+		}
+		else
+		{
+			this._closeConnection(connection);
+		}
+		
+	}
+	
+	/**
+	 * Closes idle connections that have exceeded the idle timeout, keeping at least the
+	 * minimum pool size open.  This runs periodically on its own, but may be called directly.
+	 */
+	public void evictIdle()
+	{
+		
+		ArrayList<MySqlPooledConnection> evicted = new ArrayList<MySqlPooledConnection>();
+		synchronized(this)
+		{
+			if(this._idleTimeout <= 0) return;
+			long cutoff = System.currentTimeMillis() - this._idleTimeout;
+			// oldest connections sit at the end of the idle list
+			Iterator<MySqlPooledConnection> iterator = this._idle.descendingIterator();
+			while(iterator.hasNext() && this._idle.size() + this._active.size() > this._minSize)
+			{
+				MySqlPooledConnection pooled = iterator.next();
+				if(pooled.lastUsed > cutoff) break;
+				iterator.remove();
+				evicted.add(pooled);
+			}
+		}
+		for(MySqlPooledConnection pooled : evicted)
+		{
+			this._destroy(pooled);
+		}
+		
+	}
+	
+	/**
+	 * Opens connections until the pool holds at least its minimum size
+	 *
+	 * @throws SQLException
+	 */
+	public void fill() throws SQLException
+	{
+		
+		while(true)
+		{
+			synchronized(this)
+			{
+				this._assertOpen();
+				if(this._idle.size() + this._active.size() + this._opening >= this._minSize) return;
+				this._opening++;
+			}
+			this.release(this._open().connection);
+		}
+		
+	}
+	
+	/**
+	 * Closes all idle connections and stops handing out new ones.  Connections that are still
+	 * borrowed are closed as they are released.
+	 */
+	public void close()
+	{
+		
+		ArrayList<MySqlPooledConnection> idle;
+		synchronized(this)
+		{
+			this._closed = true;
+			if(this._evictionTimer != null)
+			{
+				this._evictionTimer.cancel();
+				this._evictionTimer = null;
+			}
+			idle = new ArrayList<MySqlPooledConnection>(this._idle);
+			this._idle.clear();
+			this.notifyAll();
+		}
+		for(MySqlPooledConnection pooled : idle)
+		{
+			this._destroy(pooled);
+		}
+		
+	}
+	
+	public synchronized boolean isClosed()
+	{
+		return this._closed;
+	}
+	
+	/**
+	 * Gets a snapshot of the pool usage statistics
+	 *
+	 * @return	the statistics since the pool was created or the statistics were last reset
+	 */
+	public synchronized MySqlConnectionPoolStats getStats()
+	{
+		return new MySqlConnectionPoolStats(
+				this._active.size(), this._idle.size(), this._borrowCount, this._timeoutCount, this._createdCount, this._destroyedCount,
+				this._totalWaitNanos, this._maxWaitNanos, System.currentTimeMillis() - this._statsStart
+		);
+	}
+	
+	/**
+	 * Resets the cumulative statistics, current active and idle counts are unaffected
+	 */
+	public synchronized void resetStats()
+	{
+		this._statsStart = System.currentTimeMillis();
+		this._borrowCount = 0;
+		this._timeoutCount = 0;
+		this._createdCount = 0;
+		this._destroyedCount = 0;
+		this._totalWaitNanos = 0;
+		this._maxWaitNanos = 0;
+	}
+	
+	/**
+	 * Opens a new connection, the caller must have already reserved a slot by incrementing _opening
+	 *
+	 * @return	the new pooled connection, registered as active
+	 * @throws SQLException
+	 */
+	protected MySqlPooledConnection _open() throws SQLException
+	{
+		
+		MySqlPooledConnection pooled = null;
+		try
+		{
+			pooled = new MySqlPooledConnection(this._connect());
+		}
+		finally
+		{
+			synchronized(this)
+			{
+				this._opening--;
+				if(pooled != null)
+				{
+					this._createdCount++;
+					this._active.put(pooled.connection, pooled);
+				}
+				else
+				{
+					this.notifyAll();
+				}
+			}
+		}
+		return pooled;
+		
+	}
+	
+	/**
+	 * Opens a new physical connection to the database
+	 *
+	 * @return	the connection
+	 * @throws SQLException
+	 */
+	protected Connection _connect() throws SQLException
+	{
+		_loadDriver();
+		return DriverManager.getConnection(this._url);
+	}
+	
+	/**
+	 * Checks that an idle connection is still usable before it is handed out
+	 *
+	 * @param pooled	the pooled connection
+	 * @return			true if the connection is usable
+	 */
+	protected boolean _isValid(MySqlPooledConnection pooled)
+	{
+		
+		try
+		{
+			if(this._validationTimeout <= 0) return !pooled.connection.isClosed();
+			return pooled.connection.isValid(this._validationTimeout);
+		}
+		catch(SQLException exception)
+		{
+			return false;
+		}
+		
+	}
+	
+	protected void _destroy(MySqlPooledConnection pooled)
+	{
+		
+		synchronized(this)
+		{
+			this._destroyedCount++;
+		}
+		this._closeConnection(pooled.connection);
+		
+	}
+	
+	protected void _closeConnection(Connection connection)
+	{
+		
+		try
+		{
+			if(!connection.isClosed()) connection.close();
+		}
+		catch(SQLException exception)
+		{
+			logger.warn("Error closing pooled connection: " + exception.getMessage());
+		}
+		
+	}
+	
+	protected void _assertOpen() throws SQLException
+	{
+		if(this._closed)
+		{
+			throw new SQLException("The connection pool has been closed");
+		}
+	}
+	
+	/**
+	 * (Re)schedules the idle eviction to run at half the idle timeout
+	 */
+	protected synchronized void _scheduleEviction()
+	{
+		
+		if(this._evictionTimer != null)
+		{
+			this._evictionTimer.cancel();
+			this._evictionTimer = null;
+		}
+		if(this._idleTimeout <= 0 || this._closed) return;
+		
+		long period = Math.max(1000, this._idleTimeout / 2);
+		this._evictionTimer = new Timer("MySqlConnectionPool-eviction", true);
+		this._evictionTimer.schedule(new TimerTask() {
+			@Override
+			public void run()
+			{
+				evictIdle();
+			}
+		}, period, period);
+		
+	}
+	
+	private static void _loadDriver() throws SQLException
+	{
+		
+		if(_driverLoaded) return;
+		try
+		{
+			Class.forName(DRIVER);
+			_driverLoaded = true;
+		}
+		catch(ClassNotFoundException exception)
+		{
+			throw new SQLException("MySQL JDBC driver not found: " + DRIVER, exception);
+		}
+		
+	}
+	
+}
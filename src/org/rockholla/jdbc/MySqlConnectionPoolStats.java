@@ -0,0 +1,141 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+/**
+ * A snapshot of MySqlConnectionPool usage, for sizing the pool
+ *
+ * @author rockholla
+ *
+ */
+public class MySqlConnectionPoolStats
+{
+	
+	protected int _active;
+	protected int _idle;
+	protected long _borrowCount;
+	protected long _timeoutCount;
+	protected long _createdCount;
+	protected long _destroyedCount;
+	protected long _totalWaitNanos;
+	protected long _maxWaitNanos;
+	protected long _elapsedMillis;
+	
+	public MySqlConnectionPoolStats(int active, int idle, long borrowCount, long timeoutCount, long createdCount, long destroyedCount, long totalWaitNanos, long maxWaitNanos, long elapsedMillis)
+	{
+		this._active = active;
+		this._idle = idle;
+		this._borrowCount = borrowCount;
+		this._timeoutCount = timeoutCount;
+		this._createdCount = createdCount;
+		this._destroyedCount = destroyedCount;
+		this._totalWaitNanos = totalWaitNanos;
+		this._maxWaitNanos = maxWaitNanos;
+		this._elapsedMillis = elapsedMillis;
+	}
+	
+	/**
+	 * @return	the number of connections currently borrowed
+	 */
+	public int getActive()
+	{
+		return this._active;
+	}
+	
+	/**
+	 * @return	the number of open connections waiting to be borrowed
+	 */
+	public int getIdle()
+	{
+		return this._idle;
+	}
+	
+	/**
+	 * @return	the number of successful borrows
+	 */
+	public long getBorrowCount()
+	{
+		return this._borrowCount;
+	}
+	
+	/**
+	 * @return	the number of borrows that gave up waiting for a connection
+	 */
+	public long getTimeoutCount()
+	{
+		return this._timeoutCount;
+	}
+	
+	/**
+	 * @return	the number of connections opened
+	 */
+	public long getCreatedCount()
+	{
+		return this._createdCount;
+	}
+	
+	/**
+	 * @return	the number of connections closed, evicted or discarded
+	 */
+	public long getDestroyedCount()
+	{
+		return this._destroyedCount;
+	}
+	
+	/**
+	 * @return	the average time a borrow took to get a connection, in milliseconds
+	 */
+	public double getAverageWaitMillis()
+	{
+		return this._borrowCount == 0 ? 0 : this._totalWaitNanos / 1000000.0 / this._borrowCount;
+	}
+	
+	/**
+	 * @return	the longest time a borrow took to get a connection, in milliseconds
+	 */
+	public double getMaxWaitMillis()
+	{
+		return this._maxWaitNanos / 1000000.0;
+	}
+	
+	/**
+	 * @return	the average borrow rate over the statistics period
+	 */
+	public double getBorrowsPerSecond()
+	{
+		return this._elapsedMillis <= 0 ? 0 : this._borrowCount * 1000.0 / this._elapsedMillis;
+	}
+	
+	/**
+	 * @return	the length of the statistics period, in milliseconds
+	 */
+	public long getElapsedMillis()
+	{
+		return this._elapsedMillis;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"active=%d, idle=%d, borrows=%d (%.1f/s), timeouts=%d, created=%d, destroyed=%d, avgWait=%.2fms, maxWait=%.2fms",
+				this._active, this._idle, this._borrowCount, this.getBorrowsPerSecond(), this._timeoutCount,
+				this._createdCount, this._destroyedCount, this.getAverageWaitMillis(), this.getMaxWaitMillis()
+		);
+	}
+	
+}
@@ -16,17 +16,31 @@
 
 package org.rockholla.jdbc;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.URLEncoder;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
+import org.rockholla.file.CsvRowIterator;
+import org.rockholla.file.FileUtility;
 
 /**
  * A connector to a MySQL database
@@ -54,9 +68,45 @@ public class MySqlConnector
 	/** Optional: used to defined production vs. dev, etc. */
 	public String environment;
 	
-	/** the java.sql.Connection */
+	/** additional MySQL driver properties added to the connection URL */
+	protected LinkedHashMap<String, String> _connectionProperties = new LinkedHashMap<String, String>();
+	
+	/** the java.sql.Connection used by _connect and _disconnnect */
 	protected Connection _connection;
 	
+	/** the connection pool, null if each command opens its own connection */
+	protected MySqlConnectionPool _pool;
+	
+	/** true if the pool was created here and should be closed here */
+	protected boolean _ownsPool = false;
+	
+	/** the read replicas, null if reads go to the primary */
+	protected MySqlReplicaSet _replicas;
+	
+	/** true if the replica set was created here and should be closed here */
+	protected boolean _ownsReplicas = false;
+	
+	/** how long a thread's reads stay on the primary after it writes, in milliseconds */
+	protected long _readYourWritesWindow = 0;
+	
+	/** when the current thread last wrote through this connector */
+	protected ThreadLocal<Long> _lastWrite = new ThreadLocal<Long>();
+	
+	/** collects the timings of commands, null if they are not recorded */
+	protected MySqlQueryMetrics _metrics;
+	
+	/** the query result cache, null if results are not cached */
+	protected MySqlQueryCache _queryCache;
+	
+	/** the estimated bytes of rows getSpilling() holds in memory before spilling to disk, 0 to keep every row in memory */
+	protected long _resultMemoryBudget = 0;
+	
+	/** the folder for spilled results, null for the system temporary folder */
+	protected File _spillDirectory;
+	
+	/** the fetch size used for streamed queries, Integer.MIN_VALUE streams row by row */
+	protected int _streamingFetchSize = Integer.MIN_VALUE;
+	
 	/** a list of SQL commands, queue */
 	protected ArrayList<String> _batch = new ArrayList<String>();
 	
@@ -133,265 +183,1886 @@ public class MySqlConnector
 	}
 	
 	/**
-	 * The main connection, will run automatically before starting a command or series of related commands
+	 * Sets a MySQL driver property on the connection URL, ex: useCompression=true.  Properties 
+	 * must be set before enableConnectionPool, pooled connections keep the URL they were created with.
 	 * 
-	 * @throws SQLException
-	 * @throws ClassNotFoundException
+	 * @param name	the property name
+	 * @param value	the property value, null to remove the property
+	 */
+	public void setConnectionProperty(String name, String value)
+	{
+		
+		if(value == null)
+		{
+			this._connectionProperties.remove(name);
+		}
+		else
+		{
+			this._connectionProperties.put(name, value);
+		}
+		
+	}
+	
+	/**
+	 * Gets a MySQL driver property set on the connection URL
+	 * 
+	 * @param name	the property name
+	 * @return		the property value, null if not set
+	 */
+	public String getConnectionProperty(String name)
+	{
+		return this._connectionProperties.get(name);
+	}
+	
+	/**
+	 * Has the driver prepare statements on the server rather than in the client.  Server-side 
+	 * prepares pay off for statements that are executed many times on the same connection, 
+	 * as with a connection pool.
+	 * 
+	 * @param useServerPrepStmts	true to use server-side prepared statements
+	 */
+	public void setUseServerPrepStmts(boolean useServerPrepStmts)
+	{
+		this.setConnectionProperty("useServerPrepStmts", String.valueOf(useServerPrepStmts));
+	}
+	
+	/**
+	 * Has the driver rewrite batches of parameterized INSERTs into multi-row INSERT statements, 
+	 * sending a chunk in a few round trips instead of one per row.  Rewritten batches do not 
+	 * report per-row update counts.
+	 * 
+	 * @param rewriteBatchedStatements	true to rewrite batched statements
+	 */
+	public void setRewriteBatchedStatements(boolean rewriteBatchedStatements)
+	{
+		this.setConnectionProperty("rewriteBatchedStatements", String.valueOf(rewriteBatchedStatements));
+	}
+	
+	/**
+	 * Sets the fetch size used by getCursor and streamed gets.  The default, Integer.MIN_VALUE, has 
+	 * the MySQL driver stream rows one at a time; a positive size requires useCursorFetch=true on 
+	 * the connection and fetches that many rows per round trip.
+	 * 
+	 * @param fetchSize	the fetch size
+	 */
+	public void setStreamingFetchSize(int fetchSize)
+	{
+		this._streamingFetchSize = fetchSize;
+	}
+	
+	public int getStreamingFetchSize()
+	{
+		return this._streamingFetchSize;
+	}
+	
+	/**
+	 * Enables a connection pool for this connector, so commands reuse open connections instead of
+	 * connecting and disconnecting each time
+	 * 
+	 * @param minSize	the number of connections the pool will try to keep open
+	 * @param maxSize	the maximum number of connections the pool will open
+	 * @return			the new pool, for further configuration
 	 * @throws UnsupportedEncodingException 
 	 */
-	protected void _connect() throws SQLException, ClassNotFoundException, UnsupportedEncodingException 
+	public MySqlConnectionPool enableConnectionPool(int minSize, int maxSize) throws UnsupportedEncodingException
 	{
-
-		if(this._connection == null || this._connection.isClosed()) 
+		
+		this.setConnectionPool(new MySqlConnectionPool(this.getConnectionUrl(), minSize, maxSize));
+		this._ownsPool = true;
+		return this._pool;
+		
+	}
+	
+	/**
+	 * Sets the connection pool used by this connector, allows a single pool to be shared by several connectors
+	 * 
+	 * @param pool	the connection pool, or null to go back to connecting for each command
+	 */
+	public void setConnectionPool(MySqlConnectionPool pool)
+	{
+		this._pool = pool;
+		this._ownsPool = false;
+	}
+	
+	/**
+	 * Gets the connection pool used by this connector
+	 * 
+	 * @return	the connection pool, null if pooling is not enabled
+	 */
+	public MySqlConnectionPool getConnectionPool()
+	{
+		return this._pool;
+	}
+	
+	/**
+	 * Closes the connection pool and read replicas created by this connector, if any, and their 
+	 * idle connections.  A pool or replica set passed in with setConnectionPool() or 
+	 * setReplicaSet() may be shared, so it is left open for its owner to close.
+	 */
+	public void close()
+	{
+		
+		if(this._pool != null && this._ownsPool)
+		{
+			this._pool.close();
+		}
+		if(this._replicas != null && this._ownsReplicas)
 		{
-			Class.forName("com.mysql.jdbc.Driver");
-			this._connection = DriverManager.getConnection(
-					"jdbc:mysql://" + this._host + ":" + this._port + (this._database != null ? "/" + URLEncoder.encode(this._database, "UTF-8") : "") + "?user=" + URLEncoder.encode(this._username, "UTF-8") + "&password=" + URLEncoder.encode(this._password, "UTF-8")
-			);
+			this._replicas.close();
 		}
 		
 	}
 	
 	/**
-	 * Disconnects from the database, run after each command or series of commands
+	 * Adds a read replica of this connector's database, reached with the same database, 
+	 * credentials and connection properties.  Once replicas are added, get() and getCursor() 
+	 * read from them while updates and batches go to the primary.  See setReadYourWrites() to 
+	 * keep a thread's reads on the primary after it writes.
 	 * 
-	 * @throws MySqlConnectorException
+	 * @param host		the replica host name
+	 * @param port		the replica port
+	 * @param minSize	the number of connections the replica's pool will try to keep open
+	 * @param maxSize	the maximum number of connections the replica's pool will open
+	 * @return			the replica's pool, for further configuration
+	 * @throws UnsupportedEncodingException
 	 */
-	protected void _disconnnect() throws MySqlConnectorException 
+	public MySqlConnectionPool addReadReplica(String host, int port, int minSize, int maxSize) throws UnsupportedEncodingException
 	{
 		
-		try 
+		MySqlConnectionPool pool = new MySqlConnectionPool(this.getConnectionUrl(host, port), minSize, maxSize);
+		synchronized(this)
 		{
-			if(this._connection != null && !this._connection.isClosed()) 
+			if(this._replicas == null)
 			{
-				this._connection.close();
+				this._replicas = new MySqlReplicaSet(MySqlReplicaSet.ROUND_ROBIN);
+				this._ownsReplicas = true;
 			}
-			this._connection = null;
-		} 
-		catch(Exception exception) 
-		{
-			throw new MySqlConnectorException(exception);
 		}
+		this._replicas.addReplica(host + ":" + port, pool);
+		return pool;
 		
 	}
 	
 	/**
-	 * Adds a SQL statement to the local batch, queue
+	 * Sets the read replicas, allows a replica set with its own routing strategy and health 
+	 * checks to be shared by several connectors
 	 * 
-	 * @param sql	the SQL statement
+	 * @param replicas	the replicas, or null to send reads to the primary
 	 */
-	public void addToBatch(String sql) 
+	public void setReplicaSet(MySqlReplicaSet replicas)
 	{
-		this._batch.add(sql);
+		this._replicas = replicas;
+		this._ownsReplicas = false;
 	}
 	
 	/**
-	 * Removes all statements from the local batch, queue
+	 * Gets the read replicas
 	 * 
+	 * @return	the replicas, null if reads go to the primary
 	 */
-	public void clearBatch() 
+	public MySqlReplicaSet getReplicaSet()
 	{
-		this._batch.clear();
+		return this._replicas;
 	}
 	
 	/**
-	 * Gets the number of pending SQL statements in the local batch, queue
+	 * Keeps a thread's reads on the primary for a while after it writes, so that it sees its own 
+	 * writes even if the replicas lag behind
 	 * 
-	 * @return	the number of pending SQL statements
+	 * @param window	the time in milliseconds, 0 to always read from the replicas
 	 */
-	public int getBatchCount() 
+	public void setReadYourWrites(long window)
 	{
-		return this._batch.size();
+		this._readYourWritesWindow = window;
+	}
+	
+	public long getReadYourWrites()
+	{
+		return this._readYourWritesWindow;
 	}
 	
 	/**
-	 * Executes the local batch, queue of SQL statements
+	 * Sets how many bytes of rows, as estimated by JdbcResultRow.estimateSize(), a result from 
+	 * getSpilling() holds in memory.  Rows past the budget are written to a temporary file, close() 
+	 * the result once read to delete the file.
 	 * 
-	 * @return Array total records updated per statement executed
-	 * @throws MySqlConnectorException
+	 * @param bytes		the budget, 0 to keep every row in memory
+	 * @param directory	the folder for spill files, null for the system temporary folder
 	 */
-	public int[] executeBatch() throws MySqlConnectorException 
+	public void setResultMemoryBudget(long bytes, File directory)
 	{
 		
-		int[] updateCounts = {};
-		Statement statement = null;
+		this._resultMemoryBudget = bytes;
+		this._spillDirectory = directory;
 		
-		try 
-		{
-			this._connect();
-			
-			statement = this._connection.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_UPDATABLE);
-			this._connection.setAutoCommit(false);
-			for(String sql : this._batch) 
-			{
-				statement.addBatch(sql);
-			}
-			updateCounts = statement.executeBatch();
-			this._connection.commit();
-			
-			statement.close();
-			statement = null;
-			this._disconnnect();
-			logger.info("SUCCESSFULLY EXECUTED MYSQLCONNECTOR BATCH");
-		} 
-		catch(Exception exception) 
+	}
+	
+	/**
+	 * Gets the bytes of rows a result holds in memory before spilling to disk
+	 * 
+	 * @return	the budget, 0 if every row is kept in memory
+	 */
+	public long getResultMemoryBudget()
+	{
+		return this._resultMemoryBudget;
+	}
+	
+	/**
+	 * Sets a cache for the results of get(), results are cached until they expire or an update run 
+	 * through this connector touches a table they were read from.  Updates made outside of the 
+	 * connector are not seen by the cache.
+	 * 
+	 * @param queryCache	the cache, may be shared by connectors to the same database, null to stop caching
+	 */
+	public void setQueryCache(MySqlQueryCache queryCache)
+	{
+		this._queryCache = queryCache;
+	}
+	
+	/**
+	 * Gets the query result cache
+	 * 
+	 * @return	the cache, null if results are not cached
+	 */
+	public MySqlQueryCache getQueryCache()
+	{
+		return this._queryCache;
+	}
+	
+	/**
+	 * Sets where the timings of commands run through this connector are recorded, grouped by 
+	 * the shape of their SQL, and slow queries logged
+	 * 
+	 * @param metrics	the metrics, may be shared by connectors, null to stop recording
+	 */
+	public void setQueryMetrics(MySqlQueryMetrics metrics)
+	{
+		this._metrics = metrics;
+	}
+	
+	/**
+	 * Gets the command timings
+	 * 
+	 * @return	the metrics, null if timings are not recorded
+	 */
+	public MySqlQueryMetrics getQueryMetrics()
+	{
+		return this._metrics;
+	}
+	
+	/**
+	 * Starts timing a command
+	 * 
+	 * @param sql	the SQL of the command
+	 * @return		the sample to fill in as the command runs, hand it to _recordSample when done, 
+	 * 				a shared sample that records nothing if metrics are off
+	 */
+	protected MySqlQueryMetrics.Sample _startSample(String sql)
+	{
+		return this._metrics == null ? MySqlQueryMetrics.Sample.NONE : new MySqlQueryMetrics.Sample(sql);
+	}
+	
+	/**
+	 * Records a finished command if metrics are enabled
+	 * 
+	 * @param sample	the command's sample
+	 */
+	protected void _recordSample(MySqlQueryMetrics.Sample sample)
+	{
+		
+		MySqlQueryMetrics metrics = this._metrics;
+		if(metrics != null && sample != MySqlQueryMetrics.Sample.NONE)
 		{
-			try 
-			{
-				this._connection.rollback();
-				statement.close();
-				statement = null;
-				this._disconnnect();
-				throw new MySqlConnectorException("Error in batch SQL: " + exception.getMessage() + "\n" + this.getBatch(), exception);
-			} 
-			catch(Exception exception1) 
-			{
-				throw new MySqlConnectorException("Error in batch SQL: " + exception1.getMessage() + "\n" + this.getBatch(), exception1);
-			}
+			metrics.record(sample);
 		}
 		
-		this._batch.clear();
-		return updateCounts;
+	}
+	
+	/**
+	 * Invalidates cached results read from the tables an update writes to
+	 * 
+	 * @param sql	the SQL of the update
+	 */
+	protected void _invalidateQueryCache(String sql)
+	{
+		
+		if(this._queryCache != null)
+		{
+			this._queryCache.invalidate(sql);
+		}
 		
 	}
 	
 	/**
-	 * Executes an update of a single SQL statement
+	 * Records that the current thread wrote through this connector, run after every update
 	 * 
-	 * @param sql	the SQL statement including the update
-	 * @return		the total records updated
-	 * @throws MySqlConnectorException
+	 * @param sql	the SQL of the update
 	 */
-	public int executeUpdate(String sql) throws MySqlConnectorException 
+	protected void _afterWrite(String sql)
 	{
 		
-		Statement statement = null;
-		int newId = -1;
+		this._invalidateQueryCache(sql);
+		if(this._replicas != null && this._readYourWritesWindow > 0)
+		{
+			this._lastWrite.set(System.currentTimeMillis());
+		}
 		
-		try 
+	}
+	
+	/**
+	 * Gets the JDBC URL for this connector's database
+	 * 
+	 * @return	the JDBC URL
+	 * @throws UnsupportedEncodingException
+	 */
+	public String getConnectionUrl() throws UnsupportedEncodingException
+	{
+		return this.getConnectionUrl(this._host, this._port);
+	}
+	
+	/**
+	 * Gets the JDBC URL for this connector's database on a particular server, ex: a replica
+	 * 
+	 * @param host	the host name
+	 * @param port	the port
+	 * @return		the JDBC URL
+	 * @throws UnsupportedEncodingException
+	 */
+	public String getConnectionUrl(String host, int port) throws UnsupportedEncodingException
+	{
+		
+		StringBuilder url = new StringBuilder("jdbc:mysql://" + host + ":" + port + (this._database != null ? "/" + URLEncoder.encode(this._database, "UTF-8") : "") + "?user=" + URLEncoder.encode(this._username, "UTF-8") + "&password=" + URLEncoder.encode(this._password, "UTF-8"));
+		for(Map.Entry<String, String> property : this._connectionProperties.entrySet())
 		{
-			this._connect();
-			
-			statement = this._connection.createStatement();
-			statement.executeUpdate(sql);
-			ResultSet resultSet = statement.executeQuery("SELECT LAST_INSERT_ID()");
-			while(resultSet.next()) 
-			{
-				newId = resultSet.getInt(1);
-			}
-			statement.close();
-			statement = null;
-			this._disconnnect();
-			
-			return newId;
-			
-		} 
-		catch(Exception exception) 
+			url.append("&").append(URLEncoder.encode(property.getKey(), "UTF-8")).append("=").append(URLEncoder.encode(property.getValue(), "UTF-8"));
+		}
+		return url.toString();
+		
+	}
+	
+	/**
+	 * Gets a connection for a single command or series of related commands, borrowed from the 
+	 * pool if pooling is enabled.  Each connection must be handed back with _releaseConnection.
+	 * 
+	 * @return	an open connection
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 * @throws UnsupportedEncodingException
+	 */
+	protected Connection _getConnection() throws SQLException, ClassNotFoundException, UnsupportedEncodingException
+	{
+		
+		if(this._pool != null)
 		{
-			try 
-			{
-				statement.close();
-				statement = null;
-				this._disconnnect();
-				throw new MySqlConnectorException(exception);
-			} 
-			catch(Exception exception1) 
-			{
-				throw new MySqlConnectorException(exception);
-			}
+			return this._pool.borrow();
 		}
+		Class.forName(MySqlConnectionPool.DRIVER);
+		return DriverManager.getConnection(this.getConnectionUrl());
 		
 	}
 	
 	/**
-	 * Returns a result set
+	 * Begins a transaction on a connection of its own, see MySqlTransaction
 	 * 
-	 * @param sql	the SQL to execute to get the result set
-	 * @return		a JdbcResultSet containing JdbcResultRows
+	 * @return	the open transaction
 	 * @throws MySqlConnectorException
 	 */
-	public JdbcResultSet get(String sql) throws MySqlConnectorException 
+	public MySqlTransaction beginTransaction() throws MySqlConnectorException
+	{
+		return this.beginTransaction(-1, false);
+	}
+	
+	/**
+	 * Begins a transaction on a connection of its own.  A read-only transaction may be run on a 
+	 * read replica, and lets the server skip the bookkeeping needed for writes.
+	 * 
+	 * @param isolation	the isolation level, ex: Connection.TRANSACTION_READ_COMMITTED, -1 to keep the connection's level
+	 * @param readOnly	true if the transaction will only read
+	 * @return			the open transaction
+	 * @throws MySqlConnectorException
+	 */
+	public MySqlTransaction beginTransaction(int isolation, boolean readOnly) throws MySqlConnectorException
 	{
 		
-		JdbcResultSet jdbcResultSet = new JdbcResultSet();
-		Statement statement = null;
-		ResultSet resultSet = null;
+		Connection connection = null;
 		
 		try 
 		{
-			this._connect();
-			
-			statement = this._connection.createStatement();
-			resultSet = statement.executeQuery(sql);
-			
-			ResultSetMetaData metaData = resultSet.getMetaData();
-			int columnCount = metaData.getColumnCount();
-			ArrayList<String> columnNames = new ArrayList<String>();
-			for(int i = 1; i <= columnCount; i++) 
+			connection = readOnly ? this._getReadConnection() : this._getConnection();
+			connection.setAutoCommit(false);
+			if(isolation >= 0)
 			{
-				columnNames.add(metaData.getColumnName(i));
+				MySqlConnectionPool pool = this._poolFor(connection);
+				if(pool != null) pool.setTransactionIsolation(connection, isolation);
+				else connection.setTransactionIsolation(isolation);
 			}
-			
-			while(resultSet.next()) 
+			if(readOnly)
 			{
-				JdbcResultRow jdbcResultRow = new JdbcResultRow();
-				int i = 1;
-				for(String columnName : columnNames) 
-				{
-					try
-					{
-						jdbcResultRow.put(columnName, resultSet.getObject(columnName));
-					}
-					catch(Exception exception)
-					{
-						jdbcResultRow.put(String.valueOf(i), resultSet.getObject(i));
-					}
-					jdbcResultSet.add(jdbcResultRow);
-					i++;
-				}
+				connection.setReadOnly(true);
 			}
-			
-			resultSet.close();
-			resultSet = null;
-			statement.close();
-			statement = null;
-			this._disconnnect();
+			return new MySqlTransaction(this, connection, readOnly);
 		} 
 		catch(Exception exception) 
 		{
-			try 
-			{
-				resultSet.close();
-				resultSet = null;
-				statement.close();
-				statement = null;
-				this._disconnnect();
-				throw new MySqlConnectorException(exception);
-			} 
-			catch(Exception exception1) 
-			{
-				throw new MySqlConnectorException(exception);
-			}
+			this._releaseConnection(connection);
+			throw new MySqlConnectorException(exception);
 		}
-			
-		return jdbcResultSet;
 		
 	}
 	
 	/**
-	 * Gets the entire batch of SQL statements as a single SQL string
+	 * Gets a connection for a read, borrowed from a replica when there are replicas.  Reads go to 
+	 * the primary when no replica is available or the thread wrote within the read-your-writes window.
 	 * 
-	 * @return	a SQL string
+	 * @return	an open connection, to be handed back with _releaseConnection
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 * @throws UnsupportedEncodingException
 	 */
-	public String getBatch() 
+	protected Connection _getReadConnection() throws SQLException, ClassNotFoundException, UnsupportedEncodingException
+	{
+		
+		MySqlReplicaSet replicas = this._replicas;
+		if(replicas != null)
+		{
+			Long lastWrite = this._readYourWritesWindow > 0 ? this._lastWrite.get() : null;
+			if(lastWrite == null || System.currentTimeMillis() - lastWrite.longValue() > this._readYourWritesWindow)
+			{
+				Connection connection = replicas.borrow();
+				if(connection != null)
+				{
+					return connection;
+				}
+			}
+		}
+		return this._getConnection();
+		
+	}
+	
+	/**
+	 * Gets the pool a connection was borrowed from
+	 * 
+	 * @param connection	the connection
+	 * @return				the primary or replica pool, null if the connection is not pooled
+	 */
+	protected MySqlConnectionPool _poolFor(Connection connection)
+	{
+		
+		if(this._replicas != null)
+		{
+			MySqlConnectionPool pool = this._replicas.getPool(connection);
+			if(pool != null)
+			{
+				return pool;
+			}
+		}
+		return this._pool;
+		
+	}
+	
+	/**
+	 * Hands back a connection from _getConnection or _getReadConnection, returning it to its pool or closing it
+	 * 
+	 * @param connection	the connection, may be null
+	 */
+	protected void _releaseConnection(Connection connection)
+	{
+		
+		if(connection == null)
+		{
+			return;
+		}
+		MySqlConnectionPool pool = this._poolFor(connection);
+		if(pool != null)
+		{
+			pool.release(connection);
+			return;
+		}
+		try 
+		{
+			if(!connection.isClosed()) 
+			{
+				connection.close();
+			}
+		} 
+		catch(SQLException exception) 
+		{
+			logger.warn("Error closing connection: " + exception.getMessage());
+		}
+		
+	}
+	
+	/**
+	 * Turns auto-commit back on once a transaction on a connection has been committed or rolled 
+	 * back, so the pool does not have to roll back and reset it again when it is handed back
+	 * 
+	 * @param connection	the connection, with nothing left to commit
+	 */
+	protected static void _restoreAutoCommit(Connection connection)
+	{
+		
+		try 
+		{
+			connection.setAutoCommit(true);
+		} 
+		catch(SQLException exception) 
+		{
+			logger.debug("Could not restore auto-commit: " + exception.getMessage());
+		}
+		
+	}
+	
+	/**
+	 * Closes a connection that may be in an unknown state instead of handing it back to its pool
+	 * 
+	 * @param connection	the connection, may be null
+	 */
+	protected void _discardConnection(Connection connection)
+	{
+		
+		if(connection == null)
+		{
+			return;
+		}
+		MySqlConnectionPool pool = this._poolFor(connection);
+		if(pool != null)
+		{
+			pool.invalidate(connection);
+			return;
+		}
+		this._releaseConnection(connection);
+		
+	}
+	
+	/**
+	 * The main connection, will run automatically before starting a command or series of related commands
+	 * 
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 * @throws UnsupportedEncodingException 
+	 */
+	protected void _connect() throws SQLException, ClassNotFoundException, UnsupportedEncodingException 
+	{
+		
+		if(this._connection == null || this._connection.isClosed()) 
+		{
+			this._connection = this._getConnection();
+		}
+		
+	}
+	
+	/**
+	 * Disconnects from the database, run after each command or series of commands
+	 * 
+	 * @throws MySqlConnectorException
+	 */
+	protected void _disconnnect() throws MySqlConnectorException 
+	{
+		
+		try 
+		{
+			this._releaseConnection(this._connection);
+			this._connection = null;
+		} 
+		catch(Exception exception) 
+		{
+			throw new MySqlConnectorException(exception);
+		}
+		
+	}
+	
+	/**
+	 * Closes a statement and/or result set, ignoring errors
+	 * 
+	 * @param statement	the statement, may be null
+	 * @param resultSet	the result set, may be null
+	 */
+	protected static void _close(Statement statement, ResultSet resultSet)
+	{
+		
+		try 
+		{
+			if(resultSet != null) resultSet.close();
+		} 
+		catch(SQLException exception) 
+		{
+			logger.debug("Error closing result set: " + exception.getMessage());
+		}
+		try 
+		{
+			if(statement != null) statement.close();
+		} 
+		catch(SQLException exception) 
+		{
+			logger.debug("Error closing statement: " + exception.getMessage());
+		}
+		
+	}
+	
+	/**
+	 * Prepares a statement, taken from the pooled connection's statement cache when pooling is enabled
+	 * 
+	 * @param connection	the connection from _getConnection
+	 * @param sql			the SQL with ? parameter markers
+	 * @return				a prepared statement, to be handed back with _releaseStatement
+	 * @throws SQLException
+	 */
+	protected PreparedStatement _prepareStatement(Connection connection, String sql) throws SQLException
+	{
+		return this._prepareStatement(connection, sql, Statement.NO_GENERATED_KEYS);
+	}
+	
+	/**
+	 * Prepares a statement, taken from the pooled connection's statement cache when pooling is enabled
+	 * 
+	 * @param connection		the connection from _getConnection
+	 * @param sql				the SQL with ? parameter markers
+	 * @param autoGeneratedKeys	Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+	 * @return					a prepared statement, to be handed back with _releaseStatement
+	 * @throws SQLException
+	 */
+	protected PreparedStatement _prepareStatement(Connection connection, String sql, int autoGeneratedKeys) throws SQLException
+	{
+		
+		MySqlConnectionPool pool = this._poolFor(connection);
+		if(pool != null)
+		{
+			return pool.prepareStatement(connection, sql, autoGeneratedKeys);
+		}
+		return connection.prepareStatement(sql, autoGeneratedKeys);
+		
+	}
+	
+	/**
+	 * Hands back a statement from _prepareStatement, closing its result set and either returning 
+	 * the statement to the cache or closing it
+	 * 
+	 * @param connection	the connection the statement was prepared on
+	 * @param statement		the statement, may be null
+	 * @param resultSet		the result set, may be null
+	 */
+	protected void _releaseStatement(Connection connection, PreparedStatement statement, ResultSet resultSet)
+	{
+		
+		MySqlConnectionPool pool = statement == null ? null : this._poolFor(connection);
+		if(pool == null)
+		{
+			_close(statement, resultSet);
+			return;
+		}
+		_close(null, resultSet);
+		try 
+		{
+			pool.releaseStatement(connection, statement);
+		} 
+		catch(SQLException exception) 
+		{
+			logger.debug("Error releasing statement: " + exception.getMessage());
+		}
+		
+	}
+	
+	/**
+	 * Sets the parameters of a prepared statement, in order
+	 * 
+	 * @param statement	the prepared statement
+	 * @param params	the parameter values, java.util.Date values are sent as timestamps
+	 * @throws SQLException
+	 */
+	protected static void _bindParameters(PreparedStatement statement, Object[] params) throws SQLException
+	{
+		
+		if(params == null)
+		{
+			return;
+		}
+		for(int i = 0; i < params.length; i++)
+		{
+			Object param = params[i];
+			if(param == null)
+			{
+				statement.setNull(i + 1, Types.NULL);
+			}
+			else if(param instanceof Date && !(param instanceof java.sql.Date || param instanceof java.sql.Time || param instanceof Timestamp))
+			{
+				statement.setTimestamp(i + 1, new Timestamp(((Date) param).getTime()));
+			}
+			else
+			{
+				statement.setObject(i + 1, param);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Adds a SQL statement to the local batch, queue
+	 * 
+	 * @param sql	the SQL statement
+	 */
+	public void addToBatch(String sql) 
+	{
+		this._batch.add(sql);
+	}
+	
+	/**
+	 * Removes all statements from the local batch, queue
+	 * 
+	 */
+	public void clearBatch() 
+	{
+		this._batch.clear();
+	}
+	
+	/**
+	 * Gets the number of pending SQL statements in the local batch, queue
+	 * 
+	 * @return	the number of pending SQL statements
+	 */
+	public int getBatchCount() 
+	{
+		return this._batch.size();
+	}
+	
+	/**
+	 * Executes the local batch, queue of SQL statements
+	 * 
+	 * @return Array total records updated per statement executed
+	 * @throws MySqlConnectorException
+	 */
+	public int[] executeBatch() throws MySqlConnectorException 
+	{
+		
+		int[] updateCounts = this.executeBatch(this._batch);
+		this._batch.clear();
+		return updateCounts;
+		
+	}
+	
+	/**
+	 * Executes a list of SQL statements as a single batch in a single transaction
+	 * 
+	 * @param batch	the SQL statements
+	 * @return		Array total records updated per statement executed
+	 * @throws MySqlConnectorException
+	 */
+	public int[] executeBatch(List<String> batch) throws MySqlConnectorException 
+	{
+		
+		int[] updateCounts = {};
+		Connection connection = null;
+		Statement statement = null;
+		MySqlQueryMetrics.Sample sample = this._startSample(batch.size() == 1 ? batch.get(0) : "batch: " + (batch.isEmpty() ? "" : batch.get(0)));
+		
+		try 
+		{
+			connection = this._getConnection();
+			sample.connected();
+			
+			statement = connection.createStatement();
+			connection.setAutoCommit(false);
+			for(String sql : batch) 
+			{
+				statement.addBatch(sql);
+			}
+			updateCounts = statement.executeBatch();
+			connection.commit();
+			_restoreAutoCommit(connection);
+			sample.executed();
+			sample.fetched(_sum(updateCounts));
+			logger.debug("Executed batch of " + batch.size() + " statements");
+		} 
+		catch(Exception exception) 
+		{
+			try 
+			{
+				if(connection != null)
+				{
+					connection.rollback();
+					_restoreAutoCommit(connection);
+				}
+			} 
+			catch(Exception exception1) 
+			{
+				logger.error("Error rolling back batch: " + exception1.getMessage(), exception1);
+			}
+			throw new MySqlConnectorException("Error in batch SQL: " + exception.getMessage() + "\n" + _joinBatch(batch), exception);
+		}
+		finally
+		{
+			_close(statement, null);
+			this._releaseConnection(connection);
+			for(String sql : batch) 
+			{
+				this._afterWrite(sql);
+			}
+			this._recordSample(sample);
+		}
+		
+		return updateCounts;
+		
+	}
+	
+	/**
+	 * Executes a parameterized SQL statement once per set of parameters, as a single batch in a single transaction
+	 * 
+	 * @param sql		the SQL statement with ? parameter markers
+	 * @param params	the parameters for each execution of the statement
+	 * @return			Array total records updated per set of parameters
+	 * @throws MySqlConnectorException
+	 */
+	public int[] executeBatch(String sql, List<Object[]> params) throws MySqlConnectorException 
+	{
+		
+		Connection connection = null;
+		PreparedStatement statement = null;
+		MySqlQueryMetrics.Sample sample = this._startSample(sql);
+		
+		try 
+		{
+			connection = this._getConnection();
+			sample.connected();
+			
+			connection.setAutoCommit(false);
+			statement = this._prepareStatement(connection, sql);
+			for(Object[] rowParams : params) 
+			{
+				_bindParameters(statement, rowParams);
+				statement.addBatch();
+			}
+			int[] updateCounts = statement.executeBatch();
+			connection.commit();
+			_restoreAutoCommit(connection);
+			sample.executed();
+			sample.fetched(_sum(updateCounts));
+			return updateCounts;
+		} 
+		catch(Exception exception) 
+		{
+			try 
+			{
+				if(connection != null)
+				{
+					connection.rollback();
+					_restoreAutoCommit(connection);
+				}
+			} 
+			catch(Exception exception1) 
+			{
+				logger.error("Error rolling back batch: " + exception1.getMessage(), exception1);
+			}
+			throw new MySqlConnectorException("Error in batch SQL: " + exception.getMessage() + "\n" + sql, exception);
+		}
+		finally
+		{
+			this._releaseStatement(connection, statement, null);
+			this._releaseConnection(connection);
+			this._afterWrite(sql);
+			this._recordSample(sample);
+		}
+		
+	}
+	
+	/**
+	 * Executes a parameterized SQL statement once per row of parameters, committing every 
+	 * chunkSize rows rather than in one transaction.  Rows are read from the Iterable as they 
+	 * are sent, so a lazily produced source does not have to be held in memory.  If a chunk 
+	 * fails it is rolled back, chunks before it stay committed.
+	 * 
+	 * @param sql		the SQL statement with ? parameter markers, ex: an INSERT template
+	 * @param rows		the parameters for each execution of the statement
+	 * @param chunkSize	the number of rows per batch and commit
+	 * @return			the update count and time taken per committed chunk
+	 * @throws MySqlConnectorException
+	 */
+	public MySqlBatchResult executeBatch(String sql, Iterable<Object[]> rows, int chunkSize) throws MySqlConnectorException 
+	{
+		return this.executeBatch(sql, rows, chunkSize, false);
+	}
+	
+	/**
+	 * Executes a parameterized SQL statement once per row of parameters, committing every 
+	 * chunkSize rows, optionally collecting the keys generated by each row
+	 * 
+	 * @param sql					the SQL statement with ? parameter markers, ex: an INSERT template
+	 * @param rows					the parameters for each execution of the statement
+	 * @param chunkSize				the number of rows per batch and commit
+	 * @param returnGeneratedKeys	true to collect the AUTO_INCREMENT keys generated by the batch
+	 * @return						the update count and time taken per committed chunk, and any generated keys
+	 * @throws MySqlConnectorException
+	 */
+	public MySqlBatchResult executeBatch(String sql, Iterable<Object[]> rows, int chunkSize, boolean returnGeneratedKeys) throws MySqlConnectorException 
+	{
+		
+		if(chunkSize < 1)
+		{
+			throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+		}
+		
+		MySqlBatchResult result = new MySqlBatchResult();
+		Connection connection = null;
+		PreparedStatement statement = null;
+		MySqlQueryMetrics.Sample sample = this._startSample(sql);
+		
+		try 
+		{
+			connection = this._getConnection();
+			sample.connected();
+			
+			connection.setAutoCommit(false);
+			statement = this._prepareStatement(connection, sql, returnGeneratedKeys ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS);
+			int chunkRows = 0;
+			long chunkStart = System.nanoTime();
+			for(Object[] rowParams : rows) 
+			{
+				_bindParameters(statement, rowParams);
+				statement.addBatch();
+				if(++chunkRows == chunkSize)
+				{
+					_commitChunk(connection, statement, chunkRows, chunkStart, returnGeneratedKeys, result);
+					chunkRows = 0;
+					chunkStart = System.nanoTime();
+				}
+			}
+			if(chunkRows > 0)
+			{
+				_commitChunk(connection, statement, chunkRows, chunkStart, returnGeneratedKeys, result);
+			}
+			_restoreAutoCommit(connection);
+			sample.executed();
+			sample.fetched(result.getRowCount());
+			logger.debug("Executed chunked batch: " + result);
+			return result;
+		} 
+		catch(Exception exception) 
+		{
+			try 
+			{
+				if(connection != null)
+				{
+					connection.rollback();
+					_restoreAutoCommit(connection);
+				}
+			} 
+			catch(Exception exception1) 
+			{
+				logger.error("Error rolling back batch chunk: " + exception1.getMessage(), exception1);
+			}
+			throw new MySqlConnectorException("Error in batch SQL after " + result.getChunkCount() + " committed chunks (" + result.getRowCount() + " rows): " + exception.getMessage() + "\n" + sql, exception);
+		}
+		finally
+		{
+			this._releaseStatement(connection, statement, null);
+			this._releaseConnection(connection);
+			this._afterWrite(sql);
+			this._recordSample(sample);
+		}
+		
+	}
+	
+	/**
+	 * Executes and commits the statements batched so far
+	 * 
+	 * @param connection			the connection, with auto-commit off
+	 * @param statement				the statement holding the batch
+	 * @param rowCount				the number of rows in the batch
+	 * @param start					the System.nanoTime() at which the chunk was started
+	 * @param returnGeneratedKeys	true to collect the keys generated by the chunk
+	 * @param result				the batch result the committed chunk is added to
+	 * @throws SQLException
+	 */
+	protected static void _commitChunk(Connection connection, PreparedStatement statement, int rowCount, long start, boolean returnGeneratedKeys, MySqlBatchResult result) throws SQLException
+	{
+		
+		int[] updateCounts = statement.executeBatch();
+		long[] generatedKeys = returnGeneratedKeys ? _readGeneratedKeys(statement) : null;
+		connection.commit();
+		statement.clearBatch();
+		
+		int updateCount = 0;
+		for(int count : updateCounts)
+		{
+			if(count == Statement.SUCCESS_NO_INFO)
+			{
+				updateCount = -1;
+				break;
+			}
+			updateCount += count;
+		}
+		result.addChunk(new MySqlBatchResult.Chunk(rowCount, updateCount, System.nanoTime() - start));
+		if(generatedKeys != null)
+		{
+			result.addGeneratedKeys(generatedKeys);
+		}
+		
+	}
+	
+	/**
+	 * Loads rows into a table with LOAD DATA LOCAL INFILE, which is far faster than batched 
+	 * INSERTs for large imports.  The rows are encoded as tab separated text and streamed to the 
+	 * server as they are read from the iterator, nothing is written to a file.  The driver has 
+	 * to allow local infile, ex: setConnectionProperty("allowLoadLocalInfile", "true") before 
+	 * the connection or pool is opened, as does the server's local_infile setting.  Rows are 
+	 * loaded in a single statement, rows the server rejects are counted as warnings.
+	 * 
+	 * @param table		the table to load
+	 * @param columns	the columns each row's values are loaded into, in order
+	 * @param rows		the rows, one value per column
+	 * @return			the number of rows loaded
+	 * @throws MySqlConnectorException
+	 */
+	public int loadData(String table, String[] columns, Iterator<? extends Object[]> rows) throws MySqlConnectorException
+	{
+		
+		StringBuilder sql = new StringBuilder("LOAD DATA LOCAL INFILE 'stream' INTO TABLE ").append(_quoteIdentifier(table));
+		sql.append(" CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (");
+		for(int i = 0; i < columns.length; i++)
+		{
+			if(i > 0) sql.append(", ");
+			sql.append(_quoteIdentifier(columns[i]));
+		}
+		sql.append(")");
+		
+		Connection connection = null;
+		Statement statement = null;
+		MySqlQueryMetrics.Sample sample = this._startSample(sql.toString());
+		
+		try 
+		{
+			connection = this._getConnection();
+			sample.connected();
+			
+			statement = connection.createStatement();
+			_setLocalInfileInputStream(statement, new MySqlLoadDataStream(rows, columns.length, "UTF-8"));
+			int updateCount = statement.executeUpdate(sql.toString());
+			sample.executed();
+			sample.fetched(updateCount);
+			return updateCount;
+		} 
+		catch(Exception exception) 
+		{
+			throw new MySqlConnectorException("Error loading data into " + table + ": " + exception.getMessage(), exception);
+		}
+		finally
+		{
+			_close(statement, null);
+			this._releaseConnection(connection);
+			this._afterWrite(sql.toString());
+			this._recordSample(sample);
+		}
+		
+	}
+	
+	/**
+	 * Loads the rows of a CSV file into a table with LOAD DATA LOCAL INFILE, see loadData().  The 
+	 * file is read a row at a time as it is sent.
+	 * 
+	 * @param table			the table to load
+	 * @param columns		the columns each row's values are loaded into, in order
+	 * @param csvFilePath	the path to the CSV file, in UTF-8
+	 * @param skipHeader	true to skip the first row
+	 * @return				the number of rows loaded
+	 * @throws MySqlConnectorException
+	 */
+	public int loadCsv(String table, String[] columns, String csvFilePath, boolean skipHeader) throws MySqlConnectorException
+	{
+		
+		CsvRowIterator rows;
+		try
+		{
+			rows = FileUtility.getCsvRows(csvFilePath);
+		}
+		catch(IOException exception)
+		{
+			throw new MySqlConnectorException("Error opening " + csvFilePath + ": " + exception.getMessage(), exception);
+		}
+		try
+		{
+			if(skipHeader && rows.hasNext())
+			{
+				rows.next();
+			}
+			return this.loadData(table, columns, rows);
+		}
+		finally
+		{
+			rows.close();
+		}
+		
+	}
+	
+	/**
+	 * Hands the stream the driver sends for LOAD DATA LOCAL INFILE to a statement, through the 
+	 * MySQL statement's setLocalInfileInputStream
+	 * 
+	 * @param statement		the statement
+	 * @param inputStream	the stream
+	 * @throws SQLException	if the driver has no local infile stream hook
+	 */
+	protected static void _setLocalInfileInputStream(Statement statement, InputStream inputStream) throws SQLException
+	{
+		
+		for(String className : new String[] { "com.mysql.jdbc.Statement", "com.mysql.cj.jdbc.JdbcStatement" })
+		{
+			try
+			{
+				Class<?> type = Class.forName(className);
+				if(statement.isWrapperFor(type))
+				{
+					Method method = type.getMethod("setLocalInfileInputStream", InputStream.class);
+					method.invoke(statement.unwrap(type), inputStream);
+					return;
+				}
+			}
+			catch(ClassNotFoundException exception)
+			{
+				continue;
+			}
+			catch(NoSuchMethodException exception)
+			{
+				continue;
+			}
+			catch(IllegalAccessException exception)
+			{
+				throw new SQLException("Unable to set the LOAD DATA stream: " + exception.getMessage(), exception);
+			}
+			catch(InvocationTargetException exception)
+			{
+				throw new SQLException("Unable to set the LOAD DATA stream: " + exception.getCause().getMessage(), exception.getCause());
+			}
+		}
+		throw new SQLException("The JDBC driver does not support LOAD DATA LOCAL INFILE from a stream: " + statement.getClass().getName());
+		
+	}
+	
+	/**
+	 * Quotes a table or column name, ex: db.table becomes `db`.`table`
+	 * 
+	 * @param identifier	the name
+	 * @return				the quoted name
+	 */
+	protected static String _quoteIdentifier(String identifier)
+	{
+		
+		StringBuilder quoted = new StringBuilder();
+		for(String part : identifier.split("\\."))
+		{
+			if(quoted.length() > 0) quoted.append(".");
+			quoted.append("`").append(part.replace("`", "``")).append("`");
+		}
+		return quoted.toString();
+		
+	}
+	
+	/**
+	 * Adds up the update counts of a batch
+	 * 
+	 * @param updateCounts	the update counts
+	 * @return				the total, counts the driver did not report are left out
+	 */
+	protected static long _sum(int[] updateCounts)
+	{
+		
+		long sum = 0;
+		for(int count : updateCounts)
+		{
+			if(count > 0) sum += count;
+		}
+		return sum;
+		
+	}
+	
+	/**
+	 * Reads the keys generated by the last execution of a statement
+	 * 
+	 * @param statement	the statement, executed with Statement.RETURN_GENERATED_KEYS
+	 * @return			the generated keys, in order
+	 * @throws SQLException
+	 */
+	protected static long[] _readGeneratedKeys(Statement statement) throws SQLException
+	{
+		
+		ResultSet keys = statement.getGeneratedKeys();
+		try
+		{
+			long[] generatedKeys = new long[8];
+			int count = 0;
+			while(keys.next())
+			{
+				if(count == generatedKeys.length)
+				{
+					long[] grown = new long[count * 2];
+					System.arraycopy(generatedKeys, 0, grown, 0, count);
+					generatedKeys = grown;
+				}
+				generatedKeys[count++] = keys.getLong(1);
+			}
+			long[] result = new long[count];
+			System.arraycopy(generatedKeys, 0, result, 0, count);
+			return result;
+		}
+		finally
+		{
+			keys.close();
+		}
+		
+	}
+	
+	/**
+	 * Executes an update of a single SQL statement
+	 * 
+	 * @param sql	the SQL statement including the update
+	 * @return		the AUTO_INCREMENT id generated by an INSERT, 0 if the statement generated none
+	 * @throws MySqlConnectorException
+	 */
+	public int executeUpdate(String sql) throws MySqlConnectorException 
+	{
+		
+		Connection connection = null;
+		Statement statement = null;
+		MySqlQueryMetrics.Sample sample = this._startSample(sql);
+		
+		try 
+		{
+			connection = this._getConnection();
+			sample.connected();
+			
+			statement = connection.createStatement();
+			int updateCount = statement.executeUpdate(sql, Statement.RETURN_GENERATED_KEYS);
+			sample.executed();
+			long[] generatedKeys = _readGeneratedKeys(statement);
+			sample.fetched(updateCount);
+			
+			return generatedKeys.length > 0 ? (int) generatedKeys[0] : 0;
+			
+		} 
+		catch(Exception exception) 
+		{
+			throw new MySqlConnectorException(exception);
+		}
+		finally
+		{
+			_close(statement, null);
+			this._releaseConnection(connection);
+			this._afterWrite(sql);
+			this._recordSample(sample);
+		}
+		
+	}
+	
+	/**
+	 * Executes an update of a single parameterized SQL statement
+	 * 
+	 * @param sql		the SQL statement with ? parameter markers
+	 * @param params	the parameter values
+	 * @return			the AUTO_INCREMENT id generated by an INSERT, 0 if the statement generated none
+	 * @throws MySqlConnectorException
+	 */
+	public int executeUpdate(String sql, Object... params) throws MySqlConnectorException 
+	{
+		return (int) this.executeUpdateForResult(sql, params, true).getGeneratedKey();
+	}
+	
+	/**
+	 * Executes an update of a single parameterized SQL statement, returning the records changed 
+	 * and, if requested, the keys generated in the same round trip
+	 * 
+	 * @param sql					the SQL statement with ? parameter markers
+	 * @param params				the parameter values, null for none
+	 * @param returnGeneratedKeys	true to return the AUTO_INCREMENT keys generated by the update
+	 * @return						the update count and generated keys
+	 * @throws MySqlConnectorException
+	 */
+	public MySqlUpdateResult executeUpdateForResult(String sql, Object[] params, boolean returnGeneratedKeys) throws MySqlConnectorException 
+	{
+		
+		Connection connection = null;
+		MySqlQueryMetrics.Sample sample = this._startSample(sql);
+		
+		try 
+		{
+			connection = this._getConnection();
+			sample.connected();
+			return this._executeUpdate(connection, sql, params, returnGeneratedKeys, sample);
+		} 
+		catch(Exception exception) 
+		{
+			throw new MySqlConnectorException(exception);
+		}
+		finally
+		{
+			this._releaseConnection(connection);
+			this._afterWrite(sql);
+			this._recordSample(sample);
+		}
+		
+	}
+	
+	/**
+	 * Executes a parameterized update on a connection
+	 * 
+	 * @param connection			the connection
+	 * @param sql					the SQL statement with ? parameter markers
+	 * @param params				the parameter values
+	 * @param returnGeneratedKeys	true to read the keys generated by the update
+	 * @param sample				the timings of the command
+	 * @return						the update count and generated keys
+	 * @throws SQLException
+	 */
+	protected MySqlUpdateResult _executeUpdate(Connection connection, String sql, Object[] params, boolean returnGeneratedKeys, MySqlQueryMetrics.Sample sample) throws SQLException
+	{
+		
+		PreparedStatement statement = null;
+		
+		try 
+		{
+			statement = this._prepareStatement(connection, sql, returnGeneratedKeys ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS);
+			_bindParameters(statement, params);
+			int updateCount = statement.executeUpdate();
+			sample.executed();
+			MySqlUpdateResult result = new MySqlUpdateResult(updateCount, returnGeneratedKeys ? _readGeneratedKeys(statement) : null);
+			sample.fetched(updateCount);
+			return result;
+		} 
+		finally
+		{
+			this._releaseStatement(connection, statement, null);
+		}
+		
+	}
+	
+	/**
+	 * Returns a result set
+	 * 
+	 * @param sql	the SQL to execute to get the result set
+	 * @return		a JdbcResultSet containing JdbcResultRows
+	 * @throws MySqlConnectorException
+	 */
+	public JdbcResultSet get(String sql) throws MySqlConnectorException 
+	{
+		
+		MySqlQueryCache queryCache = this._queryCache;
+		long generation = 0;
+		if(queryCache != null)
+		{
+			JdbcResultSet cached = queryCache.get(sql, null);
+			if(cached != null)
+			{
+				return cached;
+			}
+			generation = queryCache.getGeneration();
+		}
+		
+		Connection connection = null;
+		Statement statement = null;
+		ResultSet resultSet = null;
+		MySqlQueryMetrics.Sample sample = this._startSample(sql);
+		
+		try 
+		{
+			connection = this._getReadConnection();
+			sample.connected();
+			
+			statement = connection.createStatement();
+			resultSet = statement.executeQuery(sql);
+			sample.executed();
+			
+			JdbcResultSet jdbcResultSet = _readResultSet(resultSet);
+			sample.fetched(jdbcResultSet);
+			if(queryCache != null)
+			{
+				queryCache.put(sql, null, jdbcResultSet, generation);
+			}
+			return jdbcResultSet;
+		} 
+		catch(Exception exception) 
+		{
+			throw new MySqlConnectorException(exception);
+		}
+		finally
+		{
+			_close(statement, resultSet);
+			this._releaseConnection(connection);
+			this._recordSample(sample);
+		}
+		
+	}
+	
+	/**
+	 * Returns the result set of a parameterized query
+	 * 
+	 * @param sql		the SQL with ? parameter markers
+	 * @param params	the parameter values
+	 * @return			a JdbcResultSet containing JdbcResultRows
+	 * @throws MySqlConnectorException
+	 */
+	public JdbcResultSet get(String sql, Object... params) throws MySqlConnectorException 
+	{
+		
+		MySqlQueryCache queryCache = this._queryCache;
+		long generation = 0;
+		if(queryCache != null)
+		{
+			JdbcResultSet cached = queryCache.get(sql, params);
+			if(cached != null)
+			{
+				return cached;
+			}
+			generation = queryCache.getGeneration();
+		}
+		
+		Connection connection = null;
+		MySqlQueryMetrics.Sample sample = this._startSample(sql);
+		
+		try 
+		{
+			connection = this._getReadConnection();
+			sample.connected();
+			JdbcResultSet jdbcResultSet = this._get(connection, sql, params, sample);
+			if(queryCache != null)
+			{
+				queryCache.put(sql, params, jdbcResultSet, generation);
+			}
+			return jdbcResultSet;
+		} 
+		catch(Exception exception) 
+		{
+			throw new MySqlConnectorException(exception);
+		}
+		finally
+		{
+			this._releaseConnection(connection);
+			this._recordSample(sample);
+		}
+		
+	}
+	
+	/**
+	 * Runs a parameterized query on a connection
+	 * 
+	 * @param connection	the connection
+	 * @param sql			the SQL with ? parameter markers
+	 * @param params		the parameter values
+	 * @param sample		the timings of the command
+	 * @return				a JdbcResultSet containing JdbcResultRows
+	 * @throws SQLException
+	 */
+	protected JdbcResultSet _get(Connection connection, String sql, Object[] params, MySqlQueryMetrics.Sample sample) throws SQLException
+	{
+		
+		PreparedStatement statement = null;
+		ResultSet resultSet = null;
+		
+		try 
+		{
+			statement = this._prepareStatement(connection, sql);
+			statement.setFetchSize(0);
+			_bindParameters(statement, params);
+			resultSet = statement.executeQuery();
+			sample.executed();
+			JdbcResultSet jdbcResultSet = _readResultSet(resultSet);
+			sample.fetched(jdbcResultSet);
+			return jdbcResultSet;
+		} 
+		finally
+		{
+			this._releaseStatement(connection, statement, resultSet);
+		}
+		
+	}
+	
+	/**
+	 * Returns the rows of a parameterized query as objects built by a mapper, each row is read 
+	 * straight from the driver into its object without building a JdbcResultRow.  Results are not 
+	 * kept in the query cache.
+	 * 
+	 * @param sql		the SQL with ? parameter markers
+	 * @param mapper	builds an object from each row, ex: new JdbcBeanMapper<User>(User.class)
+	 * @param params	the parameter values
+	 * @return			the objects, in row order
+	 * @throws MySqlConnectorException
+	 */
+	public <T> ArrayList<T> getObjects(String sql, JdbcRowMapper<T> mapper, Object... params) throws MySqlConnectorException
+	{
+		
+		Connection connection = null;
+		MySqlQueryMetrics.Sample sample = this._startSample(sql);
+		
+		try 
+		{
+			connection = this._getReadConnection();
+			sample.connected();
+			return this._getObjects(connection, sql, mapper, params, sample);
+		} 
+		catch(Exception exception) 
+		{
+			throw new MySqlConnectorException(exception);
+		}
+		finally
+		{
+			this._releaseConnection(connection);
+			this._recordSample(sample);
+		}
+		
+	}
+	
+	/**
+	 * Runs a parameterized query on a connection, building an object from each row
+	 * 
+	 * @param connection	the connection
+	 * @param sql			the SQL with ? parameter markers
+	 * @param mapper		builds an object from each row
+	 * @param params		the parameter values
+	 * @param sample		the timings of the command
+	 * @return				the objects, in row order
+	 * @throws SQLException
+	 */
+	protected <T> ArrayList<T> _getObjects(Connection connection, String sql, JdbcRowMapper<T> mapper, Object[] params, MySqlQueryMetrics.Sample sample) throws SQLException
+	{
+		
+		PreparedStatement statement = null;
+		ResultSet resultSet = null;
+		
+		try 
+		{
+			statement = this._prepareStatement(connection, sql);
+			statement.setFetchSize(0);
+			_bindParameters(statement, params);
+			resultSet = statement.executeQuery();
+			sample.executed();
+			ArrayList<T> results = new ArrayList<T>();
+			while(resultSet.next())
+			{
+				results.add(mapper.mapRow(resultSet));
+			}
+			sample.fetched(results.size());
+			return results;
+		} 
+		finally
+		{
+			this._releaseStatement(connection, statement, resultSet);
+		}
+		
+	}
+	
+	/**
+	 * Opens a cursor over a query's rows, streaming them from the server rather than loading the 
+	 * whole result set into memory.  The cursor holds its connection until it is read to the end 
+	 * or closed.
+	 * 
+	 * @param sql	the SQL to execute
+	 * @return		an open JdbcResultCursor
+	 * @throws MySqlConnectorException
+	 */
+	public JdbcResultCursor getCursor(String sql) throws MySqlConnectorException
+	{
+		
+		Connection connection = null;
+		Statement statement = null;
+		ResultSet resultSet = null;
+		MySqlQueryMetrics.Sample sample = this._startSample(sql);
+		
+		try 
+		{
+			connection = this._getReadConnection();
+			sample.connected();
+			
+			statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			statement.setFetchSize(this._streamingFetchSize);
+			resultSet = statement.executeQuery(sql);
+			sample.executed();
+			
+			return new JdbcResultCursor(this, connection, null, statement, resultSet, sample);
+		} 
+		catch(Exception exception) 
+		{
+			_close(statement, resultSet);
+			this._releaseConnection(connection);
+			this._recordSample(sample);
+			throw new MySqlConnectorException(exception);
+		}
+		
+	}
+	
+	/**
+	 * Opens a cursor over a parameterized query's rows, streaming them from the server
+	 * 
+	 * @param sql		the SQL with ? parameter markers
+	 * @param params	the parameter values
+	 * @return			an open JdbcResultCursor
+	 * @throws MySqlConnectorException
+	 */
+	public JdbcResultCursor getCursor(String sql, Object... params) throws MySqlConnectorException
+	{
+		
+		Connection connection = null;
+		PreparedStatement statement = null;
+		ResultSet resultSet = null;
+		MySqlQueryMetrics.Sample sample = this._startSample(sql);
+		
+		try 
+		{
+			connection = this._getReadConnection();
+			sample.connected();
+			
+			statement = this._prepareStatement(connection, sql);
+			statement.setFetchSize(this._streamingFetchSize);
+			_bindParameters(statement, params);
+			resultSet = statement.executeQuery();
+			sample.executed();
+			
+			return new JdbcResultCursor(this, connection, sql, statement, resultSet, sample);
+		} 
+		catch(Exception exception) 
+		{
+			this._releaseStatement(connection, statement, resultSet);
+			this._releaseConnection(connection);
+			this._recordSample(sample);
+			throw new MySqlConnectorException(exception);
+		}
+		
+	}
+	
+	/**
+	 * Streams a query's rows to a handler one at a time, only the current row is held in memory
+	 * 
+	 * @param sql		the SQL to execute
+	 * @param handler	receives each row
+	 * @return			the number of rows handled
+	 * @throws MySqlConnectorException
+	 */
+	public long get(String sql, JdbcRowHandler handler) throws MySqlConnectorException
+	{
+		return this._handleRows(this.getCursor(sql), handler);
+	}
+	
+	/**
+	 * Streams a parameterized query's rows to a handler one at a time
+	 * 
+	 * @param sql		the SQL with ? parameter markers
+	 * @param handler	receives each row
+	 * @param params	the parameter values
+	 * @return			the number of rows handled
+	 * @throws MySqlConnectorException
+	 */
+	public long get(String sql, JdbcRowHandler handler, Object... params) throws MySqlConnectorException
+	{
+		return this._handleRows(this.getCursor(sql, params), handler);
+	}
+	
+	/**
+	 * Returns the rows of a parameterized query, streamed from the server into a result that holds 
+	 * rows past the result memory budget in a temporary file rather than on the heap, see 
+	 * setResultMemoryBudget().  Results are not kept in the query cache.
+	 * 
+	 * @param sql		the SQL with ? parameter markers
+	 * @param params	the parameter values
+	 * @return			a JdbcSpillingResultSet, close() it once read to delete its file
+	 * @throws MySqlConnectorException
+	 */
+	public JdbcSpillingResultSet getSpilling(String sql, Object... params) throws MySqlConnectorException
+	{
+		
+		long budget = this._resultMemoryBudget > 0 ? this._resultMemoryBudget : Long.MAX_VALUE;
+		final JdbcSpillingResultSet rows = new JdbcSpillingResultSet(budget, this._spillDirectory);
+		boolean read = false;
+		try
+		{
+			this._handleRows(this.getCursor(sql, params), new JdbcRowHandler() {
+				public void handleRow(JdbcResultRow row)
+				{
+					rows.add(row);
+				}
+			});
+			read = true;
+			return rows;
+		}
+		finally
+		{
+			// no spill file is left behind by a failed read
+			if(!read) rows.close();
+		}
+		
+	}
+	
+	/**
+	 * Streams a query's rows to a handler, reading partitions of a key range at the same time on 
+	 * separate connections, see MySqlPartitionedScan
+	 * 
+	 * @param sql			the SQL, with the lower (included) and upper (excluded) bound of the key as its first two parameters
+	 * @param low			the lowest key, a whole number or Date
+	 * @param high			the highest key, excluded
+	 * @param partitions	the number of partitions read at once, at most 2 are read at once when ordered
+	 * @param ordered		true to hand over the partitions in key order
+	 * @param handler		receives each row, on the calling thread
+	 * @param params		the parameter values after the bounds
+	 * @return				the number of rows handled
+	 * @throws MySqlConnectorException
+	 */
+	public long scan(String sql, Object low, Object high, int partitions, boolean ordered, JdbcRowHandler handler, Object... params) throws MySqlConnectorException
+	{
+		
+		MySqlPartitionedScan scan = new MySqlPartitionedScan(this, sql, low, high, partitions);
+		scan.setParameters(params);
+		scan.setOrdered(ordered);
+		return scan.run(handler);
+		
+	}
+	
+	/**
+	 * Passes every row of a cursor to a handler, then closes the cursor
+	 * 
+	 * @param cursor	the open cursor
+	 * @param handler	receives each row
+	 * @return			the number of rows handled
+	 * @throws MySqlConnectorException
+	 */
+	protected long _handleRows(JdbcResultCursor cursor, JdbcRowHandler handler) throws MySqlConnectorException
+	{
+		
+		long count = 0;
+		
+		try 
+		{
+			while(cursor.hasNext())
+			{
+				handler.handleRow(cursor.next());
+				count++;
+			}
+		} 
+		catch(MySqlConnectorException exception) 
+		{
+			throw exception;
+		}
+		catch(Exception exception) 
+		{
+			if(exception.getCause() instanceof MySqlConnectorException)
+			{
+				throw (MySqlConnectorException) exception.getCause();
+			}
+			throw new MySqlConnectorException(exception);
+		}
+		finally
+		{
+			cursor.close();
+		}
+		
+		return count;
+		
+	}
+	
+	/**
+	 * Builds the column index shared by the rows of a result set
+	 * 
+	 * @param resultSet	the result set
+	 * @return			a JdbcColumnIndex
+	 * @throws SQLException
+	 */
+	static JdbcColumnIndex _getColumnIndex(ResultSet resultSet) throws SQLException
+	{
+		return JdbcColumnIndex.fromMetaData(resultSet.getMetaData());
+	}
+	
+	/**
+	 * Reads all remaining rows of a result set
+	 * 
+	 * @param resultSet	the result set
+	 * @return			a JdbcResultSet containing one JdbcResultRow per row
+	 * @throws SQLException
+	 */
+	static JdbcResultSet _readResultSet(ResultSet resultSet) throws SQLException
+	{
+		return _readResultSet(resultSet, new JdbcResultSet());
+	}
+	
+	/**
+	 * Reads all remaining rows of a result set into a given list
+	 * 
+	 * @param resultSet		the result set
+	 * @param rows			the rows are added to this, ex: a JdbcSpillingResultSet
+	 * @return				the list
+	 * @throws SQLException
+	 */
+	static <L extends List<JdbcResultRow>> L _readResultSet(ResultSet resultSet, L rows) throws SQLException
+	{
+		
+		JdbcColumnIndex columns = _getColumnIndex(resultSet);
+		while(resultSet.next()) 
+		{
+			rows.add(_createRow(resultSet, columns));
+		}
+		return rows;
+		
+	}
+	
+	/**
+	 * Creates a row from the current position of a result set, reading each column by its index.  
+	 * Numeric and boolean columns are read with the primitive getters so their values are not boxed.
+	 * 
+	 * @param resultSet	the result set, positioned on a row
+	 * @param columns	the column index of the result set
+	 * @return			a JdbcResultRow
+	 * @throws SQLException
+	 */
+	static JdbcResultRow _createRow(ResultSet resultSet, JdbcColumnIndex columns) throws SQLException
+	{
+		
+		JdbcResultRow jdbcResultRow = new JdbcResultRow(columns);
+		int columnCount = columns.size();
+		for(int i = 1; i <= columnCount; i++) 
+		{
+			switch(columns.getKind(i - 1))
+			{
+				case JdbcColumnIndex.INT:
+				case JdbcColumnIndex.LONG:
+					long longValue = resultSet.getLong(i);
+					if(resultSet.wasNull()) jdbcResultRow.setObject(i, null);
+					else jdbcResultRow.setLong(i, longValue);
+					break;
+				case JdbcColumnIndex.FLOAT:
+				case JdbcColumnIndex.DOUBLE:
+					double doubleValue = resultSet.getDouble(i);
+					if(resultSet.wasNull()) jdbcResultRow.setObject(i, null);
+					else jdbcResultRow.setDouble(i, doubleValue);
+					break;
+				case JdbcColumnIndex.BOOLEAN:
+					boolean booleanValue = resultSet.getBoolean(i);
+					if(resultSet.wasNull()) jdbcResultRow.setObject(i, null);
+					else jdbcResultRow.setLong(i, booleanValue ? 1 : 0);
+					break;
+				default:
+					jdbcResultRow.setObject(i, resultSet.getObject(i));
+			}
+		}
+		return jdbcResultRow;
+		
+	}
+	
+	/**
+	 * Gets the entire batch of SQL statements as a single SQL string
+	 * 
+	 * @return	a SQL string
+	 */
+	public String getBatch() 
+	{
+		return _joinBatch(this._batch);
+	}
+	
+	/**
+	 * Joins a list of SQL statements into a single SQL string
+	 * 
+	 * @param batch	the SQL statements
+	 * @return		a SQL string
+	 */
+	protected static String _joinBatch(List<String> batch) 
 	{
 		
-		String batch = "";
-		for(String batchItem : this._batch) 
+		StringBuilder joined = new StringBuilder();
+		for(String batchItem : batch) 
 		{
-			batch += batchItem + "\n";
+			joined.append(batchItem).append("\n");
 		}
-		return batch;
+		return joined.toString();
 		
 	}
 	
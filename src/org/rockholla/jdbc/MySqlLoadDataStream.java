@@ -0,0 +1,219 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Iterator;
+
+/**
+ * Encodes rows as the tab separated text read by MySQL's LOAD DATA INFILE with its default field 
+ * and line options: fields separated by tabs, rows ended by newlines, tabs, newlines and 
+ * backslashes escaped with a backslash and nulls written as \N.  Rows are taken from the iterator 
+ * as the stream is read, so only a buffer of encoded rows is held in memory at a time.
+ * 
+ * @author rockholla
+ *
+ */
+public class MySqlLoadDataStream extends InputStream
+{
+	
+	/** encoded rows are buffered until at least this many bytes are ready */
+	protected static final int BUFFER_SIZE = 65536;
+	
+	protected Iterator<? extends Object[]> _rows;
+	protected int _columnCount;
+	protected String _encoding;
+	protected byte[] _buffer = new byte[BUFFER_SIZE + 1024];
+	protected int _position = 0;
+	protected int _limit = 0;
+	protected long _rowCount = 0;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param rows			the rows, one value per column
+	 * @param columnCount	the number of values each row must have, less than 0 to not check
+	 * @param encoding		the encoding of string values, should match the CHARACTER SET of the LOAD DATA, ex: UTF-8
+	 */
+	public MySqlLoadDataStream(Iterator<? extends Object[]> rows, int columnCount, String encoding)
+	{
+		this._rows = rows;
+		this._columnCount = columnCount;
+		this._encoding = encoding;
+	}
+	
+	/**
+	 * Gets the number of rows encoded so far
+	 * 
+	 * @return	the number of rows
+	 */
+	public long getRowCount()
+	{
+		return this._rowCount;
+	}
+	
+	@Override
+	public int read() throws IOException
+	{
+		
+		if(this._position == this._limit && !this._fill())
+		{
+			return -1;
+		}
+		return this._buffer[this._position++] & 0xff;
+		
+	}
+	
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException
+	{
+		
+		if(length == 0)
+		{
+			return 0;
+		}
+		if(this._position == this._limit && !this._fill())
+		{
+			return -1;
+		}
+		int count = Math.min(length, this._limit - this._position);
+		System.arraycopy(this._buffer, this._position, bytes, offset, count);
+		this._position += count;
+		return count;
+		
+	}
+	
+	@Override
+	public int available()
+	{
+		return this._limit - this._position;
+	}
+	
+	/**
+	 * Encodes rows into the buffer
+	 * 
+	 * @return	false if there are no more rows
+	 * @throws IOException
+	 */
+	protected boolean _fill() throws IOException
+	{
+		
+		this._position = 0;
+		this._limit = 0;
+		while(this._limit < BUFFER_SIZE && this._rows.hasNext())
+		{
+			Object[] row = this._rows.next();
+			if(this._columnCount >= 0 && (row == null || row.length != this._columnCount))
+			{
+				throw new IOException("Row " + (this._rowCount + 1) + " has " + (row == null ? 0 : row.length) + " values, expected " + this._columnCount);
+			}
+			for(int i = 0; i < row.length; i++)
+			{
+				if(i > 0) this._append((byte) '\t');
+				this._appendValue(row[i]);
+			}
+			this._append((byte) '\n');
+			this._rowCount++;
+		}
+		return this._limit > 0;
+		
+	}
+	
+	/**
+	 * Encodes a single value
+	 * 
+	 * @param value	the value
+	 * @throws UnsupportedEncodingException
+	 */
+	protected void _appendValue(Object value) throws UnsupportedEncodingException
+	{
+		
+		if(value == null)
+		{
+			this._append((byte) '\\');
+			this._append((byte) 'N');
+			return;
+		}
+		if(value instanceof byte[])
+		{
+			this._appendEscaped((byte[]) value);
+			return;
+		}
+		String string;
+		if(value instanceof Boolean)
+		{
+			string = ((Boolean) value).booleanValue() ? "1" : "0";
+		}
+		else if(value instanceof BigDecimal)
+		{
+			string = ((BigDecimal) value).toPlainString();
+		}
+		else if(value instanceof Date && !(value instanceof java.sql.Date || value instanceof java.sql.Time || value instanceof Timestamp))
+		{
+			string = new Timestamp(((Date) value).getTime()).toString();
+		}
+		else
+		{
+			string = value.toString();
+		}
+		this._appendEscaped(string.getBytes(this._encoding));
+		
+	}
+	
+	/**
+	 * Appends bytes, escaping the bytes that have a meaning in LOAD DATA text.  Multi-byte 
+	 * characters in UTF-8 never contain these bytes, so escaping byte by byte is safe.
+	 * 
+	 * @param bytes	the bytes
+	 */
+	protected void _appendEscaped(byte[] bytes)
+	{
+		
+		for(byte b : bytes)
+		{
+			switch(b)
+			{
+				case '\\': this._append((byte) '\\'); this._append((byte) '\\'); break;
+				case '\t': this._append((byte) '\\'); this._append((byte) 't'); break;
+				case '\n': this._append((byte) '\\'); this._append((byte) 'n'); break;
+				case '\r': this._append((byte) '\\'); this._append((byte) 'r'); break;
+				case 0: this._append((byte) '\\'); this._append((byte) '0'); break;
+				default: this._append(b);
+			}
+		}
+		
+	}
+	
+	protected void _append(byte b)
+	{
+		
+		if(this._limit == this._buffer.length)
+		{
+			byte[] grown = new byte[this._buffer.length * 2];
+			System.arraycopy(this._buffer, 0, grown, 0, this._limit);
+			this._buffer = grown;
+		}
+		this._buffer[this._limit++] = b;
+		
+	}
+	
+}
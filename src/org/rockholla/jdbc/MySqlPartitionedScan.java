@@ -0,0 +1,507 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scans a query over a range of a numeric or date key in partitions that run at the same time, 
+ * each on its own connection, and passes every row to a single handler on the calling thread.  
+ * The SQL takes the bounds of a partition as its first two parameters, the lower bound included 
+ * and the upper bound excluded:
+ * 
+ * <pre>
+ * MySqlPartitionedScan scan = new MySqlPartitionedScan(connector, 
+ * 		"SELECT * FROM orders WHERE id >= ? AND id < ? AND status = ? ORDER BY id", 1, maxId + 1, 8);
+ * scan.setParameters("shipped");
+ * scan.setOrdered(true);
+ * scan.run(handler);
+ * </pre>
+ * 
+ * Each partition streams its rows into a bounded queue, so partitions wait for the handler 
+ * rather than reading ahead into memory.  Unordered scans hand rows over as they arrive from any 
+ * partition; ordered scans hand over the partitions one after another in key order, so rows 
+ * come in the order of the key if the SQL orders by it.  Partitions read through getCursor(), 
+ * from the read replicas if any, so the connection pool should allow as many connections as 
+ * the scan's parallelism.
+ * 
+ * A streaming cursor left waiting on a full queue is dropped by the server once its 
+ * net_write_timeout passes.  So an ordered scan reads at most one partition ahead, opening it 
+ * once the partition before it has been read through: an open cursor then waits at most as 
+ * long as the handler takes over one queue of rows.  The parallelism of an ordered scan is 
+ * limited to 2.
+ * 
+ * @author rockholla
+ *
+ */
+public class MySqlPartitionedScan 
+{
+	
+	/** marks the end of a partition's rows in a queue */
+	protected static final JdbcResultRow END = new JdbcResultRow();
+	
+	/** how long a blocked partition or handler waits before checking if the scan has stopped, in milliseconds */
+	protected static final long POLL_INTERVAL = 100;
+	
+	protected MySqlConnector _connector;
+	protected String _sql;
+	protected Object _low;
+	protected Object _high;
+	protected int _partitions;
+	/** the parameters of the SQL after the bounds */
+	protected Object[] _params = new Object[0];
+	protected boolean _ordered = false;
+	/** the number of partitions read at once, defaults to the number of partitions, at most 2 for ordered scans */
+	protected int _parallelism;
+	/** the number of rows each queue holds before its partition waits */
+	protected int _queueSize = 1000;
+	/** the executor that reads the partitions, null to start threads for each scan */
+	protected ExecutorService _executor;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param connector		the connector the partitions are read through
+	 * @param sql			the SQL, with the lower and upper bound of the key as its first two parameters
+	 * @param low			the lowest key, included: an Integer, Long, Short, BigInteger, BigDecimal or Date
+	 * @param high			the highest key, excluded, of the same type as low
+	 * @param partitions	the number of partitions, fewer are used if the range has fewer keys
+	 */
+	public MySqlPartitionedScan(MySqlConnector connector, String sql, Object low, Object high, int partitions)
+	{
+		
+		if(partitions < 1)
+		{
+			throw new IllegalArgumentException("Invalid number of partitions: " + partitions);
+		}
+		this._connector = connector;
+		this._sql = sql;
+		this._low = low;
+		this._high = high;
+		this._partitions = partitions;
+		this._parallelism = partitions;
+		
+	}
+	
+	/**
+	 * Sets the parameters of the SQL that follow the bounds of the key
+	 * 
+	 * @param params	the parameter values
+	 */
+	public void setParameters(Object... params)
+	{
+		this._params = params;
+	}
+	
+	/**
+	 * Sets whether the partitions are handed to the handler in key order
+	 * 
+	 * @param ordered	true to hand over the rows of each partition after those of the partitions before it
+	 */
+	public void setOrdered(boolean ordered)
+	{
+		this._ordered = ordered;
+	}
+	
+	public boolean isOrdered()
+	{
+		return this._ordered;
+	}
+	
+	/**
+	 * Sets the number of partitions read at once, ordered scans read at most 2 at once
+	 * 
+	 * @param parallelism	the number of partitions read at once
+	 */
+	public void setParallelism(int parallelism)
+	{
+		
+		if(parallelism < 1)
+		{
+			throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+		}
+		this._parallelism = parallelism;
+		
+	}
+	
+	public int getParallelism()
+	{
+		return this._parallelism;
+	}
+	
+	/**
+	 * Sets how many rows are read ahead of the handler, for each partition in an ordered scan and 
+	 * for all partitions together in an unordered scan
+	 * 
+	 * @param queueSize	the number of rows
+	 */
+	public void setQueueSize(int queueSize)
+	{
+		
+		if(queueSize < 1)
+		{
+			throw new IllegalArgumentException("Invalid queue size: " + queueSize);
+		}
+		this._queueSize = queueSize;
+		
+	}
+	
+	/**
+	 * Sets the executor that reads the partitions, it should have a thread for each partition read at once
+	 * 
+	 * @param executor	the executor, null to start threads for each scan
+	 */
+	public void setExecutor(ExecutorService executor)
+	{
+		this._executor = executor;
+	}
+	
+	/**
+	 * Runs the scan, returning once every row has been handled or the scan has failed.  If the 
+	 * handler or a partition fails, the other partitions are stopped and their connections released 
+	 * before the exception is thrown.
+	 * 
+	 * @param handler	receives each row, on the calling thread
+	 * @return			the number of rows handled
+	 * @throws MySqlConnectorException
+	 */
+	public long run(JdbcRowHandler handler) throws MySqlConnectorException
+	{
+		
+		List<Object[]> ranges = partition(this._low, this._high, this._partitions);
+		if(ranges.isEmpty())
+		{
+			return 0;
+		}
+		
+		int parallelism = Math.min(this._ordered ? Math.min(this._parallelism, 2) : this._parallelism, ranges.size());
+		ExecutorService executor = this._executor;
+		if(executor == null)
+		{
+			executor = Executors.newFixedThreadPool(parallelism, new MySqlAsyncConnector.DaemonThreadFactory());
+		}
+		AtomicBoolean stopped = new AtomicBoolean(false);
+		AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		ArrayList<Partition> partitions = new ArrayList<Partition>();
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+		long count = 0;
+		
+		try
+		{
+			BlockingQueue<JdbcResultRow> shared = this._ordered ? null : new ArrayBlockingQueue<JdbcResultRow>(this._queueSize);
+			for(Object[] range : ranges)
+			{
+				BlockingQueue<JdbcResultRow> queue = this._ordered ? new ArrayBlockingQueue<JdbcResultRow>(this._queueSize) : shared;
+				partitions.add(new Partition(range, queue, stopped, error));
+			}
+			
+			int remaining = ranges.size();
+			int current = 0;
+			while(remaining > 0)
+			{
+				// ordered scans open a partition once the one before it has been read through
+				while(futures.size() < partitions.size() && (!this._ordered || futures.size() <= current || futures.size() == current + 1 && partitions.get(current)._read))
+				{
+					futures.add(executor.submit(partitions.get(futures.size())));
+				}
+				JdbcResultRow row = partitions.get(current)._queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				if(error.get() != null)
+				{
+					break;
+				}
+				if(row == null)
+				{
+					continue;
+				}
+				if(row == END)
+				{
+					remaining--;
+					if(this._ordered) current++;
+					continue;
+				}
+				handler.handleRow(row);
+				count++;
+			}
+			
+			Throwable failure = error.get();
+			if(failure != null)
+			{
+				if(failure.getCause() instanceof MySqlConnectorException)
+				{
+					throw (MySqlConnectorException) failure.getCause();
+				}
+				throw failure instanceof MySqlConnectorException ? (MySqlConnectorException) failure : new MySqlConnectorException(failure);
+			}
+		}
+		catch(MySqlConnectorException exception)
+		{
+			throw exception;
+		}
+		catch(Exception exception)
+		{
+			if(exception.getCause() instanceof MySqlConnectorException)
+			{
+				throw (MySqlConnectorException) exception.getCause();
+			}
+			throw new MySqlConnectorException(exception);
+		}
+		finally
+		{
+			stopped.set(true);
+			this._awaitPartitions(futures);
+			if(executor != this._executor)
+			{
+				executor.shutdown();
+			}
+		}
+		
+		return count;
+		
+	}
+	
+	/**
+	 * Splits a range of keys into partitions of equal width
+	 * 
+	 * @param low			the lowest key, included
+	 * @param high			the highest key, excluded
+	 * @param partitions	the number of partitions, fewer are returned if the range has fewer keys
+	 * @return				the lower and upper bound of each partition in key order, empty if high is not above low
+	 */
+	public static List<Object[]> partition(Object low, Object high, int partitions)
+	{
+		
+		long lowKey = _toKey(low);
+		long highKey = _toKey(high);
+		ArrayList<Object[]> ranges = new ArrayList<Object[]>();
+		if(highKey <= lowKey)
+		{
+			return ranges;
+		}
+		
+		BigInteger span = BigInteger.valueOf(highKey).subtract(BigInteger.valueOf(lowKey));
+		int count = span.compareTo(BigInteger.valueOf(partitions)) < 0 ? span.intValue() : partitions;
+		Object lower = low;
+		for(int i = 1; i <= count; i++)
+		{
+			Object upper = i == count ? high : _fromKey(lowKey + span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count)).longValue(), low);
+			ranges.add(new Object[] { lower, upper });
+			lower = upper;
+		}
+		return ranges;
+		
+	}
+	
+	/**
+	 * Opens a cursor over one partition
+	 * 
+	 * @param range	the lower and upper bound of the partition
+	 * @return		the cursor
+	 * @throws MySqlConnectorException
+	 */
+	protected JdbcResultCursor _openCursor(Object[] range) throws MySqlConnectorException
+	{
+		
+		Object[] params = new Object[this._params.length + 2];
+		params[0] = range[0];
+		params[1] = range[1];
+		System.arraycopy(this._params, 0, params, 2, this._params.length);
+		return this._connector.getCursor(this._sql, params);
+		
+	}
+	
+	/**
+	 * Waits for the partitions to stop after the scan has ended, so their connections are released
+	 * 
+	 * @param futures	the partitions
+	 */
+	protected void _awaitPartitions(List<Future<?>> futures)
+	{
+		
+		// partitions not yet started return at once, cancelling them would not wait for those running
+		for(Future<?> future : futures)
+		{
+			try
+			{
+				future.get();
+			}
+			catch(InterruptedException exception)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch(Exception exception)
+			{
+				// failures were passed on through the scan's error
+			}
+		}
+		
+	}
+	
+	/**
+	 * Gets a key as a number
+	 * 
+	 * @param key	a whole number that fits in a long, or a Date
+	 * @return		the number, or the Date's milliseconds
+	 * @throws IllegalArgumentException	if the key is of another type, has a fraction or does not fit in a long
+	 */
+	protected static long _toKey(Object key)
+	{
+		
+		if(key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte)
+		{
+			return ((Number) key).longValue();
+		}
+		if(key instanceof BigInteger || key instanceof BigDecimal)
+		{
+			try
+			{
+				return key instanceof BigInteger ? new BigDecimal((BigInteger) key).longValueExact() : ((BigDecimal) key).longValueExact();
+			}
+			catch(ArithmeticException exception)
+			{
+				throw new IllegalArgumentException("Cannot partition on a key of " + key.getClass().getName() + " that is not a whole number within the range of a long: " + key);
+			}
+		}
+		if(key instanceof Date)
+		{
+			return ((Date) key).getTime();
+		}
+		throw new IllegalArgumentException("Cannot partition on a key of " + (key == null ? "null" : key.getClass().getName()));
+		
+	}
+	
+	/**
+	 * Gets a number as a key of the same type as another
+	 * 
+	 * @param value		the number
+	 * @param template	a key of the type to return
+	 * @return			the key
+	 */
+	protected static Object _fromKey(long value, Object template)
+	{
+		
+		if(template instanceof Integer) return Integer.valueOf((int) value);
+		if(template instanceof Short) return Short.valueOf((short) value);
+		if(template instanceof Byte) return Byte.valueOf((byte) value);
+		if(template instanceof BigInteger) return BigInteger.valueOf(value);
+		if(template instanceof BigDecimal) return BigDecimal.valueOf(value);
+		if(template instanceof Timestamp) return new Timestamp(value);
+		if(template instanceof java.sql.Date) return new java.sql.Date(value);
+		if(template instanceof Time) return new Time(value);
+		if(template instanceof Date) return new Date(value);
+		return Long.valueOf(value);
+		
+	}
+	
+	/**
+	 * Reads one partition into its queue
+	 */
+	protected class Partition implements Runnable
+	{
+		
+		protected Object[] _range;
+		protected BlockingQueue<JdbcResultRow> _queue;
+		protected AtomicBoolean _stopped;
+		protected AtomicReference<Throwable> _error;
+		/** true once the partition's rows have all been read from its cursor, or it has stopped */
+		protected volatile boolean _read = false;
+		
+		protected Partition(Object[] range, BlockingQueue<JdbcResultRow> queue, AtomicBoolean stopped, AtomicReference<Throwable> error)
+		{
+			
+			this._range = range;
+			this._queue = queue;
+			this._stopped = stopped;
+			this._error = error;
+			
+		}
+		
+		public void run()
+		{
+			
+			if(this._stopped.get())
+			{
+				this._read = true;
+				return;
+			}
+			JdbcResultCursor cursor = null;
+			try
+			{
+				cursor = _openCursor(this._range);
+				while(!this._stopped.get() && cursor.hasNext())
+				{
+					this._put(cursor.next());
+				}
+			}
+			catch(Throwable throwable)
+			{
+				this._error.compareAndSet(null, throwable);
+			}
+			finally
+			{
+				if(cursor != null)
+				{
+					cursor.close();
+				}
+				this._read = true;
+				this._put(END);
+			}
+			
+		}
+		
+		/**
+		 * Puts a row in the queue, waiting for room until the scan stops
+		 * 
+		 * @param row	the row
+		 */
+		protected void _put(JdbcResultRow row)
+		{
+			
+			try
+			{
+				while(!this._stopped.get())
+				{
+					if(this._queue.offer(row, POLL_INTERVAL, TimeUnit.MILLISECONDS))
+					{
+						return;
+					}
+				}
+			}
+			catch(InterruptedException exception)
+			{
+				Thread.currentThread().interrupt();
+			}
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,93 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A connection held by a MySqlConnectionPool, along with its pool bookkeeping
+ * 
+ * @author rockholla
+ *
+ */
+class MySqlPooledConnection 
+{
+	
+	/** the underlying connection */
+	final Connection connection;
+	/** when the connection was opened */
+	final long created;
+	/** when the connection was last borrowed or released */
+	volatile long lastUsed;
+	/** the prepared statements of this connection, created when first needed */
+	MySqlStatementCache statements;
+	/** the isolation level the connection was opened with, -1 until the level is first changed */
+	int defaultIsolation = -1;
+	/** true while the isolation level differs from the default */
+	boolean isolationChanged = false;
+	
+	MySqlPooledConnection(Connection connection)
+	{
+		this.connection = connection;
+		this.created = System.currentTimeMillis();
+		this.lastUsed = this.created;
+	}
+	
+	/**
+	 * Gets a prepared statement from the statement cache, preparing and caching it on a miss.  
+	 * Only the thread that has borrowed the connection may call this.
+	 * 
+	 * @param sql				the SQL
+	 * @param autoGeneratedKeys	Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+	 * @param cacheSize			the maximum number of statements to cache
+	 * @return					the prepared statement
+	 * @throws SQLException
+	 */
+	PreparedStatement prepareStatement(String sql, int autoGeneratedKeys, int cacheSize) throws SQLException
+	{
+		
+		if(this.statements == null)
+		{
+			this.statements = new MySqlStatementCache(cacheSize);
+		}
+		// statements returning generated keys are prepared differently, so are cached apart
+		String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? sql + "\0keys" : sql;
+		PreparedStatement statement = this.statements.get(key);
+		if(statement == null || statement.isClosed())
+		{
+			statement = this.connection.prepareStatement(sql, autoGeneratedKeys);
+			this.statements.put(key, statement);
+		}
+		return statement;
+		
+	}
+	
+	/**
+	 * Determines whether a statement is held by the statement cache
+	 * 
+	 * @param statement	the statement
+	 * @return			true if the statement is cached and must not be closed
+	 */
+	boolean isCached(PreparedStatement statement)
+	{
+		return this.statements != null && this.statements.containsValue(statement);
+	}
+	
+}
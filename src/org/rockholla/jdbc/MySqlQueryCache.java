@@ -0,0 +1,422 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An opt-in cache of query results for MySqlConnector.get, keyed by SQL and parameters.  
+ * Entries are evicted least recently used first when the cache exceeds its entry count or 
+ * estimated memory, expire after a time to live, and are invalidated when the connector 
+ * runs an update against a table the cached query reads from.
+ * 
+ * @author rockholla
+ *
+ */
+public class MySqlQueryCache 
+{
+	
+	/** finds the table lists following FROM, JOIN, UPDATE, INTO and TABLE, ex: "a, b AS x, c y" */
+	protected static final Pattern TABLE_PATTERN = Pattern.compile(
+			"\\b(?:FROM|JOIN|UPDATE|INTO|TABLE)\\s+(?:TABLE\\s+)?([`\\w.$]+(?:\\s+(?:AS\\s+)?\\w+)?(?:\\s*,\\s*[`\\w.$]+(?:\\s+(?:AS\\s+)?\\w+)?)*)", 
+			Pattern.CASE_INSENSITIVE
+	);
+	
+	/** the maximum number of cached results */
+	protected int _maxEntries;
+	/** the maximum estimated heap taken by cached results, in bytes */
+	protected long _maxBytes;
+	/** milliseconds a result stays cached, 0 to never expire */
+	protected long _timeToLive;
+	
+	/** the cached results, least recently used first */
+	protected LinkedHashMap<Key, Entry> _entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	/** the estimated heap taken by cached results */
+	protected long _bytes = 0;
+	/** incremented by each invalidation, so results read before an update are not cached after it */
+	protected long _generation = 0;
+	
+	/** statistics */
+	protected long _hitCount = 0;
+	protected long _missCount = 0;
+	protected long _evictionCount = 0;
+	protected long _expirationCount = 0;
+	protected long _invalidationCount = 0;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param maxEntries	the maximum number of cached results
+	 * @param maxBytes		the maximum estimated heap taken by cached results, in bytes
+	 * @param timeToLive	milliseconds a result stays cached, 0 to never expire
+	 */
+	public MySqlQueryCache(int maxEntries, long maxBytes, long timeToLive)
+	{
+		this._maxEntries = maxEntries;
+		this._maxBytes = maxBytes;
+		this._timeToLive = timeToLive;
+	}
+	
+	/**
+	 * Gets a cached result
+	 * 
+	 * @param sql		the SQL of the query
+	 * @param params	the parameter values of the query, null for none
+	 * @return			a copy of the cached result, null if there is none
+	 */
+	public synchronized JdbcResultSet get(String sql, Object[] params)
+	{
+		
+		Key key = new Key(sql, params);
+		Entry entry = this._entries.get(key);
+		if(entry != null && entry.expires > 0 && entry.expires < System.currentTimeMillis())
+		{
+			this._remove(key);
+			this._expirationCount++;
+			entry = null;
+		}
+		if(entry == null)
+		{
+			this._missCount++;
+			return null;
+		}
+		this._hitCount++;
+		return _copy(entry.result);
+		
+	}
+	
+	/**
+	 * Gets the current generation, to be passed to put() for a result read after this call
+	 * 
+	 * @return	the generation
+	 */
+	public synchronized long getGeneration()
+	{
+		return this._generation;
+	}
+	
+	/**
+	 * Caches a result, unless the cache was invalidated since the query started
+	 * 
+	 * @param sql			the SQL of the query
+	 * @param params		the parameter values of the query, null for none
+	 * @param result		the result
+	 * @param generation	the value of getGeneration() before the query was run
+	 */
+	public synchronized void put(String sql, Object[] params, JdbcResultSet result, long generation)
+	{
+		
+		if(generation != this._generation)
+		{
+			return;
+		}
+		long bytes = result.estimateSize();
+		if(bytes > this._maxBytes)
+		{
+			return;
+		}
+		Entry entry = new Entry();
+		entry.result = _copy(result);
+		entry.bytes = bytes;
+		entry.tables = getTables(sql);
+		entry.expires = this._timeToLive > 0 ? System.currentTimeMillis() + this._timeToLive : 0;
+		
+		Key key = new Key(sql, (Object[]) _copyParam(params));
+		this._remove(key);
+		this._entries.put(key, entry);
+		this._bytes += entry.bytes;
+		
+		Iterator<Map.Entry<Key, Entry>> iterator = this._entries.entrySet().iterator();
+		while(iterator.hasNext() && (this._entries.size() > this._maxEntries || this._bytes > this._maxBytes))
+		{
+			Entry eldest = iterator.next().getValue();
+			iterator.remove();
+			this._bytes -= eldest.bytes;
+			this._evictionCount++;
+		}
+		
+	}
+	
+	/**
+	 * Removes cached results that read from the tables an update statement writes to.  If no 
+	 * table can be found in the statement, the whole cache is cleared.
+	 * 
+	 * @param sql	the SQL of the update
+	 */
+	public synchronized void invalidate(String sql)
+	{
+		
+		HashSet<String> tables = getTables(sql);
+		if(tables.isEmpty())
+		{
+			this.clear();
+			return;
+		}
+		this._generation++;
+		Iterator<Entry> iterator = this._entries.values().iterator();
+		while(iterator.hasNext())
+		{
+			Entry entry = iterator.next();
+			for(String table : tables)
+			{
+				if(entry.tables.contains(table))
+				{
+					iterator.remove();
+					this._bytes -= entry.bytes;
+					this._invalidationCount++;
+					break;
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * Removes all cached results
+	 */
+	public synchronized void clear()
+	{
+		
+		this._generation++;
+		this._invalidationCount += this._entries.size();
+		this._entries.clear();
+		this._bytes = 0;
+		
+	}
+	
+	/**
+	 * Gets the names of the tables a statement refers to, lower case and without database or quotes
+	 * 
+	 * @param sql	the SQL statement
+	 * @return		a Set of table names
+	 */
+	public static HashSet<String> getTables(String sql)
+	{
+		
+		HashSet<String> tables = new HashSet<String>();
+		Matcher matcher = TABLE_PATTERN.matcher(sql);
+		while(matcher.find())
+		{
+			for(String table : matcher.group(1).split(","))
+			{
+				table = table.trim().split("\\s+")[0].replace("`", "").toLowerCase();
+				table = table.substring(table.lastIndexOf('.') + 1);
+				if(table.length() > 0)
+				{
+					tables.add(table);
+				}
+			}
+		}
+		return tables;
+		
+	}
+	
+	public synchronized int getSize()
+	{
+		return this._entries.size();
+	}
+	
+	/**
+	 * @return	the estimated heap taken by cached results, in bytes
+	 */
+	public synchronized long getBytes()
+	{
+		return this._bytes;
+	}
+	
+	public synchronized long getHitCount()
+	{
+		return this._hitCount;
+	}
+	
+	public synchronized long getMissCount()
+	{
+		return this._missCount;
+	}
+	
+	/**
+	 * @return	the number of results removed to keep within the entry and memory limits
+	 */
+	public synchronized long getEvictionCount()
+	{
+		return this._evictionCount;
+	}
+	
+	/**
+	 * @return	the number of results removed for being older than the time to live
+	 */
+	public synchronized long getExpirationCount()
+	{
+		return this._expirationCount;
+	}
+	
+	/**
+	 * @return	the number of results removed by updates
+	 */
+	public synchronized long getInvalidationCount()
+	{
+		return this._invalidationCount;
+	}
+	
+	/**
+	 * @return	the share of lookups answered from the cache
+	 */
+	public synchronized double getHitRatio()
+	{
+		
+		long lookups = this._hitCount + this._missCount;
+		return lookups == 0 ? 0 : (double) this._hitCount / lookups;
+		
+	}
+	
+	@Override
+	public synchronized String toString()
+	{
+		return String.format(
+				"entries=%d, bytes=%d, hits=%d, misses=%d (%.1f%% hits), evictions=%d, expirations=%d, invalidations=%d",
+				this._entries.size(), this._bytes, this._hitCount, this._missCount, this.getHitRatio() * 100,
+				this._evictionCount, this._expirationCount, this._invalidationCount
+		);
+	}
+	
+	protected void _remove(Key key)
+	{
+		
+		Entry entry = this._entries.remove(key);
+		if(entry != null)
+		{
+			this._bytes -= entry.bytes;
+		}
+		
+	}
+	
+	/**
+	 * Copies a result so callers cannot change what is cached
+	 * 
+	 * @param result	the result
+	 * @return			a copy, with copies of the rows
+	 */
+	protected static JdbcResultSet _copy(JdbcResultSet result)
+	{
+		
+		JdbcResultSet copy = new JdbcResultSet();
+		copy.ensureCapacity(result.size());
+		for(JdbcResultRow row : result)
+		{
+			copy.add(row.clone());
+		}
+		return copy;
+		
+	}
+	
+	/**
+	 * Copies a parameter value so the caller changing it later does not change a cached key, 
+	 * arrays such as byte[] are copied element by element and dates are cloned
+	 * 
+	 * @param value	the parameter value, may be null
+	 * @return		the copy, or the value itself if it cannot change
+	 */
+	protected static Object _copyParam(Object value)
+	{
+		
+		if(value instanceof Object[])
+		{
+			Object[] copy = ((Object[]) value).clone();
+			for(int i = 0; i < copy.length; i++)
+			{
+				copy[i] = _copyParam(copy[i]);
+			}
+			return copy;
+		}
+		if(value != null && value.getClass().isArray())
+		{
+			int length = Array.getLength(value);
+			Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+			System.arraycopy(value, 0, copy, 0, length);
+			return copy;
+		}
+		if(value instanceof Date)
+		{
+			return ((Date) value).clone();
+		}
+		return value;
+		
+	}
+	
+	/**
+	 * A cache key, the SQL and parameter values of a query.  Array parameters such as byte[] 
+	 * are compared by content.
+	 */
+	protected static class Key
+	{
+		
+		private final String _sql;
+		private final Object[] _params;
+		private final int _hash;
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param sql		the SQL of the query
+		 * @param params	the parameter values, kept as they are, so copy them with _copyParam() 
+		 * 					for a key that is stored
+		 */
+		Key(String sql, Object[] params)
+		{
+			this._sql = sql;
+			this._params = params == null || params.length == 0 ? null : params;
+			this._hash = 31 * sql.hashCode() + Arrays.deepHashCode(this._params);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return this._hash;
+		}
+		
+		@Override
+		public boolean equals(Object object)
+		{
+			
+			if(!(object instanceof Key)) return false;
+			Key key = (Key) object;
+			return this._hash == key._hash && this._sql.equals(key._sql) && Arrays.deepEquals(this._params, key._params);
+			
+		}
+		
+	}
+	
+	/**
+	 * A cached result
+	 */
+	protected static class Entry
+	{
+		JdbcResultSet result;
+		long bytes;
+		long expires;
+		HashSet<String> tables;
+	}
+	
+}
@@ -0,0 +1,432 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Collects timings of the commands run through a MySqlConnector, grouped by the shape of their 
+ * SQL: the SQL with literals replaced by ? and whitespace collapsed, so that the same query with 
+ * different values is counted together.  For each shape the time to get a connection, to execute 
+ * and to fetch the results are recorded in histograms along with the rows and estimated bytes 
+ * returned.  Commands that take longer than the slow query threshold are logged with their timings.
+ * Estimating the size of a result walks all of its values, so only one in SIZE_SAMPLE_RATE 
+ * results of a shape is estimated and the bytes of the rest are extrapolated from their rows.
+ * 
+ * @author rockholla
+ *
+ */
+public class MySqlQueryMetrics 
+{
+	
+	static final Logger logger = Logger.getLogger(MySqlQueryMetrics.class);
+	
+	/** the shape commands are counted under once the maximum number of shapes is reached */
+	public static final String OTHER = "(other)";
+	/** one in this many results of a shape has its size estimated */
+	public static final int SIZE_SAMPLE_RATE = 16;
+	
+	/** matches string literals, numbers that are not part of a name, and runs of whitespace */
+	protected static final Pattern STRING_PATTERN = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'|\"(?:[^\"\\\\]|\\\\.|\"\")*\"");
+	protected static final Pattern NUMBER_PATTERN = Pattern.compile("(?<![\\w.`])-?\\d+(?:\\.\\d+)?(?:[eE][-+]?\\d+)?(?![\\w`])");
+	protected static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+	/** matches lists of two or more markers, ex: IN (?, ?, ?), and repeated VALUES rows, which are collapsed to one */
+	protected static final Pattern LIST_PATTERN = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+	protected static final Pattern ROWS_PATTERN = Pattern.compile("(\\(\\?\\.\\.\\.\\)|\\(\\?\\))(?:\\s*,\\s*(?:\\(\\?\\.\\.\\.\\)|\\(\\?\\)))+");
+	
+	protected int _maxShapes = 256;
+	/** commands at or over this many milliseconds are logged, less than 0 to log none */
+	protected long _slowQueryThreshold = -1;
+	protected LinkedHashMap<String, Stats> _stats = new LinkedHashMap<String, Stats>();
+	/** the shapes of recently seen SQL, parameterized SQL is usually seen over and over */
+	protected LinkedHashMap<String, String> _shapes = new LinkedHashMap<String, String>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+		{
+			return this.size() > 1024;
+		}
+	};
+	
+	/**
+	 * Sets the time at or over which a command is logged as a slow query
+	 * 
+	 * @param threshold	the threshold in milliseconds, less than 0 to log none
+	 */
+	public synchronized void setSlowQueryThreshold(long threshold)
+	{
+		this._slowQueryThreshold = threshold;
+	}
+	
+	public synchronized long getSlowQueryThreshold()
+	{
+		return this._slowQueryThreshold;
+	}
+	
+	/**
+	 * Sets the number of SQL shapes to keep statistics for, further shapes are counted as OTHER
+	 * 
+	 * @param maxShapes	the maximum number of shapes
+	 */
+	public synchronized void setMaxShapes(int maxShapes)
+	{
+		this._maxShapes = maxShapes;
+	}
+	
+	public synchronized int getMaxShapes()
+	{
+		return this._maxShapes;
+	}
+	
+	/**
+	 * Records a finished command, a command whose rows were never set is counted as an error
+	 * 
+	 * @param sample	the command's sample
+	 */
+	public void record(Sample sample)
+	{
+		
+		long totalNanos = System.nanoTime() - sample.start;
+		Stats stats;
+		long threshold;
+		synchronized(this)
+		{
+			String shape = this._shapes.get(sample.sql);
+			if(shape == null)
+			{
+				shape = normalize(sample.sql);
+				this._shapes.put(sample.sql, shape);
+			}
+			stats = this._stats.get(shape);
+			if(stats == null)
+			{
+				if(this._stats.size() >= this._maxShapes)
+				{
+					shape = OTHER;
+					stats = this._stats.get(shape);
+				}
+				if(stats == null)
+				{
+					stats = new Stats(shape);
+					this._stats.put(shape, stats);
+				}
+			}
+			threshold = this._slowQueryThreshold;
+		}
+		stats._record(sample, totalNanos);
+		
+		if(threshold >= 0 && totalNanos >= threshold * 1000000L)
+		{
+			String sql = sample.sql.length() > 2000 ? sample.sql.substring(0, 2000) + "..." : sample.sql;
+			logger.warn(String.format(
+					"Slow query, %.2fms (connect %.2fms, execute %.2fms, fetch %.2fms, %d rows%s): %s", 
+					totalNanos / 1000000.0, _millis(sample.connectNanos), _millis(sample.executeNanos), _millis(sample.fetchNanos), 
+					Math.max(0, sample.rows), sample.rows < 0 ? ", failed" : "", sql
+			));
+		}
+		
+	}
+	
+	/**
+	 * Gets the statistics of a SQL shape
+	 * 
+	 * @param sql	the SQL, or its shape
+	 * @return		the statistics, null if no command of that shape was recorded
+	 */
+	public synchronized Stats getStats(String sql)
+	{
+		return this._stats.get(normalize(sql));
+	}
+	
+	/**
+	 * Gets the statistics of every SQL shape, slowest first by 99th percentile total time
+	 * 
+	 * @return	the statistics
+	 */
+	public ArrayList<Stats> getStats()
+	{
+		
+		ArrayList<Stats> stats;
+		synchronized(this)
+		{
+			stats = new ArrayList<Stats>(this._stats.values());
+		}
+		final LinkedHashMap<Stats, Long> p99 = new LinkedHashMap<Stats, Long>();
+		for(Stats shape : stats)
+		{
+			p99.put(shape, shape.getTotalTimes().getValueAtPercentile(99));
+		}
+		Collections.sort(stats, new Comparator<Stats>() {
+			public int compare(Stats one, Stats two)
+			{
+				return p99.get(two).compareTo(p99.get(one));
+			}
+		});
+		return stats;
+		
+	}
+	
+	public synchronized void reset()
+	{
+		this._stats.clear();
+	}
+	
+	@Override
+	public String toString()
+	{
+		
+		StringBuilder string = new StringBuilder();
+		for(Stats stats : this.getStats())
+		{
+			string.append(stats).append("\n");
+		}
+		return string.toString();
+		
+	}
+	
+	/**
+	 * Gets the shape of a SQL statement, the SQL with literals replaced by ?, lists of values 
+	 * collapsed and whitespace collapsed
+	 * 
+	 * @param sql	the SQL
+	 * @return		the shape
+	 */
+	public static String normalize(String sql)
+	{
+		
+		String shape = STRING_PATTERN.matcher(sql).replaceAll("?");
+		shape = NUMBER_PATTERN.matcher(shape).replaceAll("?");
+		shape = WHITESPACE_PATTERN.matcher(shape).replaceAll(" ").trim();
+		shape = LIST_PATTERN.matcher(shape).replaceAll("(?...)");
+		shape = ROWS_PATTERN.matcher(shape).replaceAll("$1");
+		return shape;
+		
+	}
+	
+	protected static double _millis(long nanos)
+	{
+		return nanos < 0 ? 0 : nanos / 1000000.0;
+	}
+	
+	/**
+	 * The timings of a single command, filled in as it runs
+	 */
+	public static class Sample
+	{
+		
+		/** the sample handed out when metrics are off, it records nothing */
+		static final Sample NONE = new Sample(null) {
+			@Override
+			public void connected() {}
+			@Override
+			public void executed() {}
+			@Override
+			public void fetched(long rows) {}
+			@Override
+			public void fetched(JdbcResultSet result) {}
+		};
+		
+		protected final String sql;
+		protected final long start = System.nanoTime();
+		protected long mark = this.start;
+		protected long connectNanos = -1;
+		protected long executeNanos = -1;
+		protected long fetchNanos = -1;
+		protected long rows = -1;
+		protected JdbcResultSet result;
+		
+		protected Sample(String sql)
+		{
+			this.sql = sql;
+		}
+		
+		/**
+		 * Marks the end of getting a connection
+		 */
+		public void connected()
+		{
+			long now = System.nanoTime();
+			this.connectNanos = now - this.mark;
+			this.mark = now;
+		}
+		
+		/**
+		 * Marks the end of executing the statement
+		 */
+		public void executed()
+		{
+			long now = System.nanoTime();
+			this.executeNanos = now - this.mark;
+			this.mark = now;
+		}
+		
+		/**
+		 * Marks the end of reading the results
+		 * 
+		 * @param rows	the number of rows read or updated
+		 */
+		public void fetched(long rows)
+		{
+			long now = System.nanoTime();
+			this.fetchNanos = now - this.mark;
+			this.mark = now;
+			this.rows = rows;
+		}
+		
+		/**
+		 * Marks the end of reading the results, the size of the result may be estimated when the sample is recorded
+		 * 
+		 * @param result	the result read
+		 */
+		public void fetched(JdbcResultSet result)
+		{
+			this.fetched(result.size());
+			this.result = result;
+		}
+		
+	}
+	
+	/**
+	 * The statistics of a SQL shape, times are in nanoseconds
+	 */
+	public static class Stats
+	{
+		
+		protected final String _shape;
+		protected final JdbcHistogram _connectTimes = new JdbcHistogram();
+		protected final JdbcHistogram _executeTimes = new JdbcHistogram();
+		protected final JdbcHistogram _fetchTimes = new JdbcHistogram();
+		protected final JdbcHistogram _totalTimes = new JdbcHistogram();
+		protected long _count = 0;
+		protected long _errorCount = 0;
+		protected long _rowCount = 0;
+		/** the number and rows of results read, and the rows and estimated bytes of those sampled */
+		protected long _resultCount = 0;
+		protected long _resultRows = 0;
+		protected long _sampledRows = 0;
+		protected long _sampledBytes = 0;
+		
+		protected Stats(String shape)
+		{
+			this._shape = shape;
+		}
+		
+		protected void _record(Sample sample, long totalNanos)
+		{
+			
+			JdbcResultSet result = sample.result;
+			boolean estimate = false;
+			if(result != null && sample.rows > 0)
+			{
+				synchronized(this)
+				{
+					estimate = this._resultCount++ % SIZE_SAMPLE_RATE == 0;
+					this._resultRows += sample.rows;
+				}
+			}
+			long bytes = estimate ? result.estimateSize() : 0;
+			if(sample.connectNanos >= 0) this._connectTimes.record(sample.connectNanos);
+			if(sample.executeNanos >= 0) this._executeTimes.record(sample.executeNanos);
+			if(sample.fetchNanos >= 0) this._fetchTimes.record(sample.fetchNanos);
+			this._totalTimes.record(totalNanos);
+			synchronized(this)
+			{
+				this._count++;
+				if(sample.rows < 0) this._errorCount++;
+				else this._rowCount += sample.rows;
+				if(estimate)
+				{
+					this._sampledRows += sample.rows;
+					this._sampledBytes += bytes;
+				}
+			}
+			
+		}
+		
+		public String getShape()
+		{
+			return this._shape;
+		}
+		
+		public JdbcHistogram getConnectTimes()
+		{
+			return this._connectTimes;
+		}
+		
+		public JdbcHistogram getExecuteTimes()
+		{
+			return this._executeTimes;
+		}
+		
+		public JdbcHistogram getFetchTimes()
+		{
+			return this._fetchTimes;
+		}
+		
+		public JdbcHistogram getTotalTimes()
+		{
+			return this._totalTimes;
+		}
+		
+		public synchronized long getCount()
+		{
+			return this._count;
+		}
+		
+		public synchronized long getErrorCount()
+		{
+			return this._errorCount;
+		}
+		
+		public synchronized long getRowCount()
+		{
+			return this._rowCount;
+		}
+		
+		/**
+		 * Gets the estimated heap taken by the results read, see JdbcResultSet.estimateSize(), 
+		 * extrapolated from the bytes per row of the results sampled
+		 * 
+		 * @return	the estimated bytes
+		 */
+		public synchronized long getBytes()
+		{
+			return this._sampledRows == 0 ? 0 : Math.round((double) this._sampledBytes / this._sampledRows * this._resultRows);
+		}
+		
+		@Override
+		public String toString()
+		{
+			return String.format(
+					"%d calls, %d errors, %d rows, %d bytes, total p50 %.2fms p99 %.2fms max %.2fms, execute p99 %.2fms, fetch p99 %.2fms, connect p99 %.2fms: %s", 
+					this.getCount(), this.getErrorCount(), this.getRowCount(), this.getBytes(), 
+					_millis(this._totalTimes.getValueAtPercentile(50)), _millis(this._totalTimes.getValueAtPercentile(99)), _millis(this._totalTimes.getMax()), 
+					_millis(this._executeTimes.getValueAtPercentile(99)), _millis(this._fetchTimes.getValueAtPercentile(99)), _millis(this._connectTimes.getValueAtPercentile(99)), 
+					this._shape
+			);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,486 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A set of read replicas, each with its own connection pool.  Connections for reads are borrowed 
+ * from a replica picked in turn (ROUND_ROBIN) or by the lowest recent ping time (LEAST_LATENCY), 
+ * pings are timed by the health checks and once on a replica's first borrow.  A replica whose 
+ * pool is only busy is skipped without waiting long, a replica that cannot open or validate a 
+ * connection is taken out of rotation for the retry interval and the next one is tried, when 
+ * none are available the caller falls back to the primary.
+ * 
+ * @author rockholla
+ *
+ */
+public class MySqlReplicaSet 
+{
+	
+	static final Logger logger = Logger.getLogger(MySqlReplicaSet.class);
+	
+	/** routing strategies */
+	public static final int ROUND_ROBIN = 0;
+	public static final int LEAST_LATENCY = 1;
+	
+	/** the weight of the newest sample in a replica's average latency */
+	protected static final double LATENCY_WEIGHT = 0.2;
+	
+	protected int _strategy;
+	/** how long a failed replica is left out of rotation, in milliseconds */
+	protected long _retryInterval = 30000;
+	/** how long to wait for a busy replica to hand back a connection before trying the next, in milliseconds */
+	protected long _borrowTimeout = 0;
+	/** the replicas, replaced rather than changed so it can be read without locking */
+	protected volatile Replica[] _replicas = new Replica[0];
+	/** the next replica for round robin routing */
+	protected int _next = 0;
+	protected Timer _healthCheckTimer;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param strategy	MySqlReplicaSet.ROUND_ROBIN or MySqlReplicaSet.LEAST_LATENCY
+	 */
+	public MySqlReplicaSet(int strategy)
+	{
+		
+		if(strategy != ROUND_ROBIN && strategy != LEAST_LATENCY)
+		{
+			throw new IllegalArgumentException("Unknown routing strategy: " + strategy);
+		}
+		this._strategy = strategy;
+		
+	}
+	
+	/**
+	 * Adds a replica
+	 * 
+	 * @param name	a name for the replica used in logging, ex: its host
+	 * @param pool	the replica's connection pool
+	 */
+	public synchronized void addReplica(String name, MySqlConnectionPool pool)
+	{
+		
+		Replica[] replicas = new Replica[this._replicas.length + 1];
+		System.arraycopy(this._replicas, 0, replicas, 0, this._replicas.length);
+		replicas[this._replicas.length] = new Replica(name, pool);
+		this._replicas = replicas;
+		
+	}
+	
+	/**
+	 * Sets how long a failed replica is left out of rotation before it is tried again
+	 * 
+	 * @param retryInterval	the interval in milliseconds
+	 */
+	public void setRetryInterval(long retryInterval)
+	{
+		this._retryInterval = retryInterval;
+	}
+	
+	public long getRetryInterval()
+	{
+		return this._retryInterval;
+	}
+	
+	/**
+	 * Sets how long to wait for a replica whose pool is at its maximum size before the next 
+	 * replica is tried, a busy replica is not taken out of rotation
+	 * 
+	 * @param borrowTimeout	the wait in milliseconds, 0 (the default) to move on at once
+	 */
+	public void setBorrowTimeout(long borrowTimeout)
+	{
+		this._borrowTimeout = borrowTimeout;
+	}
+	
+	public long getBorrowTimeout()
+	{
+		return this._borrowTimeout;
+	}
+	
+	/**
+	 * Gets the number of replicas
+	 * 
+	 * @return	the number of replicas
+	 */
+	public int size()
+	{
+		return this._replicas.length;
+	}
+	
+	/**
+	 * Gets the number of replicas currently in rotation
+	 * 
+	 * @return	the number of healthy replicas
+	 */
+	public int getHealthyCount()
+	{
+		
+		int count = 0;
+		long now = System.currentTimeMillis();
+		for(Replica replica : this._replicas)
+		{
+			if(replica.isAvailable(now)) count++;
+		}
+		return count;
+		
+	}
+	
+	/**
+	 * Gets the pools of the replicas
+	 * 
+	 * @return	the pools, in the order the replicas were added
+	 */
+	public List<MySqlConnectionPool> getPools()
+	{
+		
+		ArrayList<MySqlConnectionPool> pools = new ArrayList<MySqlConnectionPool>();
+		for(Replica replica : this._replicas)
+		{
+			pools.add(replica.pool);
+		}
+		return pools;
+		
+	}
+	
+	/**
+	 * Borrows a connection from a replica, trying each replica in rotation until one hands out 
+	 * a connection
+	 * 
+	 * @return	a connection, to be handed back with release(), or null if no replica is available
+	 */
+	public Connection borrow()
+	{
+		
+		Replica[] replicas = this._replicas;
+		if(replicas.length == 0)
+		{
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		int first = this._first(replicas, now);
+		for(int i = 0; i < replicas.length; i++)
+		{
+			Replica replica = replicas[(first + i) % replicas.length];
+			if(!replica.isAvailable(now))
+			{
+				continue;
+			}
+			Connection connection = null;
+			try
+			{
+				connection = replica.pool.borrow(this._borrowTimeout);
+				if(this._strategy == LEAST_LATENCY && replica.latencyNanos == 0)
+				{
+					this._ping(replica, connection);
+				}
+				this._markUp(replica);
+				return connection;
+			}
+			catch(SQLTimeoutException exception)
+			{
+				// busy, not down
+				continue;
+			}
+			catch(SQLException exception)
+			{
+				if(connection != null)
+				{
+					replica.pool.invalidate(connection);
+				}
+				this._markDown(replica, exception.getMessage());
+			}
+		}
+		return null;
+		
+	}
+	
+	/**
+	 * Hands a connection back to the replica it was borrowed from
+	 * 
+	 * @param connection	the connection
+	 * @return				true if the connection belonged to a replica, false if it is not one of ours
+	 */
+	public boolean release(Connection connection)
+	{
+		
+		MySqlConnectionPool pool = this.getPool(connection);
+		if(pool == null)
+		{
+			return false;
+		}
+		pool.release(connection);
+		return true;
+		
+	}
+	
+	/**
+	 * Gets the pool a borrowed connection belongs to
+	 * 
+	 * @param connection	the connection
+	 * @return				the replica's pool, null if the connection was not borrowed from a replica
+	 */
+	public MySqlConnectionPool getPool(Connection connection)
+	{
+		
+		for(Replica replica : this._replicas)
+		{
+			if(replica.pool.isBorrowed(connection))
+			{
+				return replica.pool;
+			}
+		}
+		return null;
+		
+	}
+	
+	/**
+	 * Checks every replica, timing a ping on one of its connections.  Replicas that cannot hand 
+	 * out a valid connection are taken out of rotation and recovered ones are put back, replicas 
+	 * with no free connection are left as they are.
+	 */
+	public void checkHealth()
+	{
+		
+		for(Replica replica : this._replicas)
+		{
+			Connection connection = null;
+			try
+			{
+				connection = replica.pool.borrow(0);
+				this._ping(replica, connection);
+				this._markUp(replica);
+			}
+			catch(SQLTimeoutException exception)
+			{
+				// busy, not down
+				continue;
+			}
+			catch(SQLException exception)
+			{
+				if(connection != null)
+				{
+					replica.pool.invalidate(connection);
+					connection = null;
+				}
+				this._markDown(replica, exception.getMessage());
+			}
+			finally
+			{
+				if(connection != null)
+				{
+					replica.pool.release(connection);
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * Runs checkHealth() in the background
+	 * 
+	 * @param interval	the time between checks in milliseconds
+	 */
+	public synchronized void startHealthChecks(long interval)
+	{
+		
+		this.stopHealthChecks();
+		this._healthCheckTimer = new Timer("MySqlReplicaSet-health", true);
+		this._healthCheckTimer.schedule(new TimerTask() {
+			@Override
+			public void run()
+			{
+				checkHealth();
+			}
+		}, interval, interval);
+		
+	}
+	
+	/**
+	 * Stops the background health checks
+	 */
+	public synchronized void stopHealthChecks()
+	{
+		
+		if(this._healthCheckTimer != null)
+		{
+			this._healthCheckTimer.cancel();
+			this._healthCheckTimer = null;
+		}
+		
+	}
+	
+	/**
+	 * Stops the health checks and closes the replica pools
+	 */
+	public void close()
+	{
+		
+		this.stopHealthChecks();
+		for(Replica replica : this._replicas)
+		{
+			replica.pool.close();
+		}
+		
+	}
+	
+	@Override
+	public String toString()
+	{
+		
+		StringBuilder string = new StringBuilder("MySqlReplicaSet[");
+		long now = System.currentTimeMillis();
+		Replica[] replicas = this._replicas;
+		for(int i = 0; i < replicas.length; i++)
+		{
+			if(i > 0) string.append(", ");
+			string.append(replicas[i].name).append(replicas[i].isAvailable(now) ? " up " : " down ");
+			string.append(String.format("%.2fms", replicas[i].latencyNanos / 1000000.0));
+		}
+		return string.append("]").toString();
+		
+	}
+	
+	/**
+	 * Picks the replica to try first
+	 * 
+	 * @param replicas	the replicas
+	 * @param now		the current time
+	 * @return			the index of the first replica to try
+	 */
+	protected int _first(Replica[] replicas, long now)
+	{
+		
+		if(this._strategy == ROUND_ROBIN)
+		{
+			synchronized(this)
+			{
+				int first = this._next % replicas.length;
+				this._next = (first + 1) % replicas.length;
+				return first;
+			}
+		}
+		int best = 0;
+		double bestLatency = Double.MAX_VALUE;
+		for(int i = 0; i < replicas.length; i++)
+		{
+			if(replicas[i].isAvailable(now) && replicas[i].latencyNanos < bestLatency)
+			{
+				best = i;
+				bestLatency = replicas[i].latencyNanos;
+			}
+		}
+		return best;
+		
+	}
+	
+	/**
+	 * Pings a replica over one of its connections and records the round trip time
+	 * 
+	 * @param replica		the replica
+	 * @param connection	a connection borrowed from the replica
+	 * @throws SQLException	if the connection is not valid
+	 */
+	protected void _ping(Replica replica, Connection connection) throws SQLException
+	{
+		
+		long start = System.nanoTime();
+		if(!connection.isValid(Math.max(1, replica.pool.getValidationTimeout())))
+		{
+			throw new SQLException("connection is not valid");
+		}
+		replica.recordLatency(System.nanoTime() - start);
+		
+	}
+	
+	/**
+	 * Takes a replica out of rotation for the retry interval
+	 * 
+	 * @param replica	the replica
+	 * @param reason	why, for the log
+	 */
+	protected void _markDown(Replica replica, String reason)
+	{
+		
+		if(replica.downUntil == 0)
+		{
+			logger.warn("Read replica " + replica.name + " taken out of rotation: " + reason);
+		}
+		replica.downUntil = System.currentTimeMillis() + this._retryInterval;
+		
+	}
+	
+	/**
+	 * Puts a replica back into rotation
+	 * 
+	 * @param replica	the replica
+	 */
+	protected void _markUp(Replica replica)
+	{
+		
+		if(replica.downUntil != 0)
+		{
+			logger.info("Read replica " + replica.name + " is back in rotation");
+			replica.downUntil = 0;
+		}
+		
+	}
+	
+	/**
+	 * A replica and its health
+	 */
+	protected static class Replica
+	{
+		
+		final String name;
+		final MySqlConnectionPool pool;
+		/** when the replica goes back into rotation, 0 while it is healthy */
+		volatile long downUntil = 0;
+		/** the average ping round trip time, in nanoseconds */
+		volatile double latencyNanos = 0;
+		
+		Replica(String name, MySqlConnectionPool pool)
+		{
+			this.name = name;
+			this.pool = pool;
+		}
+		
+		boolean isAvailable(long now)
+		{
+			return this.downUntil == 0 || this.downUntil <= now;
+		}
+		
+		void recordLatency(long elapsedNanos)
+		{
+			double latency = this.latencyNanos;
+			this.latencyNanos = latency == 0 ? elapsedNanos : latency + LATENCY_WEIGHT * (elapsedNanos - latency);
+		}
+		
+	}
+	
+}
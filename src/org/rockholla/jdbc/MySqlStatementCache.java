@@ -0,0 +1,65 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of prepared statements for a single connection, keyed by SQL.  
+ * Statements pushed out of the cache are closed.
+ * 
+ * @author rockholla
+ *
+ */
+class MySqlStatementCache extends LinkedHashMap<String, PreparedStatement> 
+{
+	
+	private static final long serialVersionUID = 1L;
+	
+	/** the maximum number of statements to keep */
+	protected int _maxSize;
+	
+	MySqlStatementCache(int maxSize)
+	{
+		super(16, 0.75f, true);
+		this._maxSize = maxSize;
+	}
+	
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+	{
+		
+		if(this.size() <= this._maxSize)
+		{
+			return false;
+		}
+		try
+		{
+			eldest.getValue().close();
+		}
+		catch(SQLException exception)
+		{
+			MySqlConnectionPool.logger.debug("Error closing cached statement: " + exception.getMessage());
+		}
+		return true;
+		
+	}
+	
+}
@@ -0,0 +1,343 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A transaction holding a single connection from a MySqlConnector, so several commands run on 
+ * the same connection and are committed or rolled back together.  Commit or roll back in a 
+ * finally block, or close() to roll back anything not committed:
+ * 
+ * <pre>
+ * MySqlTransaction transaction = connector.beginTransaction();
+ * try
+ * {
+ * 	transaction.executeUpdate("UPDATE account SET balance = balance - ? WHERE id = ?", amount, from);
+ * 	transaction.executeUpdate("UPDATE account SET balance = balance + ? WHERE id = ?", amount, to);
+ * 	transaction.commit();
+ * }
+ * finally
+ * {
+ * 	transaction.close();
+ * }
+ * </pre>
+ * 
+ * Results read in a transaction are not taken from or put into the query cache, the cache is 
+ * invalidated for the tables written once the transaction commits.
+ * 
+ * @author rockholla
+ *
+ */
+public class MySqlTransaction implements Closeable
+{
+	
+	/** the connector the connection came from */
+	protected MySqlConnector _connector;
+	/** the connection, null once the transaction has ended */
+	protected Connection _connection;
+	/** true if the transaction was begun read-only */
+	protected boolean _readOnly;
+	/** the SQL of the updates run, for invalidating the query cache on commit */
+	protected ArrayList<String> _writes = new ArrayList<String>();
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param connector		the connector that provided the connection
+	 * @param connection	the connection, with auto-commit off
+	 * @param readOnly		true if the transaction is read-only
+	 */
+	MySqlTransaction(MySqlConnector connector, Connection connection, boolean readOnly)
+	{
+		this._connector = connector;
+		this._connection = connection;
+		this._readOnly = readOnly;
+	}
+	
+	/**
+	 * Checks if the transaction is still open
+	 * 
+	 * @return	false once the transaction has been committed, rolled back or closed
+	 */
+	public boolean isActive()
+	{
+		return this._connection != null;
+	}
+	
+	public boolean isReadOnly()
+	{
+		return this._readOnly;
+	}
+	
+	/**
+	 * Returns the result set of a query
+	 * 
+	 * @param sql		the SQL with ? parameter markers
+	 * @param params	the parameter values
+	 * @return			a JdbcResultSet containing JdbcResultRows
+	 * @throws MySqlConnectorException
+	 */
+	public JdbcResultSet get(String sql, Object... params) throws MySqlConnectorException
+	{
+		
+		MySqlQueryMetrics.Sample sample = this._connector._startSample(sql);
+		try
+		{
+			return this._connector._get(this._getConnection(), sql, params, sample);
+		}
+		catch(SQLException exception)
+		{
+			throw new MySqlConnectorException(exception);
+		}
+		finally
+		{
+			this._connector._recordSample(sample);
+		}
+		
+	}
+	
+	/**
+	 * Returns the rows of a query as objects built by a mapper
+	 * 
+	 * @param sql		the SQL with ? parameter markers
+	 * @param mapper	builds an object from each row
+	 * @param params	the parameter values
+	 * @return			the objects, in row order
+	 * @throws MySqlConnectorException
+	 */
+	public <T> ArrayList<T> getObjects(String sql, JdbcRowMapper<T> mapper, Object... params) throws MySqlConnectorException
+	{
+		
+		MySqlQueryMetrics.Sample sample = this._connector._startSample(sql);
+		try
+		{
+			return this._connector._getObjects(this._getConnection(), sql, mapper, params, sample);
+		}
+		catch(SQLException exception)
+		{
+			throw new MySqlConnectorException(exception);
+		}
+		finally
+		{
+			this._connector._recordSample(sample);
+		}
+		
+	}
+	
+	/**
+	 * Executes an update
+	 * 
+	 * @param sql		the SQL statement with ? parameter markers
+	 * @param params	the parameter values
+	 * @return			the AUTO_INCREMENT id generated by an INSERT, 0 if the statement generated none
+	 * @throws MySqlConnectorException
+	 */
+	public int executeUpdate(String sql, Object... params) throws MySqlConnectorException
+	{
+		return (int) this.executeUpdateForResult(sql, params, true).getGeneratedKey();
+	}
+	
+	/**
+	 * Executes an update, returning the records changed and, if requested, the keys generated
+	 * 
+	 * @param sql					the SQL statement with ? parameter markers
+	 * @param params				the parameter values, null for none
+	 * @param returnGeneratedKeys	true to return the AUTO_INCREMENT keys generated by the update
+	 * @return						the update count and generated keys
+	 * @throws MySqlConnectorException
+	 */
+	public MySqlUpdateResult executeUpdateForResult(String sql, Object[] params, boolean returnGeneratedKeys) throws MySqlConnectorException
+	{
+		
+		MySqlQueryMetrics.Sample sample = this._connector._startSample(sql);
+		try
+		{
+			Connection connection = this._getConnection();
+			this._writes.add(sql);
+			return this._connector._executeUpdate(connection, sql, params, returnGeneratedKeys, sample);
+		}
+		catch(SQLException exception)
+		{
+			throw new MySqlConnectorException(exception);
+		}
+		finally
+		{
+			this._connector._recordSample(sample);
+		}
+		
+	}
+	
+	/**
+	 * Executes a parameterized statement once per set of parameters as a single batch, the batch 
+	 * is committed with the rest of the transaction
+	 * 
+	 * @param sql		the SQL statement with ? parameter markers
+	 * @param params	the parameters for each execution of the statement
+	 * @return			Array total records updated per set of parameters
+	 * @throws MySqlConnectorException
+	 */
+	public int[] executeBatch(String sql, List<Object[]> params) throws MySqlConnectorException
+	{
+		
+		MySqlQueryMetrics.Sample sample = this._connector._startSample(sql);
+		PreparedStatement statement = null;
+		Connection connection = null;
+		try
+		{
+			connection = this._getConnection();
+			this._writes.add(sql);
+			statement = this._connector._prepareStatement(connection, sql);
+			for(Object[] rowParams : params)
+			{
+				MySqlConnector._bindParameters(statement, rowParams);
+				statement.addBatch();
+			}
+			int[] updateCounts = statement.executeBatch();
+			sample.executed();
+			sample.fetched(MySqlConnector._sum(updateCounts));
+			return updateCounts;
+		}
+		catch(SQLException exception)
+		{
+			throw new MySqlConnectorException("Error in batch SQL: " + exception.getMessage() + "\n" + sql, exception);
+		}
+		finally
+		{
+			this._connector._releaseStatement(connection, statement, null);
+			this._connector._recordSample(sample);
+		}
+		
+	}
+	
+	/**
+	 * Commits the transaction and hands the connection back
+	 * 
+	 * @throws MySqlConnectorException	if the commit fails, the transaction is rolled back
+	 */
+	public void commit() throws MySqlConnectorException
+	{
+		
+		Connection connection = this._getConnection();
+		try
+		{
+			connection.commit();
+			MySqlConnector._restoreAutoCommit(connection);
+			for(String sql : this._writes)
+			{
+				this._connector._afterWrite(sql);
+			}
+		}
+		catch(SQLException exception)
+		{
+			throw new MySqlConnectorException("Error committing transaction: " + exception.getMessage(), exception);
+		}
+		finally
+		{
+			this._end();
+		}
+		
+	}
+	
+	/**
+	 * Rolls the transaction back and hands the connection back
+	 * 
+	 * @throws MySqlConnectorException
+	 */
+	public void rollback() throws MySqlConnectorException
+	{
+		
+		Connection connection = this._getConnection();
+		try
+		{
+			connection.rollback();
+			MySqlConnector._restoreAutoCommit(connection);
+		}
+		catch(SQLException exception)
+		{
+			throw new MySqlConnectorException("Error rolling back transaction: " + exception.getMessage(), exception);
+		}
+		finally
+		{
+			this._end();
+		}
+		
+	}
+	
+	/**
+	 * Rolls back anything not committed and hands the connection back, does nothing if the 
+	 * transaction has already ended
+	 */
+	public void close()
+	{
+		
+		if(this._connection == null)
+		{
+			return;
+		}
+		try
+		{
+			this._connection.rollback();
+			MySqlConnector._restoreAutoCommit(this._connection);
+		}
+		catch(SQLException exception)
+		{
+			MySqlConnector.logger.warn("Error rolling back transaction: " + exception.getMessage());
+		}
+		finally
+		{
+			this._end();
+		}
+		
+	}
+	
+	/**
+	 * Gets the connection of an open transaction
+	 * 
+	 * @return	the connection
+	 * @throws IllegalStateException	if the transaction has ended
+	 */
+	protected Connection _getConnection()
+	{
+		
+		if(this._connection == null)
+		{
+			throw new IllegalStateException("The transaction has already been committed, rolled back or closed");
+		}
+		return this._connection;
+		
+	}
+	
+	/**
+	 * Ends the transaction, handing the connection back to the connector
+	 */
+	protected void _end()
+	{
+		
+		Connection connection = this._connection;
+		this._connection = null;
+		this._writes.clear();
+		this._connector._releaseConnection(connection);
+		
+	}
+	
+}
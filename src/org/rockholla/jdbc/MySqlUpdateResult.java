@@ -0,0 +1,77 @@
+/*
+ *	This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *	 
+ */
+
+package org.rockholla.jdbc;
+
+/**
+ * The outcome of an update: the number of records it changed and any keys it generated
+ * 
+ * @author rockholla
+ *
+ */
+public class MySqlUpdateResult 
+{
+	
+	/** no keys, for updates that did not ask for them or generated none */
+	protected static final long[] NO_KEYS = new long[0];
+	
+	protected int _updateCount;
+	protected long[] _generatedKeys;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param updateCount	the number of records changed
+	 * @param generatedKeys	the generated keys, null for none
+	 */
+	public MySqlUpdateResult(int updateCount, long[] generatedKeys)
+	{
+		this._updateCount = updateCount;
+		this._generatedKeys = generatedKeys == null ? NO_KEYS : generatedKeys;
+	}
+	
+	/**
+	 * @return	the number of records changed by the update
+	 */
+	public int getUpdateCount()
+	{
+		return this._updateCount;
+	}
+	
+	/**
+	 * @return	the AUTO_INCREMENT values generated by the update, in order, empty if none were 
+	 * 			generated or they were not requested
+	 */
+	public long[] getGeneratedKeys()
+	{
+		return this._generatedKeys;
+	}
+	
+	/**
+	 * @return	the first generated key, 0 if there is none
+	 */
+	public long getGeneratedKey()
+	{
+		return this._generatedKeys.length > 0 ? this._generatedKeys[0] : 0;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return this._updateCount + " records updated, " + this._generatedKeys.length + " keys generated";
+	}
+	
+}
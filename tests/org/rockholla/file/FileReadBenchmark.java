@@ -0,0 +1,122 @@
+package org.rockholla.file;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+
+import org.rockholla.jdbc.Benchmark;
+
+/**
+ * Compares FileUtility.getFileString with the line by line read it replaced, for many small 
+ * files and for one large file:
+ * 
+ * 	java org.rockholla.file.FileReadBenchmark [smallFileBytes] [largeFileBytes]
+ * 
+ * See Benchmark for the iteration settings.
+ * 
+ * @author rockholla
+ *
+ */
+public class FileReadBenchmark 
+{
+	
+	public static void main(String[] args) throws Exception
+	{
+		
+		int smallSize = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		int largeSize = args.length > 1 ? Integer.parseInt(args[1]) : 64 * 1024 * 1024;
+		File folder = File.createTempFile("FileReadBenchmark", "");
+		folder.delete();
+		folder.mkdirs();
+		
+		try
+		{
+			final File[] smallFiles = new File[100];
+			for(int i = 0; i < smallFiles.length; i++)
+			{
+				smallFiles[i] = new File(folder, "small" + i + ".txt");
+				FileUtility.write(smallFiles[i].getPath(), generate(smallSize));
+			}
+			final File largeFile = new File(folder, "large.txt");
+			FileUtility.write(largeFile.getPath(), generate(largeSize));
+			
+			Benchmark benchmark = new Benchmark();
+			benchmark.printHeader();
+			benchmark.run("getFileString.small.legacy (files)", smallFiles.length, new Benchmark.Task() {
+				public void run() throws Exception
+				{
+					for(File file : smallFiles) legacyGetFileString(file.getPath(), "UTF-8");
+				}
+			});
+			benchmark.run("getFileString.small (files)", smallFiles.length, new Benchmark.Task() {
+				public void run() throws Exception
+				{
+					for(File file : smallFiles) FileUtility.getFileString(file.getPath());
+				}
+			});
+			benchmark.run("getFileString.large.legacy (files)", 1, new Benchmark.Task() {
+				public void run() throws Exception
+				{
+					legacyGetFileString(largeFile.getPath(), "UTF-8");
+				}
+			});
+			benchmark.run("getFileString.large (files)", 1, new Benchmark.Task() {
+				public void run() throws Exception
+				{
+					FileUtility.getFileString(largeFile.getPath());
+				}
+			});
+			benchmark.saveResults();
+		}
+		finally
+		{
+			FileUtility.deleteFolder(folder, false);
+		}
+		
+	}
+	
+	/**
+	 * Generates text of lines of varying length
+	 */
+	private static String generate(int size)
+	{
+		
+		StringBuilder text = new StringBuilder(size + 100);
+		for(int i = 0; text.length() < size; i++)
+		{
+			text.append("line ").append(i).append(" of the benchmark file".substring(0, i % 23)).append('\n');
+		}
+		text.setLength(size);
+		return text.toString();
+		
+	}
+	
+	/**
+	 * FileUtility.getFileString as it was before it was rewritten, closing the stream so the 
+	 * benchmark does not run out of file handles
+	 */
+	private static String legacyGetFileString(String filePath, String encoding) throws Exception
+	{
+		
+		String lineSep = System.getProperty("line.separator");
+		BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(filePath), encoding));
+		try
+		{
+			StringBuffer stringBuffer = new StringBuffer();
+			String line = "";
+			while((line = bufferedReader.readLine()) != null) 
+			{
+				stringBuffer.append(line);
+				stringBuffer.append(lineSep);
+			}
+			return stringBuffer.toString();
+		}
+		finally
+		{
+			bufferedReader.close();
+		}
+		
+	}
+	
+}
@@ -0,0 +1,501 @@
+package org.rockholla.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class FileUtilityTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(FileUtilityTest.class);
+	
+	private File folder;
+	
+	@Before
+	public void createFolder() throws IOException
+	{
+		
+		this.folder = File.createTempFile("FileUtilityTest", "");
+		this.folder.delete();
+		this.folder.mkdirs();
+		
+	}
+	
+	@After
+	public void deleteFolder()
+	{
+		FileUtility.deleteFolder(this.folder, false);
+	}
+	
+	@Test
+	public void testGetFileString() throws IOException 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		// Line endings are kept as they are, with no separator added at the end
+		String content = "first\r\nsecond\nthird \u00e9\u4e2d";
+		File file = new File(this.folder, "mixed.txt");
+		FileUtility.write(file.getPath(), content);
+		assertEquals(content, FileUtility.getFileString(file.getPath()));
+		assertEquals(content, FileUtility.getFileString(file));
+		assertArrayEquals(content.getBytes("UTF-8"), FileUtility.getBytesFromFile(file));
+		
+		FileUtility.write(file.getPath(), content, "UTF-16");
+		assertEquals(content, FileUtility.getFileString(file.getPath(), "UTF-16"));
+		
+		// Files larger than a single read
+		StringBuilder large = new StringBuilder();
+		while(large.length() < 3 * 1024 * 1024)
+		{
+			large.append("line ").append(large.length()).append('\n');
+		}
+		File largeFile = new File(this.folder, "large.txt");
+		FileUtility.write(largeFile.getPath(), large.toString());
+		assertEquals(large.toString(), FileUtility.getFileString(largeFile.getPath()));
+		
+		File empty = new File(this.folder, "empty.txt");
+		FileUtility.write(empty.getPath(), "");
+		assertEquals("", FileUtility.getFileString(empty.getPath()));
+		
+	}
+	
+	@Test
+	public void testLines() throws IOException 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		File file = new File(this.folder, "lines.txt");
+		FileUtility.write(file.getPath(), "one\r\ntwo\n\nfour");
+		
+		ArrayList<String> lines = FileUtility.getFileLines(file.getPath());
+		assertEquals(4, lines.size());
+		assertEquals("two", lines.get(1));
+		assertEquals("", lines.get(2));
+		
+		FileLineIterator iterator = FileUtility.getLineIterator(file.getPath());
+		assertEquals("one", iterator.next());
+		assertEquals(1, iterator.getLineNumber());
+		iterator.close();
+		assertFalse(iterator.hasNext());
+		
+		// Handler failures are passed on
+		try
+		{
+			FileUtility.readLines(file.getPath(), new FileLineHandler() {
+				public void handleLine(String line)
+				{
+					throw new IllegalStateException(line);
+				}
+			});
+			fail("The handler's exception should be thrown");
+		}
+		catch(IOException exception)
+		{
+			assertEquals("one", exception.getCause().getMessage());
+		}
+		
+	}
+	
+	@Test
+	public void testParallelLines() throws IOException 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		File file = new File(this.folder, "parallel.txt");
+		StringBuilder content = new StringBuilder();
+		for(int i = 0; i < 100000; i++)
+		{
+			content.append(i).append(i % 7 == 0 ? "\r\n" : "\n");
+		}
+		content.append("last");
+		FileUtility.write(file.getPath(), content.toString());
+		
+		// Every line is handled exactly once, whichever chunk it falls in
+		for(int parallelism : new int[] { 1, 3, 8 })
+		{
+			final Set<String> lines = Collections.synchronizedSet(new HashSet<String>());
+			long count = FileUtility.readLines(file.getPath(), "UTF-8", new FileLineHandler() {
+				public void handleLine(String line)
+				{
+					assertTrue(lines.add(line));
+				}
+			}, parallelism);
+			assertEquals(100001, count);
+			assertEquals(100001, lines.size());
+			assertTrue(lines.contains("99999"));
+			assertTrue(lines.contains("last"));
+		}
+		
+		// Small files are read as one chunk
+		File small = new File(this.folder, "small.txt");
+		FileUtility.write(small.getPath(), "a\nb");
+		assertEquals(2, FileUtility.readLines(small.getPath(), "UTF-8", new FileLineHandler() {
+			public void handleLine(String line) {}
+		}, 16));
+		
+	}
+	
+	@Test
+	public void testCopy() throws IOException 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		File source = new File(this.folder, "source");
+		new File(source, "a/b").mkdirs();
+		new File(source, ".svn").mkdirs();
+		FileUtility.write(new File(source, "top.txt").getPath(), "top");
+		FileUtility.write(new File(source, "a/b/deep.txt").getPath(), "deep \u00e9");
+		FileUtility.write(new File(source, ".svn/entries").getPath(), "skipped");
+		byte[] binary = new byte[5 * 1024 * 1024 + 3];
+		for(int i = 0; i < binary.length; i++)
+		{
+			binary[i] = (byte) (i * 31);
+		}
+		FileOutputStream out = new FileOutputStream(new File(source, "a/binary.dat"));
+		out.write(binary);
+		out.close();
+		new File(source, "top.txt").setLastModified(1000000000000L);
+		
+		ArrayList<String> excludeDirectories = new ArrayList<String>();
+		excludeDirectories.add(".svn");
+		File target = new File(this.folder, "target");
+		FileCopyResult result = FileUtility.copyFolder(source, target, excludeDirectories, FileUtility.PRESERVE_ATTRIBUTES);
+		assertEquals(3, result.getFileCount());
+		assertEquals(3 + 7 + binary.length, result.getByteCount());
+		assertTrue(result.getBytesPerSecond() > 0);
+		assertEquals("deep \u00e9", FileUtility.getFileString(new File(target, "a/b/deep.txt")));
+		assertArrayEquals(binary, FileUtility.getBytesFromFile(new File(target, "a/binary.dat")));
+		assertFalse(new File(target, ".svn").exists());
+		assertEquals(1000000000000L, new File(target, "top.txt").lastModified());
+		
+		// Copying over an existing file replaces it, bytes unchanged
+		File copy = new File(this.folder, "copy.dat");
+		FileUtility.write(copy.getPath(), "longer content to be replaced entirely");
+		FileUtility.write(copy.getPath(), new File(target, "top.txt"));
+		assertEquals("top", FileUtility.getFileString(copy));
+		
+	}
+	
+	@Test
+	public void testGlobPattern() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		assertTrue(FileUtility.getGlobPattern("*.txt").matcher("notes.txt").matches());
+		assertFalse(FileUtility.getGlobPattern("*.txt").matcher("a/notes.txt").matches());
+		assertTrue(FileUtility.getGlobPattern("**/*.txt").matcher("a/b/notes.txt").matches());
+		assertTrue(FileUtility.getGlobPattern("**/*.txt").matcher("notes.txt").matches());
+		assertTrue(FileUtility.getGlobPattern("build/**").matcher("build/classes/A.class").matches());
+		assertTrue(FileUtility.getGlobPattern("*.{jpg,png}").matcher("photo.png").matches());
+		assertFalse(FileUtility.getGlobPattern("*.{jpg,png}").matcher("photo.gif").matches());
+		assertTrue(FileUtility.getGlobPattern("file?.[!0-4]").matcher("file1.7").matches());
+		assertFalse(FileUtility.getGlobPattern("file?.[!0-4]").matcher("file1.3").matches());
+		assertTrue(FileUtility.getGlobPattern("a+b(1).txt").matcher("a+b(1).txt").matches());
+		assertTrue(FileUtility.getGlobPattern("\\*star").matcher("*star").matches());
+		assertFalse(FileUtility.getGlobPattern("\\*star").matcher("a star").matches());
+		
+	}
+	
+	@Test
+	public void testParallelCopy() throws IOException 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		File source = new File(this.folder, "source");
+		for(int i = 0; i < 20; i++)
+		{
+			File folder = new File(source, "folder" + i + "/sub");
+			folder.mkdirs();
+			FileUtility.write(new File(folder, "file.txt").getPath(), "file " + i);
+			FileUtility.write(new File(folder, "file.tmp").getPath(), "temporary");
+		}
+		new File(source, "folder3/.svn").mkdirs();
+		FileUtility.write(new File(source, "folder3/.svn/entries").getPath(), "skipped");
+		new File(source, "folder5/sub").setLastModified(1000000000000L);
+		
+		FolderCopier copier = new FolderCopier(source, new File(this.folder, "target"));
+		copier.setParallelism(4);
+		copier.setExcludeDirectories(Arrays.asList(".svn"));
+		copier.addExcludePattern("*.tmp");
+		copier.addExcludePattern("folder7/**");
+		copier.setPreserveAttributes(true);
+		final AtomicLong copied = new AtomicLong();
+		copier.setListener(new FileCopyListener() {
+			public void fileCopied(File source, File target, long bytes, FileCopyResult progress)
+			{
+				copied.incrementAndGet();
+				assertTrue(progress.getFileCount() >= 1);
+			}
+		});
+		FileCopyResult result = copier.copy();
+		
+		assertEquals(19, result.getFileCount());
+		assertEquals(19, copied.get());
+		File target = new File(this.folder, "target");
+		assertEquals("file 12", FileUtility.getFileString(new File(target, "folder12/sub/file.txt")));
+		assertFalse(new File(target, "folder12/sub/file.tmp").exists());
+		assertFalse(new File(target, "folder3/.svn").exists());
+		assertFalse(new File(target, "folder7/sub").exists());
+		assertEquals(1000000000000L, new File(target, "folder5/sub").lastModified());
+		
+		// The parallel overload of copyFolder
+		ArrayList<String> excludeDirectories = new ArrayList<String>();
+		excludeDirectories.add(".svn");
+		result = FileUtility.copyFolder(source, new File(this.folder, "target2"), excludeDirectories, 3);
+		assertEquals(40, result.getFileCount());
+		
+		// Failures are thrown
+		try
+		{
+			new FolderCopier(new File(this.folder, "missing"), new File(this.folder, "target3")).copy();
+			fail("Copying a missing folder should fail");
+		}
+		catch(IOException exception) {}
+		
+		// The source itself is treated as copyFolder does: an excluded folder is skipped, a file is copied
+		copier = new FolderCopier(new File(source, "folder3/.svn"), new File(this.folder, "target4"));
+		copier.setExcludeDirectories(Arrays.asList(".svn"));
+		assertEquals(0, copier.copy().getFileCount());
+		assertFalse(new File(this.folder, "target4").exists());
+		File file = new File(source, "folder1/sub/file.txt");
+		result = new FolderCopier(file, new File(this.folder, "target5.txt")).copy();
+		assertEquals(1, result.getFileCount());
+		assertEquals("file 1", FileUtility.getFileString(new File(this.folder, "target5.txt")));
+		
+	}
+	
+	@Test
+	public void testDeleteFolder() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		// A deep tree is deleted without recursion
+		File deep = new File(this.folder, "deep");
+		File leaf = deep;
+		for(int i = 0; i < 500; i++)
+		{
+			leaf = new File(leaf, "d");
+		}
+		leaf.mkdirs();
+		FileUtility.write(new File(leaf, "leaf.txt").getPath(), "leaf");
+		FileDeleteResult result = FileUtility.deleteFolder(deep, false, 1);
+		assertTrue(result.isSuccessful());
+		assertEquals(1, result.getFileCount());
+		assertEquals(4, result.getByteCount());
+		assertEquals(501, result.getFolderCount());
+		assertFalse(deep.exists());
+		
+		// A wide tree is deleted in parallel, keeping the root
+		File wide = new File(this.folder, "wide");
+		for(int i = 0; i < 10; i++)
+		{
+			File folder = new File(wide, "folder" + i);
+			folder.mkdirs();
+			for(int j = 0; j < 300; j++)
+			{
+				FileUtility.write(new File(folder, "file" + j).getPath(), "12");
+			}
+		}
+		result = FileUtility.emptyFolder(wide, 4);
+		assertEquals(3000, result.getFileCount());
+		assertEquals(6000, result.getByteCount());
+		assertEquals(10, result.getFolderCount());
+		assertTrue(wide.isDirectory());
+		assertEquals(0, wide.list().length);
+		
+		// Asynchronously
+		new File(wide, "a/b").mkdirs();
+		result = FileUtility.deleteFolderAsync(wide, false, 2).get();
+		assertEquals(3, result.getFolderCount());
+		assertFalse(wide.exists());
+		
+		// Nothing to delete
+		assertEquals(0, FileUtility.deleteFolder(new File(this.folder, "missing"), false, 1).getFolderCount());
+		
+		// A folder that cannot be listed is reported once, as is its parent left behind
+		File locked = new File(this.folder, "locked/inner");
+		locked.mkdirs();
+		FileUtility.write(new File(locked, "kept.txt").getPath(), "kept");
+		locked.setReadable(false);
+		if(locked.list() == null)
+		{
+			result = FileUtility.deleteFolder(locked.getParentFile(), false, 1);
+			assertEquals(Arrays.asList(locked, locked.getParentFile()), result.getFailures());
+		}
+		locked.setReadable(true);
+		
+	}
+	
+	@Test
+	public void testFolderWalker() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		File root = new File(this.folder, "walk");
+		new File(root, "a/b/c").mkdirs();
+		new File(root, ".hidden").mkdirs();
+		new File(root, "skip").mkdirs();
+		FileUtility.write(new File(root, "top.log").getPath(), "top");
+		FileUtility.write(new File(root, "a/one.log").getPath(), "one");
+		FileUtility.write(new File(root, "a/b/two.txt").getPath(), "two two");
+		FileUtility.write(new File(root, "a/b/c/three.log").getPath(), "three three three");
+		FileUtility.write(new File(root, ".hidden/secret.log").getPath(), "secret");
+		FileUtility.write(new File(root, "skip/skipped.log").getPath(), "skipped");
+		new File(root, "a/one.log").setLastModified(1000000000000L);
+		
+		// Each folder comes before its contents, hidden entries are left out
+		ArrayList<File> files = FileUtility.getFolderFiles(root.getPath(), FileUtility.RECURSIVE);
+		assertEquals(9, files.size());
+		for(int i = 0; i < files.size(); i++)
+		{
+			File parent = files.get(i).getParentFile();
+			assertTrue(parent.equals(root) || files.indexOf(parent) < i);
+		}
+		assertEquals(3, FileUtility.getFolderFiles(root.getPath()).size());
+		assertEquals(5, FileUtility.getFolderFiles(root.getPath(), FileUtility.RECURSIVE, FileUtility.EXCLUDE_DIRECTORIES).size());
+		assertEquals(4, FileUtility.getFolderFiles(root.getPath(), FileUtility.RECURSIVE, FileUtility.INCLUDE_ONLY_DIRECTORIES).size());
+		
+		FolderWalker walker = FileUtility.walkFolder(root.getPath(), FileUtility.RECURSIVE, FileUtility.EXCLUDE_DIRECTORIES);
+		walker.setNamePattern(FileUtility.getGlobPattern("*.log"));
+		walker.addExcludePattern("sk*");
+		walker.setMaxDepth(3);
+		assertEquals(2, count(walker));
+		
+		walker = FileUtility.walkFolder(root.getPath(), FileUtility.RECURSIVE, FileUtility.EXCLUDE_DIRECTORIES);
+		walker.setSizeRange(4, 100);
+		assertEquals(3, count(walker));
+		
+		walker = FileUtility.walkFolder(root.getPath(), FileUtility.RECURSIVE, FileUtility.EXCLUDE_DIRECTORIES);
+		walker.setModifiedRange(0, 1000000000001L);
+		assertEquals(new File(root, "a/one.log"), walker.next());
+		assertFalse(walker.hasNext());
+		
+		// In parallel every entry is handled once
+		final Set<File> handled = Collections.synchronizedSet(new HashSet<File>());
+		long count = FileUtility.walkFolder(root.getPath(), FileUtility.RECURSIVE).walk(new FileHandler() {
+			public void handleFile(File file)
+			{
+				assertTrue(handled.add(file));
+			}
+		}, 3);
+		assertEquals(9, count);
+		assertEquals(new HashSet<File>(files), handled);
+		
+		// A missing folder has no entries
+		assertEquals(0, FileUtility.getFolderFiles(new File(this.folder, "missing").getPath()).size());
+		
+	}
+	
+	private static int count(FolderWalker walker)
+	{
+		
+		int count = 0;
+		for(File file : walker)
+		{
+			count++;
+		}
+		return count;
+		
+	}
+	
+	@Test
+	public void testFolderIndex() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		File root = new File(this.folder, "indexed");
+		new File(root, "a/b").mkdirs();
+		new File(root, "c").mkdirs();
+		FileUtility.write(new File(root, "top.txt").getPath(), "top");
+		FileUtility.write(new File(root, "a/one.txt").getPath(), "one");
+		FileUtility.write(new File(root, "a/b/two.txt").getPath(), "two");
+		FileUtility.write(new File(root, "c/three.txt").getPath(), "three");
+		for(String path : new String[] { "", "a", "a/b", "c" })
+		{
+			new File(root, path).setLastModified(1000000000000L);
+		}
+		
+		FolderIndex index = new FolderIndex(root);
+		index.setHashAlgorithm("MD5");
+		FolderIndexChanges changes = index.refresh();
+		assertEquals(4, changes.getAdded().size());
+		assertEquals(4, changes.getListedFolders());
+		assertEquals(4, index.getFileCount());
+		
+		// Unchanged folders are not listed again
+		changes = index.refresh();
+		assertTrue(changes.isEmpty());
+		assertEquals(0, changes.getListedFolders());
+		assertEquals(4, changes.getCheckedFiles());
+		assertEquals(0, index.refresh(false).getCheckedFiles());
+		
+		// A touched file is only changed if its contents are
+		File one = new File(root, "a/one.txt");
+		one.setLastModified(1100000000000L);
+		assertTrue(index.refresh().isEmpty());
+		FileUtility.write(one.getPath(), "uno");
+		one.setLastModified(1200000000000L);
+		FileUtility.write(new File(root, "c/four.txt").getPath(), "four");
+		FileUtility.deleteFolder(new File(root, "a/b"), true);
+		changes = index.refresh();
+		assertEquals(Arrays.asList(one), changes.getChanged());
+		assertEquals(Arrays.asList(new File(root, "c/four.txt")), changes.getAdded());
+		assertEquals(Arrays.asList(new File(root, "a/b/two.txt")), changes.getRemoved());
+		
+		// Saved and loaded it finds the same changes
+		File indexFile = new File(this.folder, "index.dat");
+		index.save(indexFile);
+		FolderIndex loaded = FolderIndex.load(indexFile);
+		assertEquals(root, loaded.getRoot());
+		assertEquals("MD5", loaded.getHashAlgorithm());
+		assertArrayEquals(index.getHash(one), loaded.getHash(one));
+		new File(root, "top.txt").delete();
+		assertEquals(Arrays.asList(new File(root, "top.txt")), loaded.refresh().getRemoved());
+		
+		// Only the given paths are checked
+		File five = new File(root, "a/five.txt");
+		FileUtility.write(five.getPath(), "five");
+		FileUtility.write(new File(root, "c/three.txt").getPath(), "3");
+		changes = loaded.refresh(Arrays.asList(five));
+		assertEquals(Arrays.asList(five), changes.getAdded());
+		assertTrue(changes.getChanged().isEmpty());
+		assertEquals(Arrays.asList(new File(root, "c/three.txt")), loaded.refresh(Arrays.asList(new File(root, "c/three.txt"))).getChanged());
+		
+		// A given file whose folder was deleted is found removed, with the rest of the folder
+		new File(root, "c/d").mkdirs();
+		FileUtility.write(new File(root, "c/d/six.txt").getPath(), "six");
+		loaded.refresh();
+		FileUtility.deleteFolder(new File(root, "c"), true);
+		changes = loaded.refresh(Arrays.asList(new File(root, "c/d/six.txt")));
+		assertEquals(3, changes.getRemoved().size());
+		assertTrue(changes.getRemoved().contains(new File(root, "c/d/six.txt")));
+		assertTrue(changes.getRemoved().contains(new File(root, "c/three.txt")));
+		assertTrue(loaded.refresh().isEmpty());
+		
+	}
+	
+}
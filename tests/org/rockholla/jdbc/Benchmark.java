@@ -0,0 +1,373 @@
+package org.rockholla.jdbc;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small benchmark harness in the manner of JMH: each benchmark runs warmup iterations and then 
+ * measured iterations of a fixed length, and is reported as the mean throughput with a 99.9% 
+ * confidence error.  A setup task may run before each iteration, outside the measurement, to 
+ * bring state back to where it started.  The heap retained by what a task builds can be measured 
+ * the same way.  Results can be appended to a tab separated file under a label, such as a 
+ * commit id, and two labels compared later:
+ * 
+ * 	-Dbenchmark.results=results.tsv -Dbenchmark.label=`git rev-parse --short HEAD`
+ * 	java org.rockholla.jdbc.Benchmark results.tsv baseLabel newLabel
+ * 
+ * @author rockholla
+ *
+ */
+public class Benchmark 
+{
+	
+	/**
+	 * The code under measurement
+	 */
+	public interface Task
+	{
+		
+		/**
+		 * Runs the operations of one call
+		 * 
+		 * @throws Exception
+		 */
+		public void run() throws Exception;
+		
+	}
+	
+	/**
+	 * Builds the object whose retained heap is measured
+	 */
+	public interface Allocation
+	{
+		
+		/**
+		 * Builds the object
+		 * 
+		 * @return	the object, held until it has been measured
+		 * @throws Exception
+		 */
+		public Object allocate() throws Exception;
+		
+	}
+	
+	/**
+	 * The throughput of one benchmark
+	 */
+	public static class Result
+	{
+		
+		public String name;
+		/** the mean operations per second */
+		public double score;
+		/** the half width of the 99.9% confidence interval of the score */
+		public double error;
+		public int iterations;
+		public String units = "ops/s";
+		
+		public String toString()
+		{
+			return String.format("%-48s %5d %14.3f +- %12.3f  %s", this.name, this.iterations, this.score, this.error, this.units);
+		}
+		
+	}
+	
+	protected int _warmupIterations = Integer.getInteger("benchmark.warmup", 5);
+	protected int _iterations = Integer.getInteger("benchmark.iterations", 10);
+	protected long _iterationMillis = Long.getLong("benchmark.iterationMillis", 1000L);
+	protected String _resultsFile = System.getProperty("benchmark.results");
+	protected String _label = System.getProperty("benchmark.label", "unlabeled");
+	/** only benchmarks whose names contain this are run */
+	protected String _filter = System.getProperty("benchmark.filter", "");
+	protected ArrayList<Result> _results = new ArrayList<Result>();
+	/** holds the object being measured by measureRetained, so it is not collected */
+	protected Object _retained;
+	
+	/**
+	 * Runs a benchmark and prints its result
+	 * 
+	 * @param name				the benchmark name
+	 * @param operationsPerCall	the operations each call of the task runs, ex: the rows of a batch
+	 * @param task				the code under measurement
+	 * @return					the result, null if the benchmark was filtered out
+	 * @throws Exception
+	 */
+	public Result run(String name, int operationsPerCall, Task task) throws Exception
+	{
+		return this.run(name, operationsPerCall, null, task);
+	}
+	
+	/**
+	 * Runs a benchmark and prints its result
+	 * 
+	 * @param name				the benchmark name
+	 * @param operationsPerCall	the operations each call of the task runs, ex: the rows of a batch
+	 * @param setup				runs before each iteration and is not measured, ex: emptying a table, may be null
+	 * @param task				the code under measurement
+	 * @return					the result, null if the benchmark was filtered out
+	 * @throws Exception
+	 */
+	public Result run(String name, int operationsPerCall, Task setup, Task task) throws Exception
+	{
+		
+		if(!name.contains(this._filter))
+		{
+			return null;
+		}
+		for(int i = 0; i < this._warmupIterations; i++)
+		{
+			this._iteration(operationsPerCall, setup, task);
+		}
+		
+		double[] scores = new double[this._iterations];
+		for(int i = 0; i < this._iterations; i++)
+		{
+			scores[i] = this._iteration(operationsPerCall, setup, task);
+		}
+		return this._addResult(name, scores, "ops/s");
+		
+	}
+	
+	/**
+	 * Measures the heap retained by the object an allocation builds, once per iteration, and 
+	 * prints the result
+	 * 
+	 * @param name					the benchmark name
+	 * @param operationsPerObject	the operations the heap is divided over, ex: the rows of a result
+	 * @param allocation			builds the object
+	 * @return						the result in bytes per operation, null if the benchmark was filtered out
+	 * @throws Exception
+	 */
+	public Result measureRetained(String name, int operationsPerObject, Allocation allocation) throws Exception
+	{
+		
+		if(!name.contains(this._filter))
+		{
+			return null;
+		}
+		for(int i = 0; i < this._warmupIterations; i++)
+		{
+			allocation.allocate();
+		}
+		
+		double[] scores = new double[this._iterations];
+		for(int i = 0; i < this._iterations; i++)
+		{
+			long before = _usedHeap();
+			this._retained = allocation.allocate();
+			long after = _usedHeap();
+			this._retained = null;
+			scores[i] = (double) (after - before) / operationsPerObject;
+		}
+		return this._addResult(name, scores, "B/op");
+		
+	}
+	
+	/**
+	 * Prints the header of the results and the settings they were measured with
+	 */
+	public void printHeader()
+	{
+		
+		System.out.println(String.format(
+				"# %s %s, %d warmup and %d measured iterations of %d ms, label %s", 
+				System.getProperty("java.vm.name"), System.getProperty("java.version"), 
+				this._warmupIterations, this._iterations, this._iterationMillis, this._label
+		));
+		System.out.println(String.format("%-48s %5s %14s    %12s  %s", "Benchmark", "Cnt", "Score", "Error", "Units"));
+		
+	}
+	
+	/**
+	 * Appends the results to the results file, if one is set
+	 * 
+	 * @throws IOException
+	 */
+	public void saveResults() throws IOException
+	{
+		
+		if(this._resultsFile == null)
+		{
+			return;
+		}
+		PrintWriter writer = new PrintWriter(new FileWriter(this._resultsFile, true));
+		try
+		{
+			for(Result result : this._results)
+			{
+				writer.println(this._label + "\t" + result.name + "\t" + result.score + "\t" + result.error);
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+		
+	}
+	
+	/**
+	 * Compares two labels of a results file, benchmarks whose difference is within the errors 
+	 * are marked as unchanged
+	 * 
+	 * 	java org.rockholla.jdbc.Benchmark results.tsv baseLabel newLabel
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		
+		if(args.length < 3)
+		{
+			System.out.println("Usage: Benchmark resultsFile baseLabel newLabel");
+			return;
+		}
+		Map<String, double[]> base = _readResults(args[0], args[1]);
+		Map<String, double[]> current = _readResults(args[0], args[2]);
+		System.out.println(String.format("%-48s %14s %14s %8s", "Benchmark", args[1], args[2], "Change"));
+		for(Map.Entry<String, double[]> entry : current.entrySet())
+		{
+			double[] before = base.get(entry.getKey());
+			double[] after = entry.getValue();
+			if(before == null)
+			{
+				System.out.println(String.format("%-48s %14s %14.3f", entry.getKey(), "-", after[0]));
+				continue;
+			}
+			boolean significant = Math.abs(after[0] - before[0]) > after[1] + before[1];
+			System.out.println(String.format(
+					"%-48s %14.3f %14.3f %+7.1f%%%s", entry.getKey(), before[0], after[0], 
+					(after[0] - before[0]) * 100.0 / before[0], significant ? "" : " (within error)"
+			));
+		}
+		
+	}
+	
+	/**
+	 * Works out the mean and error of a benchmark's iterations and prints them
+	 * 
+	 * @return	the result
+	 */
+	protected Result _addResult(String name, double[] scores, String units)
+	{
+		
+		Result result = new Result();
+		result.name = name;
+		result.units = units;
+		result.iterations = scores.length;
+		double sum = 0;
+		for(double score : scores)
+		{
+			sum += score;
+		}
+		result.score = sum / scores.length;
+		if(scores.length > 1)
+		{
+			double squares = 0;
+			for(double score : scores)
+			{
+				squares += (score - result.score) * (score - result.score);
+			}
+			double deviation = Math.sqrt(squares / (scores.length - 1));
+			result.error = _criticalValue(scores.length - 1) * deviation / Math.sqrt(scores.length);
+		}
+		this._results.add(result);
+		System.out.println(result);
+		return result;
+		
+	}
+	
+	/**
+	 * Runs one measured iteration
+	 * 
+	 * @return	the operations per second
+	 */
+	protected double _iteration(int operationsPerCall, Task setup, Task task) throws Exception
+	{
+		
+		if(setup != null)
+		{
+			setup.run();
+		}
+		System.gc();
+		long operations = 0;
+		long start = System.nanoTime();
+		long end = start + this._iterationMillis * 1000000L;
+		long now;
+		do
+		{
+			task.run();
+			operations += operationsPerCall;
+			now = System.nanoTime();
+		}
+		while(now < end);
+		return operations * 1000000000.0 / (now - start);
+		
+	}
+	
+	/**
+	 * Gets the heap in use once garbage has been collected
+	 */
+	protected static long _usedHeap() throws InterruptedException
+	{
+		
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++)
+		{
+			System.gc();
+			Thread.sleep(20);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+		
+	}
+	
+	/**
+	 * Reads the last results of a label, keyed by benchmark name
+	 */
+	protected static Map<String, double[]> _readResults(String file, String label) throws IOException
+	{
+		
+		LinkedHashMap<String, double[]> results = new LinkedHashMap<String, double[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try
+		{
+			String line;
+			while((line = reader.readLine()) != null)
+			{
+				String[] fields = line.split("\t");
+				if(fields.length == 4 && fields[0].equals(label))
+				{
+					results.put(fields[1], new double[] { Double.parseDouble(fields[2]), Double.parseDouble(fields[3]) });
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return results;
+		
+	}
+	
+	/**
+	 * The two-sided Student's t critical value at 99.9% confidence, as JMH reports errors
+	 * 
+	 * @param degreesOfFreedom	the iterations less one
+	 */
+	protected static double _criticalValue(int degreesOfFreedom)
+	{
+		
+		double[] values = { 636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587, 
+				4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850 };
+		if(degreesOfFreedom <= values.length)
+		{
+			return values[degreesOfFreedom - 1];
+		}
+		return degreesOfFreedom <= 30 ? 3.646 : 3.291;
+		
+	}
+	
+}
@@ -0,0 +1,195 @@
+package org.rockholla.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * A read-only java.sql.ResultSet over in-memory rows, so the jdbc package can be tested and 
+ * benchmarked without a database.  Only the methods the package uses are implemented.
+ * 
+ * @author rockholla
+ *
+ */
+public class InMemoryResultSet implements InvocationHandler
+{
+	
+	private String[] _columnNames;
+	private Object[][] _rows;
+	private int _position = -1;
+	private boolean _wasNull = false;
+	
+	private InMemoryResultSet(String[] columnNames, Object[][] rows)
+	{
+		this._columnNames = columnNames;
+		this._rows = rows;
+	}
+	
+	/**
+	 * Creates a result set
+	 * 
+	 * @param columnNames	the column names
+	 * @param rows			the rows, one value per column
+	 * @return				a java.sql.ResultSet positioned before the first row
+	 */
+	public static ResultSet create(String[] columnNames, Object[][] rows)
+	{
+		return (ResultSet) Proxy.newProxyInstance(
+				InMemoryResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, new InMemoryResultSet(columnNames, rows)
+		);
+	}
+	
+	/**
+	 * Generates rows of mixed integer, string and decimal values
+	 * 
+	 * @param columnCount	the number of columns
+	 * @param rowCount		the number of rows
+	 * @return				the rows
+	 */
+	public static Object[][] generateRows(int columnCount, int rowCount)
+	{
+		
+		Object[][] rows = new Object[rowCount][columnCount];
+		for(int i = 0; i < rowCount; i++)
+		{
+			for(int j = 0; j < columnCount; j++)
+			{
+				switch(j % 3)
+				{
+					case 0: rows[i][j] = Integer.valueOf(i + j); break;
+					case 1: rows[i][j] = "value " + i + "-" + j; break;
+					default: rows[i][j] = Double.valueOf(i * 0.5 + j); break;
+				}
+			}
+		}
+		return rows;
+		
+	}
+	
+	/**
+	 * Generates column names: column1, column2...
+	 * 
+	 * @param columnCount	the number of columns
+	 * @return				the column names
+	 */
+	public static String[] generateColumnNames(int columnCount)
+	{
+		
+		String[] columnNames = new String[columnCount];
+		for(int i = 0; i < columnCount; i++)
+		{
+			columnNames[i] = "column" + (i + 1);
+		}
+		return columnNames;
+		
+	}
+	
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+	{
+		
+		String name = method.getName();
+		if(name.equals("next"))
+		{
+			return ++this._position < this._rows.length;
+		}
+		if(name.equals("getMetaData"))
+		{
+			return Proxy.newProxyInstance(
+					InMemoryResultSet.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class }, new MetaData()
+			);
+		}
+		if(name.equals("findColumn"))
+		{
+			return this._findColumn((String) args[0]);
+		}
+		if(name.equals("wasNull"))
+		{
+			return this._wasNull;
+		}
+		if(name.equals("close") || name.equals("isClosed"))
+		{
+			return name.equals("isClosed") ? Boolean.FALSE : null;
+		}
+		if(name.startsWith("get") && args != null && args.length == 1)
+		{
+			int column = args[0] instanceof String ? this._findColumn((String) args[0]) : ((Integer) args[0]).intValue();
+			Object value = this._rows[this._position][column - 1];
+			this._wasNull = value == null;
+			return this._convert(value, method.getReturnType());
+		}
+		if(name.equals("hashCode"))
+		{
+			return System.identityHashCode(proxy);
+		}
+		if(name.equals("equals"))
+		{
+			return proxy == args[0];
+		}
+		throw new UnsupportedOperationException(name);
+		
+	}
+	
+	private int _findColumn(String columnName) throws SQLException
+	{
+		
+		for(int i = 0; i < this._columnNames.length; i++)
+		{
+			if(this._columnNames[i].equalsIgnoreCase(columnName)) return i + 1;
+		}
+		throw new SQLException("Column '" + columnName + "' not found.");
+		
+	}
+	
+	private Object _convert(Object value, Class<?> type)
+	{
+		
+		if(type == Object.class) return value;
+		if(type == String.class) return value == null ? null : String.valueOf(value);
+		if(type == long.class) return value == null ? 0L : ((Number) value).longValue();
+		if(type == int.class) return value == null ? 0 : ((Number) value).intValue();
+		if(type == double.class) return value == null ? 0.0 : ((Number) value).doubleValue();
+		if(type == float.class) return value == null ? 0.0f : ((Number) value).floatValue();
+		if(type == boolean.class) return value == null ? false : value instanceof Boolean ? value : ((Number) value).intValue() != 0;
+		return value;
+		
+	}
+	
+	private class MetaData implements InvocationHandler
+	{
+		
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			
+			String name = method.getName();
+			if(name.equals("getColumnCount"))
+			{
+				return _columnNames.length;
+			}
+			int column = ((Integer) args[0]).intValue();
+			if(name.equals("getColumnName") || name.equals("getColumnLabel"))
+			{
+				return _columnNames[column - 1];
+			}
+			Object sample = _rows.length > 0 ? _rows[0][column - 1] : null;
+			if(name.equals("getColumnClassName"))
+			{
+				return sample == null ? Object.class.getName() : sample.getClass().getName();
+			}
+			if(name.equals("getColumnType"))
+			{
+				if(sample instanceof Integer) return Types.INTEGER;
+				if(sample instanceof Long) return Types.BIGINT;
+				if(sample instanceof Double) return Types.DOUBLE;
+				return Types.VARCHAR;
+			}
+			throw new UnsupportedOperationException(name);
+			
+		}
+		
+	}
+	
+}
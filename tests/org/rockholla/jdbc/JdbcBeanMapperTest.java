@@ -0,0 +1,112 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class JdbcBeanMapperTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(JdbcBeanMapperTest.class);
+	
+	public static class User
+	{
+		
+		private long id;
+		private String userName;
+		private Integer loginCount;
+		private boolean active;
+		private Timestamp created;
+		private String nickname;
+		
+		public void setNickname(String nickname)
+		{
+			this.nickname = "@" + nickname;
+		}
+		
+	}
+	
+	@Test
+	public void testMapRows() throws SQLException
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		Timestamp created = Timestamp.valueOf("2012-03-04 05:06:07");
+		ResultSet resultSet = InMemoryResultSet.create(
+				new String[] { "id", "user_name", "login_count", "active", "created", "nickname", "unmapped" }, 
+				new Object[][] {
+					{ Long.valueOf(1), "first", Integer.valueOf(3), Boolean.TRUE, created, "one", "x" },
+					{ Long.valueOf(2), null, null, Boolean.FALSE, null, "two", "y" }
+				}
+		);
+		
+		JdbcBeanMapper<User> mapper = new JdbcBeanMapper<User>(User.class);
+		assertTrue(resultSet.next());
+		User first = mapper.mapRow(resultSet);
+		assertTrue(resultSet.next());
+		User second = mapper.mapRow(resultSet);
+		assertFalse(resultSet.next());
+		
+		// Columns match properties ignoring case and underscores, setters are used when there is one
+		assertEquals(1L, first.id);
+		assertEquals("first", first.userName);
+		assertEquals(Integer.valueOf(3), first.loginCount);
+		assertTrue(first.active);
+		assertEquals(created, first.created);
+		assertEquals("@one", first.nickname);
+		
+		// Nulls stay null for objects and 0 or false for primitives
+		assertEquals(2L, second.id);
+		assertNull(second.userName);
+		assertNull(second.loginCount);
+		assertFalse(second.active);
+		assertNull(second.created);
+		
+	}
+	
+	@Test
+	public void testLayouts() throws SQLException
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		ResultSet wide = InMemoryResultSet.create(
+				new String[] { "id", "user_name" }, 
+				new Object[][] { { Long.valueOf(1), "first" }, { Long.valueOf(2), "second" } }
+		);
+		ResultSet narrow = InMemoryResultSet.create(
+				new String[] { "user_name" }, 
+				new Object[][] { { "third" }, { "fourth" } }
+		);
+		
+		// Rows of different layouts mapped in turn each get the bindings for their own columns
+		JdbcBeanMapper<User> mapper = new JdbcBeanMapper<User>(User.class);
+		assertTrue(wide.next());
+		assertTrue(narrow.next());
+		assertEquals(1L, mapper.mapRow(wide).id);
+		User third = mapper.mapRow(narrow);
+		assertEquals(0L, third.id);
+		assertEquals("third", third.userName);
+		assertTrue(wide.next());
+		assertTrue(narrow.next());
+		assertEquals("second", mapper.mapRow(wide).userName);
+		assertEquals("fourth", mapper.mapRow(narrow).userName);
+		
+		// A layout is worked out once and the mapper keeps no result set
+		assertEquals(2, mapper._plans.size());
+		assertEquals(1, mapper._current.labels.length);
+		
+	}
+	
+}
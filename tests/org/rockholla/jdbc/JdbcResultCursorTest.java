@@ -0,0 +1,186 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class JdbcResultCursorTest
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(JdbcResultCursorTest.class);
+	
+	private StubConnectionPool pool;
+	private MySqlConnector connector;
+	
+	@Before
+	public void createConnector()
+	{
+		
+		this.pool = new StubConnectionPool("primary");
+		this.pool.setResult(new String[] { "id" }, new Object[][] { { Integer.valueOf(1) }, { Integer.valueOf(2) }, { Integer.valueOf(3) } });
+		this.connector = new MySqlConnector("primary", "test", "test", "test");
+		this.connector.setConnectionPool(this.pool);
+		
+	}
+	
+	/**
+	 * Checks the query's result is closed and its connection is back in the pool, not cancelled
+	 */
+	private void assertReleased()
+	{
+		
+		assertEquals(0, this.pool.openResults.get());
+		assertEquals(0, this.pool.getStats().getActive());
+		assertEquals(1, this.pool.getStats().getIdle());
+		assertFalse(this.pool.executed.contains("CANCEL"));
+		
+	}
+	
+	@Test
+	public void testFullIteration() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		JdbcResultCursor cursor = this.connector.getCursor("SELECT id FROM orders");
+		int count = 0;
+		for(JdbcResultRow row : cursor)
+		{
+			assertEquals(++count, row.getInt("id"));
+		}
+		assertEquals(3, count);
+		assertTrue(cursor.isClosed());
+		this.assertReleased();
+		
+		cursor = this.connector.getCursor("SELECT id FROM orders WHERE id > ?", 0);
+		count = 0;
+		while(cursor.hasNext())
+		{
+			cursor.next();
+			count++;
+		}
+		assertEquals(3, count);
+		assertTrue(cursor.isClosed());
+		this.assertReleased();
+		
+		// Streamed gets hand every row to the handler
+		final int[] handled = new int[1];
+		JdbcRowHandler handler = new JdbcRowHandler() {
+			public void handleRow(JdbcResultRow row)
+			{
+				handled[0]++;
+			}
+		};
+		assertEquals(3, this.connector.get("SELECT id FROM orders", handler));
+		assertEquals(3, this.connector.get("SELECT id FROM orders WHERE id > ?", handler, 0));
+		assertEquals(6, handled[0]);
+		this.assertReleased();
+		assertEquals(1, this.pool.connections.size());
+		
+	}
+	
+	@Test
+	public void testEarlyClose() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		// Closing part way closes the result rather than cancelling the statement, and the
+		// connection goes back to the pool for the next query
+		JdbcResultCursor cursor = this.connector.getCursor("SELECT id FROM orders");
+		assertEquals(1, cursor.next().getInt("id"));
+		cursor.close();
+		cursor.close();
+		assertTrue(cursor.isClosed());
+		assertFalse(cursor.hasNext());
+		this.assertReleased();
+		
+		cursor = this.connector.getCursor("SELECT id FROM orders WHERE id > ?", 0);
+		assertTrue(cursor.hasNext());
+		cursor.close();
+		this.assertReleased();
+		
+		assertEquals(3, this.connector.get("SELECT id FROM orders").size());
+		assertEquals(1, this.pool.connections.size());
+		
+	}
+	
+	@Test
+	public void testHandlerException() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		// An exception from the handler stops the query and reaches the caller
+		final IllegalStateException failure = new IllegalStateException("stop");
+		JdbcRowHandler handler = new JdbcRowHandler() {
+			public void handleRow(JdbcResultRow row)
+			{
+				if(row.getInt("id") == 2) throw failure;
+			}
+		};
+		try
+		{
+			this.connector.get("SELECT id FROM orders", handler);
+			fail("the handler's exception should be passed on");
+		}
+		catch(MySqlConnectorException exception)
+		{
+			assertTrue(exception.getCause() == failure);
+		}
+		this.assertReleased();
+		try
+		{
+			this.connector.get("SELECT id FROM orders WHERE id > ?", handler, 0);
+			fail("the handler's exception should be passed on");
+		}
+		catch(MySqlConnectorException exception)
+		{
+			assertTrue(exception.getCause() == failure);
+		}
+		this.assertReleased();
+		assertEquals(1, this.pool.connections.size());
+		
+	}
+	
+	@Test
+	public void testReadFailure() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		// A connection that failed part way through a result is discarded, not reused
+		this.pool.failAfter = 1;
+		JdbcResultCursor cursor = this.connector.getCursor("SELECT id FROM orders");
+		assertEquals(1, cursor.next().getInt("id"));
+		try
+		{
+			cursor.hasNext();
+			fail("the read failure should be passed on");
+		}
+		catch(RuntimeException exception)
+		{
+			assertTrue(exception.getCause() instanceof MySqlConnectorException);
+		}
+		assertTrue(cursor.isClosed());
+		assertEquals(0, this.pool.openResults.get());
+		assertEquals(0, this.pool.getStats().getActive());
+		assertEquals(0, this.pool.getStats().getIdle());
+		assertTrue(this.pool.connections.get(0).closed);
+		
+		this.pool.failAfter = -1;
+		assertEquals(3, this.connector.get("SELECT id FROM orders").size());
+		assertEquals(2, this.pool.connections.size());
+		
+	}
+	
+}
@@ -0,0 +1,165 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class JdbcResultRowTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(JdbcResultRowTest.class);
+	
+	private JdbcColumnIndex getColumns(String...names)
+	{
+		
+		ArrayList<String> columnNames = new ArrayList<String>();
+		for(String columnName : names)
+		{
+			columnNames.add(columnName);
+		}
+		return new JdbcColumnIndex(columnNames);
+		
+	}
+	
+	@Test
+	public void testColumnAccess() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		JdbcColumnIndex columns = this.getColumns("id", "name", "created");
+		
+		JdbcResultRow one = new JdbcResultRow(columns);
+		one.setObject(1, 1);
+		one.setObject(2, "first");
+		JdbcResultRow two = new JdbcResultRow(columns);
+		two.put("id", 2);
+		two.put("name", "second");
+		
+		// Rows share the index but not the values
+		assertTrue(one.getColumnIndex() == two.getColumnIndex());
+		assertEquals("first", one.getString("name"));
+		assertEquals("second", two.getStringAt(2));
+		assertEquals(2, two.get("id"));
+		
+		// A column with no value is still a key of the row, as it was with a HashMap
+		assertTrue(one.containsKey("created"));
+		assertNull(one.get("created"));
+		assertEquals("null", one.getStringAt(3));
+		assertEquals(3, one.size());
+		
+		// Keys outside of the index are kept like any other Map
+		one.put("extra", "value");
+		assertEquals("value", one.get("extra"));
+		assertEquals(4, one.size());
+		assertFalse(two.containsKey("extra"));
+		
+		one.remove("name");
+		assertFalse(one.containsKey("name"));
+		assertEquals(3, one.size());
+		
+		// getString(int) still reads the key named by the number, getStringAt(int) the column
+		one.put("1", "keyed");
+		assertEquals("keyed", one.getString(1));
+		assertEquals("1", one.getStringAt(1));
+		assertEquals(1, one.getObject(1));
+		assertEquals("null", two.getString(1));
+		
+	}
+	
+	@Test
+	public void testMapBehavior() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		JdbcResultRow row = new JdbcResultRow(this.getColumns("id", "name"));
+		row.put("id", 7);
+		row.put("name", "seven");
+		
+		HashMap<String, Object> expected = new HashMap<String, Object>();
+		expected.put("id", 7);
+		expected.put("name", "seven");
+		
+		// Rows compare equal to a HashMap of the same values
+		assertTrue(row.equals(expected));
+		assertTrue(expected.equals(row));
+		assertEquals(expected.hashCode(), row.hashCode());
+		assertEquals(expected.keySet(), row.keySet());
+		
+		// Rows built by hand behave like plain maps
+		JdbcResultRow handBuilt = new JdbcResultRow();
+		handBuilt.put("id", 7);
+		handBuilt.put("name", "seven");
+		assertTrue(handBuilt.equals(row));
+		
+		JdbcResultRow copy = row.clone();
+		copy.put("name", "changed");
+		assertEquals("seven", row.get("name"));
+		
+	}
+	
+	@Test
+	public void testTypedAccess() throws SQLException
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		ResultSet resultSet = InMemoryResultSet.create(
+				new String[] { "id", "total", "price", "active", "name", "created" }, 
+				new Object[][] {
+					{ Integer.valueOf(7), Long.valueOf(9000000000L), Double.valueOf(2.5), Boolean.TRUE, "12", "2012-03-04 05:06:07" },
+					{ null, null, null, null, null, null }
+				}
+		);
+		JdbcResultSet result = MySqlConnector._readResultSet(resultSet);
+		JdbcResultRow row = result.get(0);
+		
+		// Primitive columns read back without conversion, and box to the driver's class through the Map
+		assertEquals(7, row.getInt("id"));
+		assertEquals(9000000000L, row.getLong(2));
+		assertEquals(2.5, row.getDouble("price"), 0);
+		assertTrue(row.getBoolean("active"));
+		assertEquals(Integer.valueOf(7), row.get("id"));
+		assertEquals(Long.valueOf(9000000000L), row.getObject(2));
+		assertEquals(Double.valueOf(2.5), row.get("price"));
+		assertEquals(Boolean.TRUE, row.get("active"));
+		assertEquals("7", row.getString("id"));
+		
+		// Object columns are converted
+		assertEquals(12, row.getInt("name"));
+		assertEquals(Timestamp.valueOf("2012-03-04 05:06:07"), row.getTimestamp("created"));
+		assertEquals("12", new String(row.getBytes("name")));
+		
+		// Nulls read as 0, false and null
+		JdbcResultRow empty = result.get(1);
+		assertTrue(empty.isNull("id"));
+		assertFalse(row.isNull("id"));
+		assertEquals(0, empty.getLong("total"));
+		assertFalse(empty.getBoolean("active"));
+		assertNull(empty.get("price"));
+		assertNull(empty.getTimestamp("created"));
+		
+		// Values put over a primitive column replace it
+		row.put("id", "8");
+		assertEquals(8, row.getInt("id"));
+		assertEquals("8", row.get("id"));
+		JdbcResultRow copy = row.clone();
+		copy.remove("total");
+		assertEquals(9000000000L, row.getLong("total"));
+		assertEquals(0, copy.getLong("total"));
+		
+	}
+	
+}
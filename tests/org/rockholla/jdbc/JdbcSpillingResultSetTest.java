@@ -0,0 +1,309 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class JdbcSpillingResultSetTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(JdbcSpillingResultSetTest.class);
+	
+	/**
+	 * Calls a default method of newer JDKs on a list, ex: removeIf, with a proxy of its functional 
+	 * interface, the tests are compiled for Java 6 which does not have them
+	 * 
+	 * @param list		the list
+	 * @param method	the method name
+	 * @param type		the functional interface the method takes
+	 * @param function	implements the functional interface
+	 * @return			the method's result
+	 */
+	private static Object callDefault(List<?> list, String method, String type, InvocationHandler function) throws Exception
+	{
+		
+		Class<?> functionType = Class.forName(type);
+		Object proxy = Proxy.newProxyInstance(functionType.getClassLoader(), new Class<?>[] { functionType }, function);
+		try
+		{
+			return list.getClass().getMethod(method, functionType).invoke(list, proxy);
+		}
+		catch(InvocationTargetException exception)
+		{
+			throw (Exception) exception.getCause();
+		}
+		
+	}
+	
+	/**
+	 * Checks if the JDK running the tests has the default methods of Java 8
+	 * 
+	 * @return	true if it has java.util.function
+	 */
+	private static boolean hasDefaultMethods()
+	{
+		
+		try
+		{
+			Class.forName("java.util.function.Predicate");
+			return true;
+		}
+		catch(ClassNotFoundException exception)
+		{
+			return false;
+		}
+		
+	}
+	
+	@Test
+	public void testSpilling() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		String[] columnNames = InMemoryResultSet.generateColumnNames(6);
+		Object[][] rows = InMemoryResultSet.generateRows(6, 1000);
+		JdbcResultSet expected = MySqlConnector._readResultSet(InMemoryResultSet.create(columnNames, rows));
+		
+		JdbcSpillingResultSet spilling = new JdbcSpillingResultSet(expected.get(0).estimateSize() * 100, null);
+		MySqlConnector._readResultSet(InMemoryResultSet.create(columnNames, rows), spilling);
+		int spilledCount = spilling.getSpilledCount();
+		try
+		{
+			// Later rows have longer values, so a little under 100 rows fit the budget
+			assertTrue(spilling.isSpilled());
+			assertTrue(spilledCount > 900 && spilledCount < 910);
+			assertTrue(spilling.getSpillFile().exists());
+			assertEquals(1000, spilling.size());
+			
+			// Spilled rows read back equal to the rows read into memory, by index and by iteration
+			for(int i = 0; i < 1000; i += 97)
+			{
+				assertEquals(expected.get(i), spilling.get(i));
+			}
+			assertEquals(rows[999][2], spilling.get(999).getDouble("column3"));
+			int count = 0;
+			for(JdbcResultRow row : spilling)
+			{
+				assertEquals(expected.get(count++), row);
+			}
+			assertEquals(1000, count);
+			assertTrue(expected.equals(spilling));
+			assertEquals(expected.hashCode(), spilling.hashCode());
+			
+			// Rows added after reading are still found
+			JdbcResultRow extra = new JdbcResultRow();
+			extra.put("note", "added");
+			spilling.add(extra);
+			assertEquals("added", spilling.get(1000).get("note"));
+			
+			try
+			{
+				spilling.remove(0);
+				fail("Rows cannot be removed once spilled");
+			}
+			catch(UnsupportedOperationException exception) {}
+			try
+			{
+				spilling.set(0, extra);
+				fail("Rows cannot be replaced once spilled");
+			}
+			catch(UnsupportedOperationException exception) {}
+			
+			// The default methods of newer JDKs see the spilled rows too, and cannot remove rows
+			if(hasDefaultMethods())
+			{
+				final AtomicInteger visited = new AtomicInteger();
+				callDefault(spilling, "forEach", "java.util.function.Consumer", new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args)
+					{
+						visited.incrementAndGet();
+						return null;
+					}
+				});
+				assertEquals(1001, visited.get());
+				try
+				{
+					callDefault(spilling, "removeIf", "java.util.function.Predicate", new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args)
+						{
+							return Boolean.TRUE;
+						}
+					});
+					fail("Rows cannot be removed once spilled");
+				}
+				catch(UnsupportedOperationException exception) {}
+				assertEquals(1001, spilling.size());
+				assertEquals(expected.get(0), spilling.get(0));
+			}
+			
+			// Serializes as a plain result set holding every row
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(spilling);
+			out.close();
+			Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+			assertEquals(JdbcResultSet.class, copy.getClass());
+			assertEquals(1001, ((JdbcResultSet) copy).size());
+			
+			// Clones are plain result sets too
+			Object clone = spilling.clone();
+			assertEquals(JdbcResultSet.class, clone.getClass());
+			assertTrue(spilling.equals(clone));
+		}
+		finally
+		{
+			File file = spilling.getSpillFile();
+			spilling.close();
+			assertFalse(file.exists());
+			assertEquals(1000 - spilledCount, spilling.size());
+		}
+		
+	}
+	
+	@Test
+	public void testInMemory() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		JdbcResultSet rows = MySqlConnector._readResultSet(InMemoryResultSet.create(InMemoryResultSet.generateColumnNames(3), InMemoryResultSet.generateRows(3, 10)));
+		JdbcSpillingResultSet spilling = new JdbcSpillingResultSet(Long.MAX_VALUE, null);
+		spilling.addAll(rows);
+		long empty = new JdbcSpillingResultSet(Long.MAX_VALUE, null).estimateSize();
+		assertFalse(spilling.isSpilled());
+		
+		// Rows in memory can be changed, their estimated size follows
+		spilling.remove(9);
+		spilling.set(0, rows.get(1));
+		spilling.add(0, rows.get(2));
+		assertEquals(10, spilling.size());
+		if(hasDefaultMethods())
+		{
+			final JdbcResultRow removed = rows.get(1);
+			assertEquals(Boolean.TRUE, callDefault(spilling, "removeIf", "java.util.function.Predicate", new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args)
+				{
+					return args[0] == removed;
+				}
+			}));
+			assertEquals(8, spilling.size());
+		}
+		spilling.clear();
+		assertEquals(0, spilling.size());
+		assertEquals(empty, spilling.estimateSize());
+		
+	}
+	
+	@Test
+	public void testRowEncoding() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		ArrayList<String> columnNames = new ArrayList<String>();
+		for(String columnName : new String[] { "id", "name", "price", "created", "data", "flag", "missing" })
+		{
+			columnNames.add(columnName);
+		}
+		JdbcColumnIndex columns = new JdbcColumnIndex(columnNames);
+		
+		JdbcResultRow row = new JdbcResultRow(columns);
+		row.setObject(1, Long.valueOf(42));
+		row.setObject(2, "caf\u00e9");
+		row.setObject(3, new BigDecimal("12.50"));
+		row.setObject(4, new Timestamp(1234567890123L));
+		row.setObject(5, new byte[] { 1, 2, 3 });
+		row.setObject(6, Boolean.TRUE);
+		row.remove("missing");
+		row.put("extra", Integer.valueOf(7));
+		
+		JdbcSpillingResultSet spilling = new JdbcSpillingResultSet(0, null);
+		try
+		{
+			spilling.add(row);
+			spilling.add(new JdbcResultRow());
+			JdbcResultRow read = spilling.get(0);
+			assertEquals(Long.valueOf(42), read.get("id"));
+			assertEquals("caf\u00e9", read.get("name"));
+			assertEquals(new BigDecimal("12.50"), read.get("price"));
+			assertEquals(new Timestamp(1234567890123L), read.get("created"));
+			assertArrayEquals(new byte[] { 1, 2, 3 }, read.getBytes("data"));
+			assertEquals(Boolean.TRUE, read.get("flag"));
+			assertFalse(read.containsKey("missing"));
+			assertEquals(Integer.valueOf(7), read.get("extra"));
+			assertTrue(read.getColumnIndex() == spilling.get(0).getColumnIndex());
+			assertNotNull(spilling.get(1));
+			assertNull(spilling.get(1).getColumnIndex());
+		}
+		finally
+		{
+			spilling.close();
+		}
+		
+	}
+	
+	@Test
+	public void testConnectorReadFailure() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		File directory = File.createTempFile("JdbcSpillingResultSetTest", "");
+		directory.delete();
+		directory.mkdirs();
+		
+		StubConnectionPool pool = new StubConnectionPool("localhost");
+		pool.setResult(InMemoryResultSet.generateColumnNames(6), InMemoryResultSet.generateRows(6, 1000));
+		MySqlConnector connector = new MySqlConnector("localhost", "test", "test", "test");
+		connector.setConnectionPool(pool);
+		connector.setResultMemoryBudget(1024, directory);
+		
+		// A read that fails partway, after rows have spilled, leaves no file behind
+		pool.failAfter = 500;
+		try
+		{
+			connector.getSpilling("SELECT * FROM t");
+			fail("The read should fail");
+		}
+		catch(MySqlConnectorException exception) {}
+		assertEquals(0, directory.list().length);
+		
+		pool.failAfter = -1;
+		JdbcSpillingResultSet result = connector.getSpilling("SELECT * FROM t WHERE id > ?", 0);
+		assertTrue(result.isSpilled());
+		assertEquals(1000, result.size());
+		assertEquals(1, directory.list().length);
+		result.close();
+		assertEquals(0, directory.list().length);
+		assertEquals(0, pool.getStats().getActive());
+		connector.close();
+		directory.delete();
+		
+	}
+	
+}
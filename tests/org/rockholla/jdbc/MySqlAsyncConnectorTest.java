@@ -0,0 +1,208 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class MySqlAsyncConnectorTest
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(MySqlAsyncConnectorTest.class);
+	
+	private StubConnectionPool pool;
+	private MySqlConnector connector;
+	
+	@Before
+	public void createConnector()
+	{
+		
+		this.pool = new StubConnectionPool("primary", 0, 4);
+		this.pool.setResult(new String[] { "id" }, new Object[][] { { Integer.valueOf(1) }, { Integer.valueOf(2) } });
+		this.connector = new MySqlConnector("primary", "test", "test", "test");
+		this.connector.setConnectionPool(this.pool);
+		
+	}
+	
+	/**
+	 * A mapper that counts the commands mapping rows at once and holds each one until released
+	 */
+	private static class BlockingMapper implements JdbcRowMapper<Integer>
+	{
+		
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		
+		public Integer mapRow(ResultSet resultSet) throws SQLException
+		{
+			
+			int now = this.running.incrementAndGet();
+			while(true)
+			{
+				int max = this.maxRunning.get();
+				if(now <= max || this.maxRunning.compareAndSet(max, now)) break;
+			}
+			try
+			{
+				this.release.await();
+			}
+			catch(InterruptedException exception)
+			{
+				throw new SQLException("Interrupted");
+			}
+			finally
+			{
+				this.running.decrementAndGet();
+			}
+			return resultSet.getInt(1);
+			
+		}
+		
+	}
+	
+	@Test
+	public void testResults() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		MySqlAsyncConnector async = new MySqlAsyncConnector(this.connector, 2);
+		
+		// Results come back through the Future
+		Future<JdbcResultSet> rows = async.get("SELECT id FROM orders");
+		Future<JdbcResultSet> paramRows = async.get("SELECT id FROM orders WHERE id > ?", 0);
+		Future<Integer> updated = async.executeUpdate("DELETE FROM orders WHERE id = ?", 1);
+		assertEquals(2, rows.get().size());
+		assertEquals(2, paramRows.get().size());
+		assertEquals(Integer.valueOf(1), updated.get());
+		
+		// Failures are thrown from Future.get()
+		this.pool.down = true;
+		Future<Integer> failed = async.executeUpdate("DELETE FROM orders");
+		try
+		{
+			failed.get();
+			fail("the failure should be passed on");
+		}
+		catch(ExecutionException exception)
+		{
+			assertTrue(exception.getCause() instanceof MySqlConnectorException);
+		}
+		assertTrue(async.awaitTermination(1, TimeUnit.SECONDS));
+		assertEquals(0, async.getInFlightCount());
+		assertEquals(2, async.getAvailablePermits());
+		async.shutdown();
+		
+	}
+	
+	@Test
+	public void testConcurrencyLimit() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		MySqlAsyncConnector async = new MySqlAsyncConnector(this.connector, executor, 2);
+		BlockingMapper mapper = new BlockingMapper();
+		
+		// More threads than permits, only two commands run at once
+		List<Future<ArrayList<Integer>>> futures = new ArrayList<Future<ArrayList<Integer>>>();
+		for(int i = 0; i < 4; i++)
+		{
+			futures.add(async.getObjects("SELECT id FROM orders", mapper));
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while(mapper.running.get() < 2 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+		Thread.sleep(100);
+		assertEquals(2, mapper.running.get());
+		assertEquals(0, async.getAvailablePermits());
+		assertEquals(4, async.getInFlightCount());
+		
+		mapper.release.countDown();
+		for(Future<ArrayList<Integer>> future : futures)
+		{
+			assertEquals(2, future.get(5, TimeUnit.SECONDS).size());
+		}
+		assertEquals(2, mapper.maxRunning.get());
+		assertEquals(2, async.getAvailablePermits());
+		executor.shutdown();
+		
+	}
+	
+	@Test
+	public void testShutdown() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		MySqlAsyncConnector async = new MySqlAsyncConnector(this.connector, executor, 1);
+		BlockingMapper mapper = new BlockingMapper();
+		
+		Future<ArrayList<Integer>> running = async.getObjects("SELECT id FROM orders", mapper);
+		Future<ArrayList<Integer>> waiting = async.getObjects("SELECT id FROM orders", mapper);
+		long deadline = System.currentTimeMillis() + 5000;
+		while(mapper.running.get() < 1 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+		
+		// Once shut down nothing more is accepted, and commands in flight can be awaited
+		async.shutdown();
+		try
+		{
+			async.executeUpdate("DELETE FROM orders");
+			fail("commands should be refused after shutdown");
+		}
+		catch(RejectedExecutionException exception) {}
+		assertFalse(async.awaitTermination(50, TimeUnit.MILLISECONDS));
+		
+		// or cancelled, which frees their permits and leaves a shared executor running
+		assertEquals(2, async.shutdownNow());
+		for(Future<ArrayList<Integer>> future : new Future[] { running, waiting })
+		{
+			try
+			{
+				future.get();
+				fail("the command should be cancelled");
+			}
+			catch(CancellationException exception) {}
+		}
+		assertTrue(async.awaitTermination(1, TimeUnit.SECONDS));
+		assertEquals(0, async.getInFlightCount());
+		deadline = System.currentTimeMillis() + 5000;
+		while(async.getAvailablePermits() < 1 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+		assertEquals(1, async.getAvailablePermits());
+		assertFalse(executor.isShutdown());
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		
+	}
+	
+}
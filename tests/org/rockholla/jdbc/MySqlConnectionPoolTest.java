@@ -0,0 +1,201 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class MySqlConnectionPoolTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(MySqlConnectionPoolTest.class);
+	
+	@Test
+	public void testBorrowAndRelease() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		StubConnectionPool pool = new StubConnectionPool("primary", 0, 2);
+		
+		// Released connections are handed out again, most recently released first
+		Connection first = pool.borrow();
+		Connection second = pool.borrow();
+		assertTrue(first != second);
+		assertTrue(pool.isBorrowed(first));
+		assertEquals(2, pool.getStats().getActive());
+		pool.release(first);
+		assertFalse(pool.isBorrowed(first));
+		assertEquals(1, pool.getStats().getIdle());
+		assertTrue(pool.borrow() == first);
+		pool.release(first);
+		pool.release(second);
+		assertTrue(pool.borrow() == second);
+		pool.release(second);
+		
+		MySqlConnectionPoolStats stats = pool.getStats();
+		assertEquals(0, stats.getActive());
+		assertEquals(2, stats.getIdle());
+		assertEquals(4, stats.getBorrowCount());
+		assertEquals(2, stats.getCreatedCount());
+		assertEquals(0, stats.getDestroyedCount());
+		pool.resetStats();
+		assertEquals(0, pool.getStats().getBorrowCount());
+		assertEquals(2, pool.getStats().getIdle());
+		
+		// A connection left in a transaction is rolled back on release
+		Connection connection = pool.borrow();
+		connection.setAutoCommit(false);
+		pool.release(connection);
+		assertTrue(connection.getAutoCommit());
+		assertEquals("ROLLBACK", pool.executed.get(pool.executed.size() - 1));
+		
+		// Closing the pool closes idle connections, and those borrowed once released
+		connection = pool.borrow();
+		pool.close();
+		assertTrue(pool.isClosed());
+		assertTrue(pool.connections.get(0).closed != pool.connections.get(1).closed);
+		pool.release(connection);
+		assertTrue(pool.connections.get(0).closed && pool.connections.get(1).closed);
+		try
+		{
+			pool.borrow();
+			fail("The pool is closed");
+		}
+		catch(SQLException exception) {}
+		
+	}
+	
+	@Test
+	public void testMaxSize() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		final StubConnectionPool pool = new StubConnectionPool("primary", 0, 1);
+		pool.setBorrowTimeout(50);
+		
+		// A full pool fails a borrow once the borrow timeout passes
+		Connection connection = pool.borrow();
+		try
+		{
+			pool.borrow();
+			fail("The pool is full");
+		}
+		catch(SQLException exception) {}
+		assertEquals(1, pool.getStats().getTimeoutCount());
+		
+		// and otherwise waits for a connection to be released
+		pool.setBorrowTimeout(10000);
+		final AtomicReference<Connection> borrowed = new AtomicReference<Connection>();
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread waiting = new Thread() {
+			public void run()
+			{
+				try
+				{
+					borrowed.set(pool.borrow());
+				}
+				catch(SQLException exception) {}
+				done.countDown();
+			}
+		};
+		waiting.start();
+		assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+		pool.release(connection);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(borrowed.get() == connection);
+		assertEquals(1, pool.getStats().getCreatedCount());
+		// most of the 100ms, the thread may have started waiting a little after it was started
+		assertTrue(pool.getStats().getMaxWaitMillis() >= 50);
+		pool.release(connection);
+		pool.close();
+		
+	}
+	
+	@Test
+	public void testValidation() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		StubConnectionPool pool = new StubConnectionPool("primary", 0, 2);
+		
+		// An idle connection that fails validation is closed and replaced
+		Connection connection = pool.borrow();
+		pool.release(connection);
+		pool.connections.get(0).valid = false;
+		Connection replacement = pool.borrow();
+		assertTrue(replacement != connection);
+		assertTrue(pool.connections.get(0).closed);
+		assertEquals(1, pool.getStats().getDestroyedCount());
+		
+		// unless validation is off, when only closed connections are replaced
+		pool.release(replacement);
+		pool.connections.get(1).valid = false;
+		pool.setValidationTimeout(0);
+		assertTrue(pool.borrow() == replacement);
+		
+		// A connection that fails to open fails the borrow and frees its slot
+		pool.down = true;
+		try
+		{
+			pool.borrow();
+			fail("The server is down");
+		}
+		catch(SQLException exception) {}
+		pool.down = false;
+		pool.release(pool.borrow());
+		
+		// Invalidated connections are closed rather than pooled
+		pool.invalidate(replacement);
+		assertTrue(pool.connections.get(1).closed);
+		assertEquals(1, pool.getStats().getIdle());
+		assertEquals(0, pool.getStats().getActive());
+		pool.close();
+		
+	}
+	
+	@Test
+	public void testEviction() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		StubConnectionPool pool = new StubConnectionPool("primary", 1, 3);
+		pool.fill();
+		assertEquals(1, pool.getStats().getIdle());
+		
+		Connection first = pool.borrow();
+		Connection second = pool.borrow();
+		Connection third = pool.borrow();
+		pool.release(first);
+		pool.release(second);
+		pool.release(third);
+		assertEquals(3, pool.getStats().getIdle());
+		
+		// Connections idle past the timeout are closed, oldest first, down to the minimum size
+		pool.setIdleTimeout(60000);
+		pool.evictIdle();
+		assertEquals(3, pool.getStats().getIdle());
+		pool.setIdleTimeout(1);
+		Thread.sleep(10);
+		pool.evictIdle();
+		assertEquals(1, pool.getStats().getIdle());
+		assertEquals(2, pool.getStats().getDestroyedCount());
+		assertTrue(pool.borrow() == third);
+		pool.release(third);
+		pool.close();
+		
+	}
+	
+}
@@ -0,0 +1,250 @@
+package org.rockholla.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Benchmarks of MySqlConnector.  Result assembly for narrow, wide and tall result sets always 
+ * runs, from rows held in memory, so it works offline.  Its time and retained heap are measured 
+ * for the current assembly and for the assembly get() used before it read columns by index.  Connect overhead, get(), executeUpdate 
+ * and executeBatch run against a database when one is given, preferably a local server started 
+ * for the benchmark so results are not skewed by the network or other clients:
+ * 
+ * 	java -Dbenchmark.host=127.0.0.1 -Dbenchmark.port=3306 -Dbenchmark.database=benchmark 
+ * 		-Dbenchmark.username=root -Dbenchmark.password= 
+ * 		-Dbenchmark.results=results.tsv -Dbenchmark.label=`git rev-parse --short HEAD` 
+ * 		org.rockholla.jdbc.MySqlConnectorBenchmark
+ * 
+ * The benchmark creates and drops its own tables, filled with the same generated rows on each run.  
+ * See Benchmark for the iteration settings and comparing results across commits.
+ * 
+ * @author rockholla
+ *
+ */
+public class MySqlConnectorBenchmark 
+{
+	
+	/** the shapes of result sets: name, columns, rows */
+	protected static final Object[][] SHAPES = {
+		{ "narrow", 3, 1000 },
+		{ "wide", 60, 1000 },
+		{ "tall", 5, 100000 }
+	};
+	
+	protected static final int[] BATCH_SIZES = { 1, 10, 100, 1000 };
+	
+	public static void main(String[] args) throws Exception
+	{
+		
+		Benchmark benchmark = new Benchmark();
+		benchmark.printHeader();
+		
+		for(Object[] shape : SHAPES)
+		{
+			final int columnCount = (Integer) shape[1];
+			final int rowCount = (Integer) shape[2];
+			final String[] columnNames = InMemoryResultSet.generateColumnNames(columnCount);
+			final Object[][] rows = InMemoryResultSet.generateRows(columnCount, rowCount);
+			benchmark.run("assembly." + shape[0] + " (rows)", rowCount, new Benchmark.Task() {
+				public void run() throws Exception
+				{
+					MySqlConnector._readResultSet(InMemoryResultSet.create(columnNames, rows));
+				}
+			});
+			benchmark.run("assembly." + shape[0] + ".legacy (rows)", rowCount, new Benchmark.Task() {
+				public void run() throws Exception
+				{
+					legacyAssembly(InMemoryResultSet.create(columnNames, rows));
+				}
+			});
+			benchmark.measureRetained("assembly." + shape[0] + ".retained (rows)", rowCount, new Benchmark.Allocation() {
+				public Object allocate() throws Exception
+				{
+					return MySqlConnector._readResultSet(InMemoryResultSet.create(columnNames, rows));
+				}
+			});
+			benchmark.measureRetained("assembly." + shape[0] + ".legacy.retained (rows)", rowCount, new Benchmark.Allocation() {
+				public Object allocate() throws Exception
+				{
+					return legacyAssembly(InMemoryResultSet.create(columnNames, rows));
+				}
+			});
+		}
+		
+		String host = System.getProperty("benchmark.host");
+		if(host == null)
+		{
+			System.out.println("# No -Dbenchmark.host given, database benchmarks skipped");
+		}
+		else
+		{
+			MySqlConnector connector = new MySqlConnector(
+					host, Integer.getInteger("benchmark.port", -1), System.getProperty("benchmark.database", "benchmark"), 
+					System.getProperty("benchmark.username", "root"), System.getProperty("benchmark.password", "")
+			);
+			try
+			{
+				runDatabaseBenchmarks(benchmark, connector);
+			}
+			finally
+			{
+				connector.close();
+			}
+		}
+		
+		benchmark.saveResults();
+		
+	}
+	
+	protected static void runDatabaseBenchmarks(Benchmark benchmark, final MySqlConnector connector) throws Exception
+	{
+		
+		// Connecting for each command, then reusing pooled connections
+		benchmark.run("connect.unpooled", 1, new Benchmark.Task() {
+			public void run() throws Exception
+			{
+				connector.get("SELECT 1");
+			}
+		});
+		connector.enableConnectionPool(1, 4);
+		benchmark.run("connect.pooled", 1, new Benchmark.Task() {
+			public void run() throws Exception
+			{
+				connector.get("SELECT 1");
+			}
+		});
+		
+		for(Object[] shape : SHAPES)
+		{
+			final String table = "benchmark_" + shape[0];
+			int columnCount = (Integer) shape[1];
+			int rowCount = (Integer) shape[2];
+			createTable(connector, table, columnCount, rowCount);
+			benchmark.run("get." + shape[0] + " (rows)", rowCount, new Benchmark.Task() {
+				public void run() throws Exception
+				{
+					connector.get("SELECT * FROM " + table);
+				}
+			});
+		}
+		
+		final String table = "benchmark_narrow";
+		benchmark.run("executeUpdate", 1, new Benchmark.Task() {
+			int id = 0;
+			public void run() throws Exception
+			{
+				connector.executeUpdate("UPDATE " + table + " SET column2 = ? WHERE column1 = ?", "updated " + id, id++ % 1000);
+			}
+		});
+		
+		// Inserts go to a table of their own, emptied before each iteration so every iteration inserts into the same table
+		createTable(connector, "benchmark_insert", 3, 0);
+		Benchmark.Task truncate = new Benchmark.Task() {
+			public void run() throws Exception
+			{
+				connector.executeUpdate("TRUNCATE TABLE benchmark_insert");
+			}
+		};
+		for(int batchSize : BATCH_SIZES)
+		{
+			final List<Object[]> batch = new ArrayList<Object[]>();
+			for(Object[] row : InMemoryResultSet.generateRows(3, batchSize))
+			{
+				batch.add(row);
+			}
+			benchmark.run("executeBatch." + batchSize + " (rows)", batchSize, truncate, new Benchmark.Task() {
+				public void run() throws Exception
+				{
+					connector.executeBatch("INSERT INTO benchmark_insert (column1, column2, column3) VALUES (?, ?, ?)", batch);
+				}
+			});
+		}
+		
+		for(Object[] shape : SHAPES)
+		{
+			connector.executeUpdate("DROP TABLE IF EXISTS benchmark_" + shape[0]);
+		}
+		connector.executeUpdate("DROP TABLE IF EXISTS benchmark_insert");
+		
+	}
+	
+	/**
+	 * Creates a table with the columns of InMemoryResultSet.generateRows and fills it with the generated rows
+	 */
+	protected static void createTable(MySqlConnector connector, String table, int columnCount, int rowCount) throws Exception
+	{
+		
+		String[] columnNames = InMemoryResultSet.generateColumnNames(columnCount);
+		StringBuilder definition = new StringBuilder();
+		StringBuilder markers = new StringBuilder();
+		for(int i = 0; i < columnCount; i++)
+		{
+			if(i > 0)
+			{
+				definition.append(", ");
+				markers.append(", ");
+			}
+			switch(i % 3)
+			{
+				case 0: definition.append(columnNames[i]).append(" INT"); break;
+				case 1: definition.append(columnNames[i]).append(" VARCHAR(64)"); break;
+				default: definition.append(columnNames[i]).append(" DOUBLE"); break;
+			}
+			markers.append("?");
+		}
+		connector.executeUpdate("DROP TABLE IF EXISTS " + table);
+		connector.executeUpdate("CREATE TABLE " + table + " (" + definition + ", KEY (column1))");
+		
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for(Object[] row : InMemoryResultSet.generateRows(columnCount, rowCount))
+		{
+			rows.add(row);
+		}
+		if(!rows.isEmpty())
+		{
+			connector.executeBatch("INSERT INTO " + table + " VALUES (" + markers + ")", rows, 1000);
+		}
+		
+	}
+	
+	/**
+	 * The result assembly of MySqlConnector.get as it was before it read columns by index
+	 */
+	protected static List<HashMap<String, Object>> legacyAssembly(ResultSet resultSet) throws Exception
+	{
+		
+		ArrayList<HashMap<String, Object>> jdbcResultSet = new ArrayList<HashMap<String, Object>>();
+		ResultSetMetaData metaData = resultSet.getMetaData();
+		int columnCount = metaData.getColumnCount();
+		ArrayList<String> columnNames = new ArrayList<String>();
+		for(int i = 1; i <= columnCount; i++) 
+		{
+			columnNames.add(metaData.getColumnName(i));
+		}
+		
+		while(resultSet.next()) 
+		{
+			HashMap<String, Object> jdbcResultRow = new HashMap<String, Object>();
+			int i = 1;
+			for(String columnName : columnNames) 
+			{
+				try
+				{
+					jdbcResultRow.put(columnName, resultSet.getObject(columnName));
+				}
+				catch(Exception exception)
+				{
+					jdbcResultRow.put(String.valueOf(i), resultSet.getObject(i));
+				}
+				jdbcResultSet.add(jdbcResultRow);
+				i++;
+			}
+		}
+		return jdbcResultSet;
+		
+	}
+	
+}
@@ -0,0 +1,331 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class MySqlConnectorTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(MySqlConnectorTest.class);
+	
+	private StubConnectionPool pool;
+	private MySqlConnector connector;
+	private MySqlQueryCache queryCache;
+	
+	@Before
+	public void createConnector()
+	{
+		
+		this.pool = new StubConnectionPool("primary");
+		this.pool.setResult(new String[] { "id" }, new Object[][] { { Integer.valueOf(1) } });
+		this.connector = new MySqlConnector("primary", "test", "test", "test");
+		this.connector.setConnectionPool(this.pool);
+		this.queryCache = new MySqlQueryCache(10, 1024 * 1024, 0);
+		this.connector.setQueryCache(this.queryCache);
+		
+	}
+	
+	/**
+	 * Caches a read of the orders table through the connector
+	 */
+	private void cacheOrders() throws MySqlConnectorException
+	{
+		
+		this.connector.get("SELECT id FROM orders");
+		assertNotNull(this.queryCache.get("SELECT id FROM orders", null));
+		
+	}
+	
+	@Test
+	public void testWrites() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		// Every kind of write runs, and drops cached reads of the tables written
+		this.cacheOrders();
+		assertEquals(1, this.connector.executeUpdate("INSERT INTO orders (id) VALUES (1)"));
+		assertNull(this.queryCache.get("SELECT id FROM orders", null));
+		
+		this.cacheOrders();
+		// a parameterized update returns its generated key, the stub's second
+		assertEquals(2, this.connector.executeUpdate("UPDATE orders SET id = ? WHERE id = ?", 2, 1));
+		assertNull(this.queryCache.get("SELECT id FROM orders", null));
+		
+		MySqlUpdateResult result = this.connector.executeUpdateForResult("UPDATE orders SET id = ? WHERE id = ?", new Object[] { 2, 1 }, false);
+		assertEquals(1, result.getUpdateCount());
+		assertEquals(0, result.getGeneratedKeys().length);
+		
+		this.cacheOrders();
+		assertArrayEquals(new int[] { 1, 1 }, this.connector.executeBatch(Arrays.asList("DELETE FROM orders WHERE id = 1", "DELETE FROM orders WHERE id = 2")));
+		assertNull(this.queryCache.get("SELECT id FROM orders", null));
+		
+		this.cacheOrders();
+		ArrayList<Object[]> rows = new ArrayList<Object[]>();
+		rows.add(new Object[] { 3 });
+		rows.add(new Object[] { 4 });
+		assertArrayEquals(new int[] { 1, 1 }, this.connector.executeBatch("INSERT INTO orders (id) VALUES (?)", rows));
+		assertNull(this.queryCache.get("SELECT id FROM orders", null));
+		
+		// Writes in a transaction drop cached reads once committed
+		this.cacheOrders();
+		MySqlTransaction transaction = this.connector.beginTransaction();
+		transaction.executeUpdate("DELETE FROM orders");
+		assertNotNull(this.queryCache.get("SELECT id FROM orders", null));
+		transaction.commit();
+		assertNull(this.queryCache.get("SELECT id FROM orders", null));
+		
+		// Batches and transactions commit on their own and hand connections back in auto-commit, 
+		// so the pool has nothing to roll back
+		assertEquals(Arrays.asList(
+				"SELECT id FROM orders", "INSERT INTO orders (id) VALUES (1)", 
+				"SELECT id FROM orders", "UPDATE orders SET id = ? WHERE id = ?", "UPDATE orders SET id = ? WHERE id = ?",
+				"SELECT id FROM orders", "DELETE FROM orders WHERE id = 1", "DELETE FROM orders WHERE id = 2", "COMMIT",
+				"SELECT id FROM orders", "INSERT INTO orders (id) VALUES (?)", "INSERT INTO orders (id) VALUES (?)", "COMMIT",
+				"SELECT id FROM orders", "DELETE FROM orders", "COMMIT"
+		), this.pool.executed);
+		assertTrue(this.pool.connections.get(0).autoCommit);
+		assertEquals(0, this.pool.getStats().getActive());
+		this.connector.close();
+		
+	}
+	
+	@Test
+	public void testGetObjects() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		this.pool.setResult(new String[] { "id" }, new Object[][] { { Integer.valueOf(1) }, { Integer.valueOf(2) } });
+		JdbcRowMapper<Integer> mapper = new JdbcRowMapper<Integer>() {
+			public Integer mapRow(ResultSet resultSet) throws SQLException
+			{
+				return resultSet.getInt(1);
+			}
+		};
+		assertEquals(Arrays.asList(1, 2), this.connector.getObjects("SELECT id FROM orders WHERE id > ?", mapper, 0));
+		
+		MySqlTransaction transaction = this.connector.beginTransaction();
+		try
+		{
+			assertEquals(Arrays.asList(1, 2), transaction.getObjects("SELECT id FROM orders", mapper));
+		}
+		finally
+		{
+			transaction.close();
+		}
+		
+		MySqlAsyncConnector async = new MySqlAsyncConnector(this.connector, 2);
+		assertEquals(Arrays.asList(1, 2), async.getObjects("SELECT id FROM orders", mapper).get());
+		async.shutdown();
+		
+	}
+	
+	@Test
+	public void testQueryMetrics() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		this.connector.setQueryCache(null);
+		assertSame(MySqlQueryMetrics.Sample.NONE, this.connector._startSample("SELECT id FROM orders"));
+		JdbcResultSet result = this.connector.get("SELECT id FROM orders WHERE id = 1");
+		
+		// Only some results are estimated, the rest are counted at the same bytes per row
+		MySqlQueryMetrics metrics = new MySqlQueryMetrics();
+		this.connector.setQueryMetrics(metrics);
+		int count = MySqlQueryMetrics.SIZE_SAMPLE_RATE * 2 + 1;
+		for(int i = 0; i < count; i++)
+		{
+			this.connector.get("SELECT id FROM orders WHERE id = " + i);
+		}
+		MySqlQueryMetrics.Stats stats = metrics.getStats("SELECT id FROM orders WHERE id = 1");
+		assertEquals(count, stats.getCount());
+		assertEquals(count, stats.getRowCount());
+		assertEquals(count * result.estimateSize(), stats.getBytes());
+		this.connector.close();
+		
+	}
+	
+	/**
+	 * Builds the parameters of a batch
+	 * 
+	 * @param count	the number of rows
+	 * @return		one row per id, from 1
+	 */
+	private static ArrayList<Object[]> rows(int count)
+	{
+		
+		ArrayList<Object[]> rows = new ArrayList<Object[]>();
+		for(int i = 1; i <= count; i++)
+		{
+			rows.add(new Object[] { i });
+		}
+		return rows;
+		
+	}
+	
+	/**
+	 * Counts the occurrences of a statement in the SQL run on the pool
+	 */
+	private int countExecuted(String sql)
+	{
+		
+		int count = 0;
+		for(String executed : this.pool.executed)
+		{
+			if(executed.equals(sql)) count++;
+		}
+		return count;
+		
+	}
+	
+	@Test
+	public void testChunkedBatch() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		String sql = "INSERT INTO orders (id) VALUES (?)";
+		
+		// Rows that divide evenly into chunks commit once per chunk
+		MySqlBatchResult result = this.connector.executeBatch(sql, rows(6), 3);
+		assertEquals(2, result.getChunkCount());
+		assertEquals(6, result.getRowCount());
+		assertEquals(6, result.getUpdateCount());
+		for(MySqlBatchResult.Chunk chunk : result.getChunks())
+		{
+			assertEquals(3, chunk.getRowCount());
+			assertEquals(3, chunk.getUpdateCount());
+		}
+		assertEquals(6, this.countExecuted(sql));
+		assertEquals(2, this.countExecuted("COMMIT"));
+		
+		// A final partial chunk is committed with what is left
+		this.pool.executed.clear();
+		result = this.connector.executeBatch(sql, rows(7), 3);
+		assertEquals(3, result.getChunkCount());
+		assertEquals(7, result.getRowCount());
+		assertEquals(7, result.getUpdateCount());
+		assertEquals(1, result.getChunks().get(2).getRowCount());
+		assertEquals(1, result.getChunks().get(2).getUpdateCount());
+		assertEquals(0, result.getGeneratedKeys().length);
+		assertEquals(3, this.countExecuted("COMMIT"));
+		assertEquals(0, this.countExecuted("ROLLBACK"));
+		
+		// No rows, no chunks
+		result = this.connector.executeBatch(sql, rows(0), 3);
+		assertEquals(0, result.getChunkCount());
+		assertEquals(0, result.getRowCount());
+		
+		// The connection goes back in auto-commit
+		assertEquals(1, this.pool.connections.size());
+		assertTrue(this.pool.connections.get(0).autoCommit);
+		assertEquals(0, this.pool.getStats().getActive());
+		
+		try
+		{
+			this.connector.executeBatch(sql, rows(1), 0);
+			fail("a chunk size below 1 should be refused");
+		}
+		catch(IllegalArgumentException exception) {}
+		
+	}
+	
+	@Test
+	public void testChunkedBatchFailure() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		String sql = "INSERT INTO orders (id) VALUES (?)";
+		
+		// A chunk that fails is rolled back once, the chunks before it stay committed
+		this.pool.failBatchAfter = 1;
+		try
+		{
+			this.connector.executeBatch(sql, rows(7), 3);
+			fail("the failed chunk should be passed on");
+		}
+		catch(MySqlConnectorException exception)
+		{
+			assertTrue(exception.getMessage().contains("after 1 committed chunks (3 rows)"));
+		}
+		assertEquals(Arrays.asList(sql, sql, sql, "COMMIT", "ROLLBACK"), this.pool.executed);
+		assertTrue(this.pool.connections.get(0).autoCommit);
+		assertEquals(0, this.pool.getStats().getActive());
+		assertEquals(1, this.pool.getStats().getIdle());
+		
+	}
+	
+	@Test
+	public void testGeneratedKeys() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		String sql = "INSERT INTO orders (id) VALUES (?)";
+		
+		// An update returns the key it generated
+		MySqlUpdateResult result = this.connector.executeUpdateForResult(sql, new Object[] { 1 }, true);
+		assertEquals(1, result.getUpdateCount());
+		assertArrayEquals(new long[] { 1 }, result.getGeneratedKeys());
+		
+		// A chunked batch collects the keys of every chunk, in row order
+		MySqlBatchResult batchResult = this.connector.executeBatch(sql, rows(5), 2, true);
+		assertEquals(3, batchResult.getChunkCount());
+		assertArrayEquals(new long[] { 2, 3, 4, 5, 6 }, batchResult.getGeneratedKeys());
+		
+		// and none unless asked
+		assertEquals(0, this.connector.executeBatch(sql, rows(2), 2).getGeneratedKeys().length);
+		assertEquals(0, this.connector.executeUpdateForResult(sql, new Object[] { 1 }, false).getGeneratedKeys().length);
+		
+	}
+	
+	@Test
+	public void testClose() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		// A pool and replicas passed in may be shared, so closing the connector leaves them open
+		MySqlReplicaSet replicas = new MySqlReplicaSet(MySqlReplicaSet.ROUND_ROBIN);
+		StubConnectionPool replica = new StubConnectionPool("replica");
+		replicas.addReplica("replica", replica);
+		this.connector.setReplicaSet(replicas);
+		this.connector.close();
+		assertFalse(this.pool.isClosed());
+		assertFalse(replica.isClosed());
+		
+		// those the connector created are closed with it
+		MySqlConnector owner = new MySqlConnector("primary", "test", "test", "test");
+		MySqlConnectionPool pool = owner.enableConnectionPool(0, 2);
+		MySqlConnectionPool replicaPool = owner.addReadReplica("replica", 3306, 0, 2);
+		owner.close();
+		assertTrue(pool.isClosed());
+		assertTrue(replicaPool.isClosed());
+		
+		// and a pool replaced by one passed in is no longer the connector's to close
+		owner = new MySqlConnector("primary", "test", "test", "test");
+		owner.enableConnectionPool(0, 2);
+		owner.setConnectionPool(this.pool);
+		owner.close();
+		assertFalse(this.pool.isClosed());
+		
+	}
+	
+}
@@ -0,0 +1,72 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class MySqlLoadDataStreamTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(MySqlLoadDataStreamTest.class);
+	
+	private String read(InputStream inputStream) throws IOException
+	{
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[7];
+		int count;
+		while((count = inputStream.read(buffer, 0, buffer.length)) != -1)
+		{
+			bytes.write(buffer, 0, count);
+		}
+		return bytes.toString("UTF-8");
+		
+	}
+	
+	@Test
+	public void testEncoding() throws IOException
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		ArrayList<Object[]> rows = new ArrayList<Object[]>();
+		rows.add(new Object[] { 1, "tab\there", null });
+		rows.add(new Object[] { 2, "line\nbreak \\ back", new BigDecimal("1E+3") });
+		rows.add(new Object[] { 3, "caf\u00e9", Boolean.TRUE });
+		
+		MySqlLoadDataStream stream = new MySqlLoadDataStream(rows.iterator(), 3, "UTF-8");
+		assertEquals(
+				"1\ttab\\there\t\\N\n2\tline\\nbreak \\\\ back\t1000\n3\tcaf\u00e9\t1\n", 
+				this.read(stream)
+		);
+		assertEquals(3, stream.getRowCount());
+		
+	}
+	
+	@Test
+	public void testLargeSource() throws IOException
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		ArrayList<Object[]> rows = new ArrayList<Object[]>();
+		for(int i = 0; i < 50000; i++)
+		{
+			rows.add(new Object[] { i, "value " + i });
+		}
+		String text = this.read(new MySqlLoadDataStream(rows.iterator(), 2, "UTF-8"));
+		assertEquals(50000, text.split("\n").length);
+		assertEquals("49999\tvalue 49999", text.split("\n")[49999]);
+		
+	}
+	
+}
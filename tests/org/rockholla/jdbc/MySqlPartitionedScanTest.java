@@ -0,0 +1,223 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class MySqlPartitionedScanTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(MySqlPartitionedScanTest.class);
+	
+	/**
+	 * Serves the rows of "SELECT id, name FROM t WHERE id >= ? AND id < ?" from memory, for ids 0 to 9999
+	 */
+	static class StubConnector extends MySqlConnector
+	{
+		
+		final AtomicInteger open = new AtomicInteger();
+		final AtomicInteger maxOpen = new AtomicInteger();
+		
+		StubConnector()
+		{
+			super("localhost", "test", "test", "test");
+		}
+		
+		@Override
+		public JdbcResultCursor getCursor(String sql, Object... params) throws MySqlConnectorException
+		{
+			
+			int low = (Integer) params[0];
+			int high = (Integer) params[1];
+			if(low < 0)
+			{
+				throw new MySqlConnectorException(new IllegalStateException("Bad partition"));
+			}
+			Object[][] rows = new Object[Math.max(0, Math.min(high, 10000) - low)][];
+			for(int i = 0; i < rows.length; i++)
+			{
+				rows[i] = new Object[] { Integer.valueOf(low + i), "name " + (low + i) };
+			}
+			Statement statement = (Statement) Proxy.newProxyInstance(
+					Statement.class.getClassLoader(), new Class<?>[] { Statement.class }, new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args)
+						{
+							if(method.getName().equals("close")) open.decrementAndGet();
+							return null;
+						}
+					}
+			);
+			try
+			{
+				int opened = open.incrementAndGet();
+				int max;
+				while(opened > (max = maxOpen.get()) && !maxOpen.compareAndSet(max, opened)) {}
+				return new JdbcResultCursor(
+						this, null, null, statement, InMemoryResultSet.create(new String[] { "id", "name" }, rows), new MySqlQueryMetrics.Sample(sql)
+				);
+			}
+			catch(Exception exception)
+			{
+				throw new MySqlConnectorException(exception);
+			}
+			
+		}
+		
+	}
+	
+	@Test
+	public void testPartition() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		List<Object[]> ranges = MySqlPartitionedScan.partition(0, 10, 3);
+		assertEquals(3, ranges.size());
+		assertEquals(0, ranges.get(0)[0]);
+		assertEquals(3, ranges.get(0)[1]);
+		assertEquals(3, ranges.get(1)[0]);
+		assertEquals(6, ranges.get(1)[1]);
+		assertEquals(10, ranges.get(2)[1]);
+		
+		// No more partitions than keys, and none for an empty range
+		assertEquals(2, MySqlPartitionedScan.partition(5L, 7L, 8).size());
+		assertEquals(Long.class, MySqlPartitionedScan.partition(5L, 7L, 8).get(0)[1].getClass());
+		assertTrue(MySqlPartitionedScan.partition(7, 7, 4).isEmpty());
+		
+		// Dates split by time, keeping their type
+		ranges = MySqlPartitionedScan.partition(new Timestamp(0), new Timestamp(4000), 4);
+		assertEquals(new Timestamp(2000), ranges.get(1)[1]);
+		
+		try
+		{
+			MySqlPartitionedScan.partition("a", "z", 2);
+			fail("Strings cannot be partitioned");
+		}
+		catch(IllegalArgumentException exception) {}
+		
+		// Big numbers are split when they are whole and fit in a long, and refused otherwise
+		ranges = MySqlPartitionedScan.partition(BigInteger.ZERO, BigInteger.TEN, 2);
+		assertEquals(BigInteger.valueOf(5), ranges.get(0)[1]);
+		ranges = MySqlPartitionedScan.partition(new BigDecimal("0"), new BigDecimal("10.00"), 2);
+		assertEquals(0, new BigDecimal(5).compareTo((BigDecimal) ranges.get(0)[1]));
+		for(Object[] keys : new Object[][] {
+				{ BigInteger.ZERO, BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE) },
+				{ new BigDecimal("0"), new BigDecimal("10.5") },
+				{ new BigDecimal("0"), new BigDecimal("1e30") }
+		})
+		{
+			try
+			{
+				MySqlPartitionedScan.partition(keys[0], keys[1], 2);
+				fail("Keys that are not whole or do not fit in a long cannot be partitioned: " + keys[1]);
+			}
+			catch(IllegalArgumentException exception)
+			{
+				assertTrue(exception.getMessage().contains(keys[1].getClass().getName()));
+			}
+		}
+		
+	}
+	
+	@Test
+	public void testScan() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		StubConnector connector = new StubConnector();
+		final List<Integer> ids = Collections.synchronizedList(new ArrayList<Integer>());
+		JdbcRowHandler handler = new JdbcRowHandler() {
+			public void handleRow(JdbcResultRow row)
+			{
+				ids.add(row.getInt("id"));
+			}
+		};
+		
+		// Ordered scans hand over the rows in key order
+		MySqlPartitionedScan scan = new MySqlPartitionedScan(connector, "SELECT id, name FROM t WHERE id >= ? AND id < ?", 0, 10000, 8);
+		scan.setOrdered(true);
+		scan.setParallelism(3);
+		scan.setQueueSize(16);
+		assertEquals(10000, scan.run(handler));
+		for(int i = 0; i < 10000; i++)
+		{
+			assertEquals(i, (int) ids.get(i));
+		}
+		
+		// and read at most one partition ahead, so no cursor waits long on the handler
+		assertTrue(connector.maxOpen.get() <= 2);
+		
+		// Unordered scans hand over every row once, in any order
+		ids.clear();
+		assertEquals(10000, connector.scan("SELECT id, name FROM t WHERE id >= ? AND id < ?", 0, 10000, 4, false, handler));
+		Collections.sort(ids);
+		for(int i = 0; i < 10000; i++)
+		{
+			assertEquals(i, (int) ids.get(i));
+		}
+		assertEquals(0, connector.open.get());
+		
+	}
+	
+	@Test
+	public void testFailure() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		StubConnector connector = new StubConnector();
+		final AtomicInteger handled = new AtomicInteger();
+		
+		// A failing handler stops every partition and releases their cursors
+		try
+		{
+			connector.scan("SELECT id, name FROM t WHERE id >= ? AND id < ?", 0, 10000, 4, false, new JdbcRowHandler() {
+				public void handleRow(JdbcResultRow row) throws Exception
+				{
+					if(handled.incrementAndGet() == 100) throw new IllegalStateException("Stop");
+				}
+			});
+			fail("The handler's exception should be thrown");
+		}
+		catch(MySqlConnectorException exception)
+		{
+			assertEquals(IllegalStateException.class, exception.getCause().getClass());
+		}
+		assertEquals(100, handled.get());
+		assertEquals(0, connector.open.get());
+		
+		// A failing partition fails the scan
+		try
+		{
+			connector.scan("SELECT id, name FROM t WHERE id >= ? AND id < ?", -10, 10000, 4, true, new JdbcRowHandler() {
+				public void handleRow(JdbcResultRow row) {}
+			});
+			fail("The partition's exception should be thrown");
+		}
+		catch(MySqlConnectorException exception)
+		{
+			assertEquals("Bad partition", exception.getCause().getMessage());
+		}
+		assertEquals(0, connector.open.get());
+		
+	}
+	
+}
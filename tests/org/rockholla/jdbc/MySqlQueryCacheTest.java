@@ -0,0 +1,143 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class MySqlQueryCacheTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(MySqlQueryCacheTest.class);
+	
+	private JdbcResultSet getResult(String value)
+	{
+		
+		ArrayList<String> columnNames = new ArrayList<String>();
+		columnNames.add("value");
+		JdbcResultRow row = new JdbcResultRow(new JdbcColumnIndex(columnNames));
+		row.put("value", value);
+		JdbcResultSet result = new JdbcResultSet();
+		result.add(row);
+		return result;
+		
+	}
+	
+	@Test
+	public void testGetTables() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		HashSet<String> tables = MySqlQueryCache.getTables("SELECT * FROM `shop`.`Orders` o, regions AS r JOIN customers c ON c.id = o.customer_id WHERE r.id = 1");
+		logger.info("Tables found: " + tables);
+		assertEquals(3, tables.size());
+		assertTrue(tables.contains("orders"));
+		assertTrue(tables.contains("customers"));
+		
+		assertTrue(MySqlQueryCache.getTables("update orders set total = 0").contains("orders"));
+		assertTrue(MySqlQueryCache.getTables("INSERT INTO orders (id) VALUES (1)").contains("orders"));
+		assertTrue(MySqlQueryCache.getTables("DELETE FROM orders WHERE id = 1").contains("orders"));
+		assertTrue(MySqlQueryCache.getTables("TRUNCATE TABLE orders").contains("orders"));
+		
+	}
+	
+	@Test
+	public void testHitsAndInvalidation() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		MySqlQueryCache cache = new MySqlQueryCache(10, 1024 * 1024, 0);
+		
+		assertNull(cache.get("SELECT value FROM orders WHERE id = ?", new Object[] {1}));
+		cache.put("SELECT value FROM orders WHERE id = ?", new Object[] {1}, this.getResult("one"), cache.getGeneration());
+		cache.put("SELECT value FROM customers", null, this.getResult("two"), cache.getGeneration());
+		
+		JdbcResultSet cached = cache.get("SELECT value FROM orders WHERE id = ?", new Object[] {1});
+		assertNotNull(cached);
+		assertEquals("one", cached.get(0).getString("value"));
+		assertNull(cache.get("SELECT value FROM orders WHERE id = ?", new Object[] {2}));
+		
+		// Changing a returned row does not change the cache
+		cached.get(0).put("value", "changed");
+		assertEquals("one", cache.get("SELECT value FROM orders WHERE id = ?", new Object[] {1}).get(0).getString("value"));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		
+		// An update only removes the queries that read from its table
+		cache.invalidate("UPDATE orders SET value = 'three' WHERE id = 1");
+		assertNull(cache.get("SELECT value FROM orders WHERE id = ?", new Object[] {1}));
+		assertNotNull(cache.get("SELECT value FROM customers", null));
+		assertEquals(1, cache.getInvalidationCount());
+		
+		// A result read before an invalidation is not cached after it
+		long generation = cache.getGeneration();
+		cache.invalidate("DELETE FROM customers");
+		cache.put("SELECT value FROM customers", null, this.getResult("stale"), generation);
+		assertNull(cache.get("SELECT value FROM customers", null));
+		logger.info("Cache: " + cache);
+		
+	}
+	
+	@Test
+	public void testArrayParameters() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		MySqlQueryCache cache = new MySqlQueryCache(10, 1024 * 1024, 0);
+		String sql = "SELECT value FROM orders WHERE hash = ? AND created < ?";
+		byte[] hash = new byte[] { 1, 2, 3 };
+		Date created = new Date(1000);
+		
+		// Array parameters match by content rather than by instance
+		cache.put(sql, new Object[] { hash, created }, this.getResult("one"), cache.getGeneration());
+		assertNotNull(cache.get(sql, new Object[] { new byte[] { 1, 2, 3 }, new Date(1000) }));
+		assertNull(cache.get(sql, new Object[] { new byte[] { 1, 2, 4 }, new Date(1000) }));
+		
+		// and are copied into the key, so changing them afterwards does not change the cached key
+		hash[2] = 4;
+		created.setTime(2000);
+		assertNotNull(cache.get(sql, new Object[] { new byte[] { 1, 2, 3 }, new Date(1000) }));
+		assertNull(cache.get(sql, new Object[] { hash, created }));
+		assertEquals(1, cache.getSize());
+		
+	}
+	
+	@Test
+	public void testEviction() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		MySqlQueryCache cache = new MySqlQueryCache(2, 1024 * 1024, 0);
+		
+		cache.put("SELECT 1 FROM a", null, this.getResult("a"), cache.getGeneration());
+		cache.put("SELECT 1 FROM b", null, this.getResult("b"), cache.getGeneration());
+		cache.get("SELECT 1 FROM a", null);
+		cache.put("SELECT 1 FROM c", null, this.getResult("c"), cache.getGeneration());
+		
+		// b was the least recently used
+		assertEquals(2, cache.getSize());
+		assertNull(cache.get("SELECT 1 FROM b", null));
+		assertNotNull(cache.get("SELECT 1 FROM a", null));
+		assertEquals(1, cache.getEvictionCount());
+		assertTrue(cache.getBytes() > 0);
+		
+		// Results larger than the memory budget are not cached at all
+		MySqlQueryCache small = new MySqlQueryCache(10, 16, 0);
+		small.put("SELECT 1 FROM a", null, this.getResult("a"), small.getGeneration());
+		assertEquals(0, small.getSize());
+		
+	}
+
+}
@@ -0,0 +1,91 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class MySqlQueryMetricsTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(MySqlQueryMetricsTest.class);
+	
+	@Test
+	public void testNormalize() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		assertEquals(
+				"SELECT * FROM users u WHERE u.id = ? AND u.name = ? AND t2.x > ?", 
+				MySqlQueryMetrics.normalize("SELECT *\n  FROM users u WHERE u.id = 42 AND u.name = 'o''brien' AND t2.x > -1.5")
+		);
+		assertEquals(
+				MySqlQueryMetrics.normalize("SELECT id FROM t WHERE id IN (1, 2, 3)"), 
+				MySqlQueryMetrics.normalize("SELECT id FROM t WHERE id IN (4,5)")
+		);
+		assertEquals(
+				MySqlQueryMetrics.normalize("INSERT INTO t (a, b) VALUES (1, 'x'), (2, 'y'), (3, 'z')"), 
+				MySqlQueryMetrics.normalize("INSERT INTO t (a, b) VALUES (?, ?)")
+		);
+		
+	}
+	
+	@Test
+	public void testHistogram() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		JdbcHistogram histogram = new JdbcHistogram();
+		for(long value = 1; value <= 100000; value++)
+		{
+			histogram.record(value * 1000);
+		}
+		assertEquals(100000, histogram.getCount());
+		assertEquals(1000, histogram.getMin());
+		assertEquals(100000000, histogram.getMax());
+		
+		// Values are reported within the precision of their bucket
+		long p50 = histogram.getValueAtPercentile(50);
+		long p99 = histogram.getValueAtPercentile(99);
+		assertTrue(Math.abs(p50 - 50000000) <= 50000000 / 16);
+		assertTrue(Math.abs(p99 - 99000000) <= 99000000 / 16);
+		assertEquals(100000000, histogram.getValueAtPercentile(100));
+		
+	}
+	
+	@Test
+	public void testRecord() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		MySqlQueryMetrics metrics = new MySqlQueryMetrics();
+		metrics.setSlowQueryThreshold(0);
+		for(int i = 0; i < 3; i++)
+		{
+			MySqlQueryMetrics.Sample sample = new MySqlQueryMetrics.Sample("SELECT * FROM t WHERE id = " + i);
+			sample.connected();
+			sample.executed();
+			sample.fetched(2);
+			metrics.record(sample);
+		}
+		MySqlQueryMetrics.Sample failed = new MySqlQueryMetrics.Sample("SELECT * FROM t WHERE id = 9");
+		failed.connected();
+		metrics.record(failed);
+		
+		MySqlQueryMetrics.Stats stats = metrics.getStats("SELECT * FROM t WHERE id = ?");
+		assertEquals(4, stats.getCount());
+		assertEquals(1, stats.getErrorCount());
+		assertEquals(6, stats.getRowCount());
+		assertEquals(3, stats.getFetchTimes().getCount());
+		assertEquals(1, metrics.getStats().size());
+		assertNull(metrics.getStats("SELECT 1 FROM other"));
+		
+	}
+	
+}
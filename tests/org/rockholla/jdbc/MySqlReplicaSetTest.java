@@ -0,0 +1,151 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class MySqlReplicaSetTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(MySqlReplicaSetTest.class);
+	
+	private MySqlConnectionPool borrowFrom(MySqlReplicaSet replicas)
+	{
+		
+		Connection connection = replicas.borrow();
+		if(connection == null) return null;
+		MySqlConnectionPool pool = replicas.getPool(connection);
+		assertTrue(replicas.release(connection));
+		return pool;
+		
+	}
+	
+	@Test
+	public void testRoundRobin() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		StubConnectionPool one = new StubConnectionPool("one");
+		StubConnectionPool two = new StubConnectionPool("two");
+		MySqlReplicaSet replicas = new MySqlReplicaSet(MySqlReplicaSet.ROUND_ROBIN);
+		replicas.addReplica("one", one);
+		replicas.addReplica("two", two);
+		
+		assertTrue(this.borrowFrom(replicas) == one);
+		assertTrue(this.borrowFrom(replicas) == two);
+		assertTrue(this.borrowFrom(replicas) == one);
+		assertTrue(this.borrowFrom(replicas) == two);
+		assertEquals(2, replicas.getHealthyCount());
+		replicas.close();
+		
+	}
+	
+	@Test
+	public void testFailover() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		StubConnectionPool one = new StubConnectionPool("one");
+		StubConnectionPool two = new StubConnectionPool("two");
+		MySqlReplicaSet replicas = new MySqlReplicaSet(MySqlReplicaSet.LEAST_LATENCY);
+		replicas.addReplica("one", one);
+		replicas.addReplica("two", two);
+		
+		// A replica that is down is skipped and left out of rotation
+		two.down = true;
+		replicas.checkHealth();
+		assertEquals(1, replicas.getHealthyCount());
+		for(int i = 0; i < 4; i++)
+		{
+			assertTrue(this.borrowFrom(replicas) == one);
+		}
+		
+		// With every replica down there is nothing to borrow, the connector falls back to the primary
+		one.down = true;
+		assertNull(this.borrowFrom(replicas));
+		assertEquals(0, replicas.getHealthyCount());
+		
+		// Health checks put recovered replicas back
+		one.down = false;
+		two.down = false;
+		replicas.checkHealth();
+		assertEquals(2, replicas.getHealthyCount());
+		assertFalse(this.borrowFrom(replicas) == null);
+		replicas.close();
+		
+	}
+	
+	@Test
+	public void testBusyReplica() throws Exception
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		StubConnectionPool one = new StubConnectionPool("one");
+		StubConnectionPool two = new StubConnectionPool("two");
+		MySqlReplicaSet replicas = new MySqlReplicaSet(MySqlReplicaSet.ROUND_ROBIN);
+		replicas.addReplica("one", one);
+		replicas.addReplica("two", two);
+		
+		// A replica with every connection borrowed is skipped at once and stays in rotation
+		Connection first = one.borrow();
+		Connection second = one.borrow();
+		long start = System.currentTimeMillis();
+		for(int i = 0; i < 4; i++)
+		{
+			assertTrue(this.borrowFrom(replicas) == two);
+		}
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		replicas.checkHealth();
+		assertEquals(2, replicas.getHealthyCount());
+		
+		// It is used again once connections are handed back
+		one.release(first);
+		one.release(second);
+		MySqlConnectionPool pool = this.borrowFrom(replicas);
+		assertTrue(pool == one || this.borrowFrom(replicas) == one);
+		replicas.close();
+		
+	}
+	
+	@Test
+	public void testLeastLatency() 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		StubConnectionPool one = new StubConnectionPool("one");
+		StubConnectionPool two = new StubConnectionPool("two");
+		MySqlReplicaSet replicas = new MySqlReplicaSet(MySqlReplicaSet.LEAST_LATENCY);
+		replicas.addReplica("one", one);
+		replicas.addReplica("two", two);
+		
+		// The replica with the faster ping is preferred, however quickly its pool hands out connections
+		one.pingMillis = 20;
+		replicas.checkHealth();
+		for(int i = 0; i < 4; i++)
+		{
+			assertTrue(this.borrowFrom(replicas) == two);
+		}
+		
+		one.pingMillis = 0;
+		two.pingMillis = 50;
+		for(int i = 0; i < 3; i++)
+		{
+			replicas.checkHealth();
+		}
+		assertTrue(this.borrowFrom(replicas) == one);
+		assertEquals(2, replicas.getHealthyCount());
+		replicas.close();
+		
+	}
+	
+}
@@ -0,0 +1,101 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class MySqlStatementCacheTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(MySqlStatementCacheTest.class);
+	
+	@Test
+	public void testHitsAndEviction() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		StubConnectionPool pool = new StubConnectionPool("primary", 0, 1);
+		pool.setStatementCacheSize(2);
+		Connection connection = pool.borrow();
+		
+		// The same SQL is prepared once, and cached statements are kept open on release
+		PreparedStatement select = pool.prepareStatement(connection, "SELECT id FROM orders WHERE id = ?");
+		pool.releaseStatement(connection, select);
+		assertTrue(pool.prepareStatement(connection, "SELECT id FROM orders WHERE id = ?") == select);
+		pool.releaseStatement(connection, select);
+		assertFalse(select.isClosed());
+		assertEquals(1, pool.getStub(connection).statements.size());
+		
+		// The least recently used statement is closed once the cache is full
+		PreparedStatement insert = pool.prepareStatement(connection, "INSERT INTO orders (id) VALUES (?)");
+		pool.releaseStatement(connection, insert);
+		pool.prepareStatement(connection, "SELECT id FROM orders WHERE id = ?");
+		PreparedStatement delete = pool.prepareStatement(connection, "DELETE FROM orders WHERE id = ?");
+		assertTrue(insert.isClosed());
+		assertFalse(select.isClosed());
+		assertFalse(delete.isClosed());
+		
+		// and a closed statement is prepared again
+		PreparedStatement reinsert = pool.prepareStatement(connection, "INSERT INTO orders (id) VALUES (?)");
+		assertTrue(reinsert != insert);
+		assertTrue(select.isClosed());
+		assertEquals(4, pool.getStub(connection).statements.size());
+		
+		pool.release(connection);
+		pool.close();
+		
+	}
+	
+	@Test
+	public void testGeneratedKeys() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		StubConnectionPool pool = new StubConnectionPool("primary", 0, 1);
+		Connection connection = pool.borrow();
+		
+		// Statements returning generated keys are cached apart from those that do not
+		PreparedStatement insert = pool.prepareStatement(connection, "INSERT INTO orders (id) VALUES (?)");
+		PreparedStatement keys = pool.prepareStatement(connection, "INSERT INTO orders (id) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
+		assertTrue(keys != insert);
+		assertTrue(pool.prepareStatement(connection, "INSERT INTO orders (id) VALUES (?)", Statement.RETURN_GENERATED_KEYS) == keys);
+		assertTrue(pool.prepareStatement(connection, "INSERT INTO orders (id) VALUES (?)") == insert);
+		assertEquals(2, pool.getStub(connection).statements.size());
+		
+		pool.release(connection);
+		pool.close();
+		
+	}
+	
+	@Test
+	public void testDisabled() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		StubConnectionPool pool = new StubConnectionPool("primary", 0, 1);
+		pool.setStatementCacheSize(0);
+		Connection connection = pool.borrow();
+		
+		// Without a cache every statement is prepared and closed on release
+		PreparedStatement select = pool.prepareStatement(connection, "SELECT id FROM orders WHERE id = ?");
+		pool.releaseStatement(connection, select);
+		assertTrue(select.isClosed());
+		assertTrue(pool.prepareStatement(connection, "SELECT id FROM orders WHERE id = ?") != select);
+		
+		pool.release(connection);
+		pool.close();
+		
+	}
+	
+}
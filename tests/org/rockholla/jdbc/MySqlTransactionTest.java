@@ -0,0 +1,162 @@
+package org.rockholla.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.rockholla.TestHelper;
+
+public class MySqlTransactionTest 
+{
+	
+	@Rule public TestName name = new TestName();
+	final Logger logger = Logger.getLogger(MySqlTransactionTest.class);
+	
+	private StubConnectionPool pool;
+	private MySqlConnector connector;
+	
+	@Before
+	public void createConnector()
+	{
+		
+		this.pool = new StubConnectionPool("primary", 0, 1);
+		this.connector = new MySqlConnector("primary", "test", "test", "test");
+		this.connector.setConnectionPool(this.pool);
+		
+	}
+	
+	@After
+	public void closeConnector()
+	{
+		this.connector.close();
+	}
+	
+	@Test
+	public void testCommitAndRollback() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		MySqlTransaction transaction = this.connector.beginTransaction();
+		assertTrue(transaction.isActive());
+		assertEquals(1, this.pool.getStats().getActive());
+		assertFalse(this.pool.connections.get(0).autoCommit);
+		transaction.executeUpdate("UPDATE account SET balance = balance - ? WHERE id = ?", 10, 1);
+		transaction.executeUpdate("UPDATE account SET balance = balance + ? WHERE id = ?", 10, 2);
+		transaction.commit();
+		assertFalse(transaction.isActive());
+		assertEquals(0, this.pool.getStats().getActive());
+		
+		transaction = this.connector.beginTransaction();
+		transaction.executeUpdate("DELETE FROM account");
+		transaction.rollback();
+		assertFalse(transaction.isActive());
+		
+		// Both ran on the one pooled connection, handed back with auto-commit on
+		assertEquals(1, this.pool.connections.size());
+		assertTrue(this.pool.connections.get(0).autoCommit);
+		assertEquals(Arrays.asList(
+				"UPDATE account SET balance = balance - ? WHERE id = ?", "UPDATE account SET balance = balance + ? WHERE id = ?", "COMMIT",
+				"DELETE FROM account", "ROLLBACK"
+		), this.pool.executed);
+		
+	}
+	
+	@Test
+	public void testEnded() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		// Closing a committed transaction does nothing
+		MySqlTransaction transaction = this.connector.beginTransaction();
+		transaction.executeUpdate("INSERT INTO account (id) VALUES (?)", 3);
+		transaction.commit();
+		int executed = this.pool.executed.size();
+		transaction.close();
+		transaction.close();
+		assertEquals(executed, this.pool.executed.size());
+		assertEquals(0, this.pool.getStats().getActive());
+		
+		// An ended transaction cannot be used
+		try
+		{
+			transaction.executeUpdate("DELETE FROM account");
+			fail("The transaction has ended");
+		}
+		catch(IllegalStateException exception) {}
+		try
+		{
+			transaction.get("SELECT id FROM account");
+			fail("The transaction has ended");
+		}
+		catch(IllegalStateException exception) {}
+		try
+		{
+			transaction.commit();
+			fail("The transaction has ended");
+		}
+		catch(IllegalStateException exception) {}
+		try
+		{
+			transaction.rollback();
+			fail("The transaction has ended");
+		}
+		catch(IllegalStateException exception) {}
+		
+		// Closing an open transaction rolls it back
+		transaction = this.connector.beginTransaction();
+		transaction.executeUpdate("DELETE FROM account");
+		transaction.close();
+		assertFalse(transaction.isActive());
+		assertEquals("ROLLBACK", this.pool.executed.get(this.pool.executed.size() - 1));
+		assertEquals(0, this.pool.getStats().getActive());
+		
+	}
+	
+	@Test
+	public void testIsolationRestored() throws Exception 
+	{
+		
+		logger.info(TestHelper.getRunningMethodNotification(name.getMethodName()));
+		
+		MySqlTransaction transaction = this.connector.beginTransaction(Connection.TRANSACTION_READ_COMMITTED, true);
+		StubConnectionPool.StubConnection connection = this.pool.connections.get(0);
+		assertTrue(transaction.isReadOnly());
+		assertTrue(connection.readOnly);
+		assertEquals(Connection.TRANSACTION_READ_COMMITTED, connection.isolation);
+		transaction.get("SELECT id FROM account");
+		transaction.commit();
+		
+		// The connection goes back to the pool as it was opened
+		assertFalse(connection.readOnly);
+		assertTrue(connection.autoCommit);
+		assertEquals(Connection.TRANSACTION_REPEATABLE_READ, connection.isolation);
+		
+		// and the next transaction on it starts from there
+		transaction = this.connector.beginTransaction();
+		assertEquals(1, this.pool.connections.size());
+		assertFalse(connection.readOnly);
+		assertEquals(Connection.TRANSACTION_REPEATABLE_READ, connection.isolation);
+		transaction.close();
+		
+		// A level set straight on the pool is restored too
+		Connection borrowed = this.pool.borrow();
+		this.pool.setTransactionIsolation(borrowed, Connection.TRANSACTION_SERIALIZABLE);
+		assertEquals(Connection.TRANSACTION_SERIALIZABLE, connection.isolation);
+		this.pool.release(borrowed);
+		assertEquals(Connection.TRANSACTION_REPEATABLE_READ, connection.isolation);
+		
+	}
+	
+}
@@ -0,0 +1,303 @@
+package org.rockholla.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool handing out stand-in connections, so the pool, the connector and transactions can be 
+ * tested without a database.  Connections record the SQL run on them, updates change one row 
+ * and generate keys counting up from 1 as AUTO_INCREMENT would, and queries return the rows set with setResult.  Only the methods the 
+ * package uses are implemented.
+ * 
+ * @author rockholla
+ *
+ */
+public class StubConnectionPool extends MySqlConnectionPool
+{
+	
+	/** true to fail opening and validating connections, as while the server is down */
+	volatile boolean down = false;
+	/** the SQL run on the pool's connections, with COMMIT, ROLLBACK and CANCEL, in order */
+	final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+	/** the connections opened, in order */
+	final List<StubConnection> connections = Collections.synchronizedList(new ArrayList<StubConnection>());
+	
+	/** the number of query results not yet closed */
+	final AtomicInteger openResults = new AtomicInteger();
+	/** the number of rows a query reads before failing, as when the connection is lost, -1 to not fail */
+	volatile int failAfter = -1;
+	/** the number of batches that run before one fails, -1 to not fail */
+	volatile int failBatchAfter = -1;
+	private final AtomicInteger _batchCount = new AtomicInteger();
+	/** the next AUTO_INCREMENT value */
+	private final AtomicLong _nextKey = new AtomicLong(1);
+	/** how long validating a connection takes in milliseconds, as the round trip of a ping */
+	volatile long pingMillis = 0;
+	
+	private volatile String[] _columnNames = new String[] { "id" };
+	private volatile Object[][] _rows = new Object[0][];
+	
+	StubConnectionPool(String host)
+	{
+		this(host, 0, 2);
+	}
+	
+	StubConnectionPool(String host, int minSize, int maxSize)
+	{
+		super("jdbc:mysql://" + host + ":3306", minSize, maxSize);
+	}
+	
+	/**
+	 * Sets the result of every query
+	 * 
+	 * @param columnNames	the column names
+	 * @param rows			the rows, one value per column
+	 */
+	void setResult(String[] columnNames, Object[][] rows)
+	{
+		this._columnNames = columnNames;
+		this._rows = rows;
+	}
+	
+	/**
+	 * Gets the stand-in behind a connection from this pool
+	 * 
+	 * @param connection	the connection
+	 * @return				the stand-in, null if the connection is not from this pool
+	 */
+	StubConnection getStub(Connection connection)
+	{
+		
+		synchronized(this.connections)
+		{
+			for(StubConnection stub : this.connections)
+			{
+				if(stub.proxy == connection) return stub;
+			}
+		}
+		return null;
+		
+	}
+	
+	@Override
+	protected Connection _connect() throws SQLException
+	{
+		
+		if(this.down) throw new SQLException("Connection refused: " + this._url);
+		StubConnection stub = new StubConnection();
+		this.connections.add(stub);
+		return stub.proxy;
+		
+	}
+	
+	/**
+	 * Creates the result of a query, one that fails after failAfter rows if set and is counted 
+	 * in openResults until it is closed
+	 * 
+	 * @return	the result set
+	 */
+	private ResultSet _createResult()
+	{
+		
+		final ResultSet resultSet = InMemoryResultSet.create(this._columnNames, this._rows);
+		final int failAfter = this.failAfter;
+		this.openResults.incrementAndGet();
+		return (ResultSet) Proxy.newProxyInstance(
+				StubConnectionPool.class.getClassLoader(), new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+					private int _count = 0;
+					private boolean _closed = false;
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+					{
+						if(method.getName().equals("close") && !this._closed)
+						{
+							this._closed = true;
+							openResults.decrementAndGet();
+						}
+						if(method.getName().equals("next") && failAfter >= 0 && this._count++ >= failAfter) throw new SQLException("Connection lost");
+						return method.invoke(resultSet, args);
+					}
+				}
+		);
+		
+	}
+	
+	private static Object _default(Class<?> type)
+	{
+		
+		if(type == boolean.class) return Boolean.FALSE;
+		if(type == int.class) return Integer.valueOf(0);
+		if(type == long.class) return Long.valueOf(0);
+		return null;
+		
+	}
+	
+	/**
+	 * A stand-in connection
+	 */
+	class StubConnection implements InvocationHandler
+	{
+		
+		final Connection proxy;
+		volatile boolean autoCommit = true;
+		volatile boolean readOnly = false;
+		volatile boolean closed = false;
+		/** false to fail validation, as for a connection the server has dropped */
+		volatile boolean valid = true;
+		volatile int isolation = Connection.TRANSACTION_REPEATABLE_READ;
+		/** the statements prepared on the connection, in order */
+		final List<StubStatement> statements = Collections.synchronizedList(new ArrayList<StubStatement>());
+		
+		StubConnection()
+		{
+			this.proxy = (Connection) Proxy.newProxyInstance(
+					StubConnectionPool.class.getClassLoader(), new Class<?>[] { Connection.class }, this
+			);
+		}
+		
+		public Object invoke(Object proxy, Method method, Object[] args) throws SQLException
+		{
+			
+			String name = method.getName();
+			if(name.equals("hashCode")) return System.identityHashCode(proxy);
+			if(name.equals("equals")) return proxy == args[0];
+			if(name.equals("isClosed")) return this.closed;
+			if(name.equals("close"))
+			{
+				this.closed = true;
+				return null;
+			}
+			if(this.closed) throw new SQLException("The connection is closed");
+			if(name.equals("isValid"))
+			{
+				if(pingMillis > 0)
+				{
+					try
+					{
+						Thread.sleep(pingMillis);
+					}
+					catch(InterruptedException exception)
+					{
+						throw new SQLException("Interrupted");
+					}
+				}
+				return !down && this.valid;
+			}
+			if(name.equals("getAutoCommit")) return this.autoCommit;
+			if(name.equals("setAutoCommit")) this.autoCommit = (Boolean) args[0];
+			if(name.equals("isReadOnly")) return this.readOnly;
+			if(name.equals("setReadOnly")) this.readOnly = (Boolean) args[0];
+			if(name.equals("getTransactionIsolation")) return this.isolation;
+			if(name.equals("setTransactionIsolation")) this.isolation = (Integer) args[0];
+			if(name.equals("commit")) executed.add("COMMIT");
+			if(name.equals("rollback")) executed.add("ROLLBACK");
+			if(name.equals("createStatement") || name.equals("prepareStatement"))
+			{
+				StubStatement statement = new StubStatement(name.equals("prepareStatement") ? (String) args[0] : null);
+				this.statements.add(statement);
+				return statement.proxy;
+			}
+			return _default(method.getReturnType());
+			
+		}
+		
+	}
+	
+	/**
+	 * A stand-in statement, prepared or not
+	 */
+	class StubStatement implements InvocationHandler
+	{
+		
+		final PreparedStatement proxy;
+		/** the SQL the statement was prepared with, null if not prepared */
+		final String sql;
+		volatile boolean closed = false;
+		private ArrayList<String> _batch = new ArrayList<String>();
+		/** the keys generated by the last update or batch */
+		private Object[][] _keys = new Object[0][];
+		
+		StubStatement(String sql)
+		{
+			this.sql = sql;
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+					StubConnectionPool.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, this
+			);
+		}
+		
+		public Object invoke(Object proxy, Method method, Object[] args) throws SQLException
+		{
+			
+			String name = method.getName();
+			if(name.equals("hashCode")) return System.identityHashCode(proxy);
+			if(name.equals("equals")) return proxy == args[0];
+			if(name.equals("isClosed")) return this.closed;
+			if(name.equals("close"))
+			{
+				this.closed = true;
+				return null;
+			}
+			if(this.closed) throw new SQLException("The statement is closed");
+			String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : this.sql;
+			if(name.equals("executeUpdate"))
+			{
+				executed.add(sql);
+				this._keys = new Object[][] { { _nextKey.getAndIncrement() } };
+				return 1;
+			}
+			if(name.equals("executeQuery"))
+			{
+				executed.add(sql);
+				return _createResult();
+			}
+			if(name.equals("cancel"))
+			{
+				executed.add("CANCEL");
+			}
+			if(name.equals("addBatch"))
+			{
+				this._batch.add(sql);
+			}
+			if(name.equals("clearBatch"))
+			{
+				this._batch.clear();
+			}
+			if(name.equals("executeBatch"))
+			{
+				if(failBatchAfter >= 0 && _batchCount.getAndIncrement() >= failBatchAfter)
+				{
+					this._batch.clear();
+					throw new BatchUpdateException("Duplicate entry", new int[0]);
+				}
+				int[] updateCounts = new int[this._batch.size()];
+				this._keys = new Object[updateCounts.length][];
+				for(int i = 0; i < updateCounts.length; i++)
+				{
+					executed.add(this._batch.get(i));
+					updateCounts[i] = 1;
+					this._keys[i] = new Object[] { _nextKey.getAndIncrement() };
+				}
+				this._batch.clear();
+				return updateCounts;
+			}
+			if(name.equals("getGeneratedKeys"))
+			{
+				return InMemoryResultSet.create(new String[] { "GENERATED_KEY" }, this._keys);
+			}
+			return _default(method.getReturnType());
+			
+		}
+		
+	}
+	
+}